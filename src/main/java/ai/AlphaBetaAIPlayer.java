@@ -0,0 +1,553 @@
+package ai;
+
+import models.AIPlayer;
+import models.AIPlayerType;
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.Zobrist;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The computer player that searches the game tree with negamax and alpha-beta
+ * pruning. The search deepens iteratively until the time budget for the move
+ * runs out and remembers the searched positions in a transposition table, so
+ * every next iteration starts with the best moves found by the previous one.
+ * The moves are tried in the order of the table move first, then the moves
+ * that change the evaluation the most in favor of the side to move, adjusted
+ * by the history of the moves that have caused cut-offs.
+ * <p>
+ * With more than one thread the first root move is searched alone to get the
+ * bound, then the rest of the root moves are split between the threads of a
+ * fork-join pool, all of them sharing the transposition table.
+ * <p>
+ * A player created with a seed and a single thread is reproducible: it turns
+ * its time budget into a budget of nodes, so it makes the same moves in the
+ * same games no matter how fast the machine is.
+ *
+ * @author Anastasia Radchenko
+ */
+public class AlphaBetaAIPlayer implements AIPlayer {
+
+	/**
+	 * Default time to think about a move, in milliseconds
+	 */
+	public static final long DEFAULT_TIME_BUDGET = 1000;
+
+	/**
+	 * Default memory for the transposition table, in megabytes
+	 */
+	public static final int DEFAULT_TABLE_SIZE = 32;
+
+	/**
+	 * Nodes a reproducible search is allowed to visit per millisecond of its time budget
+	 */
+	public static final long NODES_PER_MILLISECOND = 2000;
+
+	// the score of the won position, reduced by the number of moves to win
+	static final int WIN = 1 << 29;
+
+	private static final int INFINITY = WIN + 1;
+
+	// check the clock once per that many nodes
+	private static final int CLOCK_CHECK_NODES = 1024;
+
+	// keep the history bonus within the range of the evaluation gains
+	private static final int MAX_HISTORY = 1 << 20;
+
+	private final long timeBudget;
+	private final int threads;
+	private final int tableSize;
+	private final Random r;
+	private final boolean reproducible;
+	private int maxDepth = Integer.MAX_VALUE;
+
+	// set up for the game variant being played
+	private Rules rules;
+	private Zobrist zobrist;
+	private SearchBoard empty;
+	private TranspositionTable table;
+	private ForkJoinPool pool;
+	private final ThreadLocal<Searcher> searchers = new ThreadLocal<Searcher>();
+
+	// the state of the current search
+	private SearchBoard root;
+	private int searchId;
+	private long deadline;
+	private long nodeBudget;
+	private volatile boolean aborted;
+	private final AtomicLong nodes = new AtomicLong();
+	private int bestScore;
+	private int bestMove;
+	private SearchStatistics statistics;
+
+	public AlphaBetaAIPlayer() {
+		this(DEFAULT_TIME_BUDGET);
+	}
+
+	/**
+	 * @param timeBudget the time to think about a move, in milliseconds.
+	 */
+	public AlphaBetaAIPlayer(long timeBudget) {
+		this(timeBudget, 1);
+	}
+
+	/**
+	 * @param timeBudget the time to think about a move, in milliseconds.
+	 * @param threads the number of threads to search with.
+	 */
+	public AlphaBetaAIPlayer(long timeBudget, int threads) {
+		this(timeBudget, threads, DEFAULT_TABLE_SIZE, new Random(), false);
+	}
+
+	/**
+	 * @param timeBudget the time to think about a move, in milliseconds.
+	 * @param tableSize the memory for the transposition table, in megabytes.
+	 * @param seed the seed to break ties between equally good moves.
+	 */
+	public AlphaBetaAIPlayer(long timeBudget, int tableSize, long seed) {
+		this(timeBudget, 1, tableSize, seed);
+	}
+
+	/**
+	 * @param timeBudget the time to think about a move, in milliseconds.
+	 * @param threads the number of threads to search with.
+	 * @param tableSize the memory for the transposition table, in megabytes.
+	 * @param seed the seed to break ties between equally good moves.
+	 */
+	public AlphaBetaAIPlayer(long timeBudget, int threads, int tableSize, long seed) {
+		this(timeBudget, threads, tableSize, new Random(seed), true);
+	}
+
+	private AlphaBetaAIPlayer(long timeBudget, int threads, int tableSize, Random r, boolean seeded) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid number of threads: "+threads);
+		}
+		this.timeBudget = timeBudget;
+		this.threads = threads;
+		this.tableSize = tableSize;
+		this.r = r;
+		this.reproducible = seeded && threads == 1;
+	}
+
+	/**
+	 * Limit the depth of the search, the search stops at this depth even when
+	 * the time budget is not spent.
+	 *
+	 * @param maxDepth the maximum depth of the search.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the figures of the last search or null if no search has been done yet.
+	 */
+	public SearchStatistics getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public Move nextMove(GameState gameState, PlayerRole role) {
+		prepare(gameState.getRules());
+		root = new SearchBoard(empty);
+		root.load(gameState);
+		table.newSearch();
+		searchId++;
+		nodes.set(0);
+		aborted = false;
+		long start = System.nanoTime();
+		deadline = start + timeBudget * 1000000L;
+		nodeBudget = reproducible ? Math.max(1, timeBudget * NODES_PER_MILLISECOND) : 0;
+
+		Searcher main = searcher();
+		int best = TranspositionTable.NO_MOVE;
+		int completed = 0;
+		int depthLimit = Math.min(maxDepth, root.getEmpties());
+		for (int depth = 1; depth <= depthLimit; depth++) {
+			bestMove = TranspositionTable.NO_MOVE;
+			if (threads == 1) {
+				main.load();
+				bestScore = main.negamax(depth, -INFINITY, INFINITY, 0);
+			} else {
+				searchInParallel(main, depth);
+			}
+			// the first root move is the best one of the previous iteration, so
+			// the best move of an unfinished iteration is at least as good
+			if (bestMove != TranspositionTable.NO_MOVE) {
+				best = bestMove;
+			}
+			if (aborted) {
+				break;
+			}
+			completed = depth;
+			if (isWin(bestScore)) {
+				break; // the outcome is known
+			}
+		}
+		main.flushNodes();
+		statistics = new SearchStatistics(threads, completed, nodes.get(), System.nanoTime() - start);
+
+		if (best == TranspositionTable.NO_MOVE) {
+			// not even the first iteration has had time to finish
+			main.load();
+			int count = main.generateMoves(0, TranspositionTable.NO_MOVE, root.isOrderToMove());
+			best = main.sortMoves(count)[0];
+		}
+		int square = best >> 1;
+		int size = root.getSize();
+		String player = role == PlayerRole.ORDER ? gameState.getOrderPlayer() : gameState.getChaosPlayer();
+		return new Move(player, square / size + 1, square % size + 1, (best & 1) == 0 ? Mark.X : Mark.O);
+	}
+
+	@Override
+	public AIPlayerType getType() {
+		return AIPlayerType.ALPHA_BETA;
+	}
+
+	/**
+	 * Set up the tables for the game variant unless they are set up already.
+	 */
+	private void prepare(Rules rules) {
+		if (rules.equals(this.rules)) {
+			return;
+		}
+		this.rules = rules;
+		zobrist = new Zobrist(rules.getSquares());
+		empty = new SearchBoard(rules, zobrist);
+		if (table == null) {
+			table = new TranspositionTable(tableSize);
+		}
+		if (pool == null && threads > 1) {
+			pool = new ForkJoinPool(threads);
+		}
+	}
+
+	/**
+	 * @return the search state of the current thread, set up for the game variant being played.
+	 */
+	private Searcher searcher() {
+		Searcher searcher = searchers.get();
+		if (searcher == null || searcher.rules != rules) {
+			searcher = new Searcher();
+			searchers.set(searcher);
+		}
+		return searcher;
+	}
+
+	/**
+	 * Search the first root move alone, then the rest of them in parallel
+	 * with the bound the first one gives.
+	 */
+	private void searchInParallel(Searcher main, int depth) {
+		main.load();
+		long entry = table.probe(root.getHash());
+		int tableMove = entry == 0 ? TranspositionTable.NO_MOVE : TranspositionTable.move(entry);
+		int count = main.generateMoves(0, tableMove, root.isOrderToMove());
+		int[] rootMoves = main.sortMoves(count);
+
+		bestScore = -INFINITY;
+		offer(main.searchRootMove(rootMoves[0], depth, -INFINITY), rootMoves[0]);
+		main.flushNodes();
+		if (aborted || count == 1) {
+			return;
+		}
+		pool.invoke(new RootTask(rootMoves, 1, count, depth));
+		if (!aborted) {
+			table.store(root.getHash(), bestScore, depth, TranspositionTable.EXACT, bestMove);
+		}
+	}
+
+	/**
+	 * Take the score of the root move if it is the best one so far.
+	 */
+	private synchronized void offer(int score, int move) {
+		if (!aborted && score > bestScore) {
+			bestScore = score;
+			bestMove = move;
+		}
+	}
+
+	private synchronized int getBestScore() {
+		return bestScore;
+	}
+
+	private void checkLimits(long searched) {
+		if (nodeBudget > 0 ? searched >= nodeBudget : System.nanoTime() > deadline) {
+			aborted = true;
+		}
+	}
+
+	private boolean isWin(int score) {
+		return Math.abs(score) >= WIN - empty.getSquares();
+	}
+
+	// The winning scores depend on the distance from the root, the table
+	// keeps them as the distance from the position itself
+
+	private int toTable(int score, int ply) {
+		if (isWin(score)) {
+			return score > 0 ? score + ply : score - ply;
+		}
+		return score;
+	}
+
+	private int fromTable(int score, int ply) {
+		if (isWin(score)) {
+			return score > 0 ? score - ply : score + ply;
+		}
+		return score;
+	}
+
+	/**
+	 * Searches a range of the root moves, splitting it in halves down to
+	 * single moves.
+	 */
+	private class RootTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] rootMoves;
+		private final int from;
+		private final int to;
+		private final int depth;
+
+		RootTask(int[] rootMoves, int from, int to, int depth) {
+			this.rootMoves = rootMoves;
+			this.from = from;
+			this.to = to;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			if (aborted) {
+				return;
+			}
+			if (to - from == 1) {
+				Searcher searcher = searcher();
+				searcher.load();
+				int move = rootMoves[from];
+				int score = searcher.searchRootMove(move, depth, getBestScore());
+				searcher.flushNodes();
+				offer(score, move);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RootTask(rootMoves, from, middle, depth), new RootTask(rootMoves, middle, to, depth));
+			}
+		}
+	}
+
+	/**
+	 * The search state of a thread: its own copy of the board, the move lists
+	 * and the history of the moves.
+	 */
+	private class Searcher {
+		private final Rules rules = AlphaBetaAIPlayer.this.rules;
+		private final SearchBoard board = new SearchBoard(empty);
+		private final int[][] moves = new int[board.getSquares() + 1][board.getSquares() * 2];
+		private final int[][] moveKeys = new int[board.getSquares() + 1][board.getSquares() * 2];
+		private final int[] history = new int[board.getSquares() * 2];
+		private int searchId;
+		private long searched;
+		private long reported;
+
+		/**
+		 * Set the board to the root position of the current search.
+		 */
+		void load() {
+			if (searchId != AlphaBetaAIPlayer.this.searchId) {
+				searchId = AlphaBetaAIPlayer.this.searchId;
+				searched = 0;
+				reported = 0;
+				// let the history of the previous moves fade away
+				for (int i = 0; i < history.length; i++) {
+					history[i] >>= 3;
+				}
+			}
+			board.copyFrom(root);
+		}
+
+		/**
+		 * Add the nodes searched by this thread to the total.
+		 */
+		void flushNodes() {
+			nodes.addAndGet(searched - reported);
+			reported = searched;
+		}
+
+		/**
+		 * @return the score of the root move, exact if it is above alpha.
+		 */
+		int searchRootMove(int move, int depth, int alpha) {
+			int square = move >> 1;
+			board.make(square, (move & 1) == 0 ? SearchBoard.X : SearchBoard.O);
+			int score = -negamax(depth - 1, -INFINITY, -alpha, 1);
+			board.unmake(square);
+			return score;
+		}
+
+		int negamax(int depth, int alpha, int beta, int ply) {
+			if (++searched % CLOCK_CHECK_NODES == 0) {
+				checkLimits(searched);
+			}
+			if (aborted) {
+				return 0;
+			}
+			boolean orderToMove = board.isOrderToMove();
+			if (board.isChain()) {
+				return orderToMove ? WIN - ply : ply - WIN;
+			}
+			if (board.isChaosWin()) {
+				return orderToMove ? ply - WIN : WIN - ply;
+			}
+			if (depth == 0) {
+				return orderToMove ? board.getScore() : -board.getScore();
+			}
+
+			int alphaOrig = alpha;
+			long hash = board.getHash();
+			int tableMove = TranspositionTable.NO_MOVE;
+			long entry = table.probe(hash);
+			if (entry != 0) {
+				tableMove = TranspositionTable.move(entry);
+				if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+					int score = fromTable(TranspositionTable.score(entry), ply);
+					switch (TranspositionTable.bound(entry)) {
+					case TranspositionTable.EXACT:
+						return score;
+					case TranspositionTable.LOWER:
+						alpha = Math.max(alpha, score);
+						break;
+					case TranspositionTable.UPPER:
+						beta = Math.min(beta, score);
+						break;
+					}
+					if (alpha >= beta) {
+						return score;
+					}
+				}
+			}
+
+			int count = generateMoves(ply, tableMove, orderToMove);
+			int[] list = moves[ply];
+			int[] keys = moveKeys[ply];
+			int best = -INFINITY;
+			int bestMove = TranspositionTable.NO_MOVE;
+			for (int i = 0; i < count; i++) {
+				pickNext(list, keys, i, count);
+				int move = list[i];
+				int square = move >> 1;
+				board.make(square, (move & 1) == 0 ? SearchBoard.X : SearchBoard.O);
+				int score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+				board.unmake(square);
+				if (aborted) {
+					return 0;
+				}
+				if (score > best) {
+					best = score;
+					bestMove = move;
+					if (ply == 0) {
+						AlphaBetaAIPlayer.this.bestMove = move;
+					}
+				}
+				if (best > alpha) {
+					alpha = best;
+				}
+				if (alpha >= beta) {
+					history[move] = Math.min(history[move] + depth * depth, MAX_HISTORY);
+					break;
+				}
+			}
+
+			int bound = best <= alphaOrig ? TranspositionTable.UPPER
+					: best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(hash, toTable(best, ply), depth, bound, bestMove);
+			return best;
+		}
+
+		/**
+		 * Generate the moves of the side to move with the keys to order them by.
+		 *
+		 * @return the number of moves generated.
+		 */
+		int generateMoves(int ply, int tableMove, boolean orderToMove) {
+			int[] list = moves[ply];
+			int[] keys = moveKeys[ply];
+			int count = 0;
+			for (int square = 0; square < board.getSquares(); square++) {
+				if (board.getCell(square) != SearchBoard.SPACE) {
+					continue;
+				}
+				if (!board.isLiveSquare(square)) {
+					// no chain can go through this square anymore, so either mark
+					// is as good as the other and the move only passes the turn
+					list[count] = square << 1;
+					keys[count++] = Integer.MIN_VALUE + 1;
+					continue;
+				}
+				for (byte mark = SearchBoard.X; mark <= SearchBoard.O; mark++) {
+					int move = (square << 1) | (mark == SearchBoard.O ? 1 : 0);
+					int key;
+					if (move == tableMove) {
+						key = Integer.MAX_VALUE;
+					} else if (board.makesChain(square, mark)) {
+						key = orderToMove ? Integer.MAX_VALUE - 1 : Integer.MIN_VALUE + 2;
+					} else {
+						int gain = board.gain(square, mark);
+						key = (orderToMove ? gain : -gain) + history[move];
+						if (ply == 0) {
+							key += r.nextInt(4); // break the ties randomly
+						}
+					}
+					list[count] = move;
+					keys[count++] = key;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * @return the root moves generated, all of them in order.
+		 */
+		int[] sortMoves(int count) {
+			int[] sorted = new int[count];
+			for (int i = 0; i < count; i++) {
+				pickNext(moves[0], moveKeys[0], i, count);
+				sorted[i] = moves[0][i];
+			}
+			return sorted;
+		}
+	}
+
+	/**
+	 * Bring the move with the highest key among the rest of the moves to the
+	 * given position. Sorting the moves lazily pays off, because most of the
+	 * nodes are cut off after trying a few moves.
+	 */
+	private static void pickNext(int[] list, int[] keys, int from, int count) {
+		int best = from;
+		for (int i = from + 1; i < count; i++) {
+			if (keys[i] > keys[best]) {
+				best = i;
+			}
+		}
+		if (best != from) {
+			int move = list[from];
+			list[from] = list[best];
+			list[best] = move;
+			int key = keys[from];
+			keys[from] = keys[best];
+			keys[best] = key;
+		}
+	}
+}
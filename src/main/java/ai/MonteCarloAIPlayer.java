@@ -0,0 +1,337 @@
+package ai;
+
+import models.AIPlayer;
+import models.AIPlayerType;
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.Zobrist;
+
+/**
+ * The computer player that grows a Monte Carlo search tree: it walks down the
+ * tree choosing the moves by the UCB1 formula, adds the children of the leaf
+ * it reaches, finishes the game from there with random moves and counts the
+ * result in every node on the way back. The move played most is chosen when
+ * the time budget runs out.
+ * <p>
+ * The random games are played on a search board copy and allocate nothing.
+ * The tree lives in parallel arrays of primitives taken once and reused for
+ * every move; the children of a node take consecutive places in them. When
+ * the arrays are full the tree stops growing and the search goes on with the
+ * leaves it has.
+ *
+ * @author Anastasia Radchenko
+ */
+public class MonteCarloAIPlayer implements AIPlayer {
+
+	/**
+	 * Default time to think about a move, in milliseconds
+	 */
+	public static final long DEFAULT_TIME_BUDGET = 1000;
+
+	/**
+	 * Default number of tree nodes to keep
+	 */
+	public static final int DEFAULT_TREE_SIZE = 1 << 20;
+
+	// the weight of the exploration term of UCB1
+	private static final double EXPLORATION = 1.4;
+
+	// check the clock once per that many playouts
+	private static final int CLOCK_CHECK_PLAYOUTS = 16;
+
+	private final long timeBudget;
+	private final int treeSize;
+	private long maxPlayouts = Long.MAX_VALUE;
+	private long seed;
+
+	// the tree: the move leading to the node, its first child and the number
+	// of children (-1 if not expanded yet), the playouts through the node and
+	// the playouts won by the side that has made the move
+	private final int[] nodeMove;
+	private final int[] firstChild;
+	private final int[] childCount;
+	private final int[] visits;
+	private final int[] wins;
+	private int nodes;
+
+	// set up for the game variant being played
+	private Rules rules;
+	private Zobrist zobrist;
+	private SearchBoard empty;
+	private SearchBoard root;
+	private SearchBoard board;
+	private int[] path;
+	private int[] free;
+
+	private SearchStatistics statistics;
+
+	public MonteCarloAIPlayer() {
+		this(DEFAULT_TIME_BUDGET);
+	}
+
+	/**
+	 * @param timeBudget the time to think about a move, in milliseconds.
+	 */
+	public MonteCarloAIPlayer(long timeBudget) {
+		this(timeBudget, DEFAULT_TREE_SIZE, System.nanoTime());
+	}
+
+	/**
+	 * @param timeBudget the time to think about a move, in milliseconds.
+	 * @param treeSize the number of tree nodes to keep.
+	 * @param seed the seed of the random games.
+	 */
+	public MonteCarloAIPlayer(long timeBudget, int treeSize, long seed) {
+		this.timeBudget = timeBudget;
+		this.treeSize = treeSize;
+		this.seed = seed == 0 ? 1 : seed;
+		nodeMove = new int[treeSize];
+		firstChild = new int[treeSize];
+		childCount = new int[treeSize];
+		visits = new int[treeSize];
+		wins = new int[treeSize];
+	}
+
+	/**
+	 * Limit the number of random games per move, the search stops after them
+	 * even when the time budget is not spent. With a seed it makes the moves
+	 * the same in the same games.
+	 *
+	 * @param maxPlayouts the maximum number of random games per move.
+	 */
+	public void setMaxPlayouts(long maxPlayouts) {
+		this.maxPlayouts = maxPlayouts;
+	}
+
+	/**
+	 * @return the figures of the last search, the nodes are the random games
+	 * played, or null if no search has been done yet.
+	 */
+	public SearchStatistics getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public Move nextMove(GameState gameState, PlayerRole role) {
+		prepare(gameState.getRules());
+		root.copyFrom(empty);
+		root.load(gameState);
+		long start = System.nanoTime();
+		long deadline = start + timeBudget * 1000000L;
+
+		nodes = 1;
+		nodeMove[0] = TranspositionTable.NO_MOVE;
+		childCount[0] = -1;
+		visits[0] = 0;
+		wins[0] = 0;
+		boolean orderToMove = root.isOrderToMove();
+		int maxDepth = 0;
+		long playouts = 0;
+		while (playouts < maxPlayouts) {
+			if (playouts % CLOCK_CHECK_PLAYOUTS == 0 && playouts > 0 && System.nanoTime() > deadline) {
+				break;
+			}
+			board.copyFrom(root);
+			int depth = descend();
+			boolean orderWins = board.isChain() || (!board.isChaosWin() && playout());
+			backup(depth, orderWins, orderToMove);
+			maxDepth = Math.max(maxDepth, depth);
+			playouts++;
+		}
+		statistics = new SearchStatistics(1, maxDepth, playouts, System.nanoTime() - start);
+
+		int best = bestChild();
+		int size = root.getSize();
+		int square = best >> 1;
+		String player = role == PlayerRole.ORDER ? gameState.getOrderPlayer() : gameState.getChaosPlayer();
+		return new Move(player, square / size + 1, square % size + 1, (best & 1) == 0 ? Mark.X : Mark.O);
+	}
+
+	@Override
+	public AIPlayerType getType() {
+		return AIPlayerType.MONTE_CARLO;
+	}
+
+	/**
+	 * Set up the boards for the game variant unless they are set up already.
+	 */
+	private void prepare(Rules rules) {
+		if (rules.equals(this.rules)) {
+			return;
+		}
+		this.rules = rules;
+		zobrist = new Zobrist(rules.getSquares());
+		empty = new SearchBoard(rules, zobrist);
+		root = new SearchBoard(empty);
+		board = new SearchBoard(empty);
+		path = new int[rules.getSquares() + 1];
+		free = new int[rules.getSquares()];
+	}
+
+	/**
+	 * Walk down the tree from the root making the moves on the board, expand
+	 * the leaf reached and step into its first child.
+	 *
+	 * @return the depth of the node reached, its path is in the path array.
+	 */
+	private int descend() {
+		int node = 0;
+		int depth = 0;
+		path[0] = 0;
+		while (!board.isChain() && !board.isChaosWin()) {
+			if (childCount[node] < 0) {
+				if (!expand(node)) {
+					break; // the tree is full
+				}
+				node = firstChild[node];
+			} else {
+				node = select(node);
+			}
+			int move = nodeMove[node];
+			board.make(move >> 1, (move & 1) == 0 ? SearchBoard.X : SearchBoard.O);
+			path[++depth] = node;
+			if (visits[node] == 0) {
+				break; // a new node, play the game out from here
+			}
+		}
+		return depth;
+	}
+
+	/**
+	 * Add the children of the node, one per move of the side to move. The
+	 * squares no chain can go through anymore are all the same, so they get
+	 * a single child.
+	 *
+	 * @return false if there is no room left in the tree.
+	 */
+	private boolean expand(int node) {
+		int squares = board.getSquares();
+		if (nodes + board.getEmpties() * 2 > treeSize) {
+			return false;
+		}
+		int first = nodes;
+		boolean dead = false;
+		for (int square = 0; square < squares; square++) {
+			if (board.getCell(square) != SearchBoard.SPACE) {
+				continue;
+			}
+			if (!board.isLiveSquare(square)) {
+				if (!dead) {
+					dead = true;
+					addNode(square << 1);
+				}
+				continue;
+			}
+			addNode(square << 1);
+			addNode((square << 1) | 1);
+		}
+		firstChild[node] = first;
+		childCount[node] = nodes - first;
+		return true;
+	}
+
+	private void addNode(int move) {
+		nodeMove[nodes] = move;
+		childCount[nodes] = -1;
+		visits[nodes] = 0;
+		wins[nodes] = 0;
+		nodes++;
+	}
+
+	/**
+	 * @return the child of the node with the best UCB1 value, an unvisited child first.
+	 */
+	private int select(int node) {
+		int first = firstChild[node];
+		int end = first + childCount[node];
+		double logVisits = Math.log(visits[node]);
+		int best = first;
+		double bestValue = -1;
+		for (int child = first; child < end; child++) {
+			int n = visits[child];
+			if (n == 0) {
+				return child;
+			}
+			double value = (double) wins[child] / n + EXPLORATION * Math.sqrt(logVisits / n);
+			if (value > bestValue) {
+				bestValue = value;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Finish the game on the board with random moves.
+	 *
+	 * @return true if Order has won.
+	 */
+	private boolean playout() {
+		int count = 0;
+		for (int square = 0; square < board.getSquares(); square++) {
+			if (board.getCell(square) == SearchBoard.SPACE) {
+				free[count++] = square;
+			}
+		}
+		while (!board.isChain() && !board.isChaosWin()) {
+			int i = nextInt(count);
+			int square = free[i];
+			free[i] = free[--count];
+			board.make(square, nextInt(2) == 0 ? SearchBoard.X : SearchBoard.O);
+		}
+		return board.isChain();
+	}
+
+	/**
+	 * Count the result of the game in the nodes on the path, each node for the
+	 * side that has made the move leading to it.
+	 */
+	private void backup(int depth, boolean orderWins, boolean orderToMove) {
+		for (int i = 0; i <= depth; i++) {
+			int node = path[i];
+			visits[node]++;
+			// the moves to the odd plies are made by the side to move at the root
+			boolean byOrder = (i & 1) == 1 ? orderToMove : !orderToMove;
+			if (byOrder == orderWins) {
+				wins[node]++;
+			}
+		}
+	}
+
+	/**
+	 * @return the move of the most visited child of the root.
+	 */
+	private int bestChild() {
+		if (childCount[0] <= 0) {
+			// no time for a single playout, take any free square
+			for (int square = 0; square < root.getSquares(); square++) {
+				if (root.getCell(square) == SearchBoard.SPACE) {
+					return square << 1;
+				}
+			}
+		}
+		int first = firstChild[0];
+		int best = first;
+		for (int child = first + 1; child < first + childCount[0]; child++) {
+			if (visits[child] > visits[best]) {
+				best = child;
+			}
+		}
+		return nodeMove[best];
+	}
+
+	/**
+	 * xorshift random numbers, cheaper than the synchronized java.util.Random
+	 *
+	 * @return a random number from 0 inclusive to n exclusive.
+	 */
+	private int nextInt(int n) {
+		seed ^= seed << 13;
+		seed ^= seed >>> 7;
+		seed ^= seed << 17;
+		return (int) (((seed >>> 33) * n) >>> 31);
+	}
+}
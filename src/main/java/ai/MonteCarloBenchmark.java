@@ -0,0 +1,61 @@
+package ai;
+
+import models.AIPlayer;
+import models.GreedyAIPlayer;
+import models.IllegalMoveException;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.TwoPlayerGameState;
+
+/**
+ * Plays the Monte Carlo player against the greedy player and against the
+ * alpha-beta player with the same time budget, each side playing Order in
+ * half of the games, then prints the score and the random games per second.
+ * <p>
+ * Usage: <code>MonteCarloBenchmark [time budget [games]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class MonteCarloBenchmark {
+
+	public static void main(String[] args) throws IllegalMoveException {
+		long timeBudget = args.length > 0 ? Long.parseLong(args[0]) : 200;
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		MonteCarloAIPlayer monteCarlo = new MonteCarloAIPlayer(timeBudget);
+		match("greedy", monteCarlo, new GreedyAIPlayer(), games);
+		match("alpha-beta", monteCarlo, new AlphaBetaAIPlayer(timeBudget), games);
+	}
+
+	private static void match(String name, MonteCarloAIPlayer monteCarlo, AIPlayer opponent, int games)
+			throws IllegalMoveException {
+		int won = 0;
+		long playouts = 0;
+		long nanos = 0;
+		for (int game = 0; game < games; game++) {
+			boolean monteCarloPlaysOrder = game % 2 == 0;
+			TwoPlayerGameState gameState = new TwoPlayerGameState("Order", "Chaos", Rules.STANDARD);
+			while (!gameState.isOver()) {
+				boolean orderToMove = gameState.isOrderNextTurn();
+				PlayerRole role = orderToMove ? PlayerRole.ORDER : PlayerRole.CHAOS;
+				Move move;
+				if (orderToMove == monteCarloPlaysOrder) {
+					move = monteCarlo.nextMove(gameState, role);
+					playouts += monteCarlo.getStatistics().getNodes();
+					nanos += monteCarlo.getStatistics().getElapsedNanos();
+				} else {
+					move = opponent.nextMove(gameState, role);
+				}
+				gameState.makeMove(move);
+			}
+			// Order has won if the last move has made a chain
+			boolean orderWon = gameState.copyBoard().hasChain(gameState.getRules().getChainLength());
+			if (orderWon == monteCarloPlaysOrder) {
+				won++;
+			}
+		}
+		System.out.println("Monte Carlo vs "+name+": "+won+"/"+games+" won, "
+				+(nanos == 0 ? 0 : playouts * 1000000000L / nanos)+" playouts per second");
+	}
+}
@@ -0,0 +1,153 @@
+package ai;
+
+import models.Rules;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The best moves of the first positions of the standard game, computed in
+ * advance by the opening book generator. The positions are keyed by their
+ * canonical code and the moves are kept on the canonical image of the board,
+ * so a single entry serves all the 16 symmetric images of the position.
+ * <p>
+ * The book of the standard game is a binary resource, read the first time it
+ * is needed and shared read only by all the games. The codes are sorted, so a
+ * lookup is a binary search.
+ *
+ * @author Anastasia Radchenko
+ */
+public class OpeningBook {
+	static final int MAGIC = 0x4f43424b; // "OCBK"
+	static final int VERSION = 1;
+
+	private static final String RESOURCE = "/ai/opening.book";
+
+	private final Rules rules;
+	private final long[] codes;
+	private final short[] moves;
+	private final PositionCode positionCode;
+
+	/**
+	 * @param rules the game variant the book is for.
+	 * @param codes the canonical codes of the positions, sorted.
+	 * @param moves the moves on the canonical images of the positions.
+	 */
+	OpeningBook(Rules rules, long[] codes, short[] moves) {
+		this.rules = rules;
+		this.codes = codes;
+		this.moves = moves;
+		this.positionCode = new PositionCode(rules.getBoardSize());
+	}
+
+	// loads the book of the standard game when it is first asked for
+	private static class Holder {
+		static final OpeningBook STANDARD = readStandard();
+	}
+
+	/**
+	 * @return the book of the standard game, empty if the resource is missing.
+	 */
+	public static OpeningBook getStandard() {
+		return Holder.STANDARD;
+	}
+
+	private static OpeningBook readStandard() {
+		InputStream in = OpeningBook.class.getResourceAsStream(RESOURCE);
+		if (in != null) {
+			try {
+				try {
+					return read(new DataInputStream(new BufferedInputStream(in)));
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// play without the book
+				e.printStackTrace();
+			}
+		}
+		return new OpeningBook(Rules.STANDARD, new long[0], new short[0]);
+	}
+
+	/**
+	 * Read the book written by the write method.
+	 *
+	 * @throws IOException if reading fails or the data is not a book.
+	 */
+	public static OpeningBook read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not an opening book");
+		}
+		if (in.readInt() != VERSION) {
+			throw new IOException("Unsupported opening book version");
+		}
+		Rules rules;
+		try {
+			rules = new Rules(in.readInt(), in.readInt());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid opening book rules", e);
+		}
+		int size = in.readInt();
+		if (size < 0) {
+			throw new IOException("Invalid opening book size: "+size);
+		}
+		long[] codes = new long[size];
+		short[] moves = new short[size];
+		for (int i = 0; i < size; i++) {
+			codes[i] = in.readLong();
+			if (i > 0 && codes[i] <= codes[i - 1]) {
+				throw new IOException("The opening book positions are not sorted");
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			moves[i] = in.readShort();
+		}
+		return new OpeningBook(rules, codes, moves);
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(rules.getBoardSize());
+		out.writeInt(rules.getChainLength());
+		out.writeInt(codes.length);
+		for (int i = 0; i < codes.length; i++) {
+			out.writeLong(codes[i]);
+		}
+		for (int i = 0; i < moves.length; i++) {
+			out.writeShort(moves[i]);
+		}
+	}
+
+	public Rules getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return the number of positions in the book.
+	 */
+	public int size() {
+		return codes.length;
+	}
+
+	/**
+	 * @param cells the cells of the board of the book game variant.
+	 * @return the book move of the position: the square number times 2, plus 1
+	 * for O, or -1 if the position is not in the book.
+	 */
+	int lookup(byte[] cells) {
+		if (codes.length == 0) {
+			return -1;
+		}
+		int i = Arrays.binarySearch(codes, positionCode.canonical(cells));
+		if (i < 0) {
+			return -1;
+		}
+		return positionCode.fromCanonical(moves[i], positionCode.symmetry(cells));
+	}
+}
@@ -0,0 +1,56 @@
+package ai;
+
+import models.AIPlayer;
+import models.AIPlayerType;
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+
+/**
+ * The computer player that makes the book moves while the game is in the
+ * opening book and lets the other computer player decide after that.
+ *
+ * @author Anastasia Radchenko
+ */
+public class OpeningBookAIPlayer implements AIPlayer {
+	private final OpeningBook book;
+	private final AIPlayer player;
+	private final byte[] cells;
+
+	/**
+	 * @param book the opening book.
+	 * @param player the computer player to make the moves the book does not know.
+	 */
+	public OpeningBookAIPlayer(OpeningBook book, AIPlayer player) {
+		this.book = book;
+		this.player = player;
+		cells = new byte[book.getRules().getSquares()];
+	}
+
+	@Override
+	public Move nextMove(GameState gameState, PlayerRole role) {
+		if (book.size() == 0 || !book.getRules().equals(gameState.getRules())) {
+			return player.nextMove(gameState, role);
+		}
+		int size = gameState.getRules().getBoardSize();
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				Mark mark = gameState.getBoardMark(x + 1, y + 1);
+				cells[x * size + y] = mark == Mark.X ? SearchBoard.X : mark == Mark.O ? SearchBoard.O : SearchBoard.SPACE;
+			}
+		}
+		int move = book.lookup(cells);
+		if (move < 0 || cells[move >> 1] != SearchBoard.SPACE) {
+			return player.nextMove(gameState, role);
+		}
+		int square = move >> 1;
+		String name = role == PlayerRole.ORDER ? gameState.getOrderPlayer() : gameState.getChaosPlayer();
+		return new Move(name, square / size + 1, square % size + 1, (move & 1) == 0 ? Mark.X : Mark.O);
+	}
+
+	@Override
+	public AIPlayerType getType() {
+		return player.getType();
+	}
+}
@@ -0,0 +1,136 @@
+package ai;
+
+import models.IllegalMoveException;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.TwoPlayerGameState;
+import models.Zobrist;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Offline generator of the opening book of the standard game. It asks the
+ * alpha-beta player for the best move of the empty board and of every first
+ * move, then follows each book move with every reply of the other side, down
+ * to the given number of marks on the board. The player is seeded and single
+ * threaded, so the book is the same every time it is generated.
+ * <p>
+ * Usage: <code>OpeningBookGenerator file [plies [time budget]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class OpeningBookGenerator {
+	private static final long SEED = 1;
+
+	private final Rules rules = Rules.STANDARD;
+	private final int plies;
+	private final AlphaBetaAIPlayer player;
+	private final PositionCode positionCode = new PositionCode(rules.getBoardSize());
+	private final SearchBoard empty = new SearchBoard(rules, new Zobrist(rules.getSquares()));
+	private final Map<Long, Short> book = new TreeMap<Long, Short>();
+
+	public OpeningBookGenerator(int plies, long timeBudget) {
+		this.plies = plies;
+		player = new AlphaBetaAIPlayer(timeBudget, 1, AlphaBetaAIPlayer.DEFAULT_TABLE_SIZE, SEED);
+	}
+
+	public static void main(String[] args) throws IOException, IllegalMoveException {
+		String file = args[0];
+		int plies = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		long timeBudget = args.length > 2 ? Long.parseLong(args[2]) : 200;
+
+		OpeningBook book = new OpeningBookGenerator(plies, timeBudget).generate();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			book.write(out);
+		} finally {
+			out.close();
+		}
+		System.out.println(book.size()+" positions written to "+file);
+	}
+
+	public OpeningBook generate() throws IllegalMoveException {
+		byte[] cells = new byte[rules.getSquares()];
+		expand(cells, 0);
+		for (int square = 0; square < cells.length; square++) {
+			for (byte mark = SearchBoard.X; mark <= SearchBoard.O; mark++) {
+				cells[square] = mark;
+				expand(cells, 1);
+				cells[square] = SearchBoard.SPACE;
+			}
+		}
+		long[] codes = new long[book.size()];
+		short[] moves = new short[book.size()];
+		int i = 0;
+		for (Map.Entry<Long, Short> entry : book.entrySet()) {
+			codes[i] = entry.getKey();
+			moves[i++] = entry.getValue();
+		}
+		return new OpeningBook(rules, codes, moves);
+	}
+
+	/**
+	 * Add the book move of the position, then the positions after every reply
+	 * to it.
+	 */
+	private void expand(byte[] cells, int marks) throws IllegalMoveException {
+		long code = positionCode.canonical(cells);
+		if (marks > plies || book.containsKey(code) || isOver(cells)) {
+			return;
+		}
+		int move = search(cells);
+		book.put(code, (short) positionCode.toCanonical(move, positionCode.symmetry(cells)));
+		if (marks + 2 > plies) {
+			return;
+		}
+		int square = move >> 1;
+		cells[square] = (move & 1) == 0 ? SearchBoard.X : SearchBoard.O;
+		for (int reply = 0; reply < cells.length; reply++) {
+			if (cells[reply] != SearchBoard.SPACE) {
+				continue;
+			}
+			for (byte mark = SearchBoard.X; mark <= SearchBoard.O; mark++) {
+				cells[reply] = mark;
+				expand(cells, marks + 2);
+				cells[reply] = SearchBoard.SPACE;
+			}
+		}
+		cells[square] = SearchBoard.SPACE;
+	}
+
+	private boolean isOver(byte[] cells) {
+		SearchBoard board = new SearchBoard(empty);
+		for (int square = 0; square < cells.length; square++) {
+			if (cells[square] != SearchBoard.SPACE) {
+				board.make(square, cells[square]);
+			}
+		}
+		return board.isChain() || board.isChaosWin();
+	}
+
+	/**
+	 * @return the move of the alpha-beta player in the position.
+	 */
+	private int search(byte[] cells) throws IllegalMoveException {
+		TwoPlayerGameState gameState = new TwoPlayerGameState("Order", "Chaos", rules);
+		int size = rules.getBoardSize();
+		int marks = 0;
+		for (int square = 0; square < cells.length; square++) {
+			if (cells[square] != SearchBoard.SPACE) {
+				Mark mark = cells[square] == SearchBoard.X ? Mark.X : Mark.O;
+				gameState.makeMove(new Move("", square / size + 1, square % size + 1, mark));
+				marks++;
+			}
+		}
+		Move move = player.nextMove(gameState, marks % 2 == 0 ? PlayerRole.ORDER : PlayerRole.CHAOS);
+		int square = (move.getX() - 1) * size + move.getY() - 1;
+		return (square << 1) | (move.getMark() == Mark.O ? 1 : 0);
+	}
+}
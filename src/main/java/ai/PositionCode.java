@@ -0,0 +1,123 @@
+package ai;
+
+import models.Symmetry;
+
+/**
+ * Exact code of a position that is the same for all the positions the game
+ * can not tell apart: the board turned or mirrored any of the 8 ways and the
+ * X's and O's swapped. The code of a board is its cells read as the digits of
+ * a base 3 number, the canonical code is the smallest code of the 16 images
+ * of the board. 3^36 fits into a long, so the code of a standard board is
+ * exact, two positions never share it.
+ * <p>
+ * The image that gives the canonical code is the symmetry of the position, it
+ * takes a move on the board to the same move on the canonical image and back.
+ * The tables of the code are taken from the symmetries of the board, so that
+ * the lookups of the search stay plain array reads.
+ * <p>
+ * The code holds no state besides the symmetry tables, so it can be shared
+ * between threads.
+ *
+ * @author Anastasia Radchenko
+ */
+class PositionCode {
+
+	/**
+	 * The largest number of squares that fits into the code
+	 */
+	static final int MAX_SQUARES = 39;
+
+	// the mark each mark turns into when the marks are swapped
+	private static final long[] SWAP = { SearchBoard.SPACE, SearchBoard.O, SearchBoard.X };
+
+	// transforms[t][i] is the square that goes to the square i in the image t,
+	// inverses[t][s] is the square the square s goes to in the image t
+	private final int[][] transforms;
+	private final int[][] inverses;
+
+	/**
+	 * @param size the size of the board.
+	 */
+	PositionCode(int size) {
+		int squares = size * size;
+		if (squares > MAX_SQUARES) {
+			throw new IllegalArgumentException("The board "+size+"x"+size+" is too large to code");
+		}
+		transforms = new int[8][squares];
+		inverses = new int[8][squares];
+		Symmetry symmetry = Symmetry.forSize(size);
+		for (int t = 0; t < transforms.length; t++) {
+			for (int square = 0; square < squares; square++) {
+				transforms[t][square] = symmetry.fromImage(square << 1, t << 1) >> 1;
+				inverses[t][square] = symmetry.toImage(square << 1, t << 1) >> 1;
+			}
+		}
+	}
+
+	/**
+	 * @param cells the cells of the board of the same size as the code.
+	 * @return the smallest code of the symmetric images of the board.
+	 */
+	long canonical(byte[] cells) {
+		long best = Long.MAX_VALUE;
+		for (int t = 0; t < transforms.length; t++) {
+			int[] transform = transforms[t];
+			long code = 0;
+			long swapped = 0;
+			for (int i = 0; i < transform.length; i++) {
+				byte cell = cells[transform[i]];
+				code = code * 3 + cell;
+				swapped = swapped * 3 + SWAP[cell];
+			}
+			best = Math.min(best, Math.min(code, swapped));
+		}
+		return best;
+	}
+
+	/**
+	 * @param cells the cells of the board of the same size as the code.
+	 * @return the symmetry of the position: the image number times 2, plus 1
+	 * if the marks are swapped in the canonical image.
+	 */
+	int symmetry(byte[] cells) {
+		long best = Long.MAX_VALUE;
+		int symmetry = 0;
+		for (int t = 0; t < transforms.length; t++) {
+			int[] transform = transforms[t];
+			long code = 0;
+			long swapped = 0;
+			for (int i = 0; i < transform.length; i++) {
+				byte cell = cells[transform[i]];
+				code = code * 3 + cell;
+				swapped = swapped * 3 + SWAP[cell];
+			}
+			if (code < best) {
+				best = code;
+				symmetry = t << 1;
+			}
+			if (swapped < best) {
+				best = swapped;
+				symmetry = (t << 1) | 1;
+			}
+		}
+		return symmetry;
+	}
+
+	/**
+	 * @param move the move on the board: the square number times 2, plus 1 for O.
+	 * @param symmetry the symmetry of the position.
+	 * @return the same move on the canonical image of the board.
+	 */
+	int toCanonical(int move, int symmetry) {
+		return (inverses[symmetry >> 1][move >> 1] << 1) | ((move ^ symmetry) & 1);
+	}
+
+	/**
+	 * @param move the move on the canonical image of the board.
+	 * @param symmetry the symmetry of the position.
+	 * @return the same move on the board.
+	 */
+	int fromCanonical(int move, int symmetry) {
+		return (transforms[symmetry >> 1][move >> 1] << 1) | ((move ^ symmetry) & 1);
+	}
+}
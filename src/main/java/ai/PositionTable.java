@@ -0,0 +1,123 @@
+package ai;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The solved positions kept in memory while the tablebase is generated. It is
+ * the same hash table as the tablebase file has, so the file is a copy of its
+ * slots. The solver threads add the positions without locking: a slot is
+ * taken by a compare and set, and a value once stored never changes.
+ *
+ * @author Anastasia Radchenko
+ */
+class PositionTable {
+
+	// give up adding a position after that many taken slots, the table is too full
+	private static final int MAX_PROBES = 64;
+
+	private AtomicLongArray slots;
+	private int mask;
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * @param capacity the number of slots, a power of two.
+	 */
+	PositionTable(int capacity) {
+		slots = new AtomicLongArray(capacity);
+		mask = capacity - 1;
+	}
+
+	int size() {
+		return size.get();
+	}
+
+	int capacity() {
+		return slots.length();
+	}
+
+	long slot(int i) {
+		return slots.get(i);
+	}
+
+	/**
+	 * @return the memory taken by the table in bytes.
+	 */
+	long getBytes() {
+		return (long) slots.length() * 8;
+	}
+
+	/**
+	 * @param code the canonical code of the position.
+	 * @return ORDER_WINS or CHAOS_WINS if the position is solved, UNKNOWN otherwise.
+	 */
+	int get(long code) {
+		int i = Tablebase.index(code, mask);
+		for (int probes = 0; probes < MAX_PROBES; probes++) {
+			long slot = slots.get(i);
+			if (slot == 0) {
+				return Tablebase.UNKNOWN;
+			}
+			if ((slot & ~Tablebase.ORDER_WINS_BIT) == code + 1) {
+				return (slot & Tablebase.ORDER_WINS_BIT) != 0 ? Tablebase.ORDER_WINS : Tablebase.CHAOS_WINS;
+			}
+			i = (i + 1) & mask;
+		}
+		return Tablebase.UNKNOWN;
+	}
+
+	/**
+	 * Add the solved position unless it is there already.
+	 *
+	 * @param code the canonical code of the position.
+	 * @param orderWins true if Order wins the position.
+	 * @return false if there is no room for the position.
+	 */
+	boolean put(long code, boolean orderWins) {
+		long value = (code + 1) | (orderWins ? Tablebase.ORDER_WINS_BIT : 0);
+		int i = Tablebase.index(code, mask);
+		for (int probes = 0; probes < MAX_PROBES; probes++) {
+			long slot = slots.get(i);
+			if (slot == 0) {
+				if (slots.compareAndSet(i, 0, value)) {
+					size.incrementAndGet();
+					return true;
+				}
+				slot = slots.get(i);
+			}
+			if ((slot & ~Tablebase.ORDER_WINS_BIT) == code + 1) {
+				return true; // solved by another thread
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Double the table. It must not be used by the other threads meanwhile.
+	 */
+	void grow() {
+		AtomicLongArray old = slots;
+		slots = new AtomicLongArray(old.length() * 2);
+		mask = slots.length() - 1;
+		size.set(0);
+		for (int i = 0; i < old.length(); i++) {
+			long slot = old.get(i);
+			if (slot != 0) {
+				put((slot & ~Tablebase.ORDER_WINS_BIT) - 1, (slot & Tablebase.ORDER_WINS_BIT) != 0);
+			}
+		}
+	}
+
+	/**
+	 * Add all the positions of the tablebase file to this table.
+	 */
+	void putAll(Tablebase tablebase) {
+		for (int i = 0; i < tablebase.getCapacity(); i++) {
+			long slot = tablebase.slot(i);
+			if (slot != 0) {
+				put((slot & ~Tablebase.ORDER_WINS_BIT) - 1, (slot & Tablebase.ORDER_WINS_BIT) != 0);
+			}
+		}
+	}
+}
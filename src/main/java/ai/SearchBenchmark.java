@@ -0,0 +1,64 @@
+package ai;
+
+import models.GreedyAIPlayer;
+import models.IllegalMoveException;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.TwoPlayerGameState;
+
+/**
+ * Measures the speed of the alpha-beta search: searches the same positions to
+ * the same depth with one thread and with many, then prints the nodes per
+ * second of both and the speedup of the parallel search.
+ * <p>
+ * Usage: <code>SearchBenchmark [threads [depth [positions]]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class SearchBenchmark {
+	private static final long NO_TIME_LIMIT = Long.MAX_VALUE / 2000000L;
+
+	public static void main(String[] args) throws IllegalMoveException {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+		int positions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		long serialNanos = 0;
+		long parallelNanos = 0;
+		for (int i = 0; i < positions; i++) {
+			TwoPlayerGameState gameState = openGame(i, 6 + i % 5);
+			SearchStatistics serial = search(gameState, 1, depth);
+			SearchStatistics parallel = search(gameState, threads, depth);
+			System.out.println("position "+i+": 1 thread "+serial+", "+threads+" threads "+parallel);
+			serialNanos += serial.getElapsedNanos();
+			parallelNanos += parallel.getElapsedNanos();
+		}
+		System.out.println("speedup with "+threads+" threads at depth "+depth+": "
+				+String.format("%.2f", (double) serialNanos / Math.max(1, parallelNanos)));
+	}
+
+	/**
+	 * Search the position to the depth with a cold transposition table.
+	 */
+	public static SearchStatistics search(TwoPlayerGameState gameState, int threads, int depth) {
+		AlphaBetaAIPlayer player = new AlphaBetaAIPlayer(NO_TIME_LIMIT, threads);
+		player.setMaxDepth(depth);
+		PlayerRole role = gameState.isOrderNextTurn() ? PlayerRole.ORDER : PlayerRole.CHAOS;
+		player.nextMove(gameState, role);
+		return player.getStatistics();
+	}
+
+	/**
+	 * Play a few random moves to get a position to search.
+	 */
+	private static TwoPlayerGameState openGame(long seed, int moves) throws IllegalMoveException {
+		TwoPlayerGameState gameState = new TwoPlayerGameState("Order", "Chaos", Rules.STANDARD);
+		GreedyAIPlayer player = new GreedyAIPlayer(seed);
+		for (int i = 0; i < moves && !gameState.isOver(); i++) {
+			Move move = player.nextMove(gameState, i % 2 == 0 ? PlayerRole.ORDER : PlayerRole.CHAOS);
+			gameState.makeMove(move);
+		}
+		return gameState;
+	}
+}
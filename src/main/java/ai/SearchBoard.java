@@ -0,0 +1,354 @@
+package ai;
+
+import models.GameState;
+import models.Mark;
+import models.Rules;
+import models.Zobrist;
+
+/**
+ * Compact mutable board the computer players search on. Besides the marks it
+ * keeps track of every line of chain length on the board (a window): how many
+ * X's and O's each window has. A window that has both marks is dead, Order
+ * can not build a chain on it anymore. Making and unmaking a move updates only
+ * the windows through the square, which gives the chain detection, the count
+ * of live windows, the position evaluation and the position hash for free.
+ * Nothing is allocated once the board is built.
+ *
+ * @author Anastasia Radchenko
+ */
+class SearchBoard {
+	static final byte SPACE = 0;
+	static final byte X = 1;
+	static final byte O = 2;
+
+	/**
+	 * Upper bound of the position score, any won position scores higher
+	 */
+	static final int MAX_SCORE = 1 << 28;
+
+	// steps along the chain directions: up, diagonal up, right, diagonal down
+	private static final int[] DX = { 0, 1, 1, 1 };
+	private static final int[] DY = { 1, 1, 0, -1 };
+
+	private final int size;
+	private final int chainLength;
+	private final Zobrist zobrist;
+
+	// windows every square belongs to, shared between the copies of the board
+	private final int[][] squareWindows;
+	// value of a live window by the number of marks it has, in favor of Order
+	private final int[] weights;
+
+	private final byte[] cells;
+	private final byte[] xCounts;
+	private final byte[] oCounts;
+
+	private int empties;
+	private int live;
+	private int chains;
+	private int score;
+	private long hash;
+
+	SearchBoard(Rules rules, Zobrist zobrist) {
+		size = rules.getBoardSize();
+		chainLength = rules.getChainLength();
+		this.zobrist = zobrist;
+
+		int squares = size * size;
+		int[] counts = new int[squares];
+		int windows = 0;
+		for (int d = 0; d < DX.length; d++) {
+			for (int x = 0; x < size; x++) {
+				for (int y = 0; y < size; y++) {
+					if (fits(x, y, d)) {
+						for (int i = 0; i < chainLength; i++) {
+							counts[(x + i * DX[d]) * size + y + i * DY[d]]++;
+						}
+						windows++;
+					}
+				}
+			}
+		}
+		squareWindows = new int[squares][];
+		for (int s = 0; s < squares; s++) {
+			squareWindows[s] = new int[counts[s]];
+			counts[s] = 0;
+		}
+		int w = 0;
+		for (int d = 0; d < DX.length; d++) {
+			for (int x = 0; x < size; x++) {
+				for (int y = 0; y < size; y++) {
+					if (fits(x, y, d)) {
+						for (int i = 0; i < chainLength; i++) {
+							int s = (x + i * DX[d]) * size + y + i * DY[d];
+							squareWindows[s][counts[s]++] = w;
+						}
+						w++;
+					}
+				}
+			}
+		}
+
+		// every extra mark makes a window four times more valuable, capped so
+		// that the total score stays well below the winning score
+		int cap = Math.max(1, MAX_SCORE / Math.max(1, windows));
+		weights = new int[chainLength + 1];
+		weights[0] = 1;
+		for (int i = 1; i <= chainLength; i++) {
+			weights[i] = Math.min(weights[i - 1] * 4, cap);
+		}
+
+		cells = new byte[squares];
+		xCounts = new byte[windows];
+		oCounts = new byte[windows];
+		empties = squares;
+		live = windows;
+		chains = 0;
+		score = windows * weights[0];
+		hash = 0;
+	}
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param other the board to copy.
+	 */
+	SearchBoard(SearchBoard other) {
+		size = other.size;
+		chainLength = other.chainLength;
+		zobrist = other.zobrist;
+		squareWindows = other.squareWindows;
+		weights = other.weights;
+		cells = other.cells.clone();
+		xCounts = other.xCounts.clone();
+		oCounts = other.oCounts.clone();
+		empties = other.empties;
+		live = other.live;
+		chains = other.chains;
+		score = other.score;
+		hash = other.hash;
+	}
+
+	/**
+	 * Make this board the same as the other board of the same game variant
+	 * without allocating anything.
+	 *
+	 * @param other the board to copy.
+	 */
+	void copyFrom(SearchBoard other) {
+		System.arraycopy(other.cells, 0, cells, 0, cells.length);
+		System.arraycopy(other.xCounts, 0, xCounts, 0, xCounts.length);
+		System.arraycopy(other.oCounts, 0, oCounts, 0, oCounts.length);
+		empties = other.empties;
+		live = other.live;
+		chains = other.chains;
+		score = other.score;
+		hash = other.hash;
+	}
+
+	/**
+	 * Put the marks of the game on this empty board.
+	 *
+	 * @param gameState the game to copy the marks from.
+	 */
+	void load(GameState gameState) {
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				Mark mark = gameState.getBoardMark(x + 1, y + 1);
+				if (mark != Mark.SPACE) {
+					make(x * size + y, mark == Mark.X ? X : O);
+				}
+			}
+		}
+	}
+
+	private boolean fits(int x, int y, int d) {
+		int endX = x + (chainLength - 1) * DX[d];
+		int endY = y + (chainLength - 1) * DY[d];
+		return endX < size && endY >= 0 && endY < size;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	int getSquares() {
+		return cells.length;
+	}
+
+	byte getCell(int square) {
+		return cells[square];
+	}
+
+	/**
+	 * @return the cells of the board, not to be modified.
+	 */
+	byte[] getCells() {
+		return cells;
+	}
+
+	int getEmpties() {
+		return empties;
+	}
+
+	long getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return true if Order moves next. Order always makes the first move and
+	 * the players take turns, so it depends only on the number of marks.
+	 */
+	boolean isOrderToMove() {
+		return ((cells.length - empties) & 1) == 0;
+	}
+
+	/**
+	 * @return true if there is a chain on the board, i.e. Order has won.
+	 */
+	boolean isChain() {
+		return chains > 0;
+	}
+
+	/**
+	 * @return true if Chaos has won, either the board is full or there is no
+	 * window left where Order could build a chain.
+	 */
+	boolean isChaosWin() {
+		return chains == 0 && (empties == 0 || live == 0);
+	}
+
+	/**
+	 * @return the number of windows Order still can build a chain on.
+	 */
+	int getLive() {
+		return live;
+	}
+
+	/**
+	 * @return the static evaluation of the position in favor of Order.
+	 */
+	int getScore() {
+		return score;
+	}
+
+	/**
+	 * @param square the square number.
+	 * @return true if the square lies on a window Order still can build a chain on.
+	 */
+	boolean isLiveSquare(int square) {
+		int[] windows = squareWindows[square];
+		for (int i = 0; i < windows.length; i++) {
+			int w = windows[i];
+			if (xCounts[w] == 0 || oCounts[w] == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Evaluate the change of the score the move would make, without making it.
+	 *
+	 * @param square the square number.
+	 * @param mark the mark, X or O.
+	 * @return the change of the score in favor of Order.
+	 */
+	int gain(int square, byte mark) {
+		int gain = 0;
+		int[] windows = squareWindows[square];
+		for (int i = 0; i < windows.length; i++) {
+			int w = windows[i];
+			int xs = xCounts[w];
+			int os = oCounts[w];
+			int before = value(xs, os);
+			if (mark == X) {
+				xs++;
+			} else {
+				os++;
+			}
+			gain += value(xs, os) - before;
+		}
+		return gain;
+	}
+
+	/**
+	 * @param square the square number.
+	 * @param mark the mark, X or O.
+	 * @return true if the move completes a chain.
+	 */
+	boolean makesChain(int square, byte mark) {
+		int[] windows = squareWindows[square];
+		int almost = chainLength - 1;
+		for (int i = 0; i < windows.length; i++) {
+			int w = windows[i];
+			if (mark == X ? (xCounts[w] == almost) : (oCounts[w] == almost)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	void make(int square, byte mark) {
+		cells[square] = mark;
+		empties--;
+		hash ^= zobrist.key(square, mark == O) ^ zobrist.side();
+		int[] windows = squareWindows[square];
+		for (int i = 0; i < windows.length; i++) {
+			int w = windows[i];
+			int xs = xCounts[w];
+			int os = oCounts[w];
+			int before = value(xs, os);
+			boolean wasLive = xs == 0 || os == 0;
+			if (mark == X) {
+				xCounts[w] = (byte) ++xs;
+			} else {
+				oCounts[w] = (byte) ++os;
+			}
+			score += value(xs, os) - before;
+			if (wasLive && xs != 0 && os != 0) {
+				live--;
+			}
+			if (xs == chainLength || os == chainLength) {
+				chains++;
+			}
+		}
+	}
+
+	void unmake(int square) {
+		byte mark = cells[square];
+		cells[square] = SPACE;
+		empties++;
+		hash ^= zobrist.key(square, mark == O) ^ zobrist.side();
+		int[] windows = squareWindows[square];
+		for (int i = 0; i < windows.length; i++) {
+			int w = windows[i];
+			int xs = xCounts[w];
+			int os = oCounts[w];
+			int before = value(xs, os);
+			boolean wasLive = xs == 0 || os == 0;
+			if (xs == chainLength || os == chainLength) {
+				chains--;
+			}
+			if (mark == X) {
+				xCounts[w] = (byte) --xs;
+			} else {
+				oCounts[w] = (byte) --os;
+			}
+			score += value(xs, os) - before;
+			if (!wasLive && (xs == 0 || os == 0)) {
+				live++;
+			}
+		}
+	}
+
+	private int value(int xs, int os) {
+		if (xs == 0) {
+			return weights[os];
+		} else if (os == 0) {
+			return weights[xs];
+		} else {
+			return 0; // dead window
+		}
+	}
+}
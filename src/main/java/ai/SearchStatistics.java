@@ -0,0 +1,49 @@
+package ai;
+
+/**
+ * The figures of a finished search: how deep it went, how many positions it
+ * visited and how long it took.
+ *
+ * @author Anastasia Radchenko
+ */
+public class SearchStatistics {
+	private final int threads;
+	private final int depth;
+	private final long nodes;
+	private final long elapsedNanos;
+
+	public SearchStatistics(int threads, int depth, long nodes, long elapsedNanos) {
+		this.threads = threads;
+		this.depth = depth;
+		this.nodes = nodes;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the depth of the last completed iteration of the search.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public long getNodesPerSecond() {
+		return elapsedNanos == 0 ? 0 : nodes * 1000000000L / elapsedNanos;
+	}
+
+	public String toString() {
+		return "{threads:"+threads+",depth:"+depth+",nodes:"+nodes
+				+",ms:"+elapsedNanos / 1000000+",nps:"+getNodesPerSecond()+"}";
+	}
+}
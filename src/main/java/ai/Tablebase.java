@@ -0,0 +1,249 @@
+package ai;
+
+import models.Rules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Read only table of solved positions, mapped into memory from the file the
+ * tablebase generator writes. Looking up a position takes computing its code
+ * and a few reads of the hash table, no matter how large the file is.
+ * <p>
+ * The file starts with the header, then the hash table follows: a power of
+ * two slots of 8 bytes, each either 0 or the canonical code of a position
+ * plus 1, with the highest but one bit set if Order wins the position.
+ *
+ * @author Anastasia Radchenko
+ */
+public class Tablebase {
+
+	/**
+	 * The default tablebase file in the user home directory
+	 */
+	public static final String DEFAULT_FILENAME = System.getProperty("user.home")
+			+System.getProperty("file.separator")+"order-and-chaos.tablebase";
+
+	public static final int ORDER_WINS = 1;
+	public static final int CHAOS_WINS = 0;
+	public static final int UNKNOWN = -1;
+
+	static final int MAGIC = 0x4f435442; // "OCTB"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 64;
+	static final long ORDER_WINS_BIT = 1L << 62;
+
+	// the largest table that fits into a single mapping
+	static final int MAX_SLOTS = 1 << 27;
+
+	private final Rules rules;
+	private final int maxEmpties;
+	private final long seed;
+	private final long rootsDone;
+	private final long positions;
+	private final LongBuffer slots;
+	private final int mask;
+	private final PositionCode positionCode;
+
+	private Tablebase(Rules rules, int maxEmpties, long seed, long rootsDone, long positions, LongBuffer slots) {
+		this.rules = rules;
+		this.maxEmpties = maxEmpties;
+		this.seed = seed;
+		this.rootsDone = rootsDone;
+		this.positions = positions;
+		this.slots = slots;
+		this.mask = slots.capacity() - 1;
+		this.positionCode = new PositionCode(rules.getBoardSize());
+	}
+
+	/**
+	 * Map the tablebase file into memory.
+	 *
+	 * @param file the file written by the tablebase generator.
+	 * @return the tablebase.
+	 * @throws IOException if the file can not be read or is not a tablebase.
+	 */
+	public static Tablebase open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				// keep reading
+			}
+			header.flip();
+			if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+				throw new IOException("Not a tablebase file: "+file);
+			}
+			if (header.getInt() != VERSION) {
+				throw new IOException("Unsupported tablebase version: "+file);
+			}
+			Rules rules;
+			try {
+				rules = new Rules(header.getInt(), header.getInt());
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Invalid tablebase rules: "+file, e);
+			}
+			int maxEmpties = header.getInt();
+			header.getInt(); // reserved
+			long seed = header.getLong();
+			long rootsDone = header.getLong();
+			long positions = header.getLong();
+			long capacity = header.getLong();
+			if (capacity < 1 || capacity > MAX_SLOTS || Long.bitCount(capacity) != 1
+					|| channel.size() != HEADER_BYTES + capacity * 8) {
+				throw new IOException("Corrupted tablebase file: "+file);
+			}
+			// the mapping stays valid after the file is closed
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, capacity * 8);
+			LongBuffer slots = buffer.order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+			return new Tablebase(rules, maxEmpties, seed, rootsDone, positions, slots);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Write the tablebase file, first to a temporary file which then replaces
+	 * the old one, so the file is never left half written.
+	 *
+	 * @param file the tablebase file.
+	 * @param table the solved positions.
+	 * @throws IOException if writing fails.
+	 */
+	static void write(File file, Rules rules, int maxEmpties, long seed, long rootsDone, PositionTable table)
+			throws IOException {
+		File temp = new File(file.getPath()+".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(rules.getBoardSize());
+			buffer.putInt(rules.getChainLength());
+			buffer.putInt(maxEmpties);
+			buffer.putInt(0); // reserved
+			buffer.putLong(seed);
+			buffer.putLong(rootsDone);
+			buffer.putLong(table.size());
+			buffer.putLong(table.capacity());
+			buffer.position(HEADER_BYTES);
+			for (int i = 0; i < table.capacity(); i++) {
+				if (!buffer.hasRemaining()) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+					buffer.clear();
+				}
+				buffer.putLong(table.slot(i));
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		} finally {
+			raf.close();
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * @return the slot to look for the code at first.
+	 */
+	static int index(long code, int mask) {
+		long h = code * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	public Rules getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return the largest number of empty squares of the positions solved.
+	 */
+	public int getMaxEmpties() {
+		return maxEmpties;
+	}
+
+	/**
+	 * @return the seed of the root positions the tablebase has been generated from.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the number of root positions solved.
+	 */
+	public long getRootsDone() {
+		return rootsDone;
+	}
+
+	/**
+	 * @return the number of positions in the tablebase.
+	 */
+	public long getPositions() {
+		return positions;
+	}
+
+	/**
+	 * @return the size of the tablebase file, in bytes.
+	 */
+	public long getFileBytes() {
+		return HEADER_BYTES + (long) slots.capacity() * 8;
+	}
+
+	int getCapacity() {
+		return slots.capacity();
+	}
+
+	long slot(int i) {
+		return slots.get(i);
+	}
+
+	/**
+	 * @param board the board of the tablebase game variant.
+	 * @return ORDER_WINS or CHAOS_WINS if the position is solved, UNKNOWN otherwise.
+	 */
+	int probe(SearchBoard board) {
+		if (board.getEmpties() > maxEmpties) {
+			return UNKNOWN;
+		}
+		return probe(positionCode.canonical(board.getCells()));
+	}
+
+	/**
+	 * @param code the canonical code of the position.
+	 * @return ORDER_WINS or CHAOS_WINS if the position is solved, UNKNOWN otherwise.
+	 */
+	int probe(long code) {
+		for (int i = index(code, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+			long slot = slots.get(i);
+			if (slot == 0) {
+				return UNKNOWN;
+			}
+			if ((slot & ~ORDER_WINS_BIT) == code + 1) {
+				return (slot & ORDER_WINS_BIT) != 0 ? ORDER_WINS : CHAOS_WINS;
+			}
+		}
+		return UNKNOWN;
+	}
+}
@@ -0,0 +1,79 @@
+package ai;
+
+import models.AIPlayer;
+import models.AIPlayerType;
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.Zobrist;
+
+/**
+ * The computer player that plays perfectly once the game gets into the
+ * endgame tablebase: it looks up the positions after each of its moves and
+ * makes the one that wins. Until then, or when the position is not in the
+ * tablebase or every move loses, it lets the other computer player decide.
+ *
+ * @author Anastasia Radchenko
+ */
+public class TablebaseAIPlayer implements AIPlayer {
+	private final Tablebase tablebase;
+	private final AIPlayer player;
+	private final SearchBoard empty;
+	private final SearchBoard board;
+
+	/**
+	 * @param tablebase the tablebase to look the positions up in.
+	 * @param player the computer player to make the moves the tablebase does not know.
+	 */
+	public TablebaseAIPlayer(Tablebase tablebase, AIPlayer player) {
+		this.tablebase = tablebase;
+		this.player = player;
+		Rules rules = tablebase.getRules();
+		empty = new SearchBoard(rules, new Zobrist(rules.getSquares()));
+		board = new SearchBoard(empty);
+	}
+
+	@Override
+	public Move nextMove(GameState gameState, PlayerRole role) {
+		if (!tablebase.getRules().equals(gameState.getRules())) {
+			return player.nextMove(gameState, role);
+		}
+		board.copyFrom(empty);
+		board.load(gameState);
+		// the positions after the move have one empty square less
+		if (board.getEmpties() > tablebase.getMaxEmpties() + 1) {
+			return player.nextMove(gameState, role);
+		}
+		int win = role == PlayerRole.ORDER ? Tablebase.ORDER_WINS : Tablebase.CHAOS_WINS;
+		for (int square = 0; square < board.getSquares(); square++) {
+			if (board.getCell(square) != SearchBoard.SPACE) {
+				continue;
+			}
+			for (byte mark = SearchBoard.X; mark <= SearchBoard.O; mark++) {
+				board.make(square, mark);
+				int result;
+				if (board.isChain()) {
+					result = Tablebase.ORDER_WINS;
+				} else if (board.isChaosWin()) {
+					result = Tablebase.CHAOS_WINS;
+				} else {
+					result = tablebase.probe(board);
+				}
+				board.unmake(square);
+				if (result == win) {
+					int size = board.getSize();
+					String name = role == PlayerRole.ORDER ? gameState.getOrderPlayer() : gameState.getChaosPlayer();
+					return new Move(name, square / size + 1, square % size + 1, mark == SearchBoard.X ? Mark.X : Mark.O);
+				}
+			}
+		}
+		return player.nextMove(gameState, role);
+	}
+
+	@Override
+	public AIPlayerType getType() {
+		return player.getType();
+	}
+}
@@ -0,0 +1,244 @@
+package ai;
+
+import models.Rules;
+import models.Zobrist;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline solver that writes the endgame tablebase of the standard game. All
+ * the positions with a few empty squares are far too many to enumerate, so
+ * the generator picks root positions with the given number of empty squares
+ * from seeded games and solves every position below each of them exactly. The
+ * positions are identified by their canonical code, so a position solved once
+ * is never solved again in any of its 16 symmetric images.
+ * <p>
+ * The roots are solved in parallel, in batches. The tablebase file is written
+ * after every batch and records the number of roots done, so the generator
+ * started again with the same file carries on where it has stopped.
+ * <p>
+ * Usage: <code>TablebaseGenerator [file [empties [roots [threads [seed]]]]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class TablebaseGenerator {
+
+	// start with the table of that many slots
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	// grow the table when it is more than half full
+	private static final double MAX_LOAD = 0.5;
+
+	private final File file;
+	private final Rules rules;
+	private final int maxEmpties;
+	private final int threads;
+	private final long seed;
+	private final Zobrist zobrist;
+	private final SearchBoard empty;
+	private final PositionCode positionCode;
+	private PositionTable table;
+	private long rootsDone;
+
+	public TablebaseGenerator(File file, int maxEmpties, int threads, long seed) {
+		this.file = file;
+		this.rules = Rules.STANDARD;
+		this.maxEmpties = maxEmpties;
+		this.threads = threads;
+		this.seed = seed;
+		zobrist = new Zobrist(rules.getSquares());
+		empty = new SearchBoard(rules, zobrist);
+		positionCode = new PositionCode(rules.getBoardSize());
+		table = new PositionTable(INITIAL_CAPACITY);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File file = new File(args.length > 0 ? args[0] : Tablebase.DEFAULT_FILENAME);
+		int maxEmpties = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		long roots = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+		TablebaseGenerator generator = new TablebaseGenerator(file, maxEmpties, threads, seed);
+		generator.resume();
+		generator.generate(roots);
+	}
+
+	/**
+	 * Load the positions solved by the previous run from the tablebase file.
+	 *
+	 * @throws IOException if the file exists but is not the tablebase of the same parameters.
+	 */
+	public void resume() throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		Tablebase tablebase = Tablebase.open(file);
+		if (!tablebase.getRules().equals(rules) || tablebase.getMaxEmpties() != maxEmpties
+				|| tablebase.getSeed() != seed) {
+			throw new IOException("The tablebase file "+file+" has been generated with other parameters");
+		}
+		while (table.capacity() < tablebase.getCapacity()) {
+			table.grow();
+		}
+		table.putAll(tablebase);
+		rootsDone = tablebase.getRootsDone();
+		System.out.println("Resuming after "+rootsDone+" roots, "+table.size()+" positions");
+	}
+
+	/**
+	 * Solve the roots up to the given number, writing the file after every batch.
+	 *
+	 * @param roots the number of roots to have solved.
+	 */
+	public void generate(long roots) throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long start = System.nanoTime();
+			while (rootsDone < roots) {
+				long batchEnd = Math.min(roots, rootsDone + threads * 16L);
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				for (long root = rootsDone; root < batchEnd; root++) {
+					final long index = root;
+					tasks.add(new Callable<Void>() {
+						@Override
+						public Void call() {
+							SearchBoard board = new SearchBoard(empty);
+							playToRoot(board, index);
+							solve(board);
+							return null;
+						}
+					});
+				}
+				for (Future<Void> future : executor.invokeAll(tasks)) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						throw new IOException("Solving failed", e.getCause());
+					}
+				}
+				rootsDone = batchEnd;
+				while (table.size() > table.capacity() * MAX_LOAD && table.capacity() < Tablebase.MAX_SLOTS) {
+					table.grow();
+				}
+				Tablebase.write(file, rules, maxEmpties, seed, rootsDone, table);
+				report(start);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void report(long start) {
+		Runtime runtime = Runtime.getRuntime();
+		long heap = runtime.totalMemory() - runtime.freeMemory();
+		System.out.println("roots: "+rootsDone
+				+", positions: "+table.size()
+				+", disk: "+file.length() / 1024+" KB"
+				+", table in memory: "+table.getBytes() / 1024+" KB"
+				+", heap used: "+heap / (1024 * 1024)+" MB"
+				+", seconds: "+(System.nanoTime() - start) / 1000000000L);
+	}
+
+	/**
+	 * Play a game from the empty board until the given number of squares is
+	 * left empty. Half of the moves are the best ones for the side to move by
+	 * the evaluation, the rest are random, so the roots look like real games.
+	 * A game that ends too early is played again.
+	 *
+	 * @param board the empty board.
+	 * @param index the number of the root.
+	 */
+	void playToRoot(SearchBoard board, long index) {
+		Random r = new Random(seed * 31 + index);
+		while (true) {
+			board.copyFrom(empty);
+			while (board.getEmpties() > maxEmpties && !board.isChain() && !board.isChaosWin()) {
+				boolean orderToMove = board.isOrderToMove();
+				int bestSquare = -1;
+				byte bestMark = SearchBoard.X;
+				int bestGain = Integer.MIN_VALUE;
+				boolean random = r.nextBoolean();
+				for (int square = 0; square < board.getSquares(); square++) {
+					if (board.getCell(square) != SearchBoard.SPACE) {
+						continue;
+					}
+					for (byte mark = SearchBoard.X; mark <= SearchBoard.O; mark++) {
+						int gain = random ? r.nextInt() : (orderToMove ? 1 : -1) * board.gain(square, mark);
+						if (gain > bestGain) {
+							bestGain = gain;
+							bestSquare = square;
+							bestMark = mark;
+						}
+					}
+				}
+				board.make(bestSquare, bestMark);
+			}
+			if (!board.isChain() && !board.isChaosWin()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Solve the position and every position below it not solved yet.
+	 *
+	 * @return true if Order wins the position.
+	 */
+	boolean solve(SearchBoard board) {
+		if (board.isChain()) {
+			return true;
+		}
+		if (board.isChaosWin()) {
+			return false;
+		}
+		long code = positionCode.canonical(board.getCells());
+		int known = table.get(code);
+		if (known != Tablebase.UNKNOWN) {
+			return known == Tablebase.ORDER_WINS;
+		}
+		boolean orderToMove = board.isOrderToMove();
+		// Order wins if any of its moves wins, Chaos wins if any of its moves wins
+		boolean orderWins = !orderToMove;
+		boolean dead = false;
+		moves:
+		for (int square = 0; square < board.getSquares(); square++) {
+			if (board.getCell(square) != SearchBoard.SPACE) {
+				continue;
+			}
+			byte lastMark = SearchBoard.O;
+			if (!board.isLiveSquare(square)) {
+				// the squares no chain can go through are all the same
+				if (dead) {
+					continue;
+				}
+				dead = true;
+				lastMark = SearchBoard.X;
+			}
+			for (byte mark = SearchBoard.X; mark <= lastMark; mark++) {
+				if (orderToMove && board.makesChain(square, mark)) {
+					orderWins = true;
+					break moves;
+				}
+				board.make(square, mark);
+				boolean result = solve(board);
+				board.unmake(square);
+				if (result == orderToMove) {
+					orderWins = result;
+					break moves;
+				}
+			}
+		}
+		table.put(code, orderWins);
+		return orderWins;
+	}
+}
@@ -0,0 +1,115 @@
+package ai;
+
+/**
+ * Fixed size hash table of the positions already searched, keyed by the
+ * Zobrist hash of the position. The table takes the memory given to it up
+ * front and never grows. Each bucket has two entries: the first one keeps
+ * the deepest search result of the current search, the second one is always
+ * replaced by the latest result.
+ * <p>
+ * The table is shared by the search threads without locking: the key of an 
+ * entry is stored XOR-ed with its data, so an entry torn by two threads 
+ * writing it at the same time does not match its position and is ignored.
+ *
+ * @author Anastasia Radchenko
+ */
+class TranspositionTable {
+	static final int EXACT = 1;
+	static final int LOWER = 2; // the score is at least the stored one
+	static final int UPPER = 3; // the score is at most the stored one
+
+	static final int NO_MOVE = -1;
+
+	private static final int ENTRY_BYTES = 16;
+
+	private final long[] keys;
+	private final long[] data;
+	private final int mask;
+	private volatile int age;
+
+	/**
+	 * @param megabytes the memory the table is allowed to take.
+	 */
+	TranspositionTable(int megabytes) {
+		long entries = Math.max(2, (long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+		// round down to the power of two to index the buckets with a mask
+		int capacity = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+		keys = new long[capacity];
+		data = new long[capacity];
+		mask = (capacity >> 1) - 1;
+	}
+
+	/**
+	 * Mark the start of a new search, the results of the previous searches
+	 * become the first to replace.
+	 */
+	void newSearch() {
+		age = (age + 1) & 0x3f;
+	}
+
+	/**
+	 * @return the memory taken by the table in bytes.
+	 */
+	long getBytes() {
+		return (long) keys.length * ENTRY_BYTES;
+	}
+
+	/**
+	 * @param key the hash of the position.
+	 * @return the entry data of the position or 0 if the position is not in the table.
+	 */
+	long probe(long key) {
+		int i = index(key);
+		long entry = data[i];
+		if (entry != 0 && (keys[i] ^ entry) == key) {
+			return entry;
+		}
+		entry = data[i + 1];
+		if (entry != 0 && (keys[i + 1] ^ entry) == key) {
+			return entry;
+		}
+		return 0;
+	}
+
+	void store(long key, int score, int depth, int bound, int move) {
+		long entry = (score & 0xffffffffL)
+				| ((long) Math.min(depth, 0xff) << 32)
+				| ((long) bound << 40)
+				| ((long) (move + 1) << 42)
+				| ((long) age << 54);
+		int i = index(key);
+		// keep the deeper result in the first entry unless it is left from the previous search
+		long first = data[i];
+		if (first == 0 || (keys[i] ^ first) == key || age(first) != age || depth >= depth(first)) {
+			keys[i] = key ^ entry;
+			data[i] = entry;
+		} else {
+			keys[i + 1] = key ^ entry;
+			data[i + 1] = entry;
+		}
+	}
+
+	private int index(long key) {
+		return ((int) (key ^ (key >>> 32)) & mask) << 1;
+	}
+
+	static int score(long entry) {
+		return (int) entry;
+	}
+
+	static int depth(long entry) {
+		return (int) (entry >>> 32) & 0xff;
+	}
+
+	static int bound(long entry) {
+		return (int) (entry >>> 40) & 0x3;
+	}
+
+	static int move(long entry) {
+		return ((int) (entry >>> 42) & 0xfff) - 1;
+	}
+
+	private static int age(long entry) {
+		return (int) (entry >>> 54) & 0x3f;
+	}
+}
@@ -1,20 +1,29 @@
 package application;
 
 import io.AchievementsReaderWriter;
+import io.CoalescingAchievementsWriter;
 import io.FileAchievemensReaderWriter;
 import models.Achievement;
 
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Component responsible for keeping track of players achievements.
+ * Component responsible for keeping track of players achievements. Many games
+ * may finish at the same time, so the achievements are kept in a concurrent
+ * map and the last winner is swapped atomically: every win is ordered by that
+ * swap, and a win is a repeat win if the win just before it was won by the
+ * same player. The players are also kept ranked by their scores, so a page
+ * of the ranking and the rank of a player are found without sorting all the
+ * players.
  *
  * @author Anastasia Radchenko
  */
@@ -22,80 +31,281 @@ public class AchievementManager {
 
 	private static final int BONUS = 50; // one time winner bonus
 	private static final int SUPER_BONUS = 100; // repeat winner bonus
-	
-	private static final AchievementsReaderWriter achievementsReaderWriter = new FileAchievemensReaderWriter();
-	
-	private static AchievementManager INSTANCE = null;
+
+	/**
+	 * The first bytes of the binary achievements, "OCAC"
+	 */
+	public static final int ACHIEVEMENTS_MAGIC = 0x4f434143;
+	private static final int ACHIEVEMENTS_VERSION = 1;
+
+	private static final CoalescingAchievementsWriter achievementsReaderWriter =
+			new CoalescingAchievementsWriter(new FileAchievemensReaderWriter());
+
+	// reads the achievements when they are first asked for
+	private static class Holder {
+		static final AchievementManager INSTANCE = read();
+	}
 
 	/**
 	 * Hidden constructor to implement Singleton design pattern
 	 */
 	private AchievementManager() {
+		this(achievementsReaderWriter);
 	}
-	
+
+	/**
+	 * @param writer the writer of the achievements recorded.
+	 */
+	AchievementManager(AchievementsReaderWriter writer) {
+		this.writer = writer;
+	}
+
 	public static AchievementManager getInstance() {
-		if (INSTANCE == null) {
-			try {
-				INSTANCE = achievementsReaderWriter.read();
-			} catch (IOException e) {
-				System.err.println("Exception while reading achievements: "+e.getMessage());
-			}
-			if (INSTANCE == null) {
-				INSTANCE = new AchievementManager(); // fall back to default
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Start reading the achievements in the background, so they are ready 
+	 * by the time they are first asked for. 
+	 */
+	public static void readInBackground() {
+		Thread thread = new Thread("achievements-reader") {
+			@Override
+			public void run() {
+				getInstance();
 			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static AchievementManager read() {
+		long start = System.nanoTime();
+		AchievementManager achievementManager = null;
+		try {
+			achievementManager = achievementsReaderWriter.read();
+		} catch (IOException e) {
+			System.err.println("Exception while reading achievements: "+e.getMessage());
+		}
+		if (achievementManager == null) {
+			achievementManager = new AchievementManager(); // fall back to default
 		}
-		return INSTANCE;
+		achievementManager.readTime = System.nanoTime() - start;
+		return achievementManager;
 	}
-	
-	private Map<String, Achievement> achievements = new HashMap<String, Achievement>();
-	private String lastWinner = null;
-	
-	public static AchievementManager readFrom(Scanner scanner) throws IOException {
+
+	private final AchievementsReaderWriter writer;
+	private final ConcurrentMap<String, Achievement> achievements = new ConcurrentHashMap<String, Achievement>();
+	private final AtomicReference<String> lastWinner = new AtomicReference<String>();
+	private final Leaderboard leaderboard = new Leaderboard();
+	private volatile long readTime;
+
+	/**
+	 * Read the achievements saved as text by the earlier versions: the last
+	 * winner on the first line, then the player and the score on every line.
+	 * 
+	 * @param reader the reader of the text.
+	 * @return achievement manager filled up with player achievements.
+	 * @throws IOException when reading fails or the text is invalid.
+	 */
+	public static AchievementManager readFrom(BufferedReader reader) throws IOException {
 		AchievementManager achievementManager = new AchievementManager();
-		if (scanner.hasNext()) {
-			achievementManager.lastWinner = scanner.nextLine();
-			while (scanner.hasNext()) {
-				String player = scanner.next();
-				int score = scanner.nextInt();
-				scanner.nextLine();
-				achievementManager.achievements.put(player, new Achievement(player, score));
+		String[] players = new String[1024];
+		int[] scores = new int[1024];
+		int size = 0;
+		String line = reader.readLine();
+		if (line != null) {
+			achievementManager.lastWinner.set(line);
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				int comma = line.lastIndexOf(',');
+				if (comma < 0) {
+					throw new IOException("Invalid achievement: "+line);
+				}
+				if (size == players.length) {
+					players = Arrays.copyOf(players, size * 2);
+					scores = Arrays.copyOf(scores, size * 2);
+				}
+				players[size] = line.substring(0, comma);
+				try {
+					scores[size++] = Integer.parseInt(line.substring(comma + 1).trim());
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid achievement: "+line);
+				}
 			}
 		}
+		achievementManager.addAll(players, scores, size);
 		return achievementManager;
 	}
-	
-	public void writeTo(PrintWriter writer) throws IOException {
-		if (lastWinner != null) {
-			writer.println(lastWinner);
-			for (Achievement achievement : achievements.values()) {
-				writer.print(achievement.getPlayer());
-				writer.print(",");
-				writer.println(achievement.getScore());
+
+	/**
+	 * Read the binary achievements written by writeTo.
+	 * 
+	 * @param in provides access to the binary data, after the magic number.
+	 * @return achievement manager filled up with player achievements.
+	 * @throws IOException when reading fails or the data is invalid.
+	 */
+	public static AchievementManager readFrom(DataInput in) throws IOException {
+		AchievementManager achievementManager = new AchievementManager();
+		int version = in.readUnsignedByte();
+		if (version != ACHIEVEMENTS_VERSION) {
+			throw new IOException("Unsupported achievements version: "+version);
+		}
+		if (in.readBoolean()) {
+			achievementManager.lastWinner.set(in.readUTF());
+		}
+		int size = in.readInt();
+		if (size < 0) {
+			throw new IOException("Invalid number of achievements: "+size);
+		}
+		String[] players = new String[size];
+		int[] scores = new int[size];
+		for (int i = 0; i < size; i++) {
+			players[i] = in.readUTF();
+			scores[i] = in.readInt();
+		}
+		achievementManager.addAll(players, scores, size);
+		return achievementManager;
+	}
+
+	/**
+	 * Add the achievements read to the empty manager.
+	 */
+	private void addAll(String[] players, int[] scores, int size) throws IOException {
+		for (int i = 0; i < size; i++) {
+			if (achievements.put(players[i], new Achievement(players[i], scores[i])) != null) {
+				throw new IOException("Duplicate achievement of "+players[i]);
 			}
 		}
+		leaderboard.addAll(players, scores, size);
 	}
-	
+
+	/**
+	 * Write the achievements in the binary format: the magic number, the
+	 * version, the last winner if there is one, the number of players, then
+	 * the name and the score of every player.
+	 * 
+	 * @param out provides access to the binary data.
+	 * @throws IOException when writing fails.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		List<Achievement> list = getAchievements();
+		String winner = lastWinner.get();
+		out.writeInt(ACHIEVEMENTS_MAGIC);
+		out.writeByte(ACHIEVEMENTS_VERSION);
+		out.writeBoolean(winner != null);
+		if (winner != null) {
+			out.writeUTF(winner);
+		}
+		out.writeInt(list.size());
+		for (Achievement achievement : list) {
+			out.writeUTF(achievement.getPlayer());
+			out.writeInt(achievement.getScore());
+		}
+	}
+
+	/**
+	 * Raise the score of the winner and write the achievements in the
+	 * background.
+	 *
+	 * @param player the winner of the game.
+	 * @throws IOException if the last write of the achievements has failed.
+	 */
 	public void recordAchievement(String player) throws IOException {
+		int bonus = player.equals(lastWinner.getAndSet(player)) ? SUPER_BONUS : BONUS;
 		Achievement achievement = achievements.get(player);
 		if (achievement == null) {
-			achievement = new Achievement(player, BONUS);
-			achievements.put(player, achievement);
-		} else {
-			int bonus = player.equals(lastWinner) ? SUPER_BONUS : BONUS;
-			achievement.raiseScore(bonus);
+			Achievement first = new Achievement(player, 0);
+			achievement = achievements.putIfAbsent(player, first);
+			if (achievement == null) {
+				achievement = first;
+			}
 		}
-		lastWinner = player;
-		achievementsReaderWriter.write(this);
+		leaderboard.raiseScore(achievement, bonus);
+		writer.write(this);
 	}
-	
+
 	public Achievement getAchievement(String player) {
 		return achievements.get(player);
 	}
 
+	/**
+	 * @return the achievements as they are now, the best first.
+	 */
 	public List<Achievement> getAchievements() {
-		List<Achievement> list = new ArrayList<Achievement>(achievements.values());
-		Collections.sort(list);
-		return list;
+		return leaderboard.page(0, Integer.MAX_VALUE);
 	}
-	
+
+	/**
+	 * @param from the rank of the first achievement, 0 for the best.
+	 * @param count the number of achievements.
+	 * @return the achievements with the ranks from the given one on, the best
+	 * first, fewer if there are not so many.
+	 */
+	public List<Achievement> getAchievements(int from, int count) {
+		return leaderboard.page(from, count);
+	}
+
+	/**
+	 * @param player the player.
+	 * @return the rank of the player, 0 for the best, or -1 if the player has
+	 * not won yet.
+	 */
+	public int getRank(String player) {
+		Achievement achievement = achievements.get(player);
+		if (achievement == null) {
+			return -1;
+		}
+		Leaderboard.Standing standing = leaderboard.standing(achievement);
+		return standing == null ? -1 : standing.rank;
+	}
+
+	/**
+	 * @param player the player.
+	 * @param count the number of players to include above and below the player.
+	 * @return the achievements of the player and the players around, the best
+	 * first, or an empty list if the player has not won yet.
+	 */
+	public List<Achievement> getNeighbours(String player, int count) {
+		int rank = getRank(player);
+		if (rank < 0) {
+			return Collections.emptyList();
+		}
+		int from = Math.max(0, rank - count);
+		return leaderboard.page(from, rank - from + count + 1);
+	}
+
+	/**
+	 * @return the number of players who have won.
+	 */
+	public int getPlayerCount() {
+		return leaderboard.size();
+	}
+
+	/**
+	 * Wait until the achievements recorded so far are written.
+	 *
+	 * @throws IOException if writing has failed.
+	 */
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	/**
+	 * @return how long reading the achievements has taken, in nanoseconds.
+	 */
+	public long getReadTime() {
+		return readTime;
+	}
+
+	/**
+	 * @return the number of writes of the achievements saved by writing
+	 * several changes at once.
+	 */
+	public long getCoalescedWrites() {
+		return achievementsReaderWriter.getCoalesced();
+	}
+
 }
@@ -1,18 +1,33 @@
 package application;
 
+import ai.AlphaBetaAIPlayer;
+import ai.MonteCarloAIPlayer;
+import ai.OpeningBook;
+import ai.OpeningBookAIPlayer;
+import ai.Tablebase;
+import ai.TablebaseAIPlayer;
 import io.ClientGameConnector;
+import io.Frame;
 import io.ServerGameConnector;
 import io.GameConnector;
+import io.GameServer;
 import io.FileGameReaderWriter;
+import io.GameArchive;
 import io.GameReaderWriter;
+import io.GameStore;
+import io.RemotePeer;
+import models.AIPlayer;
+import models.AIPlayerType;
 import models.Achievement;
+import models.BaseGameState;
 import models.GameState;
+import models.GreedyAIPlayer;
 import models.IllegalMoveException;
-import models.Mark;
 import models.Move;
 import models.NetworkGameState;
 import models.OnePlayerGameState;
 import models.PlayerRole;
+import models.Rules;
 import models.TwoPlayerGameState;
 import ui.Achievements;
 import ui.Menu;
@@ -28,7 +43,9 @@ import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 import java.awt.Dimension;
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutorService;
@@ -49,8 +66,7 @@ import java.util.concurrent.ThreadFactory;
  */
 public class Application {
 
-    private static final GameReaderWriter gameReaderWriter = new FileGameReaderWriter();
-    private static final AchievementManager achievementManager = AchievementManager.getInstance();
+    private static final GameReaderWriter gameReaderWriter = openGameStore();
 
     private final JFrame frame;
     private final OnePlayerGameConfiguration onePlayerGameConfigurationPane;
@@ -65,6 +81,11 @@ public class Application {
 
     private GameState gameState;
     private GameConnector gameConnector;
+    private RemotePeer remotePeer;
+    private SwingWorker<Move, Void> computerMove;
+    private Tablebase tablebase;
+    private boolean tablebaseOpened;
+    private GameArchive gameArchive;
 
     public Application() {
         //Create and set up the window.
@@ -104,6 +125,27 @@ public class Application {
         frame.setContentPane(menuPane);
     }
 
+    /**
+     * @return the store of the saved games, with the game saved by the earlier
+     * versions in it, or that single saved game if the store can not be opened.
+     */
+    private static GameReaderWriter openGameStore() {
+        FileGameReaderWriter savedGame = new FileGameReaderWriter();
+        try {
+            GameStore gameStore = GameStore.open();
+            if (gameStore.list().isEmpty()) {
+                GameState gameState = savedGame.readState();
+                if (gameState != null) {
+                    gameStore.save(gameState);
+                }
+            }
+            return gameStore;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return savedGame;
+        }
+    }
+
     public JFrame getFrame() {
         return frame;
     }
@@ -113,11 +155,101 @@ public class Application {
     }
 
     public List<Achievement> getAchievements() {
-        return achievementManager.getAchievements();
+        return AchievementManager.getInstance().getAchievements();
+    }
+
+    public List<Achievement> getAchievements(int from, int count) {
+        return AchievementManager.getInstance().getAchievements(from, count);
+    }
+
+    public int getPlayerCount() {
+        return AchievementManager.getInstance().getPlayerCount();
+    }
+
+    /**
+     * @return how long reading the achievements has taken, in nanoseconds.
+     */
+    public long getAchievementsReadTime() {
+        return AchievementManager.getInstance().getReadTime();
     }
 
     public void recordAchievement() throws IOException {
-        achievementManager.recordAchievement(gameState.getWinner());
+        AchievementManager.getInstance().recordAchievement(gameState.getWinner());
+        archiveGame();
+    }
+
+    /**
+     * Append the finished game to the archive of the games. The two-player
+     * game restored with marks on its board is left out, its earlier moves
+     * are not known.
+     */
+    private void archiveGame() {
+        if (!gameState.isOver()) {
+            return;
+        }
+        List<Move> moves;
+        if (gameState instanceof OnePlayerGameState) {
+            moves = ((OnePlayerGameState) gameState).getMoves();
+        } else if (gameState instanceof TwoPlayerGameState) {
+            moves = ((TwoPlayerGameState) gameState).getMoves();
+        } else {
+            return;
+        }
+        if (moves == null) {
+            return;
+        }
+        try {
+            if (gameArchive == null) {
+                gameArchive = GameArchive.open();
+            }
+            gameArchive.append(gameState, moves);
+        } catch (IOException e) {
+            // the game is still saved in the store
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Make the player's move of the one-player game, the computer player
+     * replies in the background.
+     */
+    public void makePlayerMove(Move move) throws IllegalMoveException {
+        OnePlayerGameState onePlayerGameState = (OnePlayerGameState) gameState;
+        onePlayerGameState.makePlayerMove(move);
+        if (onePlayerGameState.isComputerNextTurn()) {
+            computerMove(onePlayerGameState);
+        }
+    }
+
+    /**
+     * Let the computer player decide its move off the event-dispatching
+     * thread, the move is made in it once decided. The game must not change
+     * meanwhile: the player can not move or undo while the computer player
+     * is thinking, and the move of the game left already is dropped.
+     */
+    private void computerMove(final OnePlayerGameState onePlayerGameState) {
+        computerMove = new SwingWorker<Move, Void>() {
+            @Override
+            protected Move doInBackground() {
+                return onePlayerGameState.nextComputerMove();
+            }
+
+            @Override
+            protected void done() {
+                if (computerMove != this) {
+                    return;
+                }
+                computerMove = null;
+                try {
+                    onePlayerGameState.makeComputerMove(get());
+                    onePlayerGamePane.computerMoved();
+                } catch (Exception e) {
+                    // the computer player always makes the correct moves
+                    e.printStackTrace();
+                }
+            }
+        };
+        computerMove.execute();
     }
 
     public void undoLastMove() throws IllegalMoveException {
@@ -129,16 +261,54 @@ public class Application {
     }
 
     public GameState restoreGame() throws IOException {
-        return gameReaderWriter.readState();
+        GameState gameState = gameReaderWriter.readState();
+        if (gameState instanceof OnePlayerGameState) {
+            // the saved game knows the kind of the computer player, not how it is set up
+            OnePlayerGameState onePlayerGameState = (OnePlayerGameState) gameState;
+            onePlayerGameState.setAIPlayer(computerPlayer(onePlayerGameState.getAIPlayerType()));
+        }
+        return gameState;
+    }
+
+    /**
+     * Save the game and keep saving it after every move.
+     */
+    private void startRecording() {
+        try {
+            gameReaderWriter.startRecording(gameState);
+        } catch (IOException e) {
+            // play on, the game can still be saved by the player
+            e.printStackTrace();
+        }
+    }
+
+    private void stopRecording() {
+        try {
+            gameReaderWriter.stopRecording();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public void menu() {
+        stopRecording();
+        // the move the computer player is deciding is dropped
+        computerMove = null;
         if (gameConnector != null) {
             try {
-                gameConnector.disconnect();
+                // the remote player learns the game is given up, not the connection lost
+                if (remotePeer != null && !gameState.isOver()) {
+                    remotePeer.send(Frame.resign());
+                }
             } catch (Exception e) {
                 // ignore
             } finally {
+                if (remotePeer != null) {
+                    // the reader stops without reporting the connection lost
+                    remotePeer.close();
+                    remotePeer = null;
+                }
+                gameConnector.disconnect();
                 gameConnector = null;
             }
         }
@@ -148,6 +318,7 @@ public class Application {
     }
 
     public void viewAchievements() {
+        achievementsPane.refresh();
         frame.setContentPane(achievementsPane);
         frame.revalidate();
         frame.repaint();
@@ -161,26 +332,70 @@ public class Application {
         frame.repaint();
     }
 
-    public void onePlayerGame(String playerName, PlayerRole playerRole) {
-        if (playerRole == PlayerRole.ORDER) {
-            gameState = OnePlayerGameState.playAsOrder(playerName);
-        } else if (playerRole == PlayerRole.CHAOS) {
-            gameState = OnePlayerGameState.playAsChaos(playerName);
-        } else {
+    public void onePlayerGame(String playerName, PlayerRole playerRole, Rules rules, AIPlayerType aiPlayerType) {
+        if (playerRole != PlayerRole.ORDER && playerRole != PlayerRole.CHAOS) {
             throw new IllegalArgumentException("Invalid player role: "+playerRole);
         }
-        onePlayerGamePane.updateControls();
-        frame.setContentPane(onePlayerGamePane);
-        frame.revalidate();
-        frame.repaint();
+        onePlayerGame(OnePlayerGameState.newGame(playerName, playerRole, rules, computerPlayer(aiPlayerType)));
+    }
+
+    /**
+     * @param aiPlayerType the kind of the computer player.
+     * @return the computer player of the kind, set up to play the games: the
+     * search players play the book openings and the tablebase endgames, the
+     * easy one plays its own moves.
+     */
+    private AIPlayer computerPlayer(AIPlayerType aiPlayerType) {
+        AIPlayer aiPlayer;
+        switch (aiPlayerType) {
+            case ALPHA_BETA:
+                aiPlayer = new AlphaBetaAIPlayer(AlphaBetaAIPlayer.DEFAULT_TIME_BUDGET,
+                        Runtime.getRuntime().availableProcessors());
+                break;
+            case MONTE_CARLO:
+                aiPlayer = new MonteCarloAIPlayer();
+                break;
+            default:
+                return new GreedyAIPlayer();
+        }
+        Tablebase tablebase = getTablebase();
+        if (tablebase != null) {
+            aiPlayer = new TablebaseAIPlayer(tablebase, aiPlayer);
+        }
+        return new OpeningBookAIPlayer(OpeningBook.getStandard(), aiPlayer);
+    }
+
+    /**
+     * @return the endgame tablebase from the user home directory, or null if
+     * there is none.
+     */
+    private Tablebase getTablebase() {
+        if (!tablebaseOpened) {
+            tablebaseOpened = true;
+            File file = new File(Tablebase.DEFAULT_FILENAME);
+            if (file.exists()) {
+                try {
+                    tablebase = Tablebase.open(file);
+                } catch (IOException e) {
+                    // play without the tablebase
+                    e.printStackTrace();
+                }
+            }
+        }
+        return tablebase;
     }
 
     public void onePlayerGame(OnePlayerGameState gameState) {
         this.gameState = gameState;
+        startRecording();
         onePlayerGamePane.updateControls();
         frame.setContentPane(onePlayerGamePane);
         frame.revalidate();
         frame.repaint();
+        // the computer plays Order or the game has been saved before it has moved
+        if (gameState.isComputerNextTurn()) {
+            computerMove(gameState);
+        }
     }
 
     public void twoPlayerGameConfiguration() {
@@ -191,8 +406,9 @@ public class Application {
         frame.repaint();
     }
 
-    public void twoPlayerGame(String orderPlayerName, String chaosPlayerName) {
-        gameState = new TwoPlayerGameState(orderPlayerName, chaosPlayerName);
+    public void twoPlayerGame(String orderPlayerName, String chaosPlayerName, Rules rules) {
+        gameState = new TwoPlayerGameState(orderPlayerName, chaosPlayerName, rules);
+        startRecording();
         twoPlayerGamePane.updateControls();
         frame.setContentPane(twoPlayerGamePane);
         frame.revalidate();
@@ -201,6 +417,7 @@ public class Application {
 
     public void twoPlayerGame(TwoPlayerGameState gameState) {
         this.gameState = gameState;
+        startRecording();
         twoPlayerGamePane.updateControls();
         frame.setContentPane(twoPlayerGamePane);
         frame.revalidate();
@@ -215,24 +432,26 @@ public class Application {
         frame.repaint();
     }
 
-    public void networkGame(String hostPlayer, PlayerRole hostPlayerRole) throws IOException {
+    public void networkGame(String hostPlayer, PlayerRole hostPlayerRole, Rules rules) throws IOException {
         String remotePlayer = null;
         try {
             gameConnector = new ServerGameConnector();
             gameConnector.connect("");
-            gameConnector.writeString(hostPlayer);
-            gameConnector.writeString(hostPlayerRole.name());
-            remotePlayer = gameConnector.readString();
+            // the remote player comes back with the token when the connection is lost
+            long session = Frame.newSession();
+            gameConnector.send(Frame.hello(hostPlayer, hostPlayerRole, rules, session));
+            remotePlayer = receiveHello().getName();
+            gameConnector.startSession(session);
             if (hostPlayerRole == PlayerRole.ORDER) {
-                gameState = new NetworkGameState(hostPlayer, remotePlayer, true);
+                gameState = new NetworkGameState(hostPlayer, remotePlayer, true, rules);
             } else {
-                gameState = new NetworkGameState(remotePlayer, hostPlayer, false);
+                gameState = new NetworkGameState(remotePlayer, hostPlayer, false, rules);
             }
             networkGamePane.updateControls();
             frame.setContentPane(networkGamePane);
             frame.revalidate();
             frame.repaint();
-            makeRemoteMove();
+            startRemotePeer();
         } catch (NoSuchElementException e) {
             throw new IOException("Remote player has not entered their name.");
         }
@@ -254,22 +473,28 @@ public class Application {
         try {
             gameConnector = new ClientGameConnector();
             gameConnector.connect(gameHostname);
-            remotePlayer = gameConnector.readString();
-            PlayerRole remotePlayerRole = PlayerRole.valueOf(gameConnector.readString());
+            Frame hello = receiveHello();
+            remotePlayer = hello.getName();
+            PlayerRole remotePlayerRole = hello.getRole();
+            Rules rules = hello.getRules();
             if (remotePlayer.equals(playerName)) {
                 throw new IOException("The player names must be different.");
             }
-            gameConnector.writeString(playerName);
+            PlayerRole playerRole = remotePlayerRole == PlayerRole.ORDER ? PlayerRole.CHAOS : PlayerRole.ORDER;
+            gameConnector.send(Frame.hello(playerName, playerRole, rules));
+            if (hello.getSession() != 0) {
+                gameConnector.startSession(hello.getSession());
+            }
             if (remotePlayerRole == PlayerRole.ORDER) {
-                gameState = new NetworkGameState(remotePlayer, playerName, false);
+                gameState = new NetworkGameState(remotePlayer, playerName, false, rules);
             } else {
-                gameState = new NetworkGameState(playerName, remotePlayer, true);
+                gameState = new NetworkGameState(playerName, remotePlayer, true, rules);
             }
             networkGamePane.updateControls();
             frame.setContentPane(networkGamePane);
             frame.revalidate();
             frame.repaint();
-            makeRemoteMove();
+            startRemotePeer();
         } catch (NoSuchElementException e) {
             throw new IOException("Remote player has not entered their name.");
         }
@@ -278,52 +503,119 @@ public class Application {
         }
     }
 
-    public void sendMove(Move move) throws IOException {
-        gameConnector.writeInt(move.getX());
-        gameConnector.writeInt(move.getY());
-        gameConnector.writeString(move.getMark().getDisplayValue());
+    /**
+     * Play on the game server: the player says hello first with the rules and
+     * no role, and the server answers for the opponent it pairs the player
+     * with, giving the role of the opponent and the token of the session.
+     */
+    public void serverGame(String serverHostname, String playerName, Rules rules) throws IOException {
+        gameConnector = new ClientGameConnector(GameServer.DEFAULT_PORT);
+        try {
+            gameConnector.connect(serverHostname);
+            gameConnector.send(Frame.hello(playerName, null, rules));
+            Frame hello = receiveHello();
+            String remotePlayer = hello.getName();
+            if (remotePlayer.isEmpty()) {
+                throw new IOException("The player name is taken on the game server.");
+            }
+            if (hello.getSession() != 0) {
+                gameConnector.startSession(hello.getSession());
+            }
+            if (hello.getRole() == PlayerRole.ORDER) {
+                gameState = new NetworkGameState(remotePlayer, playerName, false, hello.getRules());
+            } else {
+                gameState = new NetworkGameState(playerName, remotePlayer, true, hello.getRules());
+            }
+        } catch (IOException e) {
+            gameConnector.disconnect();
+            gameConnector = null;
+            throw e;
+        }
+        networkGamePane.updateControls();
+        frame.setContentPane(networkGamePane);
+        frame.revalidate();
+        frame.repaint();
+        startRemotePeer();
+    }
+
+    private Frame receiveHello() throws IOException {
+        Frame frame = gameConnector.receive();
+        if (frame.getType() != Frame.Type.HELLO) {
+            throw new IOException("Remote game has not introduced its player.");
+        }
+        return frame;
     }
 
-    public Move receiveMove() throws IOException {
-        int x = gameConnector.readInt();
-        int y = gameConnector.readInt();
-        String markString = gameConnector.readString();
-        Mark mark = Mark.valueOf(markString.toUpperCase());
-        return new Move(gameState.nextTurn(), x, y, mark);
+    public void sendMove(Move move) throws IOException {
+        remotePeer.send(Frame.move(move, gameState.getRules().getBoardSize()));
     }
 
-    public void makeRemoteMove() {
-        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
-            private volatile boolean broken = false;
+    public void sendChat(String text) throws IOException {
+        remotePeer.send(Frame.chat(text));
+    }
 
+    /**
+     * Start reading what the remote player sends, the frames are dispatched
+     * in the event-dispatching thread.
+     */
+    private void startRemotePeer() {
+        // the frames of the game left already are dropped
+        final GameConnector connector = gameConnector;
+        remotePeer = new RemotePeer(connector, new RemotePeer.Listener() {
             @Override
-            protected void done() {
-                networkGamePane.setWorkerThread(null);
-                if (broken) {
-                    networkGamePane.lostConnection();
-                } else {
-                    networkGamePane.updateControls(); //update view (uses updating boolean)
-                }
+            public void frameReceived(final Frame frame) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (connector == gameConnector) {
+                            remoteFrame(frame);
+                        }
+                    }
+                });
             }
 
             @Override
-            protected Void doInBackground() throws Exception {
-                if (!gameState.localPlayerMovesNext()) {
-                    networkGamePane.setWorkerThread(Thread.currentThread());
-                    Move move = null;
-                    try {
-                        move = receiveMove();
-                        gameState.makeMove(move); //update model
-                    } catch (IOException e) {
-                        broken = true;
-                    	e.printStackTrace();
+            public void connectionLost(IOException e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        // the remote player leaves once the game is over
+                        if (connector == gameConnector && !gameState.isOver()) {
+                            networkGamePane.lostConnection();
+                        }
                     }
+                });
+            }
+        });
+        remotePeer.start("remote-player");
+    }
 
+    private void remoteFrame(Frame frame) {
+        switch (frame.getType()) {
+            case MOVE:
+                try {
+                    if (gameState.localPlayerMovesNext()) {
+                        throw new IOException("Remote player has moved out of turn.");
+                    }
+                    gameState.makeMove(frame.getMove(gameState.nextTurn(), gameState.getRules().getBoardSize()));
+                    networkGamePane.updateControls();
+                } catch (IllegalMoveException e) {
+                    e.printStackTrace();
+                    networkGamePane.lostConnection();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    networkGamePane.lostConnection();
                 }
-                return null;
-            }
-        };
-        worker.execute();
+                break;
+            case RESIGN:
+                networkGamePane.remoteResigned();
+                break;
+            case CHAT:
+                networkGamePane.chat(((NetworkGameState) gameState).getRemotePlayer(), frame.getText());
+                break;
+            default:
+                System.err.println("Unexpected message from the remote game: " + frame.getType());
+                networkGamePane.lostConnection();
+        }
     }
 
     /**
@@ -348,10 +640,29 @@ public class Application {
     }
 
     public void stop() {
+        stopRecording();
+        try {
+            AchievementManager.getInstance().flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (gameArchive != null) {
+            try {
+                gameArchive.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         frame.dispose();
     }
 
     public static void main(String[] args) {
+        // the saved games are checked against their boards with --validate
+        if (Arrays.asList(args).contains("--validate")) {
+            BaseGameState.setValidating(true);
+        }
+        // the menu does not wait for the achievements
+        AchievementManager.readInBackground();
         Application app = new Application();
         app.start();
     }
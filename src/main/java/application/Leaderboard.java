@@ -0,0 +1,390 @@
+package application;
+
+import models.Achievement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The players ranked by their scores, the best first and the players of the
+ * same score by their names. The ranking is a treap, a binary search tree
+ * balanced by the priorities of its nodes, each derived from a hash of the
+ * name and the score, where every node also counts the nodes under it, so
+ * the player at a rank and the rank of a player are found in O(log n), and
+ * a score is raised by moving a single node.
+ * <p>
+ * A score is raised atomically without any lock, and the player is left to
+ * be moved in the ranking: the players raised meanwhile are moved all at once
+ * by whichever thread takes the write lock next, a thread that raises a score
+ * only if the lock is free, a thread that reads the ranking always, before it
+ * reads it under the read lock. So the wins never wait for one another nor
+ * for the readers, and a page of the ranking is always consistent and has
+ * every score raised before it was asked for.
+ *
+ * @author Anastasia Radchenko
+ */
+class Leaderboard {
+
+	final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Node root;
+	// the nodes of the players in the ranking, under the write lock
+	private final Map<String, Node> nodes = new HashMap<String, Node>();
+	// the players whose scores are raised, but who are not moved in the ranking yet
+	private final ConcurrentMap<String, Achievement> raised = new ConcurrentHashMap<String, Achievement>();
+
+	// the result of the last split, valid under the write lock only
+	private Node splitLeft;
+	private Node splitRight;
+
+	/**
+	 * Raise the score of the player's achievement, and move the player in the
+	 * ranking unless another thread is using the ranking: the player is then
+	 * moved by the thread that uses it next.
+	 *
+	 * @param achievement the achievement of the player, the same one for every
+	 * score raised, in the ranking unless it is new.
+	 * @param bonus the bonus to raise the score by.
+	 */
+	void raiseScore(Achievement achievement, int bonus) {
+		achievement.raiseScore(bonus);
+		raised.put(achievement.getPlayer(), achievement);
+		if (lock.writeLock().tryLock()) {
+			try {
+				moveRaised();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Move the players whose scores are raised in the ranking before it is
+	 * read.
+	 */
+	private void catchUp() {
+		if (!raised.isEmpty()) {
+			lock.writeLock().lock();
+			try {
+				moveRaised();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	// called under the write lock
+	private void moveRaised() {
+		Iterator<Achievement> iterator = raised.values().iterator();
+		while (iterator.hasNext()) {
+			Achievement achievement = iterator.next();
+			// the score is read once the player is taken, a score raised later leaves the player again
+			iterator.remove();
+			String player = achievement.getPlayer();
+			Node node = nodes.get(player);
+			if (node != null) {
+				remove(player, node.score);
+			}
+			insert(new Node(player, achievement.getScore()));
+		}
+	}
+
+	/**
+	 * Add the player who is not in the ranking yet.
+	 */
+	void add(String player, int score) {
+		lock.writeLock().lock();
+		try {
+			insert(new Node(player, score));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add the players to the empty ranking all at once: the nodes are sorted
+	 * unless they are sorted already, then the tree is built from them in a
+	 * single pass.
+	 *
+	 * @param players the names of the players.
+	 * @param scores the scores of the players.
+	 * @param count the number of the players.
+	 */
+	void addAll(String[] players, int[] scores, int count) {
+		Node[] nodes = new Node[count];
+		boolean sorted = true;
+		for (int i = 0; i < count; i++) {
+			nodes[i] = new Node(players[i], scores[i]);
+			if (i > 0 && compare(players[i], scores[i], nodes[i - 1]) < 0) {
+				sorted = false;
+			}
+		}
+		if (!sorted) {
+			Arrays.sort(nodes, new Comparator<Node>() {
+				@Override
+				public int compare(Node a, Node b) {
+					return Leaderboard.compare(a.player, a.score, b);
+				}
+			});
+		}
+		lock.writeLock().lock();
+		try {
+			if (root != null) {
+				throw new IllegalStateException("The ranking is not empty");
+			}
+			root = build(nodes);
+			for (Node node : nodes) {
+				this.nodes.put(node.player, node);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the tree of the sorted nodes, the highest priority at the root
+	 * of every subtree. The right spine of the tree built so far is kept on
+	 * the stack.
+	 */
+	private static Node build(Node[] nodes) {
+		Node[] spine = new Node[nodes.length];
+		int depth = 0;
+		for (Node node : nodes) {
+			Node last = null;
+			while (depth > 0 && spine[depth - 1].priority < node.priority) {
+				last = spine[--depth];
+				last.update();
+			}
+			node.left = last;
+			if (depth > 0) {
+				spine[depth - 1].right = node;
+			}
+			spine[depth++] = node;
+		}
+		while (depth > 0) {
+			spine[--depth].update();
+		}
+		return nodes.length == 0 ? null : spine[0];
+	}
+
+	/**
+	 * @return the number of players in the ranking.
+	 */
+	int size() {
+		catchUp();
+		lock.readLock().lock();
+		try {
+			return size(root);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param achievement the achievement of the player.
+	 * @return the score of the player in the ranking and the rank of the
+	 * player, both read at once, or null if the player is not in the ranking.
+	 */
+	Standing standing(Achievement achievement) {
+		catchUp();
+		lock.readLock().lock();
+		try {
+			Node node = nodes.get(achievement.getPlayer());
+			if (node == null) {
+				return null;
+			}
+			return new Standing(node.score, rank(node.player, node.score));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param player the player.
+	 * @param score the score of the player.
+	 * @return the rank of the player, 0 for the best, or -1 if the player is
+	 * not in the ranking with the score.
+	 */
+	private int rank(String player, int score) {
+		int rank = 0;
+		Node node = root;
+		while (node != null) {
+			int c = compare(player, score, node);
+			if (c == 0) {
+				return rank + size(node.left);
+			} else if (c < 0) {
+				node = node.left;
+			} else {
+				rank += size(node.left) + 1;
+				node = node.right;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param from the rank of the first player of the page, 0 for the best.
+	 * @param count the number of players in the page.
+	 * @return the achievements of the players in the page, fewer if the page
+	 * is at the end of the ranking.
+	 */
+	List<Achievement> page(int from, int count) {
+		catchUp();
+		lock.readLock().lock();
+		try {
+			from = Math.max(0, from);
+			int to = (int) Math.min((long) from + count, size(root));
+			List<Achievement> page = new ArrayList<Achievement>(Math.max(0, to - from));
+			collect(root, from, to, 0, page);
+			return page;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add the nodes under the node with the ranks from (inclusive) to
+	 * (exclusive) in order, offset is the rank of the first node under it.
+	 */
+	private static void collect(Node node, int from, int to, int offset, List<Achievement> page) {
+		if (node == null || from >= offset + node.size || to <= offset) {
+			return;
+		}
+		collect(node.left, from, to, offset, page);
+		int rank = offset + size(node.left);
+		if (rank >= from && rank < to) {
+			page.add(new Achievement(node.player, node.score));
+		}
+		collect(node.right, from, to, rank + 1, page);
+	}
+
+	private void insert(Node node) {
+		split(root, node.player, node.score);
+		root = merge(merge(splitLeft, node), splitRight);
+		nodes.put(node.player, node);
+	}
+
+	private void remove(String player, int score) {
+		split(root, player, score);
+		Node left = splitLeft;
+		Node right = splitRight;
+		// the first node from the split point on is the player if it is there
+		if (right != null) {
+			Node first = right;
+			while (first.left != null) {
+				first = first.left;
+			}
+			if (compare(player, score, first) == 0) {
+				right = removeFirst(right);
+			}
+		}
+		root = merge(left, right);
+	}
+
+	private static Node removeFirst(Node node) {
+		if (node.left == null) {
+			return node.right;
+		}
+		node.left = removeFirst(node.left);
+		node.update();
+		return node;
+	}
+
+	/**
+	 * Split the tree into the nodes before the player with the score and the
+	 * rest, into splitLeft and splitRight.
+	 */
+	private void split(Node node, String player, int score) {
+		if (node == null) {
+			splitLeft = null;
+			splitRight = null;
+		} else if (compare(player, score, node) > 0) {
+			split(node.right, player, score);
+			node.right = splitLeft;
+			node.update();
+			splitLeft = node;
+		} else {
+			split(node.left, player, score);
+			node.left = splitRight;
+			node.update();
+			splitRight = node;
+		}
+	}
+
+	/**
+	 * @return the tree of all the nodes of both trees, all the nodes of the
+	 * left tree go before the nodes of the right one.
+	 */
+	private static Node merge(Node left, Node right) {
+		if (left == null) {
+			return right;
+		} else if (right == null) {
+			return left;
+		} else if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			left.update();
+			return left;
+		} else {
+			right.left = merge(left, right.left);
+			right.update();
+			return right;
+		}
+	}
+
+	/**
+	 * @return negative if the player with the score goes before the node,
+	 * positive if after it, 0 if it is the node.
+	 */
+	private static int compare(String player, int score, Node node) {
+		if (score != node.score) {
+			return score > node.score ? -1 : 1;
+		}
+		return player.compareTo(node.player);
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	/**
+	 * The score of a player and the rank of the player.
+	 */
+	static class Standing {
+		final int score;
+		final int rank;
+
+		Standing(int score, int rank) {
+			this.score = score;
+			this.rank = rank;
+		}
+	}
+
+	private static class Node {
+		private final String player;
+		private final int score;
+		private final int priority;
+		private int size = 1;
+		private Node left;
+		private Node right;
+
+		Node(String player, int score) {
+			this.player = player;
+			this.score = score;
+			// scramble the name, so the tree is balanced whatever the names are
+			long h = (player.hashCode() + (long) score) * 0x9e3779b97f4a7c15L;
+			priority = (int) (h ^ (h >>> 29));
+		}
+
+		void update() {
+			size = 1 + Leaderboard.size(left) + Leaderboard.size(right);
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package application;
+
+import ai.AlphaBetaAIPlayer;
+import ai.MonteCarloAIPlayer;
+import ai.OpeningBook;
+import ai.OpeningBookAIPlayer;
+import models.AIPlayer;
+import models.GreedyAIPlayer;
+import models.IllegalMoveException;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.TwoPlayerGameState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless runner that plays the computer players against each other without
+ * the user interface. Every pair of players plays the given number of games,
+ * each player taking Order in half of them. The games run in parallel, one per
+ * thread, and share nothing, so the throughput grows with the number of cores.
+ * <p>
+ * The computer players are limited by the number of positions they search
+ * instead of the time, and seeded from the tournament seed and the game
+ * number, so the same tournament gives the same results on any machine.
+ * <p>
+ * Usage: <code>Tournament [games [seed [budget [threads [player...]]]]]</code>,
+ * the players are greedy, alphabeta, montecarlo and book (alpha-beta with the
+ * opening book).
+ *
+ * @author Anastasia Radchenko
+ */
+public class Tournament {
+
+	private static final String GREEDY = "greedy";
+	private static final String ALPHA_BETA = "alphabeta";
+	private static final String MONTE_CARLO = "montecarlo";
+	private static final String BOOK = "book";
+
+	// random games the Monte Carlo player plays per millisecond of its budget
+	private static final long PLAYOUTS_PER_MILLISECOND = 1000;
+
+	// transposition table of each alpha-beta player, in megabytes
+	private static final int TABLE_SIZE = 4;
+
+	// tree of each Monte Carlo player, in nodes
+	private static final int TREE_SIZE = 1 << 18;
+
+	private final List<String> players;
+	private final int games;
+	private final long seed;
+	private final long budget;
+	private final int threads;
+
+	/**
+	 * @param players the names of the players.
+	 * @param games the number of games every pair of players plays.
+	 * @param seed the seed of the players.
+	 * @param budget the time budget of the players per move, in milliseconds.
+	 * @param threads the number of games to play at the same time.
+	 */
+	public Tournament(List<String> players, int games, long seed, long budget, int threads) {
+		for (String player : players) {
+			newPlayer(player, 0, budget); // fail early on unknown players
+		}
+		this.players = players;
+		this.games = games;
+		this.seed = seed;
+		this.budget = budget;
+		this.threads = threads;
+	}
+
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		long budget = args.length > 2 ? Long.parseLong(args[2]) : 50;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		List<String> players = args.length > 4 ? Arrays.asList(args).subList(4, args.length)
+				: Arrays.asList(GREEDY, ALPHA_BETA);
+
+		Tournament tournament = new Tournament(players, games, seed, budget, threads);
+		tournament.play();
+	}
+
+	/**
+	 * @return a new computer player with the name.
+	 */
+	static AIPlayer newPlayer(String name, long seed, long budget) {
+		if (GREEDY.equals(name)) {
+			return new GreedyAIPlayer(seed);
+		} else if (ALPHA_BETA.equals(name)) {
+			return new AlphaBetaAIPlayer(budget, 1, TABLE_SIZE, seed);
+		} else if (MONTE_CARLO.equals(name)) {
+			// limit the random games, not the time
+			MonteCarloAIPlayer player = new MonteCarloAIPlayer(Long.MAX_VALUE / 2000000L, TREE_SIZE, seed);
+			player.setMaxPlayouts(Math.max(1, budget * PLAYOUTS_PER_MILLISECOND));
+			return player;
+		} else if (BOOK.equals(name)) {
+			return new OpeningBookAIPlayer(OpeningBook.getStandard(), new AlphaBetaAIPlayer(budget, 1, TABLE_SIZE, seed));
+		} else {
+			throw new IllegalArgumentException("Unknown player: "+name);
+		}
+	}
+
+	/**
+	 * Play all the games and print the results.
+	 */
+	public void play() throws InterruptedException, ExecutionException {
+		List<Callable<GameResult>> tasks = new ArrayList<Callable<GameResult>>();
+		int number = 0;
+		for (int i = 0; i < players.size(); i++) {
+			for (int j = i + 1; j < players.size(); j++) {
+				for (int game = 0; game < games; game++) {
+					// swap the roles every game
+					final int order = game % 2 == 0 ? i : j;
+					final int chaos = game % 2 == 0 ? j : i;
+					final long gameSeed = seed * 1000003L + number++;
+					tasks.add(new Callable<GameResult>() {
+						@Override
+						public GameResult call() throws IllegalMoveException {
+							return playGame(order, chaos, gameSeed);
+						}
+					});
+				}
+			}
+		}
+
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<GameResult> results = new ArrayList<GameResult>();
+		try {
+			for (Future<GameResult> future : executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		long elapsed = System.nanoTime() - start;
+		report(results, elapsed);
+	}
+
+	private GameResult playGame(int order, int chaos, long gameSeed) throws IllegalMoveException {
+		AIPlayer orderPlayer = newPlayer(players.get(order), gameSeed, budget);
+		AIPlayer chaosPlayer = newPlayer(players.get(chaos), gameSeed ^ 0x5deece66dL, budget);
+		TwoPlayerGameState gameState = new TwoPlayerGameState(players.get(order), players.get(chaos), Rules.STANDARD);
+		GameResult result = new GameResult(order, chaos);
+		while (!gameState.isOver()) {
+			boolean orderMoves = gameState.isOrderNextTurn();
+			long moveStart = System.nanoTime();
+			Move move = orderMoves ? orderPlayer.nextMove(gameState, PlayerRole.ORDER)
+					: chaosPlayer.nextMove(gameState, PlayerRole.CHAOS);
+			long thinkTime = System.nanoTime() - moveStart;
+			gameState.makeMove(move);
+			if (orderMoves) {
+				result.orderThinkTime += thinkTime;
+				result.orderMoves++;
+			} else {
+				result.chaosThinkTime += thinkTime;
+				result.chaosMoves++;
+			}
+		}
+		result.winner = gameState.getWinnerRole();
+		return result;
+	}
+
+	private void report(List<GameResult> results, long elapsed) {
+		int n = players.size();
+		int[] wins = new int[n];
+		int[] losses = new int[n];
+		int[] draws = new int[n];
+		long[] thinkTime = new long[n];
+		long[] moves = new long[n];
+		// points[i][j] is the score of the player i against the player j, in half points
+		int[][] points = new int[n][n];
+		int[][] played = new int[n][n];
+		long totalMoves = 0;
+		for (GameResult result : results) {
+			int order = result.order;
+			int chaos = result.chaos;
+			if (result.winner == PlayerRole.ORDER) {
+				wins[order]++;
+				losses[chaos]++;
+				points[order][chaos] += 2;
+			} else if (result.winner == PlayerRole.CHAOS) {
+				wins[chaos]++;
+				losses[order]++;
+				points[chaos][order] += 2;
+			} else {
+				draws[order]++;
+				draws[chaos]++;
+				points[order][chaos]++;
+				points[chaos][order]++;
+			}
+			played[order][chaos]++;
+			played[chaos][order]++;
+			thinkTime[order] += result.orderThinkTime;
+			thinkTime[chaos] += result.chaosThinkTime;
+			moves[order] += result.orderMoves;
+			moves[chaos] += result.chaosMoves;
+			totalMoves += result.orderMoves + result.chaosMoves;
+		}
+
+		double[] elo = estimateElo(points, played);
+		System.out.println(String.format("%-12s %6s %6s %6s %6s %8s",
+				"player", "wins", "losses", "draws", "elo", "ms/move"));
+		for (int i = 0; i < n; i++) {
+			System.out.println(String.format("%-12s %6d %6d %6d %6.0f %8.2f",
+					players.get(i), wins[i], losses[i], draws[i], elo[i],
+					moves[i] == 0 ? 0.0 : thinkTime[i] / 1000000.0 / moves[i]));
+		}
+		double seconds = elapsed / 1000000000.0;
+		System.out.println(String.format("%d games, %.1f moves per game, %.1f seconds, %.2f games per second on %d threads",
+				results.size(), results.isEmpty() ? 0.0 : (double) totalMoves / results.size(),
+				seconds, results.size() / seconds, threads));
+	}
+
+	/**
+	 * Fit the ratings of the logistic Elo model to the scores of the games by
+	 * gradient steps, the average rating is 0.
+	 *
+	 * @return the rating of every player.
+	 */
+	static double[] estimateElo(int[][] points, int[][] played) {
+		int n = points.length;
+		double[] elo = new double[n];
+		for (int iteration = 0; iteration < 1000; iteration++) {
+			double[] gradient = new double[n];
+			for (int i = 0; i < n; i++) {
+				int games = 0;
+				for (int j = 0; j < n; j++) {
+					games += played[i][j];
+				}
+				for (int j = 0; j < n; j++) {
+					if (played[i][j] == 0) {
+						continue;
+					}
+					double expected = 1 / (1 + Math.pow(10, (elo[j] - elo[i]) / 400));
+					// keep the ratings finite when a player wins or loses every game
+					double score = Math.min(Math.max(points[i][j] / 2.0, 0.5), played[i][j] - 0.5);
+					gradient[i] += (score - played[i][j] * expected) / games;
+				}
+			}
+			double mean = 0;
+			for (int i = 0; i < n; i++) {
+				elo[i] += 100 * gradient[i];
+				mean += elo[i];
+			}
+			for (int i = 0; i < n; i++) {
+				elo[i] -= mean / n;
+			}
+		}
+		return elo;
+	}
+
+	/**
+	 * The outcome of a single game
+	 */
+	private static class GameResult {
+		private final int order;
+		private final int chaos;
+		private PlayerRole winner;
+		private long orderThinkTime;
+		private long chaosThinkTime;
+		private int orderMoves;
+		private int chaosMoves;
+
+		GameResult(int order, int chaos) {
+			this.order = order;
+			this.chaos = chaos;
+		}
+	}
+}
@@ -1,28 +1,76 @@
 package io;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Abstract base class for implementations of {@link GameConnector}.
+ * <p>
+ * Once the session is started, every frame sent is kept to be sent again on
+ * the new socket if the connection is lost: the reader waits for the new
+ * socket within the grace period, a frame that fails to be written waits in
+ * the log, and the subclasses bring the new socket.
+ * <p>
+ * The state of the connection is guarded by a lock that is never held while
+ * a frame is written, so a write stalled on a lost socket does not hold up
+ * the reader or the resumed session; the writers take turns on a write lock
+ * of their own, so the frames go out in the order of their sequence numbers.
  *
  * @author Anastasia Radchenko
  */
 public abstract class AbstractGameConnector implements GameConnector {
     protected static final int GAME_PORT = 7777;
 
+    /**
+     * How long a lost connection may take to be resumed
+     */
+    protected static final long GRACE_MILLIS = 30000;
+
+    // how long the other side may take to answer the resume message
+    private static final int RESUME_TIMEOUT_MILLIS = 5000;
+
+    private final Lock lock = new ReentrantLock();
+    // signalled when the socket is replaced or the connector is disconnected
+    private final Condition socketChanged = lock.newCondition();
+    private final Lock writeLock = new ReentrantLock();
     private Socket socket = null;
     private DataInputStream in = null;
-    private DataOutputStream out = null;
+    private OutputStream out = null;
+    // the sequence numbers of the next frames to send and to receive
+    private int sentFrames = 0;
+    private int receivedFrames = 0;
+    // the frames sent by their sequence numbers
+    private final List<Frame> sent = new ArrayList<Frame>();
+    private volatile long session = 0;
+    // the number of the socket, a resumed session goes on on the next one
+    private int generation = 0;
+    private volatile boolean disconnected = false;
 
     @Override
     public void connect(String hostNameOrIPAddress) throws IOException {
         try {
-            socket = connectSocket(hostNameOrIPAddress);
-            in = new DataInputStream(socket.getInputStream());
-            out = new DataOutputStream(socket.getOutputStream());
+            Socket socket = connectSocket(hostNameOrIPAddress);
+            lock.lock();
+            try {
+                session = 0;
+                sent.clear();
+                sentFrames = 0;
+                receivedFrames = 0;
+                disconnected = false;
+                use(socket, new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            } finally {
+                lock.unlock();
+            }
         } catch (IOException e) {
             disconnect();
             throw e;
@@ -31,30 +79,213 @@ public abstract class AbstractGameConnector implements GameConnector {
 
     protected abstract Socket connectSocket(String hostNameOrIPAddress) throws IOException;
 
+    /**
+     * Wait for the lost connection of the session to be resumed.
+     *
+     * @param generation the number of the socket lost.
+     * @param deadline the time to give up at, in milliseconds.
+     * @param cause why the connection is lost.
+     * @throws IOException the cause, when the connection is not resumed in
+     * time.
+     */
+    protected abstract void resume(int generation, long deadline, IOException cause) throws IOException;
+
+    /**
+     * Called when the session is started.
+     */
+    protected void sessionStarted() {
+    }
+
     @Override
     public void disconnect() {
-        if (socket != null) {
-            try { socket.close(); } catch (IOException e) {} finally { socket = null; }
+        disconnected = true;
+        lock.lock();
+        try {
+            if (socket != null) {
+                try { socket.close(); } catch (IOException e) {} finally { socket = null; }
+            }
+            socketChanged.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
-    @Override
-    public int readInt() throws IOException {
-        return in.readInt();
+    protected boolean isDisconnected() {
+        return disconnected;
     }
 
     @Override
-    public String readString() throws IOException {
-        return in.readUTF();
+    public void startSession(long session) {
+        this.session = session;
+        sessionStarted();
     }
 
     @Override
-    public void writeInt(int value) throws IOException {
-        out.writeInt(value);
+    public void send(Frame frame) throws IOException {
+        writeLock.lock();
+        try {
+            byte[] bytes;
+            Socket socket;
+            OutputStream out;
+            lock.lock();
+            try {
+                bytes = frame.encode(sentFrames);
+                sent.add(frame);
+                sentFrames++;
+                socket = this.socket;
+                out = this.out;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (out == null) {
+                    throw new IOException("Disconnected");
+                }
+                out.write(bytes);
+            } catch (IOException e) {
+                if (session == 0 || disconnected) {
+                    throw e;
+                }
+                // the frame is sent again on the new socket, the reader is woken up to wait for it
+                if (socket != null) {
+                    try { socket.close(); } catch (IOException ignored) {}
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
-    public void writeString(String value) throws IOException {
-        out.writeUTF(value);
+    public Frame receive() throws IOException {
+        while (true) {
+            DataInputStream in;
+            int generation;
+            lock.lock();
+            try {
+                in = this.in;
+                generation = this.generation;
+            } finally {
+                lock.unlock();
+            }
+            Frame frame;
+            try {
+                frame = Frame.read(in);
+            } catch (IOException e) {
+                if (session == 0 || disconnected) {
+                    throw e;
+                }
+                resume(generation, System.currentTimeMillis() + GRACE_MILLIS, e);
+                continue;
+            }
+            lock.lock();
+            try {
+                if (generation != this.generation) {
+                    // the frame is sent again on the new socket
+                    continue;
+                }
+                if (frame.getType() == Frame.Type.RESUME || frame.getSequence() != receivedFrames) {
+                    throw new IOException("Frame " + frame.getSequence() + " received out of sequence, expected "
+                            + receivedFrames);
+                }
+                receivedFrames++;
+            } finally {
+                lock.unlock();
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * Resume the session on the new socket: exchange the resume messages,
+     * send again the frames the other side has missed and go on on the
+     * socket.
+     *
+     * @param socket the new socket.
+     * @param first true to send the resume message first, false to answer it.
+     * @throws IOException if the session can not be resumed on the socket.
+     */
+    protected void resumeOn(Socket socket, boolean first) throws IOException {
+        socket.setSoTimeout(RESUME_TIMEOUT_MILLIS);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        OutputStream out = socket.getOutputStream();
+        if (first) {
+            int received;
+            lock.lock();
+            try {
+                received = receivedFrames;
+            } finally {
+                lock.unlock();
+            }
+            out.write(Frame.resume(session, received).encode(0));
+        }
+        Frame frame = Frame.read(in);
+        if (frame.getType() != Frame.Type.RESUME || frame.getSession() != session) {
+            throw new IOException("Not the session of the game");
+        }
+        lock.lock();
+        try {
+            if (disconnected) {
+                throw new IOException("Disconnected");
+            }
+            if (frame.getReceived() > sentFrames) {
+                throw new IOException("Frame " + frame.getReceived() + " expected, only " + sentFrames + " sent");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (!first) {
+                bytes.write(Frame.resume(session, receivedFrames).encode(0));
+            }
+            for (int i = frame.getReceived(); i < sentFrames; i++) {
+                bytes.write(sent.get(i).encode(i));
+            }
+            // no frame is sent on the new socket before it is used, so the frames sent again go first
+            out.write(bytes.toByteArray());
+            socket.setSoTimeout(0);
+            use(socket, in);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the session to go on on another socket than the one lost.
+     *
+     * @param generation the number of the socket lost.
+     * @param deadline the time to give up at, in milliseconds.
+     * @return true if the session goes on, false if the time is up or the
+     * connector is disconnected.
+     */
+    protected boolean awaitSocket(int generation, long deadline) {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            while (this.generation == generation && !disconnected && now < deadline) {
+                try {
+                    socketChanged.await(deadline - now, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                now = System.currentTimeMillis();
+            }
+            return this.generation != generation && !disconnected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called under the lock
+    private void use(Socket socket, DataInputStream in) throws IOException {
+        // the frames are small and written whole, there is nothing to wait for
+        socket.setTcpNoDelay(true);
+        if (this.socket != null && this.socket != socket) {
+            // the reader of the socket replaced wakes up and goes on on this one
+            try { this.socket.close(); } catch (IOException ignored) {}
+        }
+        this.socket = socket;
+        this.in = in;
+        this.out = socket.getOutputStream();
+        generation++;
+        socketChanged.signalAll();
     }
 }
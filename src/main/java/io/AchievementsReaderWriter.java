@@ -26,4 +26,11 @@ public interface AchievementsReaderWriter {
 	 * @throws IOException when writing fails for some reason.
 	 */
 	void write(AchievementManager achiementManager) throws IOException;
+
+	/**
+	 * Wait until all player achievements written so far are in external data store.
+	 * 
+	 * @throws IOException when writing has failed for some reason.
+	 */
+	void flush() throws IOException;
 }
@@ -0,0 +1,95 @@
+package io;
+
+import models.IllegalMoveException;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.TwoPlayerGameState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Appends random games of the standard game to the archive in the directory,
+ * then scans the whole archive for the share of the games Order has won, the
+ * average length of the games and the share of the games started with O, and
+ * prints how fast both went.
+ * <p>
+ * Usage: <code>ArchiveBenchmark directory [games [seed]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class ArchiveBenchmark {
+
+	public static void main(String[] args) throws IOException, IllegalMoveException {
+		File directory = new File(args[0]);
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+		GameArchive archive = GameArchive.open(directory, GameArchive.DEFAULT_SEGMENT_SIZE);
+		try {
+			Random random = new Random(seed);
+			long start = System.nanoTime();
+			for (int game = 0; game < games; game++) {
+				playRandomGame(archive, random);
+			}
+			archive.sync();
+			double seconds = (System.nanoTime() - start) / 1000000000.0;
+			System.out.println(String.format("appended %d games in %.2f seconds, %.0f games per second",
+					games, seconds, games / seconds));
+
+			start = System.nanoTime();
+			long orderWins = 0;
+			long moves = 0;
+			long firstO = 0;
+			long bytes = 0;
+			GameArchive.Cursor cursor = archive.cursor();
+			while (cursor.next()) {
+				if (cursor.getWinnerRole() == PlayerRole.ORDER) {
+					orderWins++;
+				}
+				int count = cursor.getMoveCount();
+				moves += count;
+				if (count > 0 && (cursor.getMove(0) & 1) == 1) {
+					firstO++;
+				}
+				bytes += cursor.getLength();
+			}
+			seconds = (System.nanoTime() - start) / 1000000000.0;
+			long total = archive.size();
+			System.out.println(String.format("scanned %d games in %.2f seconds, %.0f games per second, %.0f MB per second",
+					total, seconds, total / seconds, bytes / seconds / (1 << 20)));
+			System.out.println(String.format("Order won %.1f%% of the games, %.1f moves per game, %.1f%% started with O",
+					total == 0 ? 0.0 : 100.0 * orderWins / total, total == 0 ? 0.0 : (double) moves / total,
+					total == 0 ? 0.0 : 100.0 * firstO / total));
+		} finally {
+			archive.close();
+		}
+	}
+
+	private static void playRandomGame(GameArchive archive, Random random) throws IOException, IllegalMoveException {
+		TwoPlayerGameState gameState = new TwoPlayerGameState("Order", "Chaos", Rules.STANDARD);
+		int size = Rules.STANDARD.getBoardSize();
+		int[] squares = new int[size * size];
+		for (int i = 0; i < squares.length; i++) {
+			squares[i] = i;
+		}
+		List<Move> moves = new ArrayList<Move>();
+		for (int i = 0; !gameState.isOver(); i++) {
+			// shuffle the squares as the game goes
+			int j = i + random.nextInt(squares.length - i);
+			int square = squares[j];
+			squares[j] = squares[i];
+			squares[i] = square;
+			Move move = new Move(gameState.nextTurn(), square / size + 1, square % size + 1,
+					random.nextBoolean() ? Mark.X : Mark.O);
+			gameState.makeMove(move);
+			moves.add(move);
+		}
+		archive.append(gameState, moves);
+	}
+}
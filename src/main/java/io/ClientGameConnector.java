@@ -1,16 +1,54 @@
 package io;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 
 /**
- * Implements client version of {@link GameConnector}.
+ * Implements client version of {@link GameConnector}. A lost connection of
+ * the session is connected again until the host answers.
  *
  * @author Anastasia Radchenko
  */
 public class ClientGameConnector extends AbstractGameConnector {
+    // the pause between the attempts to connect again
+    private static final long RETRY_MILLIS = 1000;
+
+    private final int port;
+    private volatile String hostNameOrIPAddress;
+
+    public ClientGameConnector() {
+        this(GAME_PORT);
+    }
+
+    public ClientGameConnector(int port) {
+        this.port = port;
+    }
+
     @Override
     protected Socket connectSocket(String hostNameOrIPAddress) throws IOException {
-        return new Socket(hostNameOrIPAddress, GAME_PORT);
+        this.hostNameOrIPAddress = hostNameOrIPAddress;
+        return new Socket(hostNameOrIPAddress, port);
+    }
+
+    @Override
+    protected void resume(int generation, long deadline, IOException cause) throws IOException {
+        while (!isDisconnected() && System.currentTimeMillis() < deadline) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(hostNameOrIPAddress, port), (int) RETRY_MILLIS);
+                resumeOn(socket, true);
+                return;
+            } catch (IOException e) {
+                try { socket.close(); } catch (IOException ignored) {}
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw cause;
     }
 }
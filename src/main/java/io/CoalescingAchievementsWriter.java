@@ -0,0 +1,162 @@
+package io;
+
+import application.AchievementManager;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the achievements in the background. Writing only schedules the
+ * write a little later on the writer thread and returns at once; all the
+ * writes asked for in the meantime are done by that single write of the
+ * latest achievements. The achievements still to be written are written
+ * when the application shuts down.
+ * <p>
+ * A write that fails in the background is reported by the next write or
+ * flush.
+ *
+ * @author Anastasia Radchenko
+ */
+public class CoalescingAchievementsWriter implements AchievementsReaderWriter {
+
+	// delay of the write after the first change since the last write, in milliseconds
+	private static final long WRITE_DELAY = 100;
+
+	private final AchievementsReaderWriter achievementsReaderWriter;
+	private final ScheduledExecutorService executor;
+
+	// the achievements to write, null when there are none
+	private AchievementManager pending;
+	private IOException failure;
+	private long requests;
+	private long writes;
+
+	private final Runnable writeTask = new Runnable() {
+		@Override
+		public void run() {
+			writePending();
+		}
+	};
+
+	/**
+	 * @param achievementsReaderWriter the reader and writer of the achievements
+	 * to write them in the background.
+	 */
+	public CoalescingAchievementsWriter(AchievementsReaderWriter achievementsReaderWriter) {
+		this.achievementsReaderWriter = achievementsReaderWriter;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "achievements-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// the writer thread does not keep the application alive
+		Runtime.getRuntime().addShutdownHook(new Thread("achievements-flush") {
+			@Override
+			public void run() {
+				writePending();
+			}
+		});
+	}
+
+	@Override
+	public AchievementManager read() throws IOException {
+		return achievementsReaderWriter.read();
+	}
+
+	@Override
+	public synchronized void write(AchievementManager achievementManager) throws IOException {
+		IOException e = failure;
+		failure = null;
+		requests++;
+		if (pending == null) {
+			executor.schedule(writeTask, WRITE_DELAY, TimeUnit.MILLISECONDS);
+		}
+		pending = achievementManager;
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	/**
+	 * Write the achievements still to be written, and wait until they are.
+	 *
+	 * @throws IOException if the last write has failed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		Future<?> written = executor.submit(writeTask);
+		try {
+			written.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		achievementsReaderWriter.flush();
+		synchronized (this) {
+			IOException e = failure;
+			failure = null;
+			if (e != null) {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Write the latest achievements, if any, on the calling thread. The
+	 * writes are serialized so an older write never replaces a newer one.
+	 */
+	private void writePending() {
+		synchronized (writeTask) {
+			AchievementManager achievementManager;
+			synchronized (this) {
+				achievementManager = pending;
+				pending = null;
+			}
+			if (achievementManager == null) {
+				return;
+			}
+			try {
+				achievementsReaderWriter.write(achievementManager);
+				synchronized (this) {
+					writes++;
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				synchronized (this) {
+					failure = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of writes asked for.
+	 */
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return the number of writes done.
+	 */
+	public synchronized long getWrites() {
+		return writes;
+	}
+
+	/**
+	 * @return the number of writes asked for that have been done by a later
+	 * write, or are still to be done.
+	 */
+	public synchronized long getCoalesced() {
+		return requests - writes;
+	}
+}
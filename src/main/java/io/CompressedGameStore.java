@@ -0,0 +1,1013 @@
+package io;
+
+import models.BoardListener;
+import models.GameState;
+import models.IllegalMoveException;
+import models.Mark;
+import models.Move;
+import models.OnePlayerGameState;
+import models.PlayerRole;
+import models.Rules;
+import models.SavedGameType;
+import models.Symmetry;
+import models.TwoPlayerGameState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * The store of many games in a single file, each game taking a few bytes. The
+ * games share their openings, so every game is a path in a trie of moves and
+ * the moves the games have in common are kept once, in the nodes they share.
+ * The first two levels of the trie are the board size and the chain length,
+ * then come the moves, the square number times 2, plus 1 for O.
+ * <p>
+ * A game is kept as the smallest of the 16 symmetric images of its moves, so
+ * the games that differ only by the board turned or mirrored, or by the X's
+ * and O's swapped, are the same path, and so are their openings: the smallest
+ * image of a game starts with the smallest image of its opening. The game
+ * without the record of its moves is kept as the marks on its board in the
+ * order of the squares, the smallest image is then the image of the position.
+ * <p>
+ * The file is the magic number and the version, then a record for every game
+ * saved: the number of the game less the number of the game of
+ * the record before it, the type and the symmetry that takes the game to its
+ * image, the players unless they are the players of the record before it,
+ * the node of the trie the game goes on from and the moves it adds to the
+ * trie, and a check byte of all that. A move is
+ * the number of the square among the empty squares in as many bits as that
+ * number needs, and a bit for the mark. A name of a player is written once,
+ * with the first game of the player. The game saved again is written as a new
+ * record, that only adds the moves made since.
+ * <p>
+ * The file is read once when the store is opened and kept in memory. A record
+ * torn by a crash ends the file and is cut off. A record damaged in the middle
+ * of the file fails the open instead, so that the games after it are not cut
+ * off with it.
+ * <p>
+ * The store stands alone, for the games kept in bulk, e.g. by the compression
+ * benchmark; the application saves its games in the {@link GameStore}. The
+ * store keeps the moves of a game only, not the kind of the computer player
+ * of a 1-player game, which is restored against the greedy one.
+ *
+ * @author Anastasia Radchenko
+ */
+public class CompressedGameStore implements GameReaderWriter {
+	public static final String DEFAULT_FILE = System.getProperty("user.home")+System.getProperty("file.separator")
+			+"order-and-chaos-games.ocz";
+
+	static final int MAGIC = 0x4f43475a; // "OCGZ"
+	static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 4 + 1;
+	// the root of the trie and the levels of the rules under it
+	private static final int ROOT = 0;
+	private static final int RULES_LEVELS = 2;
+	// bits of the board size and the chain length
+	private static final int RULES_BITS = 6;
+	// the flag of the record of the same players as the record before it
+	private static final int SAME_PLAYERS = 0x40;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final RandomAccessFile raf;
+	// the length of the valid records
+	private long end;
+
+	// the trie: the parent of every node and the board size, the chain length
+	// or the move it adds
+	private int[] parents = new int[1024];
+	private int[] elements = new int[1024];
+	private int nodes = 1;
+	// the children of the nodes by the parent and the element, open addressing
+	private long[] childKeys = new long[2048];
+	private int[] children = new int[2048];
+
+	private final List<String> players = new ArrayList<String>();
+	private final Map<String, Integer> playerNumbers = new HashMap<String, Integer>();
+	// the entries of the games by the game number
+	private final Map<Long, Entry> entries = new TreeMap<Long, Entry>();
+	// the numbers of the games saved or read through the store
+	private final Map<GameState, Long> ids = new WeakHashMap<GameState, Long>();
+	private long nextId = 1;
+	private long records;
+	// the game and the players of the last record
+	private long lastId;
+	private int lastOrderPlayer = -1;
+	private int lastChaosPlayer = -1;
+
+	// the game being recorded and its moves
+	private GameState recordedGame;
+	private long recordedId;
+	private int[] recordedMoves;
+	private int recordedCount;
+
+	private final BoardListener recorder = new BoardListener() {
+		@Override
+		public void squareMarked(int x, int y, Mark mark) {
+			record(x, y, mark);
+		}
+	};
+
+	private CompressedGameStore(RandomAccessFile raf) {
+		this.raf = raf;
+		Arrays.fill(childKeys, -1);
+	}
+
+	/**
+	 * Open the store in the file, create it if there is none.
+	 *
+	 * @param file the file of the store.
+	 * @return the store opened.
+	 * @throws IOException if the file can not be created or read.
+	 */
+	public static CompressedGameStore open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		CompressedGameStore store = new CompressedGameStore(raf);
+		try {
+			store.read();
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+		return store;
+	}
+
+	/**
+	 * @return the store in the user home directory.
+	 * @throws IOException if the store can not be opened.
+	 */
+	public static CompressedGameStore open() throws IOException {
+		return open(new File(DEFAULT_FILE));
+	}
+
+	private void read() throws IOException {
+		long length = raf.length();
+		if (length < HEADER_BYTES) {
+			raf.setLength(0);
+			raf.writeInt(MAGIC);
+			raf.writeByte(VERSION);
+			end = HEADER_BYTES;
+			return;
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("The game store is too large");
+		}
+		byte[] data = new byte[(int) length];
+		raf.seek(0);
+		raf.readFully(data);
+		if (readInt(data, 0) != MAGIC || data[4] != VERSION) {
+			throw new IOException("Not a game store");
+		}
+		int offset = HEADER_BYTES;
+		while (offset < data.length) {
+			try {
+				offset = readRecord(data, offset);
+			} catch (EOFException e) {
+				// the record being appended when the application crashed
+				break;
+			} catch (IOException e) {
+				if (!isZeros(data, offset)) {
+					throw new IOException("The game store is corrupt at byte "+offset+": "+e.getMessage(), e);
+				}
+				// the file system has not written the torn record, only made room for it
+				break;
+			}
+		}
+		// cut off the torn record
+		end = offset;
+		if (end < length) {
+			raf.setLength(end);
+		}
+	}
+
+	/**
+	 * @return true if the data from the offset on are all zeros.
+	 */
+	private static boolean isZeros(byte[] data, int offset) {
+		for (int i = offset; i < data.length; i++) {
+			if (data[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add the nodes, the players and the game of the record, once the record
+	 * is checked.
+	 *
+	 * @return the offset of the next record.
+	 * @throws EOFException if the record is torn: it runs past the end of the
+	 * data, or it is the last record and its check does not match.
+	 * @throws IOException if the record is invalid.
+	 */
+	private int readRecord(byte[] data, int start) throws IOException {
+		int[] position = { start };
+		long delta = readLongVarint(data, position);
+		long id = lastId + 1 + ((delta >>> 1) ^ -(delta & 1));
+		checkMore(data, position);
+		int flags = data[position[0]++] & 0xff;
+		int type = flags & 1;
+		boolean over = (flags & 2) != 0;
+		int symmetry = (flags >> 2) & (Symmetry.COUNT - 1);
+		List<String> added = new ArrayList<String>(2);
+		int orderPlayer = lastOrderPlayer;
+		int chaosPlayer = lastChaosPlayer;
+		if ((flags & SAME_PLAYERS) == 0) {
+			orderPlayer = readPlayer(data, position, added);
+			chaosPlayer = readPlayer(data, position, added);
+		}
+		int attach = readVarint(data, position);
+		int count = readVarint(data, position);
+		checkMore(data, position);
+		if (id <= 0 || orderPlayer < 0 || attach < 0 || attach >= nodes || count < 0
+				|| count > RULES_LEVELS + Rules.MAX_BOARD_SIZE * Rules.MAX_BOARD_SIZE) {
+			throw new IOException("Invalid game record");
+		}
+		int[] path = path(attach);
+		int[] suffix = new int[count];
+		BitInput in = new BitInput(data, position[0], data.length);
+		decode(path, suffix, in);
+		int end = in.next();
+		if (end >= data.length) {
+			throw new EOFException("The record has no check byte");
+		}
+		if (data[end] != check(data, start, end - start)) {
+			if (end == data.length - 1) {
+				throw new EOFException("The last record is torn");
+			}
+			throw new IOException("The record is corrupt");
+		}
+		int leaf = attach;
+		for (int element : suffix) {
+			leaf = child(leaf, element, true);
+		}
+		for (String player : added) {
+			playerNumbers.put(player, players.size());
+			players.add(player);
+		}
+		commit(id, SavedGameType.values()[type], orderPlayer, chaosPlayer, symmetry, leaf, over);
+		return end + 1;
+	}
+
+	/**
+	 * @return the number of the player read, the players new to the store are
+	 * added to the list.
+	 */
+	private int readPlayer(byte[] data, int[] position, List<String> added) throws IOException {
+		int number = readVarint(data, position);
+		checkMore(data, position);
+		if (number < 0 || number > players.size() + added.size()) {
+			throw new IOException("Invalid player number: "+number);
+		}
+		if (number == players.size() + added.size()) {
+			int length = readVarint(data, position);
+			checkMore(data, position);
+			if (length < 0) {
+				throw new IOException("Invalid player name");
+			}
+			if (position[0] + length > data.length) {
+				throw new EOFException("The record ends too soon");
+			}
+			added.add(new String(data, position[0], length, UTF8));
+			position[0] += length;
+		}
+		return number;
+	}
+
+	/**
+	 * Save the game under a new number.
+	 *
+	 * @param gameState the game to save.
+	 * @return the number of the game.
+	 * @throws IOException if the game can not be saved.
+	 */
+	public synchronized long save(GameState gameState) throws IOException {
+		long id = nextId++;
+		save(id, gameState, null);
+		return id;
+	}
+
+	/**
+	 * Save the game with all its moves under a new number.
+	 *
+	 * @param gameState the game to save.
+	 * @param moves the moves of the game, the earliest first.
+	 * @return the number of the game.
+	 * @throws IOException if the game can not be saved.
+	 */
+	public synchronized long save(GameState gameState, List<Move> moves) throws IOException {
+		long id = nextId++;
+		save(id, gameState, moves);
+		return id;
+	}
+
+	/**
+	 * Save the game under the number, replacing the game saved under it.
+	 *
+	 * @param id the number of the game.
+	 * @param gameState the game to save.
+	 * @param moves the moves of the game, the earliest first, or null to save
+	 * the moves the game keeps, or just its position if it keeps none.
+	 * @throws IOException if the game can not be saved.
+	 */
+	public synchronized void save(long id, GameState gameState, List<Move> moves) throws IOException {
+		int size = gameState.getRules().getBoardSize();
+		if (moves == null && gameState instanceof OnePlayerGameState) {
+			moves = ((OnePlayerGameState) gameState).getMoves();
+		}
+		int[] array;
+		if (moves != null) {
+			array = new int[moves.size()];
+			for (int i = 0; i < array.length; i++) {
+				Move move = moves.get(i);
+				array[i] = toMove(size, move.getX(), move.getY(), move.getMark());
+			}
+		} else {
+			array = marks(gameState);
+		}
+		write(id, gameState, array, array.length, moves != null);
+	}
+
+	/**
+	 * Write the record of the game with the moves.
+	 *
+	 * @param ordered false if the moves are the marks of the position in no
+	 * particular order.
+	 */
+	private void write(long id, GameState gameState, int[] moves, int count, boolean ordered) throws IOException {
+		Rules rules = gameState.getRules();
+		int[] image = new int[RULES_LEVELS + count];
+		int symmetry = canonical(rules.getBoardSize(), moves, count, ordered, image);
+		image[0] = rules.getBoardSize();
+		image[1] = rules.getChainLength();
+		// the deepest node of the game already in the trie
+		int attach = ROOT;
+		int depth = 0;
+		while (depth < image.length) {
+			int node = child(attach, image[depth], false);
+			if (node < 0) {
+				break;
+			}
+			attach = node;
+			depth++;
+		}
+		SavedGameType type = gameState instanceof OnePlayerGameState ? SavedGameType.ONE_PLAYER
+				: SavedGameType.TWO_PLAYER;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+		DataOutputStream out = new DataOutputStream(bytes);
+		// the games are mostly saved in the order of their numbers
+		long delta = id - lastId - 1;
+		writeLongVarint(out, (delta << 1) ^ (delta >> 63));
+		int flags = type.ordinal() | (gameState.isOver() ? 2 : 0) | (symmetry << 2);
+		Integer order = playerNumbers.get(gameState.getOrderPlayer());
+		Integer chaos = playerNumbers.get(gameState.getChaosPlayer());
+		List<String> added = new ArrayList<String>(2);
+		int orderPlayer;
+		int chaosPlayer;
+		if (order != null && order == lastOrderPlayer && chaos != null && chaos == lastChaosPlayer) {
+			out.writeByte(flags | SAME_PLAYERS);
+			orderPlayer = order;
+			chaosPlayer = chaos;
+		} else {
+			out.writeByte(flags);
+			orderPlayer = writePlayer(out, gameState.getOrderPlayer(), added);
+			chaosPlayer = writePlayer(out, gameState.getChaosPlayer(), added);
+		}
+		writeVarint(out, attach);
+		writeVarint(out, image.length - depth);
+		BitOutput bits = new BitOutput(out);
+		encode(image, depth, bits);
+		bits.flush();
+		byte[] payload = bytes.toByteArray();
+
+		out.writeByte(check(payload, 0, payload.length));
+		raf.seek(end);
+		raf.write(bytes.toByteArray());
+		end += bytes.size();
+
+		// the record is written, the store may follow it now
+		int leaf = attach;
+		for (int i = depth; i < image.length; i++) {
+			leaf = child(leaf, image[i], true);
+		}
+		for (String player : added) {
+			playerNumbers.put(player, players.size());
+			players.add(player);
+		}
+		commit(id, type, orderPlayer, chaosPlayer, symmetry, leaf, gameState.isOver());
+		ids.put(gameState, id);
+	}
+
+	/**
+	 * Write the number of the player, and the name after it if the player is
+	 * new to the store.
+	 */
+	private int writePlayer(DataOutputStream out, String player, List<String> added) throws IOException {
+		Integer number = playerNumbers.get(player);
+		if (number == null) {
+			int index = added.indexOf(player);
+			number = players.size() + (index < 0 ? added.size() : index);
+			writeVarint(out, number);
+			if (index < 0) {
+				byte[] name = player.getBytes(UTF8);
+				writeVarint(out, name.length);
+				out.write(name);
+				added.add(player);
+			}
+		} else {
+			writeVarint(out, number);
+		}
+		return number;
+	}
+
+	private void commit(long id, SavedGameType type, int orderPlayer, int chaosPlayer, int symmetry, int leaf,
+			boolean over) {
+		entries.put(id, new Entry(type, orderPlayer, chaosPlayer, symmetry, leaf, over, records++));
+		nextId = Math.max(nextId, id + 1);
+		lastId = id;
+		lastOrderPlayer = orderPlayer;
+		lastChaosPlayer = chaosPlayer;
+	}
+
+	/**
+	 * Read the saved game with the number.
+	 *
+	 * @param id the number of the game.
+	 * @return the game, or null if there is no game with the number.
+	 * @throws IOException if the game saved is invalid.
+	 */
+	public synchronized GameState load(long id) throws IOException {
+		Entry entry = entries.get(id);
+		if (entry == null) {
+			return null;
+		}
+		int[] path = path(entry.leaf);
+		if (path.length < RULES_LEVELS) {
+			throw new IOException("Invalid saved game: "+id);
+		}
+		int size = path[0];
+		GameState gameState;
+		try {
+			Rules rules = new Rules(size, path[1]);
+			String orderPlayer = players.get(entry.orderPlayer);
+			String chaosPlayer = players.get(entry.chaosPlayer);
+			if (entry.type == SavedGameType.ONE_PLAYER) {
+				gameState = OnePlayerGameState.AI_PLAYER.equals(orderPlayer)
+						? OnePlayerGameState.restore(chaosPlayer, PlayerRole.CHAOS, rules)
+						: OnePlayerGameState.restore(orderPlayer, PlayerRole.ORDER, rules);
+			} else {
+				gameState = new TwoPlayerGameState(orderPlayer, chaosPlayer, rules);
+			}
+			Symmetry symmetry = Symmetry.forSize(size);
+			for (int i = RULES_LEVELS; i < path.length; i++) {
+				int move = symmetry.fromImage(path[i], entry.symmetry);
+				int square = move >> 1;
+				gameState.replaySquare(square / size + 1, square % size + 1, (move & 1) == 0 ? Mark.X : Mark.O);
+			}
+		} catch (IllegalMoveException e) {
+			throw new IOException("Invalid saved game: "+id, e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid saved game: "+id, e);
+		}
+		ids.put(gameState, id);
+		return gameState;
+	}
+
+	/**
+	 * @return the number of the games in the store.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the numbers of all the games in the store, in ascending order.
+	 */
+	public synchronized long[] getIds() {
+		long[] result = new long[entries.size()];
+		int i = 0;
+		for (Long id : entries.keySet()) {
+			result[i++] = id;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of the nodes in the trie of the moves.
+	 */
+	public synchronized int getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * @return the length of the file of the store, in bytes.
+	 */
+	public synchronized long getBytes() {
+		return end;
+	}
+
+	/**
+	 * @return the number of the game saved or read through the store, or -1
+	 * if it has not been saved.
+	 */
+	public synchronized long getId(GameState gameState) {
+		Long id = ids.get(gameState);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Force the games saved so far to the disk.
+	 *
+	 * @throws IOException if the sync fails.
+	 */
+	public synchronized void sync() throws IOException {
+		raf.getFD().sync();
+	}
+
+	/**
+	 * Stop recording, force the games saved to the disk and close the store.
+	 *
+	 * @throws IOException if the sync fails.
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			stopRecording();
+			sync();
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Override
+	public synchronized GameState readState() throws IOException {
+		long last = -1;
+		long lastRecord = -1;
+		for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+			if (!entry.getValue().over && entry.getValue().record > lastRecord) {
+				last = entry.getKey();
+				lastRecord = entry.getValue().record;
+			}
+		}
+		return last < 0 ? null : load(last);
+	}
+
+	@Override
+	public synchronized void writeState(GameState gameState) throws IOException {
+		Long id = ids.get(gameState);
+		save(id == null ? nextId++ : id, gameState, null);
+		sync();
+	}
+
+	/**
+	 * Save the game, then save it again after every mark put on its board.
+	 * The game saved again only adds the record of the last move, and the
+	 * records are forced to the disk when the recording stops.
+	 */
+	@Override
+	public synchronized void startRecording(GameState gameState) throws IOException {
+		stopRecording();
+		Long id = ids.get(gameState);
+		recordedId = id == null ? nextId++ : id;
+		if (gameState instanceof OnePlayerGameState) {
+			int size = gameState.getRules().getBoardSize();
+			List<Move> moves = ((OnePlayerGameState) gameState).getMoves();
+			recordedMoves = new int[gameState.getRules().getSquares()];
+			for (Move move : moves) {
+				recordedMoves[recordedCount++] = toMove(size, move.getX(), move.getY(), move.getMark());
+			}
+		} else {
+			int[] marks = marks(gameState);
+			recordedMoves = Arrays.copyOf(marks, gameState.getRules().getSquares());
+			recordedCount = marks.length;
+		}
+		write(recordedId, gameState, recordedMoves, recordedCount, true);
+		sync();
+		recordedGame = gameState;
+		gameState.setBoardListener(recorder);
+	}
+
+	@Override
+	public synchronized void stopRecording() throws IOException {
+		if (recordedGame != null) {
+			recordedGame.setBoardListener(null);
+			recordedGame = null;
+			recordedMoves = null;
+			recordedCount = 0;
+			sync();
+		}
+	}
+
+	/**
+	 * Save the game being recorded with the mark just put on its board or
+	 * wiped out from it, the moves are undone in reverse order.
+	 */
+	private synchronized void record(int x, int y, Mark mark) {
+		if (recordedGame == null) {
+			return;
+		}
+		int size = recordedGame.getRules().getBoardSize();
+		if (mark == Mark.SPACE) {
+			recordedCount--;
+		} else {
+			recordedMoves[recordedCount++] = toMove(size, x, y, mark);
+		}
+		try {
+			write(recordedId, recordedGame, recordedMoves, recordedCount, true);
+		} catch (IOException e) {
+			// keep playing, the game can still be saved by the player
+			e.printStackTrace();
+			try {
+				stopRecording();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * @return the node of the trie under the parent with the element, or -1
+	 * if there is none and it is not to be added.
+	 */
+	private int child(int parent, int element, boolean add) {
+		long key = ((long) parent << 16) | element;
+		int mask = childKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (childKeys[slot] != -1) {
+			if (childKeys[slot] == key) {
+				return children[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (!add) {
+			return -1;
+		}
+		if (nodes == parents.length) {
+			parents = Arrays.copyOf(parents, nodes * 2);
+			elements = Arrays.copyOf(elements, nodes * 2);
+		}
+		int node = nodes++;
+		parents[node] = parent;
+		elements[node] = element;
+		childKeys[slot] = key;
+		children[slot] = node;
+		// keep the table at most half full
+		if (nodes * 2 > childKeys.length) {
+			rehash();
+		}
+		return node;
+	}
+
+	private void rehash() {
+		long[] oldKeys = childKeys;
+		int[] oldChildren = children;
+		childKeys = new long[oldKeys.length * 2];
+		children = new int[oldKeys.length * 2];
+		Arrays.fill(childKeys, -1);
+		int mask = childKeys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != -1) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (childKeys[slot] != -1) {
+					slot = (slot + 1) & mask;
+				}
+				childKeys[slot] = oldKeys[i];
+				children[slot] = oldChildren[i];
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return the elements of the nodes from the root down to the node.
+	 */
+	private int[] path(int node) {
+		int depth = 0;
+		for (int n = node; n != ROOT; n = parents[n]) {
+			depth++;
+		}
+		int[] path = new int[depth];
+		for (int n = node; n != ROOT; n = parents[n]) {
+			path[--depth] = elements[n];
+		}
+		return path;
+	}
+
+	/**
+	 * Write the elements of the image from the depth on, the board of the
+	 * image before them is made by the elements before the depth.
+	 */
+	private static void encode(int[] image, int depth, BitOutput out) {
+		boolean[] marked = depth > 0 ? new boolean[image[0] * image[0]] : null;
+		for (int i = RULES_LEVELS; i < depth; i++) {
+			marked[image[i] >> 1] = true;
+		}
+		for (int i = depth; i < image.length; i++) {
+			if (i < RULES_LEVELS) {
+				out.write(image[i], RULES_BITS);
+				if (i == 0) {
+					marked = new boolean[image[0] * image[0]];
+				}
+				continue;
+			}
+			int square = image[i] >> 1;
+			int index = 0;
+			for (int s = 0; s < square; s++) {
+				if (!marked[s]) {
+					index++;
+				}
+			}
+			out.write(index, bits(marked.length - (i - RULES_LEVELS)));
+			out.write(image[i] & 1, 1);
+			marked[square] = true;
+		}
+	}
+
+	/**
+	 * Read the elements after the path into the suffix.
+	 */
+	private static void decode(int[] path, int[] suffix, BitInput in) throws IOException {
+		int size = path.length > 0 ? path[0] : 0;
+		boolean[] marked = path.length > 0 ? new boolean[size * size] : null;
+		for (int i = RULES_LEVELS; i < path.length; i++) {
+			marked[path[i] >> 1] = true;
+		}
+		for (int j = 0; j < suffix.length; j++) {
+			int i = path.length + j;
+			if (i < RULES_LEVELS) {
+				suffix[j] = in.read(RULES_BITS);
+				if (i == 0) {
+					size = suffix[j];
+					if (size < 1 || size > Rules.MAX_BOARD_SIZE) {
+						throw new IOException("Invalid board size: "+size);
+					}
+					marked = new boolean[size * size];
+				}
+				continue;
+			}
+			int empty = marked.length - (i - RULES_LEVELS);
+			if (empty <= 0) {
+				throw new IOException("Too many moves");
+			}
+			int index = in.read(bits(empty));
+			int o = in.read(1);
+			int square = 0;
+			while (square < marked.length && (marked[square] || index-- > 0)) {
+				square++;
+			}
+			if (square == marked.length) {
+				throw new IOException("Invalid move");
+			}
+			marked[square] = true;
+			suffix[j] = (square << 1) | o;
+		}
+	}
+
+	/**
+	 * Put the smallest symmetric image of the moves after the rules levels of
+	 * the image.
+	 *
+	 * @param ordered false to sort the moves of every image, when the moves
+	 * are the marks of the position rather than the moves of the game.
+	 * @return the symmetry that takes the moves to the image.
+	 */
+	private static int canonical(int size, int[] moves, int count, boolean ordered, int[] image) {
+		Symmetry symmetry = Symmetry.forSize(size);
+		int[] candidate = new int[count];
+		int best = -1;
+		for (int s = 0; s < Symmetry.COUNT; s++) {
+			for (int i = 0; i < count; i++) {
+				candidate[i] = symmetry.toImage(moves[i], s);
+			}
+			if (!ordered) {
+				Arrays.sort(candidate);
+			}
+			if (best < 0 || compare(candidate, image, RULES_LEVELS, count) < 0) {
+				System.arraycopy(candidate, 0, image, RULES_LEVELS, count);
+				best = s;
+			}
+		}
+		return best;
+	}
+
+	private static int compare(int[] candidate, int[] image, int offset, int count) {
+		for (int i = 0; i < count; i++) {
+			if (candidate[i] != image[offset + i]) {
+				return candidate[i] < image[offset + i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the marks on the board of the game in the order of the squares.
+	 */
+	private static int[] marks(GameState gameState) {
+		int size = gameState.getRules().getBoardSize();
+		int[] marks = new int[gameState.getRules().getSquares()];
+		int count = 0;
+		for (int x = 1; x <= size; x++) {
+			for (int y = 1; y <= size; y++) {
+				Mark mark = gameState.getBoardMark(x, y);
+				if (mark != Mark.SPACE) {
+					marks[count++] = toMove(size, x, y, mark);
+				}
+			}
+		}
+		return Arrays.copyOf(marks, count);
+	}
+
+	private static int toMove(int size, int x, int y, Mark mark) {
+		return (((x - 1) * size + y - 1) << 1) | (mark == Mark.O ? 1 : 0);
+	}
+
+	/**
+	 * @return the number of bits of the numbers from 0 to the count (exclusive).
+	 */
+	private static int bits(int count) {
+		return 32 - Integer.numberOfLeadingZeros(count - 1);
+	}
+
+	/**
+	 * @return the check byte of the bytes.
+	 */
+	private static byte check(byte[] data, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		return (byte) crc.getValue();
+	}
+
+	private static int readInt(byte[] data, int offset) {
+		return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+				| ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+	}
+
+	/**
+	 * @return the number read, or -1 if the bytes end before it does.
+	 */
+	/**
+	 * @throws EOFException if the record being read has run into the end of 
+	 * the data, there is always more of the record to read.
+	 */
+	private static void checkMore(byte[] data, int[] position) throws EOFException {
+		if (position[0] >= data.length) {
+			throw new EOFException("The record ends too soon");
+		}
+	}
+
+	private static int readVarint(byte[] data, int[] position) {
+		long value = readLongVarint(data, position);
+		return value > Integer.MAX_VALUE ? -1 : (int) value;
+	}
+
+	private static long readLongVarint(byte[] data, int[] position) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position[0] >= data.length) {
+				return -1;
+			}
+			int b = data[position[0]++] & 0xff;
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		return -1;
+	}
+
+	private static void writeVarint(DataOutputStream out, int value) throws IOException {
+		writeLongVarint(out, value);
+	}
+
+	private static void writeLongVarint(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * What is kept about a game: the node of its last move in the trie and
+	 * what it takes to turn the path to the node back into the game.
+	 */
+	private static class Entry {
+		private final SavedGameType type;
+		private final int orderPlayer;
+		private final int chaosPlayer;
+		private final int symmetry;
+		private final int leaf;
+		private final boolean over;
+		// the number of the record of the game in the file
+		private final long record;
+
+		Entry(SavedGameType type, int orderPlayer, int chaosPlayer, int symmetry, int leaf, boolean over,
+				long record) {
+			this.type = type;
+			this.orderPlayer = orderPlayer;
+			this.chaosPlayer = chaosPlayer;
+			this.symmetry = symmetry;
+			this.leaf = leaf;
+			this.over = over;
+			this.record = record;
+		}
+	}
+
+	/**
+	 * Writes the numbers in as many bits as they need, the highest bits
+	 * first, the last byte filled up with zeros.
+	 */
+	private static class BitOutput {
+		private final DataOutputStream out;
+		private int buffer;
+		private int bits;
+
+		BitOutput(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void write(int value, int count) {
+			for (int i = count - 1; i >= 0; i--) {
+				buffer = (buffer << 1) | ((value >>> i) & 1);
+				if (++bits == 8) {
+					writeBuffer();
+				}
+			}
+		}
+
+		/**
+		 * Fill up the last byte.
+		 */
+		void flush() {
+			if (bits > 0) {
+				buffer <<= 8 - bits;
+				writeBuffer();
+			}
+		}
+
+		private void writeBuffer() {
+			try {
+				out.writeByte(buffer);
+			} catch (IOException e) {
+				// never thrown by the stream of the bytes in memory
+				throw new IllegalStateException(e);
+			}
+			buffer = 0;
+			bits = 0;
+		}
+	}
+
+	/**
+	 * Reads the numbers written by the bit output.
+	 */
+	private static class BitInput {
+		private final byte[] data;
+		private final int end;
+		private int position;
+		private int bit = 8;
+
+		BitInput(byte[] data, int position, int end) {
+			this.data = data;
+			this.position = position - 1;
+			this.end = end;
+		}
+
+		/**
+		 * @return the offset of the byte after the last byte read from.
+		 */
+		int next() {
+			return position + 1;
+		}
+
+		int read(int count) throws IOException {
+			int value = 0;
+			for (int i = 0; i < count; i++) {
+				if (bit == 8) {
+					if (++position >= end) {
+						throw new EOFException("The record ends too soon");
+					}
+					bit = 0;
+				}
+				value = (value << 1) | ((data[position] >> (7 - bit++)) & 1);
+			}
+			return value;
+		}
+	}
+}
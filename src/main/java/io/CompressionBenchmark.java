@@ -0,0 +1,155 @@
+package io;
+
+import models.BaseGameState;
+import models.GameState;
+import models.IllegalMoveException;
+import models.Mark;
+import models.OnePlayerGameState;
+import models.PlayerRole;
+import models.Rules;
+import models.Symmetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Saves games of the standard game to the compressed store in the file, then
+ * opens the store again, reads all the games back and checks them, and prints
+ * the bytes per game against the binary saved game and how fast the games are
+ * decoded. Every game starts with one of the openings, turned, mirrored and
+ * with the marks swapped at random, and goes on with random moves; with no
+ * openings the games are random from the first move.
+ * <p>
+ * Usage: <code>CompressionBenchmark file [games [openings [opening moves [seed]]]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class CompressionBenchmark {
+
+	public static void main(String[] args) throws IOException, IllegalMoveException {
+		File file = new File(args[0]);
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int openings = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int openingMoves = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+		Rules rules = Rules.STANDARD;
+		Random random = new Random(seed);
+		int[][] book = new int[openings][];
+		for (int i = 0; i < openings; i++) {
+			book[i] = randomMoves(rules, random, openingMoves);
+		}
+
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Failed to delete "+file);
+		}
+		CompressedGameStore store = CompressedGameStore.open(file);
+		long savedBytes = 0;
+		long moves = 0;
+		long hashes = 0;
+		long start = System.nanoTime();
+		try {
+			for (int game = 0; game < games; game++) {
+				OnePlayerGameState gameState = playGame(rules, random, openings == 0 ? null
+						: book[random.nextInt(openings)]);
+				savedBytes += BaseGameState.writeGame(gameState).length;
+				moves += gameState.getMoves().size();
+				hashes += gameState.getHash();
+				store.save(gameState);
+			}
+			store.sync();
+		} finally {
+			store.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		System.out.println(String.format("saved %d games in %.2f seconds, %.0f games per second",
+				games, seconds, games / seconds));
+
+		start = System.nanoTime();
+		store = CompressedGameStore.open(file);
+		double openSeconds = (System.nanoTime() - start) / 1000000000.0;
+		long loadedMoves = 0;
+		long loadedHashes = 0;
+		try {
+			start = System.nanoTime();
+			for (long id : store.getIds()) {
+				GameState gameState = store.load(id);
+				loadedMoves += ((OnePlayerGameState) gameState).getMoves().size();
+				loadedHashes += gameState.getHash();
+			}
+			seconds = (System.nanoTime() - start) / 1000000000.0;
+			long bytes = store.getBytes();
+			System.out.println(String.format("opened the store of %d games in %.2f seconds, %.0f games per second",
+					store.size(), openSeconds, store.size() / openSeconds));
+			System.out.println(String.format("read %d games in %.2f seconds, %.0f games per second, %.0f moves per second",
+					store.size(), seconds, store.size() / seconds, loadedMoves / seconds));
+			System.out.println(String.format("%.1f moves per game, %d nodes in the trie", (double) moves / games,
+					store.getNodeCount()));
+			System.out.println(String.format("%.1f bytes per binary saved game, %.1f bytes per stored game, "
+					+"compression ratio %.1f", (double) savedBytes / games, (double) bytes / games,
+					(double) savedBytes / bytes));
+			boolean passed = store.size() == games && loadedMoves == moves && loadedHashes == hashes;
+			System.out.println(passed ? "PASSED" : "FAILED");
+			if (!passed) {
+				System.exit(1);
+			}
+		} finally {
+			store.close();
+		}
+	}
+
+	/**
+	 * @return the game of the opening in a random image, then random moves
+	 * until the game is over.
+	 */
+	private static OnePlayerGameState playGame(Rules rules, Random random, int[] opening)
+			throws IllegalMoveException {
+		OnePlayerGameState gameState = OnePlayerGameState.restore("Player", PlayerRole.ORDER, rules);
+		int size = rules.getBoardSize();
+		if (opening != null) {
+			Symmetry symmetry = Symmetry.forSize(size);
+			int image = random.nextInt(Symmetry.COUNT);
+			for (int move : opening) {
+				replay(gameState, size, symmetry.toImage(move, image));
+			}
+		}
+		while (!gameState.isOver()) {
+			int square = random.nextInt(size * size);
+			if (gameState.getBoardMark(square / size + 1, square % size + 1) == Mark.SPACE) {
+				replay(gameState, size, (square << 1) | (random.nextBoolean() ? 1 : 0));
+			}
+		}
+		return gameState;
+	}
+
+	/**
+	 * @return the random moves on different squares, the game is not over
+	 * after them unless there are not enough squares.
+	 */
+	private static int[] randomMoves(Rules rules, Random random, int count) throws IllegalMoveException {
+		int size = rules.getBoardSize();
+		int[] moves = new int[Math.min(count, size * size)];
+		OnePlayerGameState gameState = OnePlayerGameState.restore("Player", PlayerRole.ORDER, rules);
+		for (int i = 0; i < moves.length; i++) {
+			int square = random.nextInt(size * size);
+			if (gameState.getBoardMark(square / size + 1, square % size + 1) == Mark.SPACE) {
+				moves[i] = (square << 1) | (random.nextBoolean() ? 1 : 0);
+				replay(gameState, size, moves[i]);
+				if (gameState.isOver()) {
+					// take the move back and try another one
+					gameState.replaySquare(square / size + 1, square % size + 1, Mark.SPACE);
+					i--;
+				}
+			} else {
+				i--;
+			}
+		}
+		return moves;
+	}
+
+	private static void replay(GameState gameState, int size, int move) throws IllegalMoveException {
+		int square = move >> 1;
+		gameState.replaySquare(square / size + 1, square % size + 1, (move & 1) == 0 ? Mark.X : Mark.O);
+	}
+}
@@ -2,34 +2,49 @@ package io;
 
 import application.AchievementManager;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.Scanner;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class FileAchievemensReaderWriter implements AchievementsReaderWriter {
 
 	private static final String USER_HOME_DIRECTORY = System.getProperty("user.home")+System.getProperty("file.separator"); 
 	private static final String SAVED_ACHIEVEMENTS_FILENAME = USER_HOME_DIRECTORY+"order-and-chaos.achievements";
 
+	/**
+	 * Read the binary achievements, or the achievements saved as text by the
+	 * earlier versions, which are written in the binary format the next time.
+	 */
 	@Override
 	public AchievementManager read() throws IOException {
-		Scanner scanner = null;
 		AchievementManager achievementManager = null;
-		try {
-			File file = new File(SAVED_ACHIEVEMENTS_FILENAME);
-			if (file.exists()) {
-				FileReader fileReader = new FileReader(file);
-				scanner = new Scanner(fileReader);
-				scanner.useDelimiter("[,\\n]"); //regular expression -comma and newline
-				achievementManager = AchievementManager.readFrom(scanner);
-			}
-		} finally {
-			if (scanner != null) {
-				scanner.close();
+		File file = new File(SAVED_ACHIEVEMENTS_FILENAME);
+		if (file.exists()) {
+			BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+			try {
+				in.mark(4);
+				DataInputStream data = new DataInputStream(in);
+				if (file.length() >= 4 && data.readInt() == AchievementManager.ACHIEVEMENTS_MAGIC) {
+					achievementManager = AchievementManager.readFrom((DataInput) data);
+				} else {
+					in.reset();
+					achievementManager = AchievementManager.readFrom(
+							new BufferedReader(new InputStreamReader(in, Charset.defaultCharset())));
+				}
+			} finally {
+				in.close();
 			}
 		}
 		return achievementManager;
@@ -37,20 +52,33 @@ public class FileAchievemensReaderWriter implements AchievementsReaderWriter {
 
 	@Override
 	public void write(AchievementManager achiementManager) throws IOException {
-		PrintWriter writer = null;
+		// take the achievements first, so they do not wait for the disk
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(content);
+		achiementManager.writeTo(data);
+		data.flush();
+		
+		// then replace the file at once, so it is never left half written
+		File file = new File(SAVED_ACHIEVEMENTS_FILENAME);
+		File temp = new File(SAVED_ACHIEVEMENTS_FILENAME+".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
 		try {
-			FileWriter fw = new FileWriter(SAVED_ACHIEVEMENTS_FILENAME);
-			BufferedWriter br = new BufferedWriter(fw);
-			writer = new PrintWriter(br);
-			
-			achiementManager.writeTo(writer);
-			
+			content.writeTo(out);
+			out.getFD().sync();
 		} finally {
-			if (writer != null) {
-				writer.flush();
-				writer.close();
-			}
+			out.close();
 		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public void flush() {
+		// every write is in the file when it returns
 	}
 
 }
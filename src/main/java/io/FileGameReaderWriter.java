@@ -1,64 +1,212 @@
 package io;
 
 import models.BaseGameState;
+import models.BoardListener;
 import models.GameState;
+import models.Mark;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * An implementation of GameStateReaderWriter that reads and writes the state of the game
- * from and to a file in current user home directory.
- * 
+ * from and to a file in current user home directory. The game is saved in the
+ * binary format. A game saved as text by the earlier versions is still read
+ * and saved again in the binary format.
+ * <p>
+ * While a game is recorded, every mark put on its board is appended to the
+ * journal next to the saved game, which costs the same however long the game
+ * is. Once the journal has grown long, the saved game with the journal played
+ * back on it is saved again and the journal starts over. The saved game is written to a temporary file that then
+ * replaces it, so a crash leaves either the old or the new saved game, and
+ * reading the game plays back the journal that follows it.
+ *
  * @author Anastasia Radchenko
  */
 public class FileGameReaderWriter implements GameReaderWriter {
 
-	private static final String USER_HOME_DIRECTORY = System.getProperty("user.home")+System.getProperty("file.separator"); 
+	private static final String USER_HOME_DIRECTORY = System.getProperty("user.home")+System.getProperty("file.separator");
 	private static final String SAVED_GAME_FILENAME = USER_HOME_DIRECTORY+"order-and-chaos.saved";
+	private static final String JOURNAL_FILENAME = USER_HOME_DIRECTORY+"order-and-chaos.journal";
+
+	// the number of records that makes the game to be saved again
+	private static final int COMPACT_RECORDS = 64;
+
+	private final File savedGameFile;
+	private final File journalFile;
+
+	// the game being recorded and its journal
+	private GameState recordedGame;
+	private GameJournal journal;
+	private byte[] savedGame;
+
+	// syncs the journals of all the games, started when the first game is recorded
+	private static class SyncExecutorHolder {
+		static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "journal-sync");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	private final BoardListener recorder = new BoardListener() {
+		@Override
+		public void squareMarked(int x, int y, Mark mark) {
+			record(x, y, mark);
+		}
+	};
+
+	public FileGameReaderWriter() {
+		this(new File(SAVED_GAME_FILENAME), new File(JOURNAL_FILENAME));
+	}
+
+	/**
+	 * @param savedGameFile the file of the saved game.
+	 * @param journalFile the file of the journal of the moves since the game was saved.
+	 */
+	public FileGameReaderWriter(File savedGameFile, File journalFile) {
+		this.savedGameFile = savedGameFile;
+		this.journalFile = journalFile;
+	}
 
 	@Override
 	public GameState readState() throws IOException {
 		GameState gameState = null;
-		Scanner scanner = null;
-		try {
-			File file = new File(SAVED_GAME_FILENAME);
-			if (file.exists()) {
-				FileReader fileReader = new FileReader(file);
-				scanner = new Scanner(fileReader);
-				scanner.useDelimiter("[,\\n]");
-				gameState = BaseGameState.readGame(scanner);
-			}
-		} finally {
-			if (scanner != null) {
-				scanner.close();
+		if (savedGameFile.exists()) {
+			byte[] data = Files.readAllBytes(savedGameFile.toPath());
+			if (BaseGameState.isBinaryGame(data)) {
+				gameState = BaseGameState.readGame(data);
+				GameJournal.replay(journalFile, checksum(data), gameState);
+			} else {
+				gameState = readTextState(data);
+				// migrate the game to the binary format
+				writeState(gameState);
 			}
 		}
 		return gameState;
 	}
 
+	/**
+	 * Read the game saved as text by the earlier versions.
+	 */
+	private GameState readTextState(byte[] data) throws IOException {
+		Scanner scanner = new Scanner(new StringReader(new String(data, Charset.defaultCharset())));
+		try {
+			scanner.useDelimiter("[,\\n]");
+			return BaseGameState.readGame(scanner);
+		} finally {
+			scanner.close();
+		}
+	}
+
 	@Override
-	public void writeState(GameState gameState) throws IOException {
-		PrintWriter writer = null;
+	public synchronized void writeState(GameState gameState) throws IOException {
+		int checksum = save(gameState);
+		// the moves in the journal are in the saved game now
+		if (journal != null && gameState == recordedGame) {
+			journal.reset(checksum);
+		} else if (journalFile.exists() && !journalFile.delete()) {
+			throw new IOException("Failed to delete "+journalFile);
+		}
+	}
+
+	/**
+	 * Write the saved game to the temporary file that then replaces it.
+	 *
+	 * @return the checksum of the saved game.
+	 */
+	private int save(GameState gameState) throws IOException {
+		byte[] data = BaseGameState.writeGame(gameState);
+		savedGame = data;
+		File temp = new File(savedGameFile.getPath()+".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
 		try {
-			FileWriter fw = new FileWriter(SAVED_GAME_FILENAME);
-			BufferedWriter br = new BufferedWriter(fw);
-			writer = new PrintWriter(br);
-			
-			gameState.writeTo(writer);
-			
+			raf.setLength(0);
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining()) {
+				raf.getChannel().write(buffer);
+			}
+			raf.getChannel().force(true);
 		} finally {
-			if (writer != null) {
-				writer.flush();
-				writer.close();
+			raf.close();
+		}
+		try {
+			Files.move(temp.toPath(), savedGameFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), savedGameFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return checksum(data);
+	}
+
+	@Override
+	public synchronized void startRecording(GameState gameState) throws IOException {
+		stopRecording();
+		int checksum = save(gameState);
+		journal = new GameJournal(journalFile, checksum, SyncExecutorHolder.EXECUTOR);
+		recordedGame = gameState;
+		gameState.setBoardListener(recorder);
+	}
+
+	@Override
+	public synchronized void stopRecording() throws IOException {
+		if (journal != null) {
+			recordedGame.setBoardListener(null);
+			recordedGame = null;
+			GameJournal closed = journal;
+			journal = null;
+			closed.close();
+		}
+	}
+
+	/**
+	 * Append the mark to the journal, once the journal has grown long save 
+	 * the game again first. The mark is put on the board in the middle of a 
+	 * move, so the game saved is the last saved game with the journal played 
+	 * back on it rather than the game being played.
+	 */
+	private synchronized void record(int x, int y, Mark mark) {
+		if (journal == null) {
+			return;
+		}
+		try {
+			if (journal.size() >= COMPACT_RECORDS) {
+				GameState gameState = BaseGameState.readGame(savedGame);
+				journal.replay(gameState);
+				journal.reset(save(gameState));
+			}
+			journal.append(x, y, mark);
+		} catch (IOException e) {
+			// keep playing, the game can still be saved by the player
+			e.printStackTrace();
+			try {
+				stopRecording();
+			} catch (IOException ignored) {
 			}
 		}
 	}
 
-	
+	/**
+	 * @return the checksum at the end of the binary saved game.
+	 */
+	private static int checksum(byte[] data) {
+		int length = data.length - 4;
+		return ((data[length] & 0xff) << 24) | ((data[length + 1] & 0xff) << 16)
+				| ((data[length + 2] & 0xff) << 8) | (data[length + 3] & 0xff);
+	}
 }
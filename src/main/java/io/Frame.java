@@ -0,0 +1,522 @@
+package io;
+
+import models.BaseGameState;
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * A message of the network game. Every message goes over the connection as a
+ * frame: the length of the rest of the frame, the type of the message, the
+ * sequence number of the frame, then the message. The length and the sequence
+ * number take 7 bits of a byte each, so a move is a frame of 5 bytes, 6 bytes
+ * from the 128th frame on: the move is the square and the mark packed in two
+ * bytes.
+ * <p>
+ * Each side numbers the frames it sends on the connection from 0, a frame
+ * out of the sequence is an error. The players say hello first, the hello
+ * message carries the version of the protocol and, from the host or the
+ * server, the token of the session. The bytes at the end of a message that
+ * the reader does not know are skipped, so that newer versions can add to the
+ * messages.
+ * <p>
+ * A lost connection of a session is resumed on a new connection that starts
+ * with the resume messages: the token and the sequence number of the next
+ * frame the side expects, then the frames the other side has missed are sent
+ * again with their own sequence numbers. The resume messages are outside of
+ * the sequence.
+ * <p>
+ * A spectator says which game it wants to watch by the name of a player and
+ * gets the snapshot of the game, the game saved as it is, then the moves as
+ * they are made. The frames of the spectators of a game are the same for all
+ * of them: the sequence number of a frame is the number of the moves made
+ * with it, so the snapshot of the game before the first move is the frame 0
+ * and the first move after the snapshot follows it in the sequence.
+ *
+ * @author Anastasia Radchenko
+ */
+public class Frame {
+
+	/**
+	 * The version of the protocol
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The longest frame without its length
+	 */
+	public static final int MAX_LENGTH = 512;
+
+	/**
+	 * The longest frame with its length
+	 */
+	public static final int MAX_FRAME_BYTES = 2 + MAX_LENGTH;
+
+	/**
+	 * The longest name of a player said in the hello, in bytes, so that the
+	 * snapshot of a game of the largest board fits in a frame
+	 */
+	public static final int MAX_NAME_BYTES = 64;
+
+	/**
+	 * The types of the messages.
+	 */
+	public enum Type {
+		/**
+		 * The name of the player, the role and the rules of the game
+		 */
+		HELLO,
+		/**
+		 * The move of the player
+		 */
+		MOVE,
+		/**
+		 * The text the player has said
+		 */
+		CHAT,
+		/**
+		 * The player gives the game up
+		 */
+		RESIGN,
+		/**
+		 * The session token and the next frame expected, on a new connection
+		 */
+		RESUME,
+		/**
+		 * The name of a player of the game the spectator wants to watch
+		 */
+		WATCH,
+		/**
+		 * The game as it is when the spectator starts watching it
+		 */
+		SNAPSHOT
+	}
+
+	private static final Type[] TYPES = Type.values();
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final Type type;
+	private final int sequence;
+	// the name of the player saying hello, or the chat text
+	private final String text;
+	private final PlayerRole role;
+	private final Rules rules;
+	// the square of the move shifted left by one, the lowest bit is set for O,
+	// or the next frame expected by the side resuming
+	private final int move;
+	// the token of the session, 0 for none
+	private final long session;
+	// the game of the snapshot
+	private final GameState game;
+
+	private Frame(Type type, int sequence, String text, PlayerRole role, Rules rules, int move) {
+		this(type, sequence, text, role, rules, move, 0, null);
+	}
+
+	private Frame(Type type, int sequence, String text, PlayerRole role, Rules rules, int move, long session,
+			GameState game) {
+		this.type = type;
+		this.sequence = sequence;
+		this.text = text;
+		this.role = role;
+		this.rules = rules;
+		this.move = move;
+		this.session = session;
+		this.game = game;
+	}
+
+	/**
+	 * @param name the name of the player.
+	 * @param role the role of the player, null if the player takes any role.
+	 * @param rules the rules of the game.
+	 * @return the hello message of the player.
+	 */
+	public static Frame hello(String name, PlayerRole role, Rules rules) {
+		return hello(name, role, rules, 0);
+	}
+
+	/**
+	 * @param name the name of the player.
+	 * @param role the role of the player, null if the player takes any role.
+	 * @param rules the rules of the game.
+	 * @param session the token of the session issued, 0 for none.
+	 * @return the hello message of the player.
+	 */
+	public static Frame hello(String name, PlayerRole role, Rules rules, long session) {
+		return new Frame(Type.HELLO, -1, name, role, rules, 0, session, null);
+	}
+
+	/**
+	 * @param move the move, the mark is X or O.
+	 * @param boardSize the size of the board.
+	 * @return the message of the move.
+	 */
+	public static Frame move(Move move, int boardSize) {
+		if (move.getMark() == Mark.SPACE) {
+			throw new IllegalArgumentException("No mark to move");
+		}
+		int square = (move.getX() - 1) * boardSize + move.getY() - 1;
+		return new Frame(Type.MOVE, -1, null, null, null, (square << 1) | (move.getMark() == Mark.O ? 1 : 0));
+	}
+
+	public static Frame chat(String text) {
+		return new Frame(Type.CHAT, -1, text, null, null, 0);
+	}
+
+	public static Frame resign() {
+		return new Frame(Type.RESIGN, -1, null, null, null, 0);
+	}
+
+	/**
+	 * @param session the token of the session.
+	 * @param received the sequence number of the next frame expected.
+	 * @return the message that resumes the session on a new connection.
+	 */
+	public static Frame resume(long session, int received) {
+		return new Frame(Type.RESUME, -1, null, null, null, received, session, null);
+	}
+
+	/**
+	 * @param player the name of a player of the game to watch.
+	 * @return the message of the spectator.
+	 */
+	public static Frame watch(String player) {
+		return new Frame(Type.WATCH, -1, player, null, null, 0);
+	}
+
+	/**
+	 * @param game the game, it is saved when the message is encoded.
+	 * @return the message of the snapshot of the game.
+	 */
+	public static Frame snapshot(GameState game) {
+		return new Frame(Type.SNAPSHOT, -1, null, null, null, 0, 0, game);
+	}
+
+	/**
+	 * @return a new session token, never 0.
+	 */
+	public static long newSession() {
+		long session;
+		do {
+			session = RANDOM.nextLong();
+		} while (session == 0);
+		return session;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the sequence number of the frame read, -1 for the frame to send.
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the name of the player saying hello, or of the player of the
+	 * game to watch.
+	 */
+	public String getName() {
+		return text;
+	}
+
+	/**
+	 * @return the role of the player saying hello, null for any role.
+	 */
+	public PlayerRole getRole() {
+		return role;
+	}
+
+	public Rules getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return the token of the session, 0 for none.
+	 */
+	public long getSession() {
+		return session;
+	}
+
+	/**
+	 * @return the sequence number of the next frame expected by the side
+	 * resuming.
+	 */
+	public int getReceived() {
+		return move;
+	}
+
+	/**
+	 * @return the game of the snapshot.
+	 */
+	public GameState getGameState() {
+		return game;
+	}
+
+	/**
+	 * @return the text of the chat message.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @param player the player making the move.
+	 * @param boardSize the size of the board.
+	 * @return the move of the message.
+	 * @throws IOException if the square is not on the board.
+	 */
+	public Move getMove(String player, int boardSize) throws IOException {
+		int square = move >> 1;
+		if (square >= boardSize * boardSize) {
+			throw new IOException("The move is off the board: "+square);
+		}
+		return new Move(player, square / boardSize + 1, square % boardSize + 1, (move & 1) == 0 ? Mark.X : Mark.O);
+	}
+
+	/**
+	 * @param sequence the sequence number of the frame.
+	 * @return the frame of the message, to be written at once.
+	 * @throws IOException if the message is too long.
+	 */
+	public byte[] encode(int sequence) throws IOException {
+		if (type == Type.MOVE) {
+			// a move is relayed for every move made, it is put together by hand
+			byte[] frame = new byte[1 + 1 + 5 + 2];
+			frame[1] = (byte) (Type.MOVE.ordinal() + 1);
+			int end = putVarint(frame, 2, sequence);
+			frame[end++] = (byte) (move >>> 8);
+			frame[end++] = (byte) move;
+			frame[0] = (byte) (end - 1);
+			return Arrays.copyOf(frame, end);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+		bytes.write(type.ordinal() + 1);
+		writeVarint(bytes, sequence);
+		DataOutputStream out = new DataOutputStream(bytes);
+		switch (type) {
+			case HELLO:
+				out.writeByte(VERSION);
+				int start = bytes.size();
+				out.writeUTF(text);
+				if (bytes.size() - start - 2 > MAX_NAME_BYTES) {
+					throw new IOException("The name is longer than "+MAX_NAME_BYTES+" bytes: "+text);
+				}
+				out.writeByte(role == null ? 0 : role.ordinal() + 1);
+				out.writeByte(rules.getBoardSize());
+				out.writeByte(rules.getChainLength());
+				out.writeLong(session);
+				break;
+			case MOVE:
+				out.writeShort(move);
+				break;
+			case CHAT:
+				out.writeUTF(text);
+				break;
+			case RESUME:
+				out.writeLong(session);
+				out.writeInt(move);
+				break;
+			case WATCH:
+				out.writeByte(VERSION);
+				out.writeUTF(text);
+				break;
+			case SNAPSHOT:
+				out.write(BaseGameState.writeGame(game));
+				break;
+			default:
+				break;
+		}
+		int length = bytes.size();
+		if (length > MAX_LENGTH) {
+			throw new IOException("The message is too long: "+length+" bytes");
+		}
+		ByteArrayOutputStream frame = new ByteArrayOutputStream(length + 2);
+		writeVarint(frame, length);
+		bytes.writeTo(frame);
+		return frame.toByteArray();
+	}
+
+	/**
+	 * Read the frame from the input.
+	 *
+	 * @param in the input.
+	 * @return the frame read.
+	 * @throws IOException if the frame can not be read or is not valid.
+	 */
+	public static Frame read(DataInput in) throws IOException {
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.readUnsignedByte();
+			length |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+			if (shift > 0) {
+				throw new IOException("Not a frame of the game: too long");
+			}
+		}
+		checkLength(length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return decode(bytes);
+	}
+
+	/**
+	 * Read the frame at the position of the buffer if it is all there.
+	 *
+	 * @param in the buffer.
+	 * @return the frame read, or null if it is not all there, the position of
+	 * the buffer is left at the frame then.
+	 * @throws IOException if the frame is not valid.
+	 */
+	public static Frame read(ByteBuffer in) throws IOException {
+		int start = in.position();
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			if (!in.hasRemaining()) {
+				in.position(start);
+				return null;
+			}
+			int b = in.get() & 0xff;
+			length |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+			if (shift > 0) {
+				throw new IOException("Not a frame of the game: too long");
+			}
+		}
+		checkLength(length);
+		if (in.remaining() < length) {
+			in.position(start);
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return decode(bytes);
+	}
+
+	private static void checkLength(int length) throws IOException {
+		if (length < 2 || length > MAX_LENGTH) {
+			throw new IOException("Not a frame of the game: "+length+" bytes long");
+		}
+	}
+
+	private static Frame decode(byte[] bytes) throws IOException {
+		int code = bytes[0] & 0xff;
+		if (code < 1 || code > TYPES.length) {
+			throw new IOException("Unknown message type: "+code);
+		}
+		Type type = TYPES[code - 1];
+		int sequence = 0;
+		int offset = 1;
+		for (int shift = 0; ; shift += 7) {
+			if (offset == bytes.length || shift > 28) {
+				throw new IOException("Malformed sequence number");
+			}
+			int b = bytes[offset++] & 0xff;
+			sequence |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+		}
+		if (type == Type.MOVE) {
+			if (bytes.length - offset < 2) {
+				throw new IOException("The frame is cut short");
+			}
+			return new Frame(type, sequence, null, null, null, ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff));
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset));
+		try {
+			switch (type) {
+				case HELLO:
+					checkVersion(in.readUnsignedByte());
+					int available = in.available();
+					String name = in.readUTF();
+					if (available - in.available() - 2 > MAX_NAME_BYTES) {
+						throw new IOException("The name is longer than "+MAX_NAME_BYTES+" bytes");
+					}
+					int role = in.readUnsignedByte();
+					if (role > PlayerRole.values().length) {
+						throw new IOException("Unknown player role: "+role);
+					}
+					int boardSize = in.readUnsignedByte();
+					int chainLength = in.readUnsignedByte();
+					Rules rules;
+					try {
+						rules = new Rules(boardSize, chainLength);
+					} catch (IllegalArgumentException e) {
+						throw new IOException("Remote game variant is not supported: "+e.getMessage());
+					}
+					// the token came with the sessions, the hello of an older game has none
+					long session = in.available() >= 8 ? in.readLong() : 0;
+					return new Frame(type, sequence, name, role == 0 ? null : PlayerRole.values()[role - 1],
+							rules, 0, session, null);
+				case CHAT:
+					return new Frame(type, sequence, in.readUTF(), null, null, 0);
+				case RESUME:
+					long token = in.readLong();
+					int received = in.readInt();
+					if (received < 0) {
+						throw new IOException("Malformed resume message");
+					}
+					return new Frame(type, sequence, null, null, null, received, token, null);
+				case WATCH:
+					checkVersion(in.readUnsignedByte());
+					return new Frame(type, sequence, in.readUTF(), null, null, 0);
+				case SNAPSHOT:
+					// the saved game takes the rest of the frame
+					return new Frame(type, sequence, null, null, null, 0, 0,
+							BaseGameState.readGame(Arrays.copyOfRange(bytes, offset, bytes.length)));
+				default:
+					return new Frame(type, sequence, null, null, null, 0);
+			}
+		} catch (EOFException e) {
+			throw new IOException("The frame is cut short");
+		}
+	}
+
+	private static void checkVersion(int version) throws IOException {
+		if (version != VERSION) {
+			throw new IOException("The remote game speaks the protocol version "+version
+					+", this game speaks the version "+VERSION);
+		}
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * @return the offset after the value put.
+	 */
+	private static int putVarint(byte[] bytes, int offset, int value) {
+		while ((value & ~0x7f) != 0) {
+			bytes[offset++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		bytes[offset++] = (byte) value;
+		return offset;
+	}
+}
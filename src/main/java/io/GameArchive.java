@@ -0,0 +1,563 @@
+package io;
+
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.OnePlayerGameState;
+import models.PlayerRole;
+import models.Rules;
+import models.SavedGameType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append only archive of the finished games with all their moves, for the
+ * statistics and the training of the computer players. The games are written
+ * one after another into segment files of the same size, each mapped into
+ * memory once, so a game is appended without a system call and a scan of the
+ * archive reads the mapped pages at the speed of the disk.
+ * <p>
+ * A segment starts with its header: the magic number, the version and the
+ * number of the segment. Every game is a record of its length followed by
+ * the type of the game, the rules, the winner, the time it finished, the
+ * players and the moves, 2 bytes each: the square number times 2, plus 1 for
+ * O, then the CRC32 checksum of the record after its length. The length is
+ * written after the rest of the record, so a record cut short by a crash
+ * stays unseen, and a record whose length has reached the disk but not the
+ * rest fails its checksum. The record of length 0 ends the segment.
+ * <p>
+ * The index file keeps the position of every game in the order they were
+ * appended, so the game is looked up by its number. The segments are forced
+ * to the disk before the positions of their games are written to the index.
+ * When the archive is opened, the positions at the end of the index whose
+ * games are not valid are cut off, and the positions missing from the index
+ * after a crash are found again by scanning the segments after the last game
+ * in the index.
+ * <p>
+ * The archive is opened by one process at a time: the index file is locked
+ * while the archive is open, and the archive locked by another process fails
+ * to open.
+ *
+ * @author Anastasia Radchenko
+ */
+public class GameArchive {
+	public static final String DEFAULT_DIRECTORY = System.getProperty("user.home")+System.getProperty("file.separator")
+			+"order-and-chaos-archive";
+
+	static final int MAGIC = 0x4f434741; // "OCGA"
+	static final int VERSION = 2;
+
+	/**
+	 * The default size of the segment, in bytes
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+	private static final int HEADER_BYTES = 16;
+	// type, board size, chain length, winner, time, the lengths of 2 names, number of moves
+	private static final int FIXED_RECORD_BYTES = 4 + 8 + 2 + 2 + 2;
+	// the length before the record and the checksum after it
+	private static final int FRAMING_BYTES = 4 + 4;
+	private static final String INDEX_FILENAME = "index";
+	// positions written to the index at once
+	private static final int INDEX_BATCH = 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File directory;
+	private final int segmentSize;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private final RandomAccessFile indexFile;
+	// the position of every game: the segment number in the high half, the offset in the low half
+	private long[] positions = new long[1024];
+	private int size;
+	private int indexed;
+	// the offset in the last segment to append the next game at
+	private int end;
+	// the bytes of the record checked, reused
+	private byte[] record = new byte[256];
+
+	private GameArchive(File directory, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		indexFile = new RandomAccessFile(new File(directory, INDEX_FILENAME), "rw");
+		// the lock is held until the index file is closed
+		FileLock lock = null;
+		try {
+			lock = indexFile.getChannel().tryLock();
+		} catch (OverlappingFileLockException e) {
+			// locked by this process already
+		} finally {
+			if (lock == null) {
+				indexFile.close();
+			}
+		}
+		if (lock == null) {
+			throw new IOException("The game archive is in use: "+directory);
+		}
+	}
+
+	/**
+	 * Open the archive in the directory, create it if there is none.
+	 *
+	 * @param directory the directory of the archive.
+	 * @param segmentSize the size of the new segments, in bytes.
+	 * @return the archive opened.
+	 * @throws IOException if the archive can not be opened, it is corrupt or
+	 * it is open in another process.
+	 */
+	public static GameArchive open(File directory, int segmentSize) throws IOException {
+		if (segmentSize <= HEADER_BYTES + FIXED_RECORD_BYTES + FRAMING_BYTES) {
+			throw new IllegalArgumentException("Segment size is too small: "+segmentSize);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create "+directory);
+		}
+		GameArchive archive = new GameArchive(directory, segmentSize);
+		try {
+			archive.mapSegments();
+			archive.readIndex();
+		} catch (IOException e) {
+			archive.close();
+			throw e;
+		}
+		return archive;
+	}
+
+	/**
+	 * @return the archive in the user home directory.
+	 * @throws IOException if the archive can not be opened.
+	 */
+	public static GameArchive open() throws IOException {
+		return open(new File(DEFAULT_DIRECTORY), DEFAULT_SEGMENT_SIZE);
+	}
+
+	private File segmentFile(int segment) {
+		return new File(directory, String.format("games-%05d.segment", segment));
+	}
+
+	private void mapSegments() throws IOException {
+		for (int segment = 0; segmentFile(segment).exists(); segment++) {
+			MappedByteBuffer buffer = map(segmentFile(segment), -1);
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != segment) {
+				throw new IOException("Not a game archive segment: "+segmentFile(segment));
+			}
+			segments.add(buffer);
+		}
+		if (segments.isEmpty()) {
+			addSegment();
+		}
+	}
+
+	/**
+	 * Map the segment file, create it if the size is given.
+	 */
+	private static MappedByteBuffer map(File file, int size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (size >= 0) {
+				raf.setLength(size);
+			}
+			// the mapping stays valid after the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void addSegment() throws IOException {
+		int segment = segments.size();
+		MappedByteBuffer buffer = map(segmentFile(segment), segmentSize);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, segment);
+		segments.add(buffer);
+		end = HEADER_BYTES;
+	}
+
+	/**
+	 * Read the positions of the games from the index, cut off the positions
+	 * of the games that have not reached the disk whole, then find the games
+	 * appended after the last of them.
+	 */
+	private void readIndex() throws IOException {
+		long length = indexFile.length() / 8;
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IOException("The game archive index is corrupt");
+		}
+		positions = new long[Math.max(1024, (int) length + 1024)];
+		ByteBuffer buffer = ByteBuffer.allocate(8 * INDEX_BATCH);
+		FileChannel channel = indexFile.getChannel();
+		channel.position(0);
+		while (size < length) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), (length - size) * 8));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("The game archive index is corrupt");
+				}
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				positions[size++] = buffer.getLong();
+			}
+		}
+		// the index may have reached the disk before the games at its end
+		while (size > 0 && recordLength(positions[size - 1]) < 0) {
+			size--;
+		}
+		if (size < length) {
+			indexFile.setLength(8L * size);
+		}
+		indexed = size;
+		// continue after the last game in the index, or from the first segment
+		int segment = size == 0 ? 0 : (int) (positions[size - 1] >>> 32);
+		int offset = size == 0 ? HEADER_BYTES : (int) positions[size - 1];
+		if (size > 0) {
+			offset += FRAMING_BYTES + recordLength(positions[size - 1]);
+		}
+		while (true) {
+			int recordLength = recordLength(((long) segment << 32) | offset);
+			if (recordLength >= 0) {
+				add(segment, offset);
+				offset += FRAMING_BYTES + recordLength;
+			} else if (segment + 1 < segments.size()) {
+				segment++;
+				offset = HEADER_BYTES;
+			} else {
+				break;
+			}
+		}
+		// append to the last segment
+		end = segment == segments.size() - 1 ? offset : HEADER_BYTES;
+		flushIndex();
+	}
+
+	private int segmentSize(int segment) {
+		return segments.get(segment).capacity();
+	}
+
+	/**
+	 * @param position the position of the game.
+	 * @return the length of the record of the game, or -1 if there is no
+	 * valid record at the position.
+	 */
+	private int recordLength(long position) {
+		int segment = (int) (position >>> 32);
+		int offset = (int) position;
+		if (segment < 0 || segment >= segments.size() || offset < HEADER_BYTES
+				|| offset + FRAMING_BYTES > segmentSize(segment)) {
+			return -1;
+		}
+		ByteBuffer buffer = segments.get(segment).duplicate();
+		int length = buffer.getInt(offset);
+		if (length < FIXED_RECORD_BYTES || length > segmentSize(segment) - FRAMING_BYTES - offset) {
+			return -1;
+		}
+		if (record.length < length) {
+			record = new byte[Math.max(length, 2 * record.length)];
+		}
+		buffer.position(offset + 4);
+		buffer.get(record, 0, length);
+		return buffer.getInt() == checksum(record, length) ? length : -1;
+	}
+
+	private static int checksum(byte[] record, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, length);
+		return (int) crc.getValue();
+	}
+
+	private void add(int segment, int offset) {
+		if (size == positions.length) {
+			positions = Arrays.copyOf(positions, positions.length * 2);
+		}
+		positions[size++] = ((long) segment << 32) | offset;
+	}
+
+	/**
+	 * Force the segments of the games appended since the last flush to the
+	 * disk, then write their positions to the index file.
+	 */
+	private void flushIndex() throws IOException {
+		if (indexed == size) {
+			return;
+		}
+		for (int segment = (int) (positions[indexed] >>> 32); segment < segments.size(); segment++) {
+			segments.get(segment).force();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(8 * (size - indexed));
+		for (int i = indexed; i < size; i++) {
+			buffer.putLong(positions[i]);
+		}
+		buffer.flip();
+		FileChannel channel = indexFile.getChannel();
+		long position = 8L * indexed;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		indexed = size;
+	}
+
+	/**
+	 * Append the finished one-player game with its moves.
+	 *
+	 * @param gameState the finished game.
+	 * @return the number of the game in the archive.
+	 * @throws IOException if the game can not be appended.
+	 */
+	public long append(OnePlayerGameState gameState) throws IOException {
+		return append(gameState, gameState.getMoves());
+	}
+
+	/**
+	 * Append the finished game with its moves.
+	 *
+	 * @param gameState the finished game.
+	 * @param moves the moves made in the game, the earliest first.
+	 * @return the number of the game in the archive.
+	 * @throws IOException if the game can not be appended.
+	 */
+	public synchronized long append(GameState gameState, List<Move> moves) throws IOException {
+		byte[] order = gameState.getOrderPlayer().getBytes(UTF8);
+		byte[] chaos = gameState.getChaosPlayer().getBytes(UTF8);
+		if (order.length > 0xffff || chaos.length > 0xffff || moves.size() > 0xffff) {
+			throw new IOException("The game is too large to archive");
+		}
+		int length = FIXED_RECORD_BYTES + order.length + chaos.length + 2 * moves.size();
+		if (HEADER_BYTES + FRAMING_BYTES + length > segmentSize) {
+			throw new IOException("The game is too large to archive");
+		}
+		if (end + FRAMING_BYTES + length > segmentSize(segments.size() - 1)) {
+			addSegment();
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[length]);
+		Rules rules = gameState.getRules();
+		PlayerRole winner = gameState.getWinnerRole();
+		buffer.put((byte) (gameState instanceof OnePlayerGameState ? SavedGameType.ONE_PLAYER
+				: SavedGameType.TWO_PLAYER).ordinal());
+		buffer.put((byte) rules.getBoardSize());
+		buffer.put((byte) rules.getChainLength());
+		buffer.put((byte) (winner == PlayerRole.ORDER ? 1 : winner == PlayerRole.CHAOS ? 2 : 0));
+		buffer.putLong(System.currentTimeMillis());
+		buffer.putShort((short) order.length);
+		buffer.put(order);
+		buffer.putShort((short) chaos.length);
+		buffer.put(chaos);
+		buffer.putShort((short) moves.size());
+		int boardSize = rules.getBoardSize();
+		for (Move move : moves) {
+			int square = (move.getX() - 1) * boardSize + move.getY() - 1;
+			buffer.putShort((short) ((square << 1) | (move.getMark() == Mark.O ? 1 : 0)));
+		}
+		ByteBuffer segment = segments.get(segments.size() - 1).duplicate();
+		segment.position(end + 4);
+		segment.put(buffer.array());
+		segment.putInt(checksum(buffer.array(), length));
+		// the record is seen once its length is written
+		segments.get(segments.size() - 1).putInt(end, length);
+		add(segments.size() - 1, end);
+		end += FRAMING_BYTES + length;
+		if (size - indexed >= INDEX_BATCH) {
+			flushIndex();
+		}
+		return size - 1;
+	}
+
+	/**
+	 * @return the number of games in the archive.
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * @return the cursor before the first game of the archive, to scan the
+	 * games appended so far.
+	 */
+	public synchronized Cursor cursor() {
+		return new Cursor(segments.toArray(new ByteBuffer[segments.size()]), Arrays.copyOf(positions, size));
+	}
+
+	/**
+	 * Write the index and force all the games appended to the disk.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public synchronized void sync() throws IOException {
+		flushIndex();
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+		indexFile.getChannel().force(false);
+	}
+
+	/**
+	 * Force the games appended to the disk, write the index and close the
+	 * archive.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			flushIndex();
+		} finally {
+			indexFile.close();
+		}
+	}
+
+	/**
+	 * Read only view of the archived games, moved from one game to the next
+	 * or to the game with the given number. The cursor reads the game from the
+	 * mapped segment on demand and creates no objects while it scans.
+	 */
+	public static class Cursor {
+		private final ByteBuffer[] segments;
+		private final long[] positions;
+		private int number = -1;
+		private ByteBuffer game;
+		private int offset;
+
+		Cursor(ByteBuffer[] segments, long[] positions) {
+			this.segments = segments;
+			this.positions = positions;
+			for (int i = 0; i < segments.length; i++) {
+				this.segments[i] = segments[i].duplicate();
+			}
+		}
+
+		/**
+		 * Move to the next game.
+		 *
+		 * @return false if there are no more games.
+		 */
+		public boolean next() {
+			if (number + 1 >= positions.length) {
+				return false;
+			}
+			seek(number + 1);
+			return true;
+		}
+
+		/**
+		 * Move to the game with the number.
+		 *
+		 * @param number the number of the game in the archive.
+		 */
+		public void seek(long number) {
+			if (number < 0 || number >= positions.length) {
+				throw new IndexOutOfBoundsException("No game "+number+" in the archive of "+positions.length);
+			}
+			this.number = (int) number;
+			long position = positions[this.number];
+			game = segments[(int) (position >>> 32)];
+			// skip the length
+			offset = (int) position + 4;
+		}
+
+		/**
+		 * @return the number of the game in the archive.
+		 */
+		public long getNumber() {
+			return number;
+		}
+
+		/**
+		 * @return the size of the record of the game with its length and its
+		 * checksum, in bytes.
+		 */
+		public int getLength() {
+			return FRAMING_BYTES + game.getInt(offset - 4);
+		}
+
+		public SavedGameType getType() {
+			return SavedGameType.values()[game.get(offset)];
+		}
+
+		public int getBoardSize() {
+			return game.get(offset + 1) & 0xff;
+		}
+
+		public int getChainLength() {
+			return game.get(offset + 2) & 0xff;
+		}
+
+		/**
+		 * @return the role of the winner, or null if the game was not finished.
+		 */
+		public PlayerRole getWinnerRole() {
+			int winner = game.get(offset + 3);
+			return winner == 1 ? PlayerRole.ORDER : winner == 2 ? PlayerRole.CHAOS : null;
+		}
+
+		/**
+		 * @return the time the game was archived, in milliseconds since the epoch.
+		 */
+		public long getTimestamp() {
+			return game.getLong(offset + 4);
+		}
+
+		public String getOrderPlayer() {
+			return getString(offset + 12);
+		}
+
+		public String getChaosPlayer() {
+			return getString(chaosOffset());
+		}
+
+		public int getMoveCount() {
+			return game.getShort(movesOffset()) & 0xffff;
+		}
+
+		/**
+		 * @param i the number of the move, the first move is 0.
+		 * @return the move: the square number times 2, plus 1 for O.
+		 */
+		public int getMove(int i) {
+			return game.getShort(movesOffset() + 2 + 2 * i) & 0xffff;
+		}
+
+		/**
+		 * @return all the moves of the game, the earliest first.
+		 */
+		public List<Move> getMoves() {
+			int size = getBoardSize();
+			int count = getMoveCount();
+			List<Move> moves = new ArrayList<Move>(count);
+			for (int i = 0; i < count; i++) {
+				int move = getMove(i);
+				int square = move >> 1;
+				String player = i % 2 == 0 ? getOrderPlayer() : getChaosPlayer();
+				moves.add(new Move(player, square / size + 1, square % size + 1, (move & 1) == 0 ? Mark.X : Mark.O));
+			}
+			return moves;
+		}
+
+		private int chaosOffset() {
+			return offset + 14 + (game.getShort(offset + 12) & 0xffff);
+		}
+
+		private int movesOffset() {
+			int chaos = chaosOffset();
+			return chaos + 2 + (game.getShort(chaos) & 0xffff);
+		}
+
+		private String getString(int at) {
+			byte[] bytes = new byte[game.getShort(at) & 0xffff];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = game.get(at + 2 + i);
+			}
+			return new String(bytes, UTF8);
+		}
+	}
+}
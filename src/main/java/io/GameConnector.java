@@ -24,30 +24,26 @@ public interface GameConnector {
 	void disconnect();
 	
 	/**
-	 * Read integer value from the underlying connection.
-	 * @return the int value read.
-	 * @throws IOException on reading operation errors.
-	 */
-	int readInt() throws IOException;
-
-	/**
-	 * Read string value from the underlying connection.
-	 * @return the int value read.
-	 * @throws IOException on reading operation errors.
+	 * Send the message over the underlying connection, the whole frame at once.
+	 * @param frame the message to send.
+	 * @throws IOException on writing operation errors.
 	 */
-	String readString() throws IOException;
+	void send(Frame frame) throws IOException;
 
 	/**
-	 * Write integer value into the underlying connection.
-	 * @param value the int value to write.
-	 * @throws IOException on writing operation errors.
+	 * Receive the next message from the underlying connection.
+	 * @return the message received.
+	 * @throws IOException on reading operation errors, or when the message
+	 * is not valid or comes out of sequence.
 	 */
-	void writeInt(int value) throws IOException;
+	Frame receive() throws IOException;
 
 	/**
-	 * Write string value into the underlying connection.
-	 * @param value the string value to write.
-	 * @throws IOException on writing operation errors.
+	 * Make the connection resumable once the players have said hello: when
+	 * the connection is lost, it is connected again within the grace period
+	 * and the frames the other side has missed are sent again, the frames sent
+	 * and received meanwhile wait for it.
+	 * @param session the token of the session issued by the host.
 	 */
-	void writeString(String value) throws IOException;
+	void startSession(long session);
 }
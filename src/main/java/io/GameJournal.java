@@ -0,0 +1,236 @@
+package io;
+
+import models.GameState;
+import models.IllegalMoveException;
+import models.Mark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of the marks put on the board of the saved game since it
+ * was saved. The journal starts with its magic number and the checksum of the
+ * saved game it follows, so the journal of another saved game is never played
+ * back. Every mark is a record of 4 bytes: the coordinates of the square, the
+ * mark, and a check byte of the record and its number, so a record torn by a
+ * crash ends the journal.
+ * <p>
+ * A record is handed to the operating system as soon as it is appended, so it
+ * survives the application crash. It is forced to the disk a little later,
+ * together with all the records appended in the meantime, so the game costs
+ * one disk sync per burst of moves rather than one per move.
+ *
+ * @author Anastasia Radchenko
+ */
+class GameJournal {
+	static final int MAGIC = 0x4f434a4e; // "OCJN"
+
+	// magic and the checksum of the saved game
+	private static final int HEADER_BYTES = 4 + 4;
+	private static final int RECORD_BYTES = 4;
+
+	// delay of the disk sync after the first record appended since the last one
+	private static final long SYNC_DELAY = 200;
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final ScheduledExecutorService syncExecutor;
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+	// the records appended since the reset, to play them back without reading the file
+	private byte[] appended = new byte[64 * RECORD_BYTES];
+	private int records;
+	private boolean syncScheduled;
+
+	private final Runnable syncTask = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				sync();
+			} catch (IOException e) {
+				// the records are still with the operating system
+				e.printStackTrace();
+			}
+		}
+	};
+
+	/**
+	 * Create the empty journal of the saved game, replacing the old journal.
+	 *
+	 * @param file the journal file.
+	 * @param checksum the checksum of the saved game the journal follows.
+	 * @param syncExecutor the executor of the delayed disk syncs.
+	 * @throws IOException if the journal can not be created.
+	 */
+	GameJournal(File file, int checksum, ScheduledExecutorService syncExecutor) throws IOException {
+		this.syncExecutor = syncExecutor;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		try {
+			reset(checksum);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Empty the journal to follow the newly saved game.
+	 *
+	 * @param checksum the checksum of the saved game the journal follows.
+	 * @throws IOException if writing fails.
+	 */
+	synchronized void reset(int checksum) throws IOException {
+		channel.truncate(0);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC);
+		header.putInt(checksum);
+		header.flip();
+		write(header, 0);
+		channel.force(false);
+		records = 0;
+	}
+
+	/**
+	 * Append the record of the mark put on the board or wiped out from it.
+	 *
+	 * @throws IOException if writing fails.
+	 */
+	synchronized void append(int x, int y, Mark mark) throws IOException {
+		record.clear();
+		record.put((byte) x);
+		record.put((byte) y);
+		record.put((byte) mark.ordinal());
+		record.put(check(records, x, y, mark.ordinal()));
+		record.flip();
+		write(record, HEADER_BYTES + (long) records * RECORD_BYTES);
+		if (appended.length < (records + 1) * RECORD_BYTES) {
+			appended = Arrays.copyOf(appended, appended.length * 2);
+		}
+		System.arraycopy(record.array(), 0, appended, records * RECORD_BYTES, RECORD_BYTES);
+		records++;
+		if (!syncScheduled) {
+			syncScheduled = true;
+			syncExecutor.schedule(syncTask, SYNC_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return the number of records in the journal.
+	 */
+	synchronized int size() {
+		return records;
+	}
+
+	/**
+	 * Play back the records appended since the reset on the saved game.
+	 *
+	 * @param gameState the game read from the saved game the journal follows.
+	 */
+	synchronized void replay(GameState gameState) {
+		replay(appended, records, gameState);
+	}
+
+	/**
+	 * Force all the records appended so far to the disk.
+	 *
+	 * @throws IOException if the sync fails.
+	 */
+	synchronized void sync() throws IOException {
+		syncScheduled = false;
+		if (channel.isOpen()) {
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Force the records to the disk and close the journal.
+	 *
+	 * @throws IOException if the sync fails.
+	 */
+	synchronized void close() throws IOException {
+		try {
+			sync();
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Play back the journal of the saved game on the game just read from it.
+	 * The journal of another saved game is ignored, and so are the records
+	 * after the first torn or invalid one.
+	 *
+	 * @param file the journal file.
+	 * @param checksum the checksum of the saved game.
+	 * @param gameState the game read from the saved game.
+	 * @return the number of records played back.
+	 * @throws IOException if reading fails.
+	 */
+	static int replay(File file, int checksum, GameState gameState) throws IOException {
+		if (!file.exists()) {
+			return 0;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if (length < HEADER_BYTES || raf.readInt() != MAGIC || raf.readInt() != checksum) {
+				return 0;
+			}
+			// the board is small, a longer journal is corrupt anyway
+			int count = (int) Math.min((length - HEADER_BYTES) / RECORD_BYTES, 1 << 16);
+			byte[] records = new byte[count * RECORD_BYTES];
+			raf.readFully(records);
+			return replay(records, count, gameState);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the number of records played back, up to the first invalid one.
+	 */
+	private static int replay(byte[] records, int count, GameState gameState) {
+		for (int i = 0; i < count; i++) {
+			int x = records[i * RECORD_BYTES] & 0xff;
+			int y = records[i * RECORD_BYTES + 1] & 0xff;
+			int mark = records[i * RECORD_BYTES + 2] & 0xff;
+			if (mark >= Mark.values().length || records[i * RECORD_BYTES + 3] != check(i, x, y, mark)) {
+				return i;
+			}
+			try {
+				gameState.replaySquare(x, y, Mark.values()[mark]);
+			} catch (IllegalMoveException e) {
+				return i;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the check byte of the record with the number.
+	 */
+	private static byte check(int number, int x, int y, int mark) {
+		CRC32 crc = new CRC32();
+		crc.update(number >>> 24);
+		crc.update(number >>> 16);
+		crc.update(number >>> 8);
+		crc.update(number);
+		crc.update(x);
+		crc.update(y);
+		crc.update(mark);
+		return (byte) crc.getValue();
+	}
+}
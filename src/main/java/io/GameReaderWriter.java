@@ -26,4 +26,21 @@ public interface GameReaderWriter {
 	 * @throws IOException when writing fails for some reason.
 	 */
 	void writeState(GameState gameState) throws IOException;
+
+	/**
+	 * Writes the game state to external data store and from then on records 
+	 * every move of the game as it is made, so that the game read back is the 
+	 * game as of its last move, even if the application has crashed.
+	 * 
+	 * @param gameState the game state to record.
+	 * @throws IOException when writing fails for some reason.
+	 */
+	void startRecording(GameState gameState) throws IOException;
+
+	/**
+	 * Stops recording the moves of the game, if any is being recorded.
+	 * 
+	 * @throws IOException when the moves recorded so far can not be written.
+	 */
+	void stopRecording() throws IOException;
 }
@@ -0,0 +1,1105 @@
+package io;
+
+import models.IllegalMoveException;
+import models.NetworkGameState;
+import models.PlayerRole;
+import models.Rules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The server of many network games at once on a single port. The players
+ * connect, say their names and the rules they want to play by, and are paired
+ * in the order they come with the next player waiting for the same rules: the
+ * first one plays Order. Every move is checked against the state of the game
+ * kept by the server and relayed to the opponent.
+ * <p>
+ * The connections are spread over a few selector threads, each of them
+ * serving its connections without blocking, so a thread serves thousands of
+ * connections. A move is written to the opponent right away by the thread
+ * that has read it, and only what the opponent can not take at once is left
+ * to the selector thread of the opponent.
+ * <p>
+ * The messages are the frames of the network game: the player says hello
+ * with the name and the rules and no role, the server answers for the
+ * opponent with the name and the role of the opponent, then the moves, the
+ * chat messages and the resignation go both ways. The server numbers the
+ * frames it sends to each player on its own. A name is taken by one player
+ * waiting or playing at a time: the hello of another player with that name
+ * is answered with a hello with no name, and the player may try another one.
+ * <p>
+ * The hello message of the server gives each player the token of its
+ * session. When the connection of a player is lost, the game waits for the
+ * player for the grace period: the moves and the messages of the opponent
+ * are kept for the player, and the player that connects again with the token
+ * gets only the frames it has missed, the last move too if the game is over
+ * meanwhile. The player not back in time leaves the game.
+ * <p>
+ * Any number of spectators may watch a game: a spectator names a player of
+ * the game, gets the snapshot of the game and then its moves. Each move is
+ * encoded once for all the spectators of the game, the same bytes are written
+ * to every one of them by the selector threads serving them, a batch of the
+ * spectators at a time between the reads of the players, so that the moves
+ * of the players are not held up by the spectators. A spectator that does not
+ * take the frames and falls behind the game is dropped.
+ * <p>
+ * Usage: <code>GameServer [port [threads]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class GameServer {
+
+	/**
+	 * The default port of the server, the port of the network game
+	 */
+	public static final int DEFAULT_PORT = AbstractGameConnector.GAME_PORT;
+
+	private static final int BUFFER_BYTES = Frame.MAX_FRAME_BYTES;
+
+	/**
+	 * How long the game waits for a player whose connection is lost
+	 */
+	public static final long GRACE_MILLIS = 30000;
+
+	/**
+	 * How many frames a spectator whose connection takes no more may fall
+	 * behind the game before it is dropped
+	 */
+	public static final int MAX_SPECTATOR_LAG = 16;
+
+	// the spectators a selector thread writes to before it reads the players again
+	private static final int FAN_OUT_BATCH = 256;
+
+	private final ServerSocketChannel serverChannel;
+	private final Loop[] loops;
+	private final AtomicInteger nextLoop = new AtomicInteger();
+	// the player waiting for an opponent by the rules
+	private final Map<Rules, Connection> waiting = new HashMap<Rules, Connection>();
+	// the names of the players waiting or playing, each taken by one player at a time
+	private final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	// the players of the games being played by their session tokens
+	private final Map<Long, Connection> sessions = new ConcurrentHashMap<Long, Connection>();
+	// the games being played by the names of their players, for the spectators
+	private final ConcurrentMap<String, Match> games = new ConcurrentHashMap<String, Match>();
+	// the players whose connections are lost leave the games when their time is up
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "game-server-timer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger peakConnections = new AtomicInteger();
+	private final AtomicInteger matches = new AtomicInteger();
+	private final AtomicLong acceptedConnections = new AtomicLong();
+	private final AtomicLong movesRelayed = new AtomicLong();
+	private final AtomicLong resumedConnections = new AtomicLong();
+	private final AtomicInteger spectators = new AtomicInteger();
+	private final AtomicLong droppedSpectators = new AtomicLong();
+
+	private GameServer(ServerSocketChannel serverChannel, int threads) throws IOException {
+		this.serverChannel = serverChannel;
+		loops = new Loop[threads];
+		for (int i = 0; i < threads; i++) {
+			loops[i] = new Loop(i);
+		}
+	}
+
+	/**
+	 * Start the server on the port.
+	 *
+	 * @param port the port, 0 for any free port.
+	 * @param threads the number of the selector threads.
+	 * @return the server started.
+	 * @throws IOException if the port can not be listened on.
+	 */
+	public static GameServer start(int port, int threads) throws IOException {
+		ServerSocketChannel serverChannel = ServerSocketChannel.open();
+		GameServer server;
+		try {
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(port), 1024);
+			serverChannel.configureBlocking(false);
+			server = new GameServer(serverChannel, threads);
+		} catch (IOException e) {
+			serverChannel.close();
+			throw e;
+		}
+		// the first loop also accepts the connections
+		serverChannel.register(server.loops[0].selector, SelectionKey.OP_ACCEPT);
+		for (Loop loop : server.loops) {
+			loop.thread.start();
+		}
+		return server;
+	}
+
+	/**
+	 * @return the port the server listens on.
+	 */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Stop the server and close all the connections.
+	 */
+	public void close() {
+		for (Loop loop : loops) {
+			loop.running = false;
+			loop.selector.wakeup();
+		}
+		for (Loop loop : loops) {
+			try {
+				loop.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			serverChannel.close();
+		} catch (IOException ignored) {
+		}
+		timer.shutdownNow();
+	}
+
+	/**
+	 * @return the number of the connections open.
+	 */
+	public int getConnectionCount() {
+		return connections.get();
+	}
+
+	/**
+	 * @return the largest number of the connections open at once.
+	 */
+	public int getPeakConnectionCount() {
+		return peakConnections.get();
+	}
+
+	/**
+	 * @return the number of the games being played.
+	 */
+	public int getMatchCount() {
+		return matches.get();
+	}
+
+	/**
+	 * @return the number of the connections accepted so far.
+	 */
+	public long getAcceptedConnections() {
+		return acceptedConnections.get();
+	}
+
+	/**
+	 * @return the number of the moves relayed so far.
+	 */
+	public long getMovesRelayed() {
+		return movesRelayed.get();
+	}
+
+	/**
+	 * @return the number of the lost connections resumed so far.
+	 */
+	public long getResumedConnections() {
+		return resumedConnections.get();
+	}
+
+	/**
+	 * @return the number of the spectators watching the games.
+	 */
+	public int getSpectatorCount() {
+		return spectators.get();
+	}
+
+	/**
+	 * @return the number of the spectators dropped so far for falling behind.
+	 */
+	public long getDroppedSpectators() {
+		return droppedSpectators.get();
+	}
+
+	/**
+	 * @return the number of the selector threads.
+	 */
+	public int getThreadCount() {
+		return loops.length;
+	}
+
+	/**
+	 * Accept the connections waiting. A connection that fails to be set up is
+	 * closed on its own, and a failure to accept, such as running out of file
+	 * descriptors, leaves the rest to the next time the selector wakes up, so
+	 * the first selector thread goes on accepting either way.
+	 */
+	private void accept() {
+		while (true) {
+			SocketChannel channel;
+			try {
+				channel = serverChannel.accept();
+			} catch (IOException e) {
+				return;
+			}
+			if (channel == null) {
+				return;
+			}
+			try {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+			} catch (IOException e) {
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+				continue;
+			}
+			Loop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+			Connection connection = new Connection(channel, loop);
+			acceptedConnections.incrementAndGet();
+			int open = connections.incrementAndGet();
+			int peak = peakConnections.get();
+			while (open > peak && !peakConnections.compareAndSet(peak, open)) {
+				peak = peakConnections.get();
+			}
+			loop.register(connection);
+		}
+	}
+
+	/**
+	 * Pair the player with the player waiting for the same rules, or keep the
+	 * player waiting.
+	 */
+	private void pair(Connection connection) throws IOException {
+		Connection order;
+		synchronized (waiting) {
+			order = waiting.remove(connection.rules);
+			if (order == null) {
+				waiting.put(connection.rules, connection);
+				return;
+			}
+		}
+		Connection chaos = connection;
+		Match match = new Match(order, chaos, connection.rules);
+		order.match = match;
+		order.role = PlayerRole.ORDER;
+		chaos.match = match;
+		chaos.role = PlayerRole.CHAOS;
+		matches.incrementAndGet();
+		order.session = Frame.newSession();
+		chaos.session = Frame.newSession();
+		sessions.put(order.session, order);
+		sessions.put(chaos.session, chaos);
+		games.put(order.name, match);
+		games.put(chaos.name, match);
+		send(order, Frame.hello(chaos.name, PlayerRole.CHAOS, match.rules, order.session));
+		send(chaos, Frame.hello(order.name, PlayerRole.ORDER, match.rules, chaos.session));
+		// the waiting player may have left in the meantime
+		synchronized (order) {
+			if (!order.closed) {
+				return;
+			}
+		}
+		match.leave(order);
+	}
+
+	/**
+	 * Send the frame to the connection from any thread. The frame is kept to
+	 * be sent again when the connection is lost and resumed.
+	 */
+	private void send(Connection connection, Frame frame) {
+		byte[] data;
+		synchronized (connection) {
+			try {
+				data = frame.encode(connection.sentFrames);
+			} catch (IOException e) {
+				// the name of the opponent is too long
+				connection.loop.close(connection);
+				return;
+			}
+			connection.sentFrames++;
+			connection.sent.add(frame);
+		}
+		write(connection, data);
+	}
+
+	/**
+	 * Write the bytes to the connection from any thread: right away if the
+	 * connection has nothing else to write, the rest by its selector thread.
+	 */
+	private void write(Connection connection, byte[] data) {
+		synchronized (connection) {
+			if (!connection.channel.isOpen()) {
+				return;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			if (connection.out == null) {
+				try {
+					connection.channel.write(buffer);
+				} catch (IOException e) {
+					connection.loop.close(connection);
+					return;
+				}
+				if (!buffer.hasRemaining()) {
+					return;
+				}
+				connection.out = ByteBuffer.allocate(Math.max(BUFFER_BYTES, buffer.remaining()));
+			} else if (connection.out.remaining() < buffer.remaining()) {
+				ByteBuffer out = ByteBuffer.allocate(connection.out.capacity() * 2 + buffer.remaining());
+				connection.out.flip();
+				out.put(connection.out);
+				connection.out = out;
+			}
+			connection.out.put(buffer);
+		}
+		connection.loop.requestWrite(connection);
+	}
+
+	/**
+	 * The selector thread and the connections it serves.
+	 */
+	private class Loop implements Runnable {
+		private final Selector selector;
+		private final Thread thread;
+		// the connections to register and to write by this thread
+		private final Queue<Connection> registrations = new ConcurrentLinkedQueue<Connection>();
+		private final Queue<Connection> writes = new ConcurrentLinkedQueue<Connection>();
+		// the spectators served by this thread by the games they watch
+		private final Map<Match, List<Connection>> watchers = new HashMap<Match, List<Connection>>();
+		// the games with frames for the spectators of this thread
+		private final Queue<Match> broadcasts = new ConcurrentLinkedQueue<Match>();
+		// the spectators to write the frames of their games to
+		private final Queue<Connection> fanOut = new ArrayDeque<Connection>();
+		// the frames written to a spectator at once
+		private final ByteBuffer[] gather = new ByteBuffer[MAX_SPECTATOR_LAG];
+		private volatile boolean running = true;
+
+		Loop(int number) throws IOException {
+			selector = Selector.open();
+			thread = new Thread(this, "game-server-"+number);
+		}
+
+		void register(Connection connection) {
+			registrations.add(connection);
+			selector.wakeup();
+		}
+
+		void requestWrite(Connection connection) {
+			if (Thread.currentThread() == thread) {
+				enableWrite(connection);
+			} else {
+				writes.add(connection);
+				selector.wakeup();
+			}
+		}
+
+		/**
+		 * Write the new frames of the game to its spectators served by this
+		 * thread.
+		 */
+		void broadcast(Match match) {
+			broadcasts.add(match);
+			if (Thread.currentThread() != thread) {
+				selector.wakeup();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					if (fanOut.isEmpty() && broadcasts.isEmpty()) {
+						selector.select();
+					} else {
+						// the spectators still to write to wait for the players only
+						selector.selectNow();
+					}
+					Connection connection;
+					while ((connection = registrations.poll()) != null) {
+						try {
+							connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+							enableWrite(connection);
+						} catch (ClosedChannelException e) {
+							close(connection);
+						} catch (CancelledKeyException e) {
+							close(connection);
+						}
+					}
+					while ((connection = writes.poll()) != null) {
+						enableWrite(connection);
+					}
+					Match match;
+					while ((match = broadcasts.poll()) != null) {
+						queueWatchers(match);
+					}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+						connection = (Connection) key.attachment();
+						try {
+							if (key.isWritable()) {
+								write(connection);
+							}
+							if (key.isValid() && key.isReadable()) {
+								read(connection);
+							}
+						} catch (IOException e) {
+							close(connection);
+						} catch (CancelledKeyException e) {
+							// closed by another thread meanwhile
+							close(connection);
+						} catch (RuntimeException e) {
+							// the other connections of the thread are served on
+							e.printStackTrace();
+							close(connection);
+						}
+					}
+					fanOut();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					if (key.attachment() instanceof Connection) {
+						close((Connection) key.attachment());
+					}
+				}
+				try {
+					selector.close();
+				} catch (IOException ignored) {
+				}
+			}
+		}
+
+		private void enableWrite(Connection connection) {
+			SelectionKey key = connection.key;
+			if (key == null || !key.isValid()) {
+				// the write is enabled once the connection is registered
+				return;
+			}
+			synchronized (connection) {
+				if (connection.out != null) {
+					try {
+						key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					} catch (CancelledKeyException e) {
+						// the connection is closed by another thread, there is nothing to write to
+					}
+				}
+			}
+		}
+
+		private void write(Connection connection) throws IOException {
+			synchronized (connection) {
+				if (connection.out != null) {
+					connection.out.flip();
+					connection.channel.write(connection.out);
+					if (connection.out.hasRemaining()) {
+						connection.out.compact();
+						return;
+					}
+					connection.out = null;
+				}
+				connection.key.interestOps(SelectionKey.OP_READ);
+			}
+			if (connection.watching != null) {
+				writeWatched(connection);
+			}
+		}
+
+		/**
+		 * The spectator starts watching the game from the snapshot.
+		 */
+		void addSpectator(Match match, Connection spectator, byte[] snapshot) {
+			List<Connection> list = watchers.get(match);
+			if (list == null) {
+				list = new ArrayList<Connection>();
+				watchers.put(match, list);
+			}
+			list.add(spectator);
+			GameServer.this.write(spectator, snapshot);
+			try {
+				writeWatched(spectator);
+			} catch (IOException e) {
+				close(spectator);
+			} catch (CancelledKeyException e) {
+				close(spectator);
+			}
+		}
+
+		/**
+		 * Queue the spectators of the game to be written to, and forget the
+		 * ones that have left.
+		 */
+		private void queueWatchers(Match match) {
+			List<Connection> list = watchers.get(match);
+			if (list == null) {
+				return;
+			}
+			int kept = 0;
+			for (Connection spectator : list) {
+				if (spectator.closed) {
+					continue;
+				}
+				list.set(kept++, spectator);
+				if (!spectator.fanningOut) {
+					spectator.fanningOut = true;
+					fanOut.add(spectator);
+				}
+			}
+			list.subList(kept, list.size()).clear();
+			if (list.isEmpty() || match.finished) {
+				// the spectators queued close themselves when they have the last frames
+				watchers.remove(match);
+			}
+		}
+
+		/**
+		 * Write the frames to the next batch of the spectators queued.
+		 */
+		private void fanOut() {
+			for (int i = 0; i < FAN_OUT_BATCH; i++) {
+				Connection spectator = fanOut.poll();
+				if (spectator == null) {
+					return;
+				}
+				spectator.fanningOut = false;
+				try {
+					writeWatched(spectator);
+				} catch (IOException e) {
+					close(spectator);
+				} catch (CancelledKeyException e) {
+					close(spectator);
+				}
+			}
+		}
+
+		/**
+		 * Write the frames of the game the spectator has not got yet, the
+		 * shared bytes of every frame wrapped for the spectator. The spectator
+		 * is closed when it has the last frame of the game, or dropped when
+		 * its connection takes no more and it falls behind the game.
+		 */
+		private void writeWatched(Connection spectator) throws IOException {
+			Match match = spectator.watching;
+			if (spectator.closed) {
+				return;
+			}
+			int streamed = match.streamed;
+			boolean snapshotting = spectator.out != null;
+			if ((spectator.blocked || snapshotting) && streamed - spectator.watched > MAX_SPECTATOR_LAG
+					|| snapshotting && match.finished) {
+				drop(spectator);
+				return;
+			}
+			if (snapshotting) {
+				// the rest of the snapshot is written first
+				return;
+			}
+			while (spectator.watched < streamed) {
+				int count = Math.min(streamed - spectator.watched, gather.length);
+				for (int i = 0; i < count; i++) {
+					byte[] frame = match.stream[spectator.watched + i];
+					int offset = i == 0 ? spectator.watchedBytes : 0;
+					gather[i] = ByteBuffer.wrap(frame, offset, frame.length - offset);
+				}
+				spectator.channel.write(gather, 0, count);
+				int written = 0;
+				while (written < count && !gather[written].hasRemaining()) {
+					written++;
+				}
+				spectator.watched += written;
+				if (written < count) {
+					spectator.watchedBytes = gather[written].position();
+					spectator.blocked = true;
+					if (match.finished) {
+						// the game is over, there is nothing more to catch up with
+						drop(spectator);
+					} else {
+						spectator.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					}
+					return;
+				}
+				spectator.watchedBytes = 0;
+			}
+			spectator.blocked = false;
+			if (match.finished && spectator.watched == match.streamed) {
+				close(spectator);
+			}
+		}
+
+		private void drop(Connection spectator) {
+			droppedSpectators.incrementAndGet();
+			close(spectator);
+		}
+
+		private void read(Connection connection) throws IOException {
+			ByteBuffer in = connection.in;
+			if (connection.channel.read(in) < 0) {
+				close(connection);
+				return;
+			}
+			in.flip();
+			try {
+				while (connection.channel.isOpen() && handle(connection, in)) {
+					// handle the messages read
+				}
+			} catch (ProtocolException e) {
+				close(connection);
+				return;
+			}
+			if (!in.hasRemaining()) {
+				in.clear();
+			} else if (in.position() == 0 && in.limit() == in.capacity()) {
+				// a message longer than any valid one
+				close(connection);
+			} else {
+				in.compact();
+			}
+		}
+
+		/**
+		 * Handle the message at the position of the buffer if it is all there.
+		 *
+		 * @return true if a message has been handled, false if it is not all
+		 * read yet.
+		 */
+		private boolean handle(Connection connection, ByteBuffer in) throws IOException, ProtocolException {
+			Frame frame = Frame.read(in);
+			if (frame == null) {
+				return false;
+			}
+			if (connection.name == null && frame.getType() == Frame.Type.RESUME) {
+				resume(connection, frame);
+				return true;
+			}
+			if (frame.getSequence() != connection.receivedFrames++ || connection.watching != null) {
+				// the spectators only watch
+				throw new ProtocolException();
+			}
+			if (connection.name == null) {
+				if (frame.getType() == Frame.Type.WATCH) {
+					watch(connection, frame);
+					return true;
+				}
+				if (frame.getType() != Frame.Type.HELLO || frame.getName().isEmpty()) {
+					throw new ProtocolException();
+				}
+				if (!names.add(frame.getName())) {
+					// the hello with no name says the name is taken, the player may try another one
+					send(connection, Frame.hello("", null, frame.getRules()));
+					return true;
+				}
+				connection.name = frame.getName();
+				connection.rules = frame.getRules();
+				pair(connection);
+				return true;
+			}
+			Match match = connection.match;
+			if (match == null) {
+				throw new ProtocolException();
+			}
+			switch (frame.getType()) {
+				case MOVE:
+					match.move(connection, frame);
+					break;
+				case CHAT:
+					match.relay(connection, frame);
+					break;
+				case RESIGN:
+					match.resign(connection, frame);
+					break;
+				default:
+					throw new ProtocolException();
+			}
+			return true;
+		}
+
+		void close(Connection connection) {
+			synchronized (connection) {
+				if (connection.closed) {
+					return;
+				}
+				connection.closed = true;
+			}
+			try {
+				connection.channel.close();
+			} catch (IOException ignored) {
+			}
+			connections.decrementAndGet();
+			if (connection.watching != null) {
+				spectators.decrementAndGet();
+			}
+			if (connection.rules != null) {
+				synchronized (waiting) {
+					if (waiting.get(connection.rules) == connection) {
+						waiting.remove(connection.rules);
+						names.remove(connection.name);
+					}
+				}
+			}
+			Match match = connection.match;
+			if (match != null) {
+				match.lost(connection);
+			}
+		}
+	}
+
+	/**
+	 * The player connects again: the connection takes the place of the one
+	 * lost in the game, and gets the frames it has missed.
+	 */
+	private void resume(Connection connection, Frame frame) throws ProtocolException {
+		Connection lost = sessions.get(frame.getSession());
+		if (lost == null) {
+			throw new ProtocolException();
+		}
+		lost.match.resume(lost, connection, frame.getReceived());
+		resumedConnections.incrementAndGet();
+	}
+
+	/**
+	 * The spectator starts watching the game of the player it names.
+	 */
+	private void watch(Connection spectator, Frame frame) throws ProtocolException {
+		Match match = games.get(frame.getName());
+		if (match == null) {
+			throw new ProtocolException();
+		}
+		byte[] snapshot = match.watch(spectator);
+		spectators.incrementAndGet();
+		spectator.loop.addSpectator(match, spectator, snapshot);
+	}
+
+	/**
+	 * A connection of a player or of a spectator.
+	 */
+	private static class Connection {
+		private final SocketChannel channel;
+		private final Loop loop;
+		private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+		// the bytes still to write, null when there are none
+		private ByteBuffer out;
+		private SelectionKey key;
+		private boolean closed;
+		// the sequence numbers of the next frames to send and to receive
+		private int sentFrames;
+		private int receivedFrames;
+		// the frames sent by their sequence numbers, to send again on resume
+		private List<Frame> sent = new ArrayList<Frame>();
+		private long session;
+		private String name;
+		private Rules rules;
+		private volatile Match match;
+		private volatile PlayerRole role;
+		// the game the spectator watches, the next frame of it to write and
+		// the bytes of that frame written, all kept by the selector thread
+		private Match watching;
+		private int watched;
+		private int watchedBytes;
+		// true when the connection of the spectator has taken no more
+		private boolean blocked;
+		// true while the spectator is queued to be written to
+		private boolean fanningOut;
+
+		Connection(SocketChannel channel, Loop loop) {
+			this.channel = channel;
+			this.loop = loop;
+		}
+	}
+
+	/**
+	 * The game of the two players, the moves of both are checked against it.
+	 */
+	private class Match {
+		// the players, the connections resumed take the places of the ones lost
+		private Connection order;
+		private Connection chaos;
+		private final Rules rules;
+		private final NetworkGameState gameState;
+		private volatile boolean finished;
+		// the frames for the spectators by the number of the frames before
+		// them, null for the frames made when the game had no spectators
+		private final byte[][] stream;
+		private volatile int streamed;
+		// the snapshot for the spectators and the number of the frames it has
+		private byte[] snapshot;
+		private int snapshotStreamed = -1;
+		// the selector threads serving the spectators of the game
+		private final Set<Loop> watchedOn = new HashSet<Loop>();
+
+		Match(Connection order, Connection chaos, Rules rules) {
+			this.order = order;
+			this.chaos = chaos;
+			this.rules = rules;
+			gameState = new NetworkGameState(order.name, chaos.name, true, rules);
+			// a move for every square and the resignation
+			stream = new byte[rules.getSquares() + 1][];
+		}
+
+		/**
+		 * Make the move of the player and relay it to the opponent.
+		 */
+		synchronized void move(Connection player, Frame frame) throws ProtocolException {
+			if (finished || (player.role == PlayerRole.ORDER) != gameState.isOrderNextTurn()) {
+				throw new ProtocolException();
+			}
+			try {
+				gameState.makeMove(frame.getMove(player.name, rules.getBoardSize()));
+			} catch (IOException e) {
+				throw new ProtocolException();
+			} catch (IllegalMoveException e) {
+				throw new ProtocolException();
+			}
+			movesRelayed.incrementAndGet();
+			send(player == order ? chaos : order, frame);
+			stream(frame);
+			if (gameState.isOver()) {
+				// the players leave once they have seen the last move
+				finish();
+			}
+		}
+
+		/**
+		 * Relay the chat message of the player to the opponent.
+		 */
+		synchronized void relay(Connection player, Frame frame) {
+			if (!finished) {
+				send(player == order ? chaos : order, frame);
+			}
+		}
+
+		/**
+		 * The player gives the game up: the opponent is told and leaves, so
+		 * does the player.
+		 */
+		synchronized void resign(Connection player, Frame frame) {
+			if (!finished) {
+				send(player == order ? chaos : order, frame);
+				stream(frame);
+				finish();
+			}
+		}
+
+		/**
+		 * The spectator starts watching the game.
+		 *
+		 * @return the snapshot of the game to write to the spectator first.
+		 */
+		synchronized byte[] watch(Connection spectator) throws ProtocolException {
+			if (finished) {
+				throw new ProtocolException();
+			}
+			if (snapshotStreamed != streamed) {
+				try {
+					snapshot = Frame.snapshot(gameState).encode(streamed);
+				} catch (IOException e) {
+					// not expected, the names said in the hello are short enough for the snapshot
+					throw new ProtocolException();
+				}
+				snapshotStreamed = streamed;
+			}
+			spectator.watching = this;
+			spectator.watched = streamed;
+			watchedOn.add(spectator.loop);
+			return snapshot;
+		}
+
+		/**
+		 * Encode the frame once for all the spectators and have the selector
+		 * threads serving them write it.
+		 */
+		private void stream(Frame frame) {
+			if (!watchedOn.isEmpty()) {
+				try {
+					stream[streamed] = frame.encode(streamed + 1);
+				} catch (IOException e) {
+					throw new IllegalStateException("A move does not fit in a frame", e);
+				}
+			}
+			streamed++;
+			for (Loop loop : watchedOn) {
+				loop.broadcast(this);
+			}
+		}
+
+		/**
+		 * The player has left: the game is over, so is the connection of the
+		 * opponent unless the game has finished and the opponent may still be
+		 * reading the last move.
+		 */
+		void leave(Connection player) {
+			Connection opponent;
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+				finish();
+				opponent = player == order ? chaos : order;
+			}
+			opponent.loop.close(opponent);
+		}
+
+		/**
+		 * The connection of the player is lost: the player has the grace
+		 * period to come back.
+		 */
+		synchronized void lost(final Connection player) {
+			if (finished || (player != order && player != chaos)) {
+				return;
+			}
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					expire(player);
+				}
+			}, GRACE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		private void expire(Connection player) {
+			synchronized (this) {
+				if (player != order && player != chaos) {
+					// the player is back
+					return;
+				}
+			}
+			leave(player);
+		}
+
+		/**
+		 * The player connects again: the connection takes over the session of
+		 * the connection lost, the frames from the one the player expects on
+		 * are written again.
+		 */
+		synchronized void resume(Connection lost, Connection connection, int received) throws ProtocolException {
+			if (lost != order && lost != chaos) {
+				throw new ProtocolException();
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			synchronized (lost) {
+				if (received > lost.sentFrames) {
+					throw new ProtocolException();
+				}
+				synchronized (connection) {
+					connection.name = lost.name;
+					connection.rules = lost.rules;
+					connection.role = lost.role;
+					connection.session = lost.session;
+					connection.sent = lost.sent;
+					connection.sentFrames = lost.sentFrames;
+					connection.receivedFrames = lost.receivedFrames;
+					connection.match = this;
+				}
+				try {
+					bytes.write(Frame.resume(lost.session, lost.receivedFrames).encode(0));
+					for (int i = received; i < lost.sentFrames; i++) {
+						bytes.write(lost.sent.get(i).encode(i));
+					}
+				} catch (IOException e) {
+					throw new ProtocolException();
+				}
+			}
+			if (lost == order) {
+				order = connection;
+			} else {
+				chaos = connection;
+			}
+			sessions.put(connection.session, connection);
+			// the server may not have seen the connection lost yet
+			lost.loop.close(lost);
+			write(connection, bytes.toByteArray());
+		}
+
+		/**
+		 * The game is over, the players may still come back for the last
+		 * frames within the grace period.
+		 */
+		private void finish() {
+			finished = true;
+			matches.decrementAndGet();
+			games.remove(order.name, this);
+			games.remove(chaos.name, this);
+			names.remove(order.name);
+			names.remove(chaos.name);
+			// the spectators are closed once they have the last frames
+			for (Loop loop : watchedOn) {
+				loop.broadcast(this);
+			}
+			final long[] tokens = {order.session, chaos.session};
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					for (long token : tokens) {
+						sessions.remove(token);
+					}
+				}
+			}, GRACE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * The message that breaks the rules, the connection is closed.
+	 */
+	private static class ProtocolException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		GameServer server = start(port, threads);
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println("listening on port "+server.getPort()+" with "+threads+" selector threads, "+cores
+				+" cores");
+		long lastMoves = 0;
+		long lastTime = System.nanoTime();
+		while (true) {
+			Thread.sleep(5000);
+			long moves = server.getMovesRelayed();
+			long time = System.nanoTime();
+			int open = server.getConnectionCount();
+			System.out.println(String.format("%d connections (%.0f per core, peak %d), %d games, %d spectators, "
+					+"%d accepted, %.0f moves per second", open, (double) open / cores,
+					server.getPeakConnectionCount(), server.getMatchCount(), server.getSpectatorCount(),
+					server.getAcceptedConnections(), (moves - lastMoves) * 1000000000.0 / (time - lastTime)));
+			lastMoves = moves;
+			lastTime = time;
+		}
+	}
+}
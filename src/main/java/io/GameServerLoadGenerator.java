@@ -0,0 +1,356 @@
+package io;
+
+import models.IllegalMoveException;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.TwoPlayerGameState;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Plays many random games at once through the game server, all the players
+ * served by a single selector thread, and prints how fast the games went and
+ * how long the moves took to get from a player to the opponent. Every player
+ * leaves when the game is over and a new one comes, until all the games are
+ * played. With the drop rate, a player drops the connection after a move at
+ * that rate and resumes the session on a new one.
+ * <p>
+ * Usage: <code>GameServerLoadGenerator host port [games at once [games [seed [drop rate]]]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class GameServerLoadGenerator {
+
+	private final Selector selector;
+	private final InetSocketAddress address;
+	private final Random random;
+	private final double dropRate;
+	private final Rules rules = Rules.STANDARD;
+	// the players by their names, to find the opponent who has made the move
+	private final Map<String, Player> players = new HashMap<String, Player>();
+
+	private int started;
+	private int open;
+	private int peakOpen;
+	private int finished;
+	private int failed;
+	private int dropped;
+	// the time from sending every move to its arrival, in nanoseconds
+	private long[] latencies = new long[1 << 16];
+	private int moves;
+
+	private GameServerLoadGenerator(InetSocketAddress address, long seed, double dropRate) throws IOException {
+		this.address = address;
+		this.dropRate = dropRate;
+		random = new Random(seed);
+		selector = Selector.open();
+	}
+
+	public static void main(String[] args) throws IOException {
+		InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+		int matches = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		int games = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+		double dropRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+
+		GameServerLoadGenerator generator = new GameServerLoadGenerator(address, seed, dropRate);
+		long start = System.nanoTime();
+		generator.run(matches, games);
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		generator.report(games, seconds);
+	}
+
+	private void run(int matches, int games) throws IOException {
+		while (finished + failed < games * 2) {
+			while (open < matches * 2 && started < games * 2) {
+				connect();
+			}
+			selector.select(1000);
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				Player player = (Player) key.attachment();
+				try {
+					if (key.isConnectable()) {
+						player.channel.finishConnect();
+						key.interestOps(SelectionKey.OP_READ);
+						player.connected();
+					}
+					if (key.isValid() && key.isWritable()) {
+						player.flush();
+					}
+					if (key.isValid() && key.isReadable()) {
+						player.read();
+					}
+				} catch (IOException e) {
+					player.close(false);
+				} catch (IllegalMoveException e) {
+					player.close(false);
+				}
+			}
+		}
+		selector.close();
+	}
+
+	private void connect() throws IOException {
+		Player player = new Player("p"+started++);
+		players.put(player.name, player);
+		open++;
+		peakOpen = Math.max(peakOpen, open);
+		player.open();
+	}
+
+	private void report(int games, double seconds) {
+		long[] sorted = Arrays.copyOf(latencies, moves);
+		Arrays.sort(sorted);
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println(String.format("played %d games (%d players failed) in %.2f seconds, %.0f games per second, "
+				+"%.0f connections per second", finished / 2, failed, seconds, finished / 2 / seconds,
+				started / seconds));
+		System.out.println(String.format("%d moves relayed, %.0f moves per second, %.0f per core", moves,
+				moves / seconds, moves / seconds / cores));
+		System.out.println(String.format("%d connections at most, %.0f per core", peakOpen, (double) peakOpen / cores));
+		if (dropped > 0) {
+			System.out.println(dropped+" connections dropped and resumed");
+		}
+		if (moves > 0) {
+			System.out.println(String.format("move latency: p50 %.0f us, p99 %.0f us, p99.9 %.0f us, max %.0f us",
+					percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+					sorted[moves - 1] / 1000.0));
+		}
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1000.0;
+	}
+
+	/**
+	 * A player of random moves.
+	 */
+	private class Player {
+		private SocketChannel channel;
+		private final String name;
+		private final ByteBuffer in = ByteBuffer.allocate(Frame.MAX_FRAME_BYTES);
+		// the bytes still to write, null when there are none
+		private ByteBuffer out;
+		private SelectionKey key;
+		private TwoPlayerGameState gameState;
+		private boolean order;
+		// the time the last move was sent
+		private long sentAt;
+		// the sequence numbers of the next frames to send and to receive
+		private int sentFrames;
+		private int receivedFrames;
+		// the frames sent by their sequence numbers, to send again on resume
+		private final List<Frame> sent = new ArrayList<Frame>();
+		private long session;
+		// true from dropping the connection until the server answers the resume
+		private boolean resuming;
+
+		Player(String name) {
+			this.name = name;
+		}
+
+		void open() throws IOException {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			if (channel.connect(address)) {
+				key = channel.register(selector, SelectionKey.OP_READ, this);
+				connected();
+			} else {
+				key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+			}
+		}
+
+		void connected() throws IOException {
+			if (resuming) {
+				write(Frame.resume(session, receivedFrames).encode(0));
+			} else {
+				send(Frame.hello(name, null, rules));
+			}
+		}
+
+		/**
+		 * Drop the connection and connect again to resume the session.
+		 */
+		private void drop() throws IOException {
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+			}
+			dropped++;
+			in.clear();
+			out = null;
+			resuming = true;
+			open();
+		}
+
+		void read() throws IOException, IllegalMoveException {
+			if (channel.read(in) < 0) {
+				close(false);
+				return;
+			}
+			in.flip();
+			SocketChannel read = channel;
+			while (channel == read && channel.isOpen() && handle()) {
+				// handle the messages read
+			}
+			if (channel == read) {
+				in.compact();
+			}
+		}
+
+		/**
+		 * @return true if a message has been handled, false if it is not all
+		 * read yet.
+		 */
+		private boolean handle() throws IOException, IllegalMoveException {
+			Frame frame = Frame.read(in);
+			if (frame == null) {
+				return false;
+			}
+			if (resuming) {
+				if (frame.getType() != Frame.Type.RESUME || frame.getSession() != session) {
+					throw new IOException("No resume from the server");
+				}
+				resuming = false;
+				// the frames the server has missed
+				for (int i = frame.getReceived(); i < sentFrames; i++) {
+					write(sent.get(i).encode(i));
+				}
+				return true;
+			}
+			if (frame.getSequence() != receivedFrames++) {
+				throw new IOException("Frame out of sequence");
+			}
+			if (gameState == null) {
+				if (frame.getType() != Frame.Type.HELLO) {
+					throw new IOException("No hello from the server");
+				}
+				session = frame.getSession();
+				order = frame.getRole() == PlayerRole.CHAOS;
+				gameState = order ? new TwoPlayerGameState(name, frame.getName(), rules)
+						: new TwoPlayerGameState(frame.getName(), name, rules);
+				if (order) {
+					move();
+				}
+				return true;
+			}
+			if (frame.getType() != Frame.Type.MOVE) {
+				throw new IOException("Unexpected "+frame.getType()+" from the server");
+			}
+			long now = System.nanoTime();
+			Player opponent = players.get(order ? gameState.getChaosPlayer() : gameState.getOrderPlayer());
+			if (opponent != null) {
+				record(now - opponent.sentAt);
+			}
+			gameState.makeMove(frame.getMove(gameState.nextTurn(), rules.getBoardSize()));
+			if (gameState.isOver()) {
+				close(true);
+			} else {
+				move();
+			}
+			return true;
+		}
+
+		private void move() throws IOException, IllegalMoveException {
+			int size = rules.getBoardSize();
+			int x;
+			int y;
+			do {
+				x = random.nextInt(size) + 1;
+				y = random.nextInt(size) + 1;
+			} while (gameState.getBoardMark(x, y) != Mark.SPACE);
+			Move move = new Move(name, x, y, random.nextBoolean() ? Mark.X : Mark.O);
+			gameState.makeMove(move);
+			sentAt = System.nanoTime();
+			send(Frame.move(move, size));
+			if (gameState.isOver()) {
+				if (out == null) {
+					close(true);
+				}
+			} else if (dropRate > 0 && random.nextDouble() < dropRate) {
+				drop();
+			}
+		}
+
+		void send(Frame frame) throws IOException {
+			sent.add(frame);
+			write(frame.encode(sentFrames++));
+		}
+
+		private void write(byte[] data) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			if (out == null) {
+				channel.write(buffer);
+				if (!buffer.hasRemaining()) {
+					return;
+				}
+				out = ByteBuffer.allocate(Math.max(512, buffer.remaining()));
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			} else if (out.remaining() < buffer.remaining()) {
+				ByteBuffer grown = ByteBuffer.allocate(out.capacity() * 2 + buffer.remaining());
+				out.flip();
+				grown.put(out);
+				out = grown;
+			}
+			out.put(buffer);
+		}
+
+		void flush() throws IOException {
+			if (out != null) {
+				out.flip();
+				channel.write(out);
+				if (out.hasRemaining()) {
+					out.compact();
+					return;
+				}
+				out = null;
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			if (gameState != null && gameState.isOver()) {
+				close(true);
+			}
+		}
+
+		void close(boolean done) {
+			if (!channel.isOpen()) {
+				return;
+			}
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+			}
+			open--;
+			if (done) {
+				finished++;
+			} else {
+				failed++;
+			}
+			// the opponent may still be reading the last move
+		}
+	}
+
+	private void record(long latency) {
+		if (moves == latencies.length) {
+			latencies = Arrays.copyOf(latencies, moves * 2);
+		}
+		latencies[moves++] = latency;
+	}
+}
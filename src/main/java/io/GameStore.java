@@ -0,0 +1,662 @@
+package io;
+
+import models.GameState;
+import models.Mark;
+import models.OnePlayerGameState;
+import models.SavedGameType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * The store of many saved games, each under its own number. Every game is
+ * saved in its own file, in the binary format with the journal of its moves,
+ * so a game is read without touching the others. The index of the store keeps
+ * the players, the type, the time and the number of moves of every game and
+ * whether it is over, so the games are listed and filtered without reading
+ * them.
+ * <p>
+ * The index is read once when the store is opened and kept in memory. A game
+ * is written to a temporary file that replaces the old one, so a crash never
+ * leaves a half written game. The change of its entry is then appended to the
+ * log of the index, a record of its length, the entry and its CRC32 checksum,
+ * so a record torn by a crash ends the log. The log is forced to the disk
+ * outside the lock of the store, once for all the records appended by the
+ * games saved meanwhile, and the games are written each under the lock of its
+ * own file, so many games are saved at once at the cost of a record each.
+ * Once the log has more records than there are games, the index is written
+ * whole to a temporary file that replaces the old one, and the log is
+ * emptied. The games saved but not in the index, because of a crash in
+ * between, are added to it when the store is opened again.
+ * <p>
+ * The store is also the reader and writer of the game being played: writing a
+ * game saves it under the number it has been given the first time it was
+ * saved, and reading gives back the last game saved that is not over.
+ *
+ * @author Anastasia Radchenko
+ */
+public class GameStore implements GameReaderWriter {
+	public static final String DEFAULT_DIRECTORY = System.getProperty("user.home")+System.getProperty("file.separator")
+			+"order-and-chaos-games";
+
+	static final int MAGIC = 0x4f434958; // "OCIX"
+	static final int LOG_MAGIC = 0x4f43494c; // "OCIL"
+	static final int VERSION = 1;
+
+	private static final String INDEX_FILENAME = "index";
+	private static final String LOG_FILENAME = "index.log";
+	private static final String GAME_SUFFIX = ".saved";
+	private static final String JOURNAL_SUFFIX = ".journal";
+
+	// the kinds of the records of the log
+	private static final int PUT = 1;
+	private static final int DELETE = 2;
+	// the log is never compacted while it has fewer records
+	private static final int MIN_COMPACT_RECORDS = 1024;
+
+	private final File directory;
+	private final File indexFile;
+	// the entries of the index by the game number
+	private final Map<Long, Entry> entries = new TreeMap<Long, Entry>();
+	// the numbers of the games saved or read through the store
+	private final Map<GameState, Long> ids = new WeakHashMap<GameState, Long>();
+	private long nextId = 1;
+	// the readers and writers of the games, one for each game, so a game is written by one thread at a time
+	private final ConcurrentMap<Long, FileGameReaderWriter> slots = new ConcurrentHashMap<Long, FileGameReaderWriter>();
+
+	private RandomAccessFile log;
+	// the length of the log and the number of its records
+	private long logLength;
+	private int logRecords;
+	// the number of the records appended since the store was opened, and of those forced to the disk
+	private long appendedRecords;
+	private final Object syncLock = new Object();
+	private long syncedRecords;
+
+	// the game being recorded
+	private FileGameReaderWriter recorder;
+	private long recordedId;
+	private GameState recordedGame;
+
+	private GameStore(File directory) {
+		this.directory = directory;
+		indexFile = new File(directory, INDEX_FILENAME);
+	}
+
+	/**
+	 * Open the store in the directory, create it if there is none.
+	 *
+	 * @param directory the directory of the store.
+	 * @return the store opened.
+	 * @throws IOException if the directory can not be created or read.
+	 */
+	public static GameStore open(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create "+directory);
+		}
+		GameStore store = new GameStore(directory);
+		store.readIndex();
+		store.readLog();
+		store.addMissingGames();
+		return store;
+	}
+
+	/**
+	 * @return the store in the user home directory.
+	 * @throws IOException if the store can not be opened.
+	 */
+	public static GameStore open() throws IOException {
+		return open(new File(DEFAULT_DIRECTORY));
+	}
+
+	private void readIndex() throws IOException {
+		if (!indexFile.exists()) {
+			return;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a saved game index: "+indexFile);
+			}
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				Entry entry = Entry.readFrom(in);
+				entries.put(entry.id, entry);
+				nextId = Math.max(nextId, entry.id + 1);
+			}
+		} catch (IOException e) {
+			// the index is rebuilt from the games
+			e.printStackTrace();
+			entries.clear();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Play the log back on the index read, up to the first record torn by a
+	 * crash, and cut the log off there.
+	 */
+	private void readLog() throws IOException {
+		log = new RandomAccessFile(new File(directory, LOG_FILENAME), "rw");
+		byte[] data = new byte[(int) Math.min(log.length(), Integer.MAX_VALUE)];
+		log.readFully(data);
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		if (data.length < 8 || buffer.getInt() != LOG_MAGIC || buffer.getInt() != VERSION) {
+			// a new log, or one torn before its first record
+			log.setLength(0);
+			log.writeInt(LOG_MAGIC);
+			log.writeInt(VERSION);
+			logLength = 8;
+			return;
+		}
+		logLength = 8;
+		while (buffer.remaining() >= 4) {
+			int length = buffer.getInt();
+			if (length <= 0 || length > buffer.remaining() - 4) {
+				break;
+			}
+			int offset = buffer.position();
+			buffer.position(offset + length);
+			if (buffer.getInt() != checksum(data, offset, length)) {
+				break;
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+			int kind = in.readUnsignedByte();
+			if (kind == PUT) {
+				Entry entry = Entry.readFrom(in);
+				entries.put(entry.id, entry);
+				nextId = Math.max(nextId, entry.id + 1);
+			} else if (kind == DELETE) {
+				entries.remove(in.readLong());
+			} else {
+				break;
+			}
+			logLength = buffer.position();
+			logRecords++;
+		}
+		log.setLength(logLength);
+	}
+
+	/**
+	 * Add the saved games that are not in the index.
+	 */
+	private void addMissingGames() throws IOException {
+		String[] names = directory.list();
+		boolean added = false;
+		for (String name : names == null ? new String[0] : names) {
+			if (!name.endsWith(GAME_SUFFIX)) {
+				continue;
+			}
+			long id;
+			try {
+				id = Long.parseLong(name.substring(0, name.length() - GAME_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (entries.containsKey(id)) {
+				continue;
+			}
+			try {
+				GameState gameState = slot(id).readState();
+				entries.put(id, Entry.of(id, gameState, new File(directory, name).lastModified()));
+				nextId = Math.max(nextId, id + 1);
+				added = true;
+			} catch (IOException e) {
+				// leave the corrupt game out
+				e.printStackTrace();
+			}
+		}
+		if (added || logRecords > Math.max(MIN_COMPACT_RECORDS, entries.size())) {
+			compact();
+		}
+	}
+
+	/**
+	 * Write the index whole and empty the log. A crash in between plays the
+	 * log back on the index that has it all already, which changes nothing.
+	 */
+	private void compact() throws IOException {
+		File temp = new File(directory, INDEX_FILENAME+".tmp");
+		FileOutputStream file = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Entry entry : entries.values()) {
+				entry.writeTo(out);
+			}
+			out.flush();
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+		try {
+			Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		log.setLength(8);
+		logLength = 8;
+		logRecords = 0;
+	}
+
+	/**
+	 * Append the record to the log, compact the log once it has grown longer
+	 * than the index. Called under the lock of the store.
+	 *
+	 * @return the number of the record, to force it to the disk with.
+	 */
+	private long append(int kind, Entry entry, long id) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0);
+		out.writeByte(kind);
+		if (entry != null) {
+			entry.writeTo(out);
+		} else {
+			out.writeLong(id);
+		}
+		out.writeInt(0);
+		byte[] record = bytes.toByteArray();
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		int length = record.length - 8;
+		buffer.putInt(0, length);
+		buffer.putInt(4 + length, checksum(record, 4, length));
+		FileChannel channel = log.getChannel();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, logLength + buffer.position());
+		}
+		logLength += record.length;
+		logRecords++;
+		appendedRecords++;
+		if (logRecords > Math.max(MIN_COMPACT_RECORDS, entries.size())) {
+			compact();
+		}
+		return appendedRecords;
+	}
+
+	/**
+	 * Force the log to the disk up to the record, with all the records
+	 * appended so far: the threads that wait meanwhile find their records
+	 * forced already.
+	 */
+	private void sync(long record) throws IOException {
+		synchronized (syncLock) {
+			if (syncedRecords >= record) {
+				return;
+			}
+			long appended;
+			synchronized (this) {
+				appended = appendedRecords;
+			}
+			log.getChannel().force(false);
+			syncedRecords = appended;
+		}
+	}
+
+	private static int checksum(byte[] data, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * @return the reader and writer of the saved game with the number.
+	 */
+	private FileGameReaderWriter slot(long id) {
+		FileGameReaderWriter slot = slots.get(id);
+		if (slot == null) {
+			FileGameReaderWriter created = new FileGameReaderWriter(new File(directory, id+GAME_SUFFIX),
+					new File(directory, id+JOURNAL_SUFFIX));
+			slot = slots.putIfAbsent(id, created);
+			if (slot == null) {
+				slot = created;
+			}
+		}
+		return slot;
+	}
+
+	private synchronized long newId() {
+		return nextId++;
+	}
+
+	/**
+	 * Save the game under a new number.
+	 *
+	 * @param gameState the game to save.
+	 * @return the number of the game.
+	 * @throws IOException if the game can not be saved.
+	 */
+	public long save(GameState gameState) throws IOException {
+		long id = newId();
+		save(id, gameState);
+		return id;
+	}
+
+	/**
+	 * Save the game under the number, replacing the game saved under it. The
+	 * games under other numbers are saved at the same time.
+	 *
+	 * @param id the number of the game.
+	 * @param gameState the game to save.
+	 * @throws IOException if the game can not be saved.
+	 */
+	public void save(long id, GameState gameState) throws IOException {
+		FileGameReaderWriter slot = slot(id);
+		long record;
+		// the entry of the game follows the game last written
+		synchronized (slot) {
+			slot.writeState(gameState);
+			record = commit(id, gameState);
+		}
+		sync(record);
+	}
+
+	private synchronized long commit(long id, GameState gameState) throws IOException {
+		Entry entry = Entry.of(id, gameState, System.currentTimeMillis());
+		entries.put(id, entry);
+		ids.put(gameState, id);
+		nextId = Math.max(nextId, id + 1);
+		return append(PUT, entry, id);
+	}
+
+	/**
+	 * Read the saved game with the number.
+	 *
+	 * @param id the number of the game.
+	 * @return the game, or null if there is no game with the number.
+	 * @throws IOException if the game can not be read.
+	 */
+	public GameState load(long id) throws IOException {
+		synchronized (this) {
+			if (!entries.containsKey(id)) {
+				return null;
+			}
+		}
+		FileGameReaderWriter slot = slot(id);
+		GameState gameState;
+		synchronized (slot) {
+			gameState = slot.readState();
+		}
+		if (gameState != null) {
+			synchronized (this) {
+				ids.put(gameState, id);
+			}
+		}
+		return gameState;
+	}
+
+	/**
+	 * Delete the saved game with the number.
+	 *
+	 * @param id the number of the game.
+	 * @return true if the game has been deleted, false if there was none.
+	 * @throws IOException if the index can not be written.
+	 */
+	public boolean delete(long id) throws IOException {
+		boolean recorded;
+		long record;
+		synchronized (this) {
+			if (entries.remove(id) == null) {
+				return false;
+			}
+			recorded = recorder != null && id == recordedId;
+			record = append(DELETE, null, id);
+		}
+		if (recorded) {
+			stopRecording();
+		}
+		// the game is gone once it is not in the index
+		sync(record);
+		new File(directory, id+GAME_SUFFIX).delete();
+		new File(directory, id+JOURNAL_SUFFIX).delete();
+		slots.remove(id);
+		return true;
+	}
+
+	/**
+	 * Close the log of the index. The store is not used once closed.
+	 *
+	 * @throws IOException if closing fails.
+	 */
+	public synchronized void close() throws IOException {
+		log.close();
+	}
+
+	/**
+	 * @return all the saved games, the earliest saved first.
+	 */
+	public List<Entry> list() {
+		return list(null, null, null);
+	}
+
+	/**
+	 * @param player the player of the games, null for any player.
+	 * @param type the type of the games, null for any type.
+	 * @param over true for the games that are over, false for the games still
+	 * being played, null for both.
+	 * @return the saved games matching all the conditions, the earliest saved first.
+	 */
+	public synchronized List<Entry> list(String player, SavedGameType type, Boolean over) {
+		List<Entry> result = new ArrayList<Entry>();
+		for (Entry entry : entries.values()) {
+			if ((player == null || player.equals(entry.orderPlayer) || player.equals(entry.chaosPlayer))
+					&& (type == null || type == entry.type)
+					&& (over == null || over.booleanValue() == entry.over)) {
+				result.add(entry);
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * @return the number of the game saved or read through the store, or -1
+	 * if it has not been saved.
+	 */
+	public synchronized long getId(GameState gameState) {
+		Long id = ids.get(gameState);
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	public GameState readState() throws IOException {
+		List<Entry> ongoing = list(null, null, false);
+		return ongoing.isEmpty() ? null : load(ongoing.get(ongoing.size() - 1).id);
+	}
+
+	@Override
+	public void writeState(GameState gameState) throws IOException {
+		save(idOf(gameState), gameState);
+	}
+
+	/**
+	 * @return the number of the game saved or read through the store, or a
+	 * new number.
+	 */
+	private synchronized long idOf(GameState gameState) {
+		Long id = ids.get(gameState);
+		return id == null ? nextId++ : id;
+	}
+
+	@Override
+	public void startRecording(GameState gameState) throws IOException {
+		stopRecording();
+		long id = idOf(gameState);
+		FileGameReaderWriter slot = slot(id);
+		long record;
+		synchronized (slot) {
+			slot.startRecording(gameState);
+			record = commit(id, gameState);
+		}
+		synchronized (this) {
+			recorder = slot;
+			recordedId = id;
+			recordedGame = gameState;
+		}
+		sync(record);
+	}
+
+	@Override
+	public void stopRecording() throws IOException {
+		FileGameReaderWriter slot;
+		long id;
+		GameState gameState;
+		synchronized (this) {
+			if (recorder == null) {
+				return;
+			}
+			slot = recorder;
+			id = recordedId;
+			gameState = recordedGame;
+			recorder = null;
+			recordedGame = null;
+		}
+		long record = 0;
+		synchronized (slot) {
+			slot.stopRecording();
+			// the moves recorded since the game was saved
+			synchronized (this) {
+				if (entries.containsKey(id)) {
+					record = commit(id, gameState);
+				}
+			}
+		}
+		sync(record);
+	}
+
+	/**
+	 * The entry of the index: what is known about a saved game without reading it.
+	 */
+	public static class Entry implements Comparable<Entry> {
+		private final long id;
+		private final SavedGameType type;
+		private final String orderPlayer;
+		private final String chaosPlayer;
+		private final long timestamp;
+		private final int moves;
+		private final boolean over;
+
+		Entry(long id, SavedGameType type, String orderPlayer, String chaosPlayer, long timestamp, int moves,
+				boolean over) {
+			this.id = id;
+			this.type = type;
+			this.orderPlayer = orderPlayer;
+			this.chaosPlayer = chaosPlayer;
+			this.timestamp = timestamp;
+			this.moves = moves;
+			this.over = over;
+		}
+
+		static Entry of(long id, GameState gameState, long timestamp) {
+			int size = gameState.getRules().getBoardSize();
+			int moves = 0;
+			for (int x = 1; x <= size; x++) {
+				for (int y = 1; y <= size; y++) {
+					if (gameState.getBoardMark(x, y) != Mark.SPACE) {
+						moves++;
+					}
+				}
+			}
+			SavedGameType type = gameState instanceof OnePlayerGameState ? SavedGameType.ONE_PLAYER
+					: SavedGameType.TWO_PLAYER;
+			return new Entry(id, type, gameState.getOrderPlayer(), gameState.getChaosPlayer(), timestamp, moves,
+					gameState.isOver());
+		}
+
+		static Entry readFrom(DataInput in) throws IOException {
+			long id = in.readLong();
+			int type = in.readUnsignedByte();
+			if (type >= SavedGameType.values().length) {
+				throw new IOException("Invalid saved game type: "+type);
+			}
+			return new Entry(id, SavedGameType.values()[type], in.readUTF(), in.readUTF(), in.readLong(),
+					in.readUnsignedShort(), in.readBoolean());
+		}
+
+		void writeTo(DataOutput out) throws IOException {
+			out.writeLong(id);
+			out.writeByte(type.ordinal());
+			out.writeUTF(orderPlayer);
+			out.writeUTF(chaosPlayer);
+			out.writeLong(timestamp);
+			out.writeShort(moves);
+			out.writeBoolean(over);
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public SavedGameType getType() {
+			return type;
+		}
+
+		public String getOrderPlayer() {
+			return orderPlayer;
+		}
+
+		public String getChaosPlayer() {
+			return chaosPlayer;
+		}
+
+		/**
+		 * @return the time the game was saved, in milliseconds since the epoch.
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @return the number of marks on the board.
+		 */
+		public int getMoves() {
+			return moves;
+		}
+
+		public boolean isOver() {
+			return over;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (timestamp != other.timestamp) {
+				return timestamp < other.timestamp ? -1 : 1;
+			}
+			return id < other.id ? -1 : id > other.id ? 1 : 0;
+		}
+
+		public String toString() {
+			return "{id:"+id+",type:"+type+",order:"+orderPlayer+",chaos:"+chaosPlayer+",time:"+timestamp
+					+",moves:"+moves+",over:"+over+"}";
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package io;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * The remote player of the network game: one thread reads the frames from
+ * the connector as long as the connection lasts and hands them to the
+ * listener. The thread is a virtual thread where the JVM has them (Java 21 and
+ * later), so that thousands of connections waiting for the moves take no
+ * platform threads; on older JVMs it is a daemon thread with a small stack.
+ *
+ * @author Anastasia Radchenko
+ */
+public class RemotePeer {
+
+	/**
+	 * Receives what comes from the remote player, on the reader thread.
+	 */
+	public interface Listener {
+
+		/**
+		 * @param frame the frame received.
+		 */
+		void frameReceived(Frame frame);
+
+		/**
+		 * The connection is lost, no more frames will come. Not called when
+		 * the peer is closed.
+		 *
+		 * @param e the reason.
+		 */
+		void connectionLost(IOException e);
+	}
+
+	// the stack of the platform reader thread, it only reads and dispatches
+	private static final long STACK_SIZE = 256 * 1024;
+
+	// Thread.ofVirtual() and the methods of Thread.Builder, null before Java 21
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method UNSTARTED;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method unstarted = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+			// a preview of the virtual threads that is not enabled refuses here
+			unstarted.invoke(ofVirtual.invoke(null), new Runnable() {
+				@Override
+				public void run() {
+				}
+			});
+		} catch (Exception e) {
+			ofVirtual = null;
+		} catch (LinkageError e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		UNSTARTED = unstarted;
+	}
+
+	private final GameConnector connector;
+	private final Listener listener;
+	private volatile boolean closed;
+	private Thread thread;
+
+	public RemotePeer(GameConnector connector, Listener listener) {
+		this.connector = connector;
+		this.listener = listener;
+	}
+
+	/**
+	 * @return true if the readers run on virtual threads.
+	 */
+	public static boolean isVirtual() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @param name the name of the thread.
+	 * @param task the task of the thread.
+	 * @return the thread to run the task, virtual where the JVM has them, not
+	 * started.
+	 */
+	public static Thread newThread(String name, Runnable task) {
+		if (OF_VIRTUAL != null) {
+			try {
+				return (Thread) UNSTARTED.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name), task);
+			} catch (Exception e) {
+				throw new IllegalStateException("Failed to create a virtual thread", e);
+			}
+		}
+		Thread thread = new Thread(null, task, name, STACK_SIZE);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Start reading the frames.
+	 *
+	 * @param name the name of the reader thread.
+	 */
+	public synchronized void start(String name) {
+		if (thread != null) {
+			throw new IllegalStateException("The peer is started already");
+		}
+		thread = newThread(name, new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		});
+		thread.start();
+	}
+
+	private void read() {
+		try {
+			while (!closed) {
+				listener.frameReceived(connector.receive());
+			}
+		} catch (IOException e) {
+			if (!closed) {
+				closed = true;
+				connector.disconnect();
+				listener.connectionLost(e);
+			}
+		}
+	}
+
+	/**
+	 * @param frame the frame to send to the remote player.
+	 * @throws IOException if the frame can not be sent.
+	 */
+	public void send(Frame frame) throws IOException {
+		connector.send(frame);
+	}
+
+	/**
+	 * Close the connection, the reader stops without telling the listener.
+	 */
+	public void close() {
+		closed = true;
+		connector.disconnect();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,147 @@
+package io;
+
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connects many players to the game server started in this JVM, each player
+ * over a blocking connector read by a remote peer thread of its own, and
+ * prints what the idle connections cost and how long it takes for every
+ * Order player to move and for every Chaos player to answer. The readers are
+ * virtual threads on Java 21 and later.
+ * <p>
+ * Usage: <code>RemotePeerBenchmark [connections [rounds]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class RemotePeerBenchmark {
+
+	private static final Rules RULES = Rules.STANDARD;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		connections -= connections % 2;
+
+		GameServer server = GameServer.start(0, 1);
+		Player[] players = new Player[connections];
+		try {
+			System.out.println("readers on "+(RemotePeer.isVirtual() ? "virtual" : "platform")+" threads");
+			int threadsBefore = Thread.activeCount();
+			long memoryBefore = usedMemory();
+			CountDownLatch paired = new CountDownLatch(connections);
+			AtomicInteger lost = new AtomicInteger();
+			long start = System.nanoTime();
+			for (int i = 0; i < connections; i++) {
+				ClientGameConnector connector = new ClientGameConnector(server.getPort());
+				connector.connect("127.0.0.1");
+				players[i] = new Player(connector, paired, lost);
+				players[i].peer.send(Frame.hello("p"+i, null, RULES));
+				players[i].peer.start("remote-player-"+i);
+			}
+			if (!paired.await(60, TimeUnit.SECONDS)) {
+				throw new IOException("The players have not been paired");
+			}
+			double seconds = (System.nanoTime() - start) / 1000000000.0;
+			long memory = usedMemory() - memoryBefore;
+			System.out.println(String.format("%d connections open and paired in %.2f seconds, %.0f per second",
+					connections, seconds, connections / seconds));
+			System.out.println(String.format("%d platform threads more, %.1f KB of heap per connection",
+					Thread.activeCount() - threadsBefore, memory / 1024.0 / connections));
+
+			for (int round = 0; round < rounds; round++) {
+				CountDownLatch answered = new CountDownLatch(connections / 2);
+				start = System.nanoTime();
+				for (Player player : players) {
+					player.answered = answered;
+				}
+				for (Player player : players) {
+					if (player.role == PlayerRole.ORDER) {
+						player.peer.send(Frame.move(new Move("", 1, round + 1, Mark.X), RULES.getBoardSize()));
+					}
+				}
+				if (!answered.await(60, TimeUnit.SECONDS)) {
+					throw new IOException("The players have not answered");
+				}
+				seconds = (System.nanoTime() - start) / 1000000000.0;
+				System.out.println(String.format("round %d: %d moves made and answered in %.1f ms, %.0f moves per second",
+						round + 1, connections, seconds * 1000, connections / seconds));
+			}
+			if (lost.get() > 0) {
+				System.out.println(lost.get()+" connections lost");
+				System.exit(1);
+			}
+		} finally {
+			for (Player player : players) {
+				if (player != null) {
+					player.peer.close();
+				}
+			}
+			server.close();
+		}
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * The player that answers every move of Order by the move of Chaos on the
+	 * next square.
+	 */
+	private static class Player implements RemotePeer.Listener {
+		private final RemotePeer peer;
+		private final CountDownLatch paired;
+		private final AtomicInteger lost;
+		private volatile PlayerRole role;
+		private volatile CountDownLatch answered;
+
+		Player(GameConnector connector, CountDownLatch paired, AtomicInteger lost) {
+			peer = new RemotePeer(connector, this);
+			this.paired = paired;
+			this.lost = lost;
+		}
+
+		@Override
+		public void frameReceived(Frame frame) {
+			try {
+				switch (frame.getType()) {
+					case HELLO:
+						role = frame.getRole() == PlayerRole.ORDER ? PlayerRole.CHAOS : PlayerRole.ORDER;
+						paired.countDown();
+						break;
+					case MOVE:
+						if (role == PlayerRole.CHAOS) {
+							Move move = frame.getMove("", RULES.getBoardSize());
+							peer.send(Frame.move(new Move("", move.getX() + 1, move.getY(), Mark.O),
+									RULES.getBoardSize()));
+						} else {
+							answered.countDown();
+						}
+						break;
+					default:
+						break;
+				}
+			} catch (IOException e) {
+				connectionLost(e);
+			}
+		}
+
+		@Override
+		public void connectionLost(IOException e) {
+			lost.incrementAndGet();
+		}
+	}
+}
@@ -1,18 +1,83 @@
 package io;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 
 /**
- * Implements client version of {@link GameConnector}.
+ * Implements client version of {@link GameConnector}. Once the session is
+ * started, the host goes on listening, and the client that comes back with
+ * the session token takes the place of the connection lost, even if the host
+ * has not seen it lost yet.
  *
  * @author Anastasia Radchenko
  */
 public class ServerGameConnector extends AbstractGameConnector {
+    private final int port;
+    private ServerSocket serverSocket;
+
+    public ServerGameConnector() {
+        this(GAME_PORT);
+    }
+
+    public ServerGameConnector(int port) {
+        this.port = port;
+    }
+
     @Override
     protected Socket connectSocket(String hostNameOrIPAddress) throws IOException {
-        ServerSocket serverSocket = new ServerSocket(GAME_PORT);
+        closeServerSocket();
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
         return serverSocket.accept();
     }
+
+    @Override
+    protected void sessionStarted() {
+        final ServerSocket serverSocket = this.serverSocket;
+        RemotePeer.newThread("game-resume", new Runnable() {
+            @Override
+            public void run() {
+                acceptResumes(serverSocket);
+            }
+        }).start();
+    }
+
+    private void acceptResumes(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // closed when disconnected
+                continue;
+            }
+            try {
+                resumeOn(socket, false);
+            } catch (IOException e) {
+                try { socket.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    @Override
+    protected void resume(int generation, long deadline, IOException cause) throws IOException {
+        if (!awaitSocket(generation, deadline)) {
+            throw cause;
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        super.disconnect();
+        closeServerSocket();
+    }
+
+    private synchronized void closeServerSocket() {
+        if (serverSocket != null) {
+            try { serverSocket.close(); } catch (IOException e) {} finally { serverSocket = null; }
+        }
+    }
 }
@@ -0,0 +1,272 @@
+package io;
+
+import models.GameState;
+import models.IllegalMoveException;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Plays a game through the game server started in this JVM while many
+ * spectators watch it, and prints how long the moves took to get from a
+ * player to the opponent and to all the spectators. The players move as fast
+ * as they can on the largest board, so that the spectators have as many
+ * frames to take as they can get. Run it without the spectators to see what
+ * the moves take without them.
+ * <p>
+ * Usage: <code>SpectatorBenchmark [spectators [moves [threads]]]</code>
+ *
+ * @author Anastasia Radchenko
+ */
+public class SpectatorBenchmark {
+
+	private static final Rules RULES = new Rules(Rules.MAX_BOARD_SIZE, Rules.MAX_BOARD_SIZE);
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int spectators = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int moves = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		moves = Math.min(moves, RULES.getSquares() - RULES.getBoardSize());
+
+		GameServer server = GameServer.start(0, threads);
+		ClientGameConnector order = new ClientGameConnector(server.getPort());
+		ClientGameConnector chaos = new ClientGameConnector(server.getPort());
+		try {
+			order.connect("127.0.0.1");
+			order.send(Frame.hello("first", null, RULES));
+			chaos.connect("127.0.0.1");
+			chaos.send(Frame.hello("second", null, RULES));
+			PlayerRole role = order.receive().getRole();
+			chaos.receive();
+			if (role == PlayerRole.ORDER) {
+				// the selector threads have read the second hello first
+				ClientGameConnector connector = order;
+				order = chaos;
+				chaos = connector;
+			}
+
+			Audience audience = new Audience(server.getPort(), spectators, moves);
+			Thread thread = new Thread(audience, "spectators");
+			thread.setDaemon(true);
+			long start = System.nanoTime();
+			thread.start();
+			audience.awaitWatching();
+			double seconds = (System.nanoTime() - start) / 1000000000.0;
+			System.out.println(String.format("%d spectators watching in %.2f seconds, %d selector threads",
+					spectators, seconds, threads));
+
+			long[] latencies = new long[moves];
+			start = System.nanoTime();
+			for (int i = 0; i < moves; i++) {
+				GameConnector player = i % 2 == 0 ? order : chaos;
+				GameConnector opponent = i % 2 == 0 ? chaos : order;
+				// a checkerboard of the marks row by row, no chain before the last row
+				int x = i / RULES.getBoardSize() + 1;
+				int y = i % RULES.getBoardSize() + 1;
+				Move move = new Move("", x, y, (x + y) % 2 == 0 ? Mark.X : Mark.O);
+				long sentAt = System.nanoTime();
+				audience.sentAt[i + 1] = sentAt;
+				player.send(Frame.move(move, RULES.getBoardSize()));
+				if (opponent.receive().getType() != Frame.Type.MOVE) {
+					throw new IOException("The move has not been relayed");
+				}
+				latencies[i] = System.nanoTime() - sentAt;
+			}
+			seconds = (System.nanoTime() - start) / 1000000000.0;
+			order.send(Frame.resign());
+			chaos.receive();
+			audience.awaitDone();
+
+			Arrays.sort(latencies);
+			System.out.println(String.format("%d moves in %.2f seconds, %.0f moves per second", moves, seconds,
+					moves / seconds));
+			System.out.println(String.format("move latency to the opponent: p50 %.0f us, p99 %.0f us, max %.0f us",
+					percentile(latencies, 0.5), percentile(latencies, 0.99), latencies[moves - 1] / 1000.0));
+			audience.report();
+			System.out.println(server.getDroppedSpectators()+" spectators dropped by the server");
+		} finally {
+			order.disconnect();
+			chaos.disconnect();
+			server.close();
+		}
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1000.0;
+	}
+
+	/**
+	 * The spectators, all served by a single selector thread. Every spectator
+	 * checks the frames against the game of its snapshot.
+	 */
+	private static class Audience implements Runnable {
+		private final Selector selector;
+		private final int port;
+		private final int spectators;
+		private final int moves;
+		// the time every move has been sent by the sequence number of its frame
+		private final long[] sentAt;
+		// the time the last spectator has got every move by the sequence number of its frame
+		private final long[] lastArrival;
+		private int watching;
+		private int done;
+		private int failed;
+		private long frames;
+
+		Audience(int port, int spectators, int moves) throws IOException {
+			this.port = port;
+			this.spectators = spectators;
+			this.moves = moves;
+			sentAt = new long[moves + 2];
+			lastArrival = new long[moves + 2];
+			selector = Selector.open();
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < spectators; i++) {
+					SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+					channel.configureBlocking(false);
+					channel.write(ByteBuffer.wrap(Frame.watch("first").encode(0)));
+					channel.register(selector, SelectionKey.OP_READ, new Spectator());
+				}
+				while (true) {
+					selector.select();
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						read(key);
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				synchronized (this) {
+					failed = spectators;
+					notifyAll();
+				}
+			}
+		}
+
+		private void read(SelectionKey key) {
+			SocketChannel channel = (SocketChannel) key.channel();
+			Spectator spectator = (Spectator) key.attachment();
+			try {
+				if (channel.read(spectator.in) < 0) {
+					// the server closes the spectators after the last frame
+					finish(key, spectator.resigned);
+					return;
+				}
+				spectator.in.flip();
+				Frame frame;
+				long now = System.nanoTime();
+				while ((frame = Frame.read(spectator.in)) != null) {
+					spectator.frame(frame);
+					frames++;
+					if (frame.getType() == Frame.Type.SNAPSHOT) {
+						synchronized (this) {
+							watching++;
+							notifyAll();
+						}
+					} else if (frame.getSequence() <= moves) {
+						lastArrival[frame.getSequence()] = Math.max(lastArrival[frame.getSequence()], now);
+					}
+				}
+				spectator.in.compact();
+			} catch (IOException e) {
+				finish(key, false);
+			}
+		}
+
+		private void finish(SelectionKey key, boolean resigned) {
+			key.cancel();
+			try {
+				key.channel().close();
+			} catch (IOException ignored) {
+			}
+			synchronized (this) {
+				if (resigned) {
+					done++;
+				} else {
+					failed++;
+				}
+				notifyAll();
+			}
+		}
+
+		synchronized void awaitWatching() throws InterruptedException, IOException {
+			while (watching + failed < spectators) {
+				wait();
+			}
+			if (failed > 0) {
+				throw new IOException(failed+" spectators have failed to watch the game");
+			}
+		}
+
+		synchronized void awaitDone() throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 60000;
+			while (done + failed < spectators && System.currentTimeMillis() < deadline) {
+				wait(1000);
+			}
+		}
+
+		synchronized void report() {
+			long[] delays = new long[moves];
+			for (int i = 0; i < moves; i++) {
+				delays[i] = Math.max(0, lastArrival[i + 1] - sentAt[i + 1]);
+			}
+			Arrays.sort(delays);
+			if (spectators > 0) {
+				System.out.println(String.format("move latency to the last spectator: p50 %.0f us, p99 %.0f us, "
+						+"max %.0f us", percentile(delays, 0.5), percentile(delays, 0.99),
+						delays[moves - 1] / 1000.0));
+			}
+			System.out.println(String.format("%d frames to the spectators, %d spectators have seen the whole game, "
+					+"%d have not", frames, done, spectators - done));
+		}
+	}
+
+	/**
+	 * A spectator that keeps the game up to date with the moves.
+	 */
+	private static class Spectator {
+		private final ByteBuffer in = ByteBuffer.allocate(Frame.MAX_FRAME_BYTES);
+		private GameState game;
+		private int sequence;
+		private boolean resigned;
+
+		void frame(Frame frame) throws IOException {
+			if (game == null) {
+				if (frame.getType() != Frame.Type.SNAPSHOT) {
+					throw new IOException("No snapshot from the server");
+				}
+				game = frame.getGameState();
+				sequence = frame.getSequence();
+				return;
+			}
+			if (frame.getSequence() != ++sequence || resigned) {
+				throw new IOException("Frame out of sequence");
+			}
+			if (frame.getType() == Frame.Type.RESIGN) {
+				resigned = true;
+				return;
+			}
+			try {
+				game.makeMove(frame.getMove(game.nextTurn(), game.getRules().getBoardSize()));
+			} catch (IllegalMoveException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package models;
+
+/**
+ * AI player strategy. It defines behavior of the computer player: given the
+ * game in progress it decides what move to make next.
+ *
+ * @author Anastasia Radchenko
+ */
+public interface AIPlayer {
+
+	/**
+	 * Decide the next move of the computer player. The game state must not be
+	 * modified by the strategy, the caller will make the move.
+	 *
+	 * @param gameState the game in progress.
+	 * @param role the role the computer plays in the game.
+	 * @return the next move that is valid in the current state of the game.
+	 */
+	Move nextMove(GameState gameState, PlayerRole role);
+
+	/**
+	 * @return the kind of this computer player, the kind of the player it lets
+	 * decide for the player that only makes some of the moves.
+	 */
+	AIPlayerType getType();
+}
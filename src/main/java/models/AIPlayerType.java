@@ -0,0 +1,11 @@
+package models;
+
+/**
+ * The kind of the computer player, saved with the 1-player game so that the
+ * game is restored against the same computer player.
+ * 
+ * @author Anastasia Radchenko
+ */
+public enum AIPlayerType {
+	GREEDY, ALPHA_BETA, MONTE_CARLO
+}
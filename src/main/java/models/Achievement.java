@@ -1,17 +1,21 @@
 package models;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Represents a player achievement, the score they earned by playing the game.
+ * The score is raised atomically, so the games finishing at the same time
+ * never lose a bonus.
  *
  * @author Anastasia Radchenko
  */
 public class Achievement implements Comparable<Achievement>{
 	private final String player;
-	private int score;
+	private final AtomicInteger score;
 	
 	public Achievement(String player, int score) {
 		this.player = player;
-		this.score = score;
+		this.score = new AtomicInteger(score);
 	}
 
 	public String getPlayer() {
@@ -19,18 +23,20 @@ public class Achievement implements Comparable<Achievement>{
 	}
 
 	public int getScore() {
-		return score;
+		return score.get();
 	}
 
 	public void raiseScore(int bonus) {
-		score += bonus;
+		score.addAndGet(bonus);
 	}
 
 	@Override
 	public int compareTo(Achievement other) {
-		if (this.score > other.score) {
+		int score = getScore();
+		int otherScore = other.getScore();
+		if (score > otherScore) {
 			return -1;
-		} else if (this.score < other.score) {
+		} else if (score < otherScore) {
 			return 1;
 		} else {
 			return 0;
@@ -38,7 +44,7 @@ public class Achievement implements Comparable<Achievement>{
 	}
 	
 	public String toString() {
-		return "{player:"+player+",score:"+score+"}";
+		return "{player:"+player+",score:"+getScore()+"}";
 	}
 
 }
@@ -0,0 +1,184 @@
+package models;
+
+/**
+ * Game board kept as an array of squares, for the boards too large to be
+ * packed into {@link Bitboard}. It also keeps the list of marked squares,
+ * so visiting them does not require scanning the whole board.
+ *
+ * @author Anastasia Radchenko
+ */
+public class ArrayBoard implements Board {
+	private static final byte SPACE = 0;
+	private static final byte X = 1;
+	private static final byte O = 2;
+
+	// steps along the chain directions, indexed by Chain.Direction ordinal
+	private static final int[] DX = { 0, 1, 1, 1 };
+	private static final int[] DY = { 1, 1, 0, -1 };
+
+	private final int size;
+	private final byte[] squares;
+
+	// numbers of the marked squares, and the position of each marked square in that list
+	private final int[] occupied;
+	private final int[] positions;
+	private int occupiedCount;
+
+	public ArrayBoard(int size) {
+		if (size < 1 || size > Rules.MAX_BOARD_SIZE) {
+			throw new IllegalArgumentException("Unsupported board size: "+size);
+		}
+		this.size = size;
+		squares = new byte[size * size];
+		occupied = new int[size * size];
+		positions = new int[size * size];
+		occupiedCount = 0;
+	}
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param other the board to copy.
+	 */
+	public ArrayBoard(ArrayBoard other) {
+		size = other.size;
+		squares = other.squares.clone();
+		occupied = other.occupied.clone();
+		positions = other.positions.clone();
+		occupiedCount = other.occupiedCount;
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public Board copy() {
+		return new ArrayBoard(this);
+	}
+
+	@Override
+	public boolean isInside(int _x, int _y) {
+		return 0 <= _x && _x < size && 0 <= _y && _y < size;
+	}
+
+	@Override
+	public boolean isSpace(int _x, int _y) {
+		return squares[_x * size + _y] == SPACE;
+	}
+
+	@Override
+	public Mark getMark(int _x, int _y) {
+		switch (squares[_x * size + _y]) {
+		case X:
+			return Mark.X;
+		case O:
+			return Mark.O;
+		default:
+			return Mark.SPACE;
+		}
+	}
+
+	@Override
+	public void setMark(int _x, int _y, Mark mark) {
+		int square = _x * size + _y;
+		boolean wasSpace = squares[square] == SPACE;
+		squares[square] = toByte(mark);
+		if (wasSpace && mark != Mark.SPACE) {
+			positions[square] = occupiedCount;
+			occupied[occupiedCount++] = square;
+		} else if (!wasSpace && mark == Mark.SPACE) {
+			// move the last marked square into the freed position of the list
+			int position = positions[square];
+			int last = occupied[--occupiedCount];
+			occupied[position] = last;
+			positions[last] = position;
+		}
+	}
+
+	@Override
+	public int countSpaces() {
+		return squares.length - occupiedCount;
+	}
+
+	@Override
+	public int getOccupiedSquares(int[] squares) {
+		System.arraycopy(occupied, 0, squares, 0, occupiedCount);
+		return occupiedCount;
+	}
+
+	@Override
+	public boolean hasChain(int length) {
+		for (int i = 0; i < occupiedCount; i++) {
+			int square = occupied[i];
+			if (hasChainThrough(square / size, square % size, length)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasChainThrough(int _x, int _y, int length) {
+		byte mark = squares[_x * size + _y];
+		if (mark == SPACE) {
+			return false;
+		}
+		for (int d = 0; d < DX.length; d++) {
+			int count = 1 + countRun(_x, _y, DX[d], DY[d], mark, length)
+					+ countRun(_x, _y, -DX[d], -DY[d], mark, length);
+			if (count >= length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int countRun(int _x, int _y, int dx, int dy, byte mark, int length) {
+		int count = 0;
+		int x = _x + dx;
+		int y = _y + dy;
+		while (count < length && isInside(x, y) && squares[x * size + y] == mark) {
+			count++;
+			x += dx;
+			y += dy;
+		}
+		return count;
+	}
+
+	@Override
+	public int countOpenLines(Mark mark, int length) {
+		byte opposite = mark == Mark.X ? O : X;
+		int count = 0;
+		for (int d = 0; d < DX.length; d++) {
+			// slide along every line in the direction counting the open squares in a row
+			for (int x = 0; x < size; x++) {
+				for (int y = 0; y < size; y++) {
+					if (isInside(x - DX[d], y - DY[d])) {
+						continue; // not the first square of a line
+					}
+					int run = 0;
+					for (int lx = x, ly = y; isInside(lx, ly); lx += DX[d], ly += DY[d]) {
+						run = squares[lx * size + ly] == opposite ? 0 : run + 1;
+						if (run >= length) {
+							count++;
+						}
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	private static byte toByte(Mark mark) {
+		switch (mark) {
+		case X:
+			return X;
+		case O:
+			return O;
+		default:
+			return SPACE;
+		}
+	}
+}
@@ -1,9 +1,16 @@
 package models;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.zip.CRC32;
 
 /**
  * The base model class that represents the game of Order and Chaos.
@@ -13,28 +20,62 @@ import java.util.Scanner;
 public abstract class BaseGameState implements GameState {
 	private static final String UNKNOWN_PLAYER = "Unknown";
 	
+	/**
+	 * The first bytes of the binary saved game, "OCSV"
+	 */
+	public static final int SAVED_GAME_MAGIC = 0x4f435356;
+	
+	/**
+	 * The version of the binary saved game format: 1 for the board only, 2 
+	 * for the board followed by the snapshot of the state derived from it, 3
+	 * with the kind of the computer player of the 1-player game
+	 */
+	public static final int SAVED_GAME_VERSION = 3;
+	
+	/**
+	 * The version of the snapshot of the derived state
+	 */
+	public static final int SNAPSHOT_VERSION = 1;
+	
+	// magic, version and checksum
+	private static final int SAVED_GAME_FRAME = 4 + 1 + 4;
+	
 	protected final Map<PlayerRole, String> players;
 	
+	protected final Rules rules;
+	
 	protected int spaces;
 	private boolean chain;
+	// the square (bit number on the board) which marking has made the chain, 
+	// -1 when there is no chain or it is unknown which square has made it
+	private int chainSquare = -1;
 	
 	// game board
-	protected final Mark[][] board;
+	protected final Board board;
+	
+	// position hash, kept up to date with every mark put on the board
+	private final Zobrist zobrist;
+	private long hash;
+	
+	private BoardListener listener;
+	
+	// recompute the derived state of the saved games and check their snapshots
+	private static volatile boolean validating;
 	
 	protected BaseGameState(String orderPlayer, String chaosPlayer) {
+		this(orderPlayer, chaosPlayer, Rules.STANDARD);
+	}
+	
+	protected BaseGameState(String orderPlayer, String chaosPlayer, Rules rules) {
 		// set up the players
 		players = new HashMap<PlayerRole, String>();
 		players.put(PlayerRole.ORDER, orderPlayer);
 		players.put(PlayerRole.CHAOS, chaosPlayer);
 		// set up the board
-		board = new Mark[BOARD_SIZE][BOARD_SIZE];
-		spaces = 0;
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			for (int j = 0; j < BOARD_SIZE; j++) {
-				board[i][j] = Mark.SPACE;
-				spaces++;
-			}
-		}
+		this.rules = rules;
+		board = rules.newBoard();
+		spaces = board.countSpaces();
+		zobrist = Zobrist.forSquares(rules.getSquares());
 	}
 	
 	/**
@@ -49,17 +90,22 @@ public abstract class BaseGameState implements GameState {
 	public static GameState readGame(Scanner scanner) throws IOException {
 		GameState gameState = null;
 		// Read the first line and decide what type of the game the saved
-		// state represents. Then delegate to the appropriate subclass to readState
-		// the rest of the state
+		// state represents and what rules it is played by. Then delegate to 
+		// the appropriate subclass to readState the rest of the state
 		try {
-			String line = scanner.nextLine();
-			SavedGameType gameType = SavedGameType.valueOf(line);
+			String[] header = scanner.nextLine().split(",");
+			SavedGameType gameType = SavedGameType.valueOf(header[0]);
+			// games saved with standard rules do not have the rules in the header
+			Rules rules = Rules.STANDARD;
+			if (header.length == 3) {
+				rules = new Rules(Integer.parseInt(header[1]), Integer.parseInt(header[2]));
+			}
 			switch (gameType) {
 			case ONE_PLAYER:
-				gameState = OnePlayerGameState.readGame(scanner);
+				gameState = OnePlayerGameState.readGame(scanner, rules);
 				break;
 			case TWO_PLAYER:
-				gameState = TwoPlayerGameState.readGame(scanner);
+				gameState = TwoPlayerGameState.readGame(scanner, rules);
 			}
 		} catch(Exception e) {
 			throw new IOException("Invalid or corrupt state of the game");
@@ -67,16 +113,125 @@ public abstract class BaseGameState implements GameState {
 		return gameState;
 	}
 	
+	/**
+	 * Static factory method that reads the binary saved game and converts it
+	 * into a new game object. The saved game is a frame of the magic number,
+	 * the format version, the game type and the rules, then the state of the
+	 * game itself and the CRC32 checksum of all the bytes before it.
+	 * 
+	 * @param data the binary saved game.
+	 * @return new game object created.
+	 * @throws IOException when the data is not a saved game, the checksum does
+	 * not match or the state of the game is invalid.
+	 */
+	public static GameState readGame(byte[] data) throws IOException {
+		if (!isBinaryGame(data)) {
+			throw new IOException("Not a binary saved game");
+		}
+		int length = data.length - 4;
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		int checksum = ((data[length] & 0xff) << 24) | ((data[length + 1] & 0xff) << 16)
+				| ((data[length + 2] & 0xff) << 8) | (data[length + 3] & 0xff);
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("The saved game is corrupt: checksum mismatch");
+		}
+		int version = data[4] & 0xff;
+		if (version < 1 || version > SAVED_GAME_VERSION) {
+			throw new IOException("Unsupported saved game version: "+version);
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+		in.readInt(); // magic
+		in.readUnsignedByte(); // version
+		try {
+			SavedGameType gameType = SavedGameType.values()[in.readUnsignedByte()];
+			Rules rules = new Rules(in.readUnsignedByte(), in.readUnsignedByte());
+			switch (gameType) {
+			case ONE_PLAYER:
+				return OnePlayerGameState.readGame(in, rules, version);
+			default:
+				return TwoPlayerGameState.readGame(in, rules, version);
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Invalid or corrupt state of the game", e);
+		}
+	}
+	
+	/**
+	 * @param data the saved game.
+	 * @return true if the data is a binary saved game, false if it is not, 
+	 * e.g. the game saved as text by the earlier versions.
+	 */
+	public static boolean isBinaryGame(byte[] data) {
+		return data.length >= SAVED_GAME_FRAME && (((data[0] & 0xff) << 24) | ((data[1] & 0xff) << 16)
+				| ((data[2] & 0xff) << 8) | (data[3] & 0xff)) == SAVED_GAME_MAGIC;
+	}
+	
+	/**
+	 * Write the game to the binary saved game.
+	 * 
+	 * @param gameState the game to save.
+	 * @return the binary saved game.
+	 * @throws IOException when the game can not be saved.
+	 */
+	public static byte[] writeGame(GameState gameState) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(SAVED_GAME_MAGIC);
+		out.writeByte(SAVED_GAME_VERSION);
+		gameState.writeTo((DataOutput) out);
+		CRC32 crc = new CRC32();
+		byte[] data = bytes.toByteArray();
+		crc.update(data, 0, data.length);
+		out.writeInt((int) crc.getValue());
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Write the type of the binary saved game and its rules.
+	 * 
+	 * @param out provides access to the binary data.
+	 * @param gameType the type of the game being saved.
+	 * @throws IOException when writing fails.
+	 */
+	protected void writeHeader(DataOutput out, SavedGameType gameType) throws IOException {
+		out.writeByte(gameType.ordinal());
+		out.writeByte(rules.getBoardSize());
+		out.writeByte(rules.getChainLength());
+	}
+	
+	/**
+	 * Write the first line of the saved game: its type and the rules
+	 * unless the game is played by the standard rules.
+	 * 
+	 * @param writer provides access to external data store.
+	 * @param gameType the type of the game being saved.
+	 */
+	protected void writeHeader(PrintWriter writer, SavedGameType gameType) {
+		writer.print(gameType);
+		if (!rules.isStandard()) {
+			writer.print(",");
+			writer.print(rules.getBoardSize());
+			writer.print(",");
+			writer.print(rules.getChainLength());
+		}
+		writer.println();
+	}
+	
 	@Override
     public void readFrom(Scanner scanner) throws IOException {
 		spaces = scanner.nextInt();
 		chain =  scanner.nextBoolean();
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			for (int j = 0; j < BOARD_SIZE; j++) {
-				board[i][j] = Mark.lookupDisplayValue(scanner.next());
+		chainSquare = -1;
+		for (int i = 0; i < rules.getBoardSize(); i++) {
+			for (int j = 0; j < rules.getBoardSize(); j++) {
+				board.setMark(i, j, Mark.lookupDisplayValue(scanner.next()));
 			}
 		}
 		scanner.nextLine();
+		computeHash();
     }
     
     @Override
@@ -84,15 +239,184 @@ public abstract class BaseGameState implements GameState {
 		writer.print(spaces);
 		writer.print(",");
 		writer.print(chain);
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			for (int j = 0; j < BOARD_SIZE; j++) {
+		for (int i = 0; i < rules.getBoardSize(); i++) {
+			for (int j = 0; j < rules.getBoardSize(); j++) {
 				writer.print(",");
-				writer.print(board[i][j].getDisplayValue());
+				writer.print(board.getMark(i, j).getDisplayValue());
 			}
 		}
 		writer.println();
     }
     
+	/**
+	 * Read the board packed 2 bits per square and the snapshot of the state
+	 * derived from it, so the game is restored without going through the 
+	 * board again. The state of the games saved without the snapshot, or with 
+	 * a snapshot of an unknown version, is recalculated. In the validation 
+	 * mode the state is recalculated anyway and checked against the snapshot.
+	 */
+	@Override
+	public void readFrom(DataInput in, int version) throws IOException {
+		int size = rules.getBoardSize();
+		int squares = rules.getSquares();
+		int bits = 0;
+		int packed = 0;
+		for (int square = 0; square < squares; square++) {
+			if (bits == 0) {
+				packed = in.readUnsignedByte();
+				bits = 8;
+			}
+			int value = packed & 3;
+			packed >>>= 2;
+			bits -= 2;
+			if (value > 2) {
+				throw new IOException("Invalid or corrupt state of the game");
+			}
+			board.setMark(square / size, square % size, value == 1 ? Mark.X : value == 2 ? Mark.O : Mark.SPACE);
+		}
+		// the games saved before the snapshots are recomputed from their boards
+		if (version < 2 || !readSnapshot(in)) {
+			spaces = board.countSpaces();
+			compute();
+			computeHash();
+		} else if (validating) {
+			validateSnapshot();
+		}
+	}
+	
+	/**
+	 * Read the snapshot of the derived state: its version, its length, then
+	 * the number of spaces, the chain and the square that has made it, and 
+	 * the position hash.
+	 * 
+	 * @return false if the snapshot is of an unknown version and has been
+	 * skipped.
+	 */
+	private boolean readSnapshot(DataInput in) throws IOException {
+		int version = in.readUnsignedByte();
+		int length = readVarint(in);
+		if (version != SNAPSHOT_VERSION) {
+			if (in.skipBytes(length) != length) {
+				throw new IOException("Invalid or corrupt state of the game");
+			}
+			return false;
+		}
+		spaces = readVarint(in);
+		chain = in.readBoolean();
+		chainSquare = readVarint(in) - 1;
+		hash = in.readLong();
+		if (spaces > rules.getSquares() || chainSquare >= rules.getSquares() || (chainSquare >= 0 && !chain)) {
+			throw new IOException("Invalid or corrupt state of the game");
+		}
+		return true;
+	}
+	
+	/**
+	 * Write the snapshot of the derived state after the board.
+	 */
+	private void writeSnapshot(DataOutput out) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+		DataOutputStream snapshot = new DataOutputStream(bytes);
+		writeVarint(snapshot, spaces);
+		snapshot.writeBoolean(chain);
+		writeVarint(snapshot, chainSquare + 1);
+		snapshot.writeLong(hash);
+		out.writeByte(SNAPSHOT_VERSION);
+		writeVarint(out, bytes.size());
+		out.write(bytes.toByteArray());
+	}
+	
+	/**
+	 * Recalculate the derived state from the board and check that the 
+	 * snapshot read matches it.
+	 * 
+	 * @throws IOException if the snapshot does not match the board.
+	 */
+	private void validateSnapshot() throws IOException {
+		int snapshotSpaces = spaces;
+		boolean snapshotChain = chain;
+		int snapshotChainSquare = chainSquare;
+		long snapshotHash = hash;
+		spaces = board.countSpaces();
+		compute();
+		computeHash();
+		int size = rules.getBoardSize();
+		if (snapshotSpaces != spaces || snapshotChain != chain || snapshotHash != hash || (snapshotChainSquare >= 0 
+				&& !board.hasChainThrough(snapshotChainSquare / size, snapshotChainSquare % size, rules.getChainLength()))) {
+			throw new IOException("The saved state of the game does not match its board");
+		}
+		chainSquare = snapshotChainSquare;
+	}
+	
+	/**
+	 * Turn the validation of the saved games on or off. A saved game being
+	 * validated has its derived state recalculated from scratch and checked
+	 * against the snapshot saved with it.
+	 * 
+	 * @param validating true to validate the saved games read from now on.
+	 */
+	public static void setValidating(boolean validating) {
+		BaseGameState.validating = validating;
+	}
+	
+	/**
+	 * @return true if the saved games are validated when they are read.
+	 */
+	public static boolean isValidating() {
+		return validating;
+	}
+	
+	/**
+	 * Write the board packed 2 bits per square: 0 for a space, 1 for X, 2 for O,
+	 * then the snapshot of the state derived from it.
+	 */
+	@Override
+	public void writeTo(DataOutput out) throws IOException {
+		int size = rules.getBoardSize();
+		int squares = rules.getSquares();
+		int bits = 0;
+		int packed = 0;
+		for (int square = 0; square < squares; square++) {
+			Mark mark = board.getMark(square / size, square % size);
+			int value = mark == Mark.X ? 1 : mark == Mark.O ? 2 : 0;
+			packed |= value << bits;
+			bits += 2;
+			if (bits == 8) {
+				out.writeByte(packed);
+				bits = 0;
+				packed = 0;
+			}
+		}
+		if (bits > 0) {
+			out.writeByte(packed);
+		}
+		writeSnapshot(out);
+	}
+	
+	/**
+	 * Write the non-negative number in as many bytes as it needs, 7 bits per
+	 * byte, the lowest bits first.
+	 */
+	protected static void writeVarint(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+	
+	protected static int readVarint(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid or corrupt state of the game");
+	}
+	
 	protected String getPlayer(PlayerRole playerRole) {
 		if (playerRole == null) {
 			return UNKNOWN_PLAYER;
@@ -101,6 +425,11 @@ public abstract class BaseGameState implements GameState {
 		return player == null ? UNKNOWN_PLAYER : player;
 	}
 	
+	@Override
+	public Rules getRules() {
+		return rules;
+	}
+	
 	@Override
 	public String getOrderPlayer() {
 		return getPlayer(PlayerRole.ORDER);
@@ -113,23 +442,60 @@ public abstract class BaseGameState implements GameState {
 	
 	@Override
 	public Mark getBoardMark(int x, int y) {
-		return board[x-1][y-1]; // board internal dimensions are 0-based
+		return board.getMark(x-1, y-1); // board internal dimensions are 0-based
+	}
+	
+	@Override
+	public long getHash() {
+		return hash;
+	}
+	
+	@Override
+	public Board copyBoard() {
+		return board.copy();
 	}
 	
 	/**
 	 * Put a mark on a board square. Increment or decrement the spaces count
-	 * on the board based on the mark to put on the square.
+	 * on the board based on the mark to put on the square. Update the chain 
+	 * state by checking the lines through that square only. Update the hash 
+	 * with the keys of the square and of the side to move.
 	 *  
 	 * @param _x horizontal coordinate of the square (0-based)
 	 * @param _y vertical coordinate of the square (0-based)
 	 * @param mark the mark to put on the square
 	 */
 	protected void markBoardSquare(int _x, int _y, Mark mark) {
-		board[_x][_y] = mark;
+		int square = _x * rules.getBoardSize() + _y;
+		Mark oldMark = board.getMark(_x, _y);
+		if (oldMark != Mark.SPACE) {
+			hash ^= zobrist.key(square, oldMark == Mark.O) ^ zobrist.side();
+		}
+		if (mark != Mark.SPACE) {
+			hash ^= zobrist.key(square, mark == Mark.O) ^ zobrist.side();
+		}
+		board.setMark(_x, _y, mark);
 		if (mark == Mark.SPACE) {
 			spaces++;
+			// moves are undone in reverse order, so wiping out the square that
+			// has made the chain brings back the state of no chain
+			if (chain) {
+				if (square == chainSquare) {
+					chain = false;
+					chainSquare = -1;
+				} else if (chainSquare < 0) {
+					compute();
+				}
+			}
 		} else {
 			spaces--;
+			if (!chain && board.hasChainThrough(_x, _y, rules.getChainLength())) {
+				chain = true;
+				chainSquare = square;
+			}
+		}
+		if (listener != null) {
+			listener.squareMarked(_x + 1, _y + 1, mark);
 		}
 	}
 	
@@ -138,14 +504,32 @@ public abstract class BaseGameState implements GameState {
 		// board internal dimensions are 0-based, so offset the input parameters
 		int _x = move.getX() - 1;
 		int _y = move.getY() - 1;
-		if (_x < 0 || _x >= BOARD_SIZE || _y < 0 || _y >= BOARD_SIZE) {
+		if (!board.isInside(_x, _y)) {
 			throw new IllegalMoveException("The square ["+move.getY()+","+move.getX()+"] is outside the game board.");
 		}
-		if (board[_x][_y] != Mark.SPACE) {
+		if (!board.isSpace(_x, _y)) {
 			throw new IllegalMoveException("The square ["+move.getY()+","+move.getX()+"] is already marked.");
 		}
 		markBoardSquare(_x, _y, move.getMark());
-		compute(); // re-calculate the game state
+	}
+	
+	@Override
+	public void replaySquare(int x, int y, Mark mark) throws IllegalMoveException {
+		// board internal dimensions are 0-based, so offset the input parameters
+		int _x = x - 1;
+		int _y = y - 1;
+		if (!board.isInside(_x, _y)) {
+			throw new IllegalMoveException("The square ["+y+","+x+"] is outside the game board.");
+		}
+		if (board.isSpace(_x, _y) == (mark == Mark.SPACE)) {
+			throw new IllegalMoveException("The square ["+y+","+x+"] can not be marked "+mark);
+		}
+		markBoardSquare(_x, _y, mark);
+	}
+	
+	@Override
+	public void setBoardListener(BoardListener listener) {
+		this.listener = listener;
 	}
 	
 	@Override
@@ -168,7 +552,7 @@ public abstract class BaseGameState implements GameState {
 		if (chain) {
 			return PlayerRole.ORDER;
 		} else if (spaces == 0) {
-			return PlayerRole.ORDER;
+			return PlayerRole.CHAOS;
 		} else {
 			return null;
 		}
@@ -184,71 +568,28 @@ public abstract class BaseGameState implements GameState {
 	public abstract String nextTurn();
 
 	/**
-	 * Recalculate the game state.
+	 * Recalculate the game state from scratch.
 	 */
 	protected void compute() {
-        for (int x = 0; x < BOARD_SIZE && !chain; x++) {
-            for (int y = 0; y < BOARD_SIZE && !chain; y++) {
-                if (board[x][y] != Mark.SPACE) {
-                    chain = isChain(x, y, board[x][y]);
-                }
-            }
-        }
-    }
-
-    private boolean isChain(int x, int y, Mark mark) {
-        return searchUp(x, y, mark, 1) || searchRight(x, y, mark, 1) || searchDiagUp(x, y, mark, 1) || searchDiagDown(x, y, mark, 1);
-    }
-
-    private boolean searchUp(int x, int y, Mark mark, int count) {
-        if (count == 5) {
-            return true;
-        }
-        y++;
-        if (y < BOARD_SIZE && board[x][y] == mark) {
-            count++;
-            return searchUp(x, y, mark, count);
-        }
-        return false;
-    }
-
-    private boolean searchRight(int x, int y, Mark mark, int count) {
-        if (count == 5) {
-            return true;
-        }
-        x++;
-        if (x < BOARD_SIZE && board[x][y] == mark) {
-            count++;
-            return searchRight(x, y, mark, count);
-        }
-        return false;
-    }
-    
-    private boolean searchDiagUp(int x, int y, Mark mark, int count) {
-        if (count == 5) {
-            return true;
-        }
-        x++;
-        y++;
-        if (x < BOARD_SIZE && y < BOARD_SIZE && board[x][y] == mark) {
-            count++;
-            return searchDiagUp(x, y, mark, count);
-        }
-        return false;
-    }
-    
-    private boolean searchDiagDown(int x, int y, Mark mark, int count) {
-        if (count == 5) {
-            return true;
-        }
-        x++;
-        y--;
-        if (x < BOARD_SIZE && y >= 0 && board[x][y] == mark) {
-            count++;
-            return searchDiagDown(x, y, mark, count);
-        }
-        return false;
-    }
+		chain = board.hasChain(rules.getChainLength());
+		chainSquare = -1;
+	}
+	
+	/**
+	 * Recalculate the position hash from scratch.
+	 */
+	private void computeHash() {
+		hash = 0;
+		int size = rules.getBoardSize();
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				Mark mark = board.getMark(x, y);
+				if (mark != Mark.SPACE) {
+					hash ^= zobrist.key(x * size + y, mark == Mark.O) ^ zobrist.side();
+				}
+			}
+		}
+	}
 
 	@Override
 	public boolean localPlayerMovesNext() {
@@ -0,0 +1,272 @@
+package models;
+
+/**
+ * Game board packed into two bit masks, one for the squares marked with X
+ * and one for the squares marked with O. The square with internal (0-based)
+ * coordinates (x, y) is represented by the bit number x * size + y, so the
+ * board can hold up to 64 squares.
+ *
+ * @author Anastasia Radchenko
+ */
+public class Bitboard implements Board {
+
+	/**
+	 * Largest board size that fits into a single 64-bit mask
+	 */
+	public static final int MAX_SIZE = 8;
+
+	private final int size;
+
+	// bit shifts that move a square one step in each chain direction,
+	// indexed by Chain.Direction ordinal
+	private final int[] shifts;
+
+	// squares that can make a step in each chain direction without
+	// leaving the board, indexed by Chain.Direction ordinal
+	private final long[] steps;
+
+	private long xs;
+	private long os;
+
+	public Bitboard(int size) {
+		if (size < 1 || size > MAX_SIZE) {
+			throw new IllegalArgumentException("Unsupported board size: "+size);
+		}
+		this.size = size;
+		shifts = new int[Chain.Direction.values().length];
+		steps = new long[Chain.Direction.values().length];
+		for (Chain.Direction direction : Chain.Direction.values()) {
+			int i = direction.ordinal();
+			switch (direction) {
+			case UP:
+				shifts[i] = 1; break;
+			case DIAG_UP:
+				shifts[i] = size + 1; break;
+			case RIGHT:
+				shifts[i] = size; break;
+			case DIAG_DOWN:
+				shifts[i] = size - 1; break;
+			}
+			for (int x = 0; x < size; x++) {
+				for (int y = 0; y < size; y++) {
+					if (isInside(x + dx(direction), y + dy(direction))) {
+						steps[i] |= bit(x, y);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param other the board to copy.
+	 */
+	public Bitboard(Bitboard other) {
+		size = other.size;
+		shifts = other.shifts; // immutable once built, safe to share
+		steps = other.steps;
+		xs = other.xs;
+		os = other.os;
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public Board copy() {
+		return new Bitboard(this);
+	}
+
+	/**
+	 * @return the bit mask of the squares marked with X.
+	 */
+	public long getXs() {
+		return xs;
+	}
+
+	/**
+	 * @return the bit mask of the squares marked with O.
+	 */
+	public long getOs() {
+		return os;
+	}
+
+	/**
+	 * @return the bit mask of the marked squares.
+	 */
+	public long getOccupied() {
+		return xs | os;
+	}
+
+	/**
+	 * @param mark the mark to look up.
+	 * @return the bit mask of the squares marked with the given mark.
+	 */
+	public long getMarks(Mark mark) {
+		switch (mark) {
+		case X:
+			return xs;
+		case O:
+			return os;
+		default:
+			return ~(xs | os) & all();
+		}
+	}
+
+	@Override
+	public int countSpaces() {
+		return size * size - Long.bitCount(xs | os);
+	}
+
+	@Override
+	public int getOccupiedSquares(int[] squares) {
+		int count = 0;
+		long occupied = xs | os;
+		while (occupied != 0) {
+			squares[count++] = Long.numberOfTrailingZeros(occupied);
+			occupied &= occupied - 1;
+		}
+		return count;
+	}
+
+	@Override
+	public boolean isInside(int _x, int _y) {
+		return 0 <= _x && _x < size && 0 <= _y && _y < size;
+	}
+
+	@Override
+	public boolean isSpace(int _x, int _y) {
+		return ((xs | os) & bit(_x, _y)) == 0;
+	}
+
+	@Override
+	public Mark getMark(int _x, int _y) {
+		long bit = bit(_x, _y);
+		if ((xs & bit) != 0) {
+			return Mark.X;
+		} else if ((os & bit) != 0) {
+			return Mark.O;
+		} else {
+			return Mark.SPACE;
+		}
+	}
+
+	@Override
+	public void setMark(int _x, int _y, Mark mark) {
+		long bit = bit(_x, _y);
+		xs &= ~bit;
+		os &= ~bit;
+		if (mark == Mark.X) {
+			xs |= bit;
+		} else if (mark == Mark.O) {
+			os |= bit;
+		}
+	}
+
+	@Override
+	public boolean hasChain(int length) {
+		return chainHeads(xs, length) != 0 || chainHeads(os, length) != 0;
+	}
+
+	@Override
+	public boolean hasChainThrough(int _x, int _y, int length) {
+		int square = _x * size + _y;
+		long bit = 1L << square;
+		long marks;
+		if ((xs & bit) != 0) {
+			marks = xs;
+		} else if ((os & bit) != 0) {
+			marks = os;
+		} else {
+			return false;
+		}
+		for (int i = 0; i < shifts.length; i++) {
+			int shift = shifts[i];
+			long step = steps[i];
+			int count = 1;
+			// walk forward while the next square stays on the board and has the same mark
+			long b = bit;
+			while (count < length && (b & step) != 0 && (marks & (b << shift)) != 0) {
+				b <<= shift;
+				count++;
+			}
+			// then walk backward from the square
+			b = bit;
+			while (count < length && (marks & step & (b >>> shift)) != 0) {
+				b >>>= shift;
+				count++;
+			}
+			if (count >= length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int countOpenLines(Mark mark, int length) {
+		long opposite = mark == Mark.X ? os : xs;
+		long open = ~opposite & all();
+		int count = 0;
+		for (int i = 0; i < shifts.length; i++) {
+			count += Long.bitCount(runHeads(open, i, length));
+		}
+		return count;
+	}
+
+	/**
+	 * Find the first squares of all the runs of the given length in the given
+	 * bit mask.
+	 *
+	 * @param marks the bit mask of squares.
+	 * @param length the length of a run.
+	 * @return the bit mask of the squares where the runs start.
+	 */
+	private long chainHeads(long marks, int length) {
+		long heads = 0;
+		for (int i = 0; i < shifts.length; i++) {
+			heads |= runHeads(marks, i, length);
+		}
+		return heads;
+	}
+
+	private long runHeads(long marks, int direction, int length) {
+		int shift = shifts[direction];
+		long step = steps[direction];
+		long heads = marks;
+		// after k iterations a bit remains set only if the square and
+		// k squares that follow it in the direction are all set
+		for (int k = 1; k < length && heads != 0; k++) {
+			heads = marks & step & (heads >>> shift);
+		}
+		return heads;
+	}
+
+	private long all() {
+		int squares = size * size;
+		return squares == 64 ? -1L : (1L << squares) - 1;
+	}
+
+	private long bit(int _x, int _y) {
+		return 1L << (_x * size + _y);
+	}
+
+	private static int dx(Chain.Direction direction) {
+		return direction == Chain.Direction.UP ? 0 : 1;
+	}
+
+	private static int dy(Chain.Direction direction) {
+		switch (direction) {
+		case UP:
+		case DIAG_UP:
+			return 1;
+		case DIAG_DOWN:
+			return -1;
+		default:
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package models;
+
+/**
+ * The game board. All coordinates are internal (0-based) coordinates of the
+ * squares, and the square with coordinates (x, y) has the number x * size + y.
+ *
+ * @author Anastasia Radchenko
+ */
+public interface Board {
+
+	/**
+	 * @return the number of squares on each side of the board.
+	 */
+	int getSize();
+
+	/**
+	 * @return a new board with the same marks as this one.
+	 */
+	Board copy();
+
+	/**
+	 * @param _x horizontal coordinate of the square (0-based)
+	 * @param _y vertical coordinate of the square (0-based)
+	 * @return true if the square with these coordinates is on the board.
+	 */
+	boolean isInside(int _x, int _y);
+
+	/**
+	 * @param _x horizontal coordinate of the square (0-based)
+	 * @param _y vertical coordinate of the square (0-based)
+	 * @return true if the square is not marked yet.
+	 */
+	boolean isSpace(int _x, int _y);
+
+	/**
+	 * @param _x horizontal coordinate of the square (0-based)
+	 * @param _y vertical coordinate of the square (0-based)
+	 * @return the mark placed on the square.
+	 */
+	Mark getMark(int _x, int _y);
+
+	/**
+	 * Put a mark on the square, replacing whatever mark it had before.
+	 *
+	 * @param _x horizontal coordinate of the square (0-based)
+	 * @param _y vertical coordinate of the square (0-based)
+	 * @param mark the mark to put on the square.
+	 */
+	void setMark(int _x, int _y, Mark mark);
+
+	/**
+	 * @return the number of squares that are not marked yet.
+	 */
+	int countSpaces();
+
+	/**
+	 * Collect the numbers of the marked squares.
+	 *
+	 * @param squares the array to put the square numbers into, it must be
+	 * large enough to hold all the squares of the board.
+	 * @return the number of the marked squares put into the array.
+	 */
+	int getOccupiedSquares(int[] squares);
+
+	/**
+	 * @param length the number of like marks in a row that makes a chain.
+	 * @return true if there is a chain of X's or O's of at least the given length
+	 * in any direction.
+	 */
+	boolean hasChain(int length);
+
+	/**
+	 * Check only the lines that go through the given square for a chain of the
+	 * mark placed on that square. This is all that needs to be checked after
+	 * the square has been marked on a board that had no chain.
+	 *
+	 * @param _x horizontal coordinate of the square (0-based)
+	 * @param _y vertical coordinate of the square (0-based)
+	 * @param length the number of like marks in a row that makes a chain.
+	 * @return true if the square is a part of a chain of at least the given length.
+	 */
+	boolean hasChainThrough(int _x, int _y, int length);
+
+	/**
+	 * Count lines of the given length that can still be filled up with the
+	 * given mark, i.e. the lines that have no opposite mark on them.
+	 *
+	 * @param mark the mark to build the lines with.
+	 * @param length the length of the lines.
+	 * @return the number of open lines.
+	 */
+	int countOpenLines(Mark mark, int length);
+}
@@ -0,0 +1,20 @@
+package models;
+
+/**
+ * The listener of the marks put on the board of a game and wiped out from it,
+ * e.g. to record every move of the game as it is made.
+ *
+ * @author Anastasia Radchenko
+ */
+public interface BoardListener {
+
+	/**
+	 * Called after the square of the board is marked, by either player, or
+	 * wiped out when a move is undone.
+	 *
+	 * @param x horizontal coordinate of the square (1-based).
+	 * @param y vertical coordinate of the square (1-based).
+	 * @param mark the mark put on the square, SPACE if it is wiped out.
+	 */
+	void squareMarked(int x, int y, Mark mark);
+}
@@ -1,5 +1,7 @@
 package models;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Scanner;
@@ -12,9 +14,14 @@ import java.util.Scanner;
 public interface GameState {
 
 	/**
-	 * The size of the game board
+	 * The size of the standard game board
 	 */
 	int BOARD_SIZE = 6;
+
+	/**
+	 * @return the rules of the game variant being played.
+	 */
+	Rules getRules();
 	
 	/**
 	 * @return the name of Order player
@@ -37,6 +44,21 @@ public interface GameState {
 	 */
 	Mark getBoardMark(int x, int y);
 
+	/**
+	 * Return the Zobrist hash of the position: the marks on the board and the 
+	 * side to move. It is kept up to date with every move, so it costs nothing
+	 * to get. The same position has the same hash in every game and every run.
+	 * 
+	 * @return the 64-bit hash of the position.
+	 */
+	long getHash();
+
+	/**
+	 * @return a copy of the game board, that can be freely modified without 
+	 * affecting this game.
+	 */
+	Board copyBoard();
+
 	/**
 	 * Make the move entered by a player. The game will evaluate the correctness
 	 * of the move and if it is valid, will mark the square.
@@ -47,6 +69,25 @@ public interface GameState {
 	 */
 	void makeMove(Move move) throws IllegalMoveException;
 
+	/**
+	 * Mark the square of the board or wipe it out as it was done in the game
+	 * before, e.g. when the game is restored from the record of its moves.
+	 * No player replies to the mark.
+	 * 
+	 * @param x horizontal coordinate of the square.
+	 * @param y vertical coordinate of the square.
+	 * @param mark the mark to put on the square, SPACE to wipe it out.
+	 * @throws IllegalMoveException if the square is outside the board, it is 
+	 * already marked, or it is not marked when it is wiped out.
+	 */
+	void replaySquare(int x, int y, Mark mark) throws IllegalMoveException;
+
+	/**
+	 * @param listener the listener to tell about every mark put on the board 
+	 * or wiped out from it, null for none.
+	 */
+	void setBoardListener(BoardListener listener);
+
 	/**
 	 * @return The last move made by the player.
 	 */
@@ -100,6 +141,23 @@ public interface GameState {
 	 */
 	void writeTo(PrintWriter writer) throws IOException;
 
+	/**
+	 * Read this game state from the binary saved game.
+	 *
+	 * @param in provides access to the binary data.
+	 * @param version the version of the binary saved game format.
+	 * @throws IOException reading fails for some reason.
+	 */
+	void readFrom(DataInput in, int version) throws IOException;
+
+	/**
+	 * Write this game state to the binary saved game.
+	 * 
+	 * @param out provides access to the binary data.
+	 * @throws IOException writing fails for some reason.
+	 */
+	void writeTo(DataOutput out) throws IOException;
+
 
 	/**
 	 * @return true if local game player makes next move
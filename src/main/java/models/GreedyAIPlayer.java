@@ -0,0 +1,183 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The computer player that looks for the longest open chain on the board and 
+ * extends it when playing Order or closes it when playing Chaos. The ties are
+ * broken randomly.
+ * 
+ * @author Anastasia Radchenko
+ */
+public class GreedyAIPlayer implements AIPlayer {
+	private final Random r;
+
+	// the state of the game the next move is being decided for
+	private Board board;
+	private int size;
+	private int[] occupied;
+
+	public GreedyAIPlayer() {
+		r = new Random();
+	}
+
+	/**
+	 * @param seed the seed of the random choices, the same seed makes the
+	 * same moves in the same games.
+	 */
+	public GreedyAIPlayer(long seed) {
+		r = new Random(seed);
+	}
+
+	@Override
+	public Move nextMove(GameState gameState, PlayerRole role) {
+		board = gameState.copyBoard();
+		size = board.getSize();
+		if (occupied == null || occupied.length != size * size) {
+			occupied = new int[size * size];
+		}
+		boolean aiPlaysOrder = role == PlayerRole.ORDER;
+		String player = aiPlaysOrder ? gameState.getOrderPlayer() : gameState.getChaosPlayer();
+
+		Chain chain = findLongestOpenChain();
+		Mark mark = null;
+		Coordinates coordinates = null;
+		// if no chain found, use random mark, 
+		// otherwise, if AI plays Order, then extend the chain with its mark, 
+		// otherwise close it with the opposite mark
+		if (chain == null) {
+			mark = getRandomMark();
+			coordinates = getRandomCoordinates();
+		} else {
+			mark = aiPlaysOrder ? chain.getMark() : chain.getClosingMark();
+			
+			boolean headOpen = isHeadOpen(chain); 
+			boolean tailOpen = isTailOpen(chain);
+			
+			if (headOpen && tailOpen) {
+				coordinates = r.nextBoolean() ? chain.extendHead() : chain.extendTail();
+			} else if (headOpen) {
+				coordinates = chain.extendHead();
+			} else {
+				coordinates = chain.extendTail();
+			} 
+		}
+		return new Move(player, coordinates.getX(), coordinates.getY(), mark);
+	}
+
+	@Override
+	public AIPlayerType getType() {
+		return AIPlayerType.GREEDY;
+	}
+	
+	private Mark getRandomMark() {
+		return r.nextBoolean() ? Mark.X : Mark.O;
+	}
+	
+	private Coordinates getRandomCoordinates() {
+		int x;
+		int y;
+		do {
+			x = r.nextInt(size);
+			y = r.nextInt(size);
+		} while (!board.isSpace(x, y));
+		return new Coordinates(x+1, y+1); // external board coordinates are 1-based
+	}
+	
+	private Chain findLongestOpenChain() {
+    	List<Chain> longestChains = new ArrayList<Chain>();
+    	int maxLength = 0;
+    	// visit marked squares only, so the scan does not grow with the board area
+    	int count = board.getOccupiedSquares(occupied);
+    	for (int i = 0; i < count; i++) {
+    		int x = occupied[i] / size;
+    		int y = occupied[i] % size;
+    		maxLength = findLongestOpenChains(x, y, board.getMark(x, y), maxLength, longestChains);
+    	}
+        int size = longestChains.size(); 
+        switch (size) {
+        case 0:	
+        	return null;
+        case 1:	
+        	return longestChains.get(0);
+        default:
+        	int randomIndex = r.nextInt(size);
+        	return longestChains.get(randomIndex);
+        }
+	}
+	
+    private int findLongestOpenChains(int _x, int _y, Mark mark, int maxLength, List<Chain> longestChains) {
+    	for (Chain.Direction direction : Chain.Direction.values()) {
+    		Coordinates head = new Coordinates(_x+1, _y+1);
+	    	Coordinates tail = searchTail(_x, _y, mark, direction);
+	    	if (tail != null) {
+	    		Chain chain = new Chain(mark, direction, head, tail);
+	    		if (isHeadOpen(chain) || isTailOpen(chain)) {
+	    			int length = chain.getLength();
+	    			if (length == maxLength) {
+	    				longestChains.add(chain);
+	    			} else if (length > maxLength) {
+	    				longestChains.clear();
+	    				longestChains.add(chain);
+	    				maxLength = length;
+	    			}
+	    		}
+	    	}
+    	}
+    	return maxLength;
+    }
+
+    private Coordinates searchTail(int _x, int _y, Mark mark, Chain.Direction direction) {
+    	// step in the direction of the chain
+    	switch (direction) {
+    	case UP:
+	        _y++; break;
+    	case DIAG_UP:
+    		_x++;
+	        _y++; break;
+    	case RIGHT:
+    		_x++; break;
+    	case DIAG_DOWN:
+    		_x++;
+	        _y--; break;
+    	}
+        if (_x <  size && 0 <= _y && _y < size && board.getMark(_x, _y) == mark) {
+            return searchTail(_x, _y, mark, direction);
+        }
+    	// either went outside the board or found an empty square or the square marked with the opposite mark
+        // step back and build the tail of the chain coordinates
+    	switch (direction) {
+    	case UP:
+	        _y--; break;
+    	case DIAG_UP:
+    		_x--;
+	        _y--; break;
+    	case RIGHT:
+    		_x--; break;
+    	case DIAG_DOWN:
+    		_x--;
+	        _y++; break;
+    	}
+        return new Coordinates(_x+1, _y+1);
+    }
+
+    private boolean isHeadOpen(Chain chain) {
+		Coordinates coordinates = chain.extendHead();
+		if (coordinates.getX() < 1 || coordinates.getY() < 1 || coordinates.getY() > size) {
+			return false;
+		}
+		Mark mark = board.getMark(coordinates.getX()-1, coordinates.getY()-1);
+		return mark == Mark.SPACE;
+	}
+	
+	private boolean isTailOpen(Chain chain) {
+		Coordinates coordinates = chain.extendTail();
+		if (coordinates.getX() > size || coordinates.getY() < 1 || coordinates.getY() > size) {
+			return false;
+		}
+		Mark mark = board.getMark(coordinates.getX()-1, coordinates.getY()-1);
+		return mark == Mark.SPACE;
+	}
+}
@@ -13,7 +13,11 @@ public class NetworkGameState extends TwoPlayerGameState {
 	private Move lastMove;
 	
 	public NetworkGameState(String orderPlayer, String chaosPlayer, boolean hostPlaysOrder) {
-		super(orderPlayer, chaosPlayer);
+		this(orderPlayer, chaosPlayer, hostPlaysOrder, Rules.STANDARD);
+	}
+
+	public NetworkGameState(String orderPlayer, String chaosPlayer, boolean hostPlaysOrder, Rules rules) {
+		super(orderPlayer, chaosPlayer, rules);
 		this.hostPlaysOrder = hostPlaysOrder;
 	}
 
@@ -38,7 +42,8 @@ public class NetworkGameState extends TwoPlayerGameState {
 
 	@Override
 	public boolean localPlayerMovesNext() {
-		return nextTurn().equals(getHostPlayer());
+		// by the role, the players may have the same name
+		return isOrderNextTurn() == hostPlaysOrder;
 	}
 
 }
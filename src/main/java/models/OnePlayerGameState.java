@@ -1,11 +1,12 @@
 package models;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.EmptyStackException;
 import java.util.List;
-import java.util.Random;
 import java.util.Scanner;
 import java.util.Stack;
 
@@ -18,7 +19,10 @@ public class OnePlayerGameState extends BaseGameState {
 	public static final String AI_PLAYER = "Computer";
 	
 	// AI player strategy for this game
-	private final AIPlayer aiPlayer = new AIPlayerImpl();
+	private AIPlayer aiPlayer;
+	
+	// The kind of the AI player, saved with the game
+	private AIPlayerType aiPlayerType;
 	
 	// Indicator of AI player role in this game
 	private final boolean aiPlaysOrder;
@@ -34,7 +38,32 @@ public class OnePlayerGameState extends BaseGameState {
 	 * @return new game object created.
 	 */
 	public static OnePlayerGameState playAsOrder(String player) {
-		return new OnePlayerGameState(player, AI_PLAYER);
+		return playAsOrder(player, Rules.STANDARD);
+	}
+	
+	/**
+	 * Factory method to instantiate a new 1-player game of the given variant 
+	 * where real player will play as Order.
+	 * 
+	 * @param player the real player who will play as Order
+	 * @param rules the rules of the game variant
+	 * @return new game object created.
+	 */
+	public static OnePlayerGameState playAsOrder(String player, Rules rules) {
+		return playAsOrder(player, rules, new GreedyAIPlayer());
+	}
+	
+	/**
+	 * Factory method to instantiate a new 1-player game of the given variant 
+	 * where real player will play as Order against the given computer player.
+	 * 
+	 * @param player the real player who will play as Order
+	 * @param rules the rules of the game variant
+	 * @param aiPlayer the computer player strategy
+	 * @return new game object created.
+	 */
+	public static OnePlayerGameState playAsOrder(String player, Rules rules, AIPlayer aiPlayer) {
+		return new OnePlayerGameState(player, AI_PLAYER, rules, aiPlayer);
 	}
 	
 	/**
@@ -45,7 +74,32 @@ public class OnePlayerGameState extends BaseGameState {
 	 * @return new game object created.
 	 */
 	public static OnePlayerGameState playAsChaos(String player) {
-		return new OnePlayerGameState(AI_PLAYER, player);
+		return playAsChaos(player, Rules.STANDARD);
+	}
+	
+	/**
+	 * Factory method to instantiate a new 1-player game of the given variant 
+	 * where real player will play as Chaos.
+	 * 
+	 * @param player the real player who will play as Chaos
+	 * @param rules the rules of the game variant
+	 * @return new game object created.
+	 */
+	public static OnePlayerGameState playAsChaos(String player, Rules rules) {
+		return playAsChaos(player, rules, new GreedyAIPlayer());
+	}
+	
+	/**
+	 * Factory method to instantiate a new 1-player game of the given variant 
+	 * where real player will play as Chaos against the given computer player.
+	 * 
+	 * @param player the real player who will play as Chaos
+	 * @param rules the rules of the game variant
+	 * @param aiPlayer the computer player strategy
+	 * @return new game object created.
+	 */
+	public static OnePlayerGameState playAsChaos(String player, Rules rules, AIPlayer aiPlayer) {
+		return new OnePlayerGameState(AI_PLAYER, player, rules, aiPlayer);
 	}
 
 	/**
@@ -53,11 +107,12 @@ public class OnePlayerGameState extends BaseGameState {
 	 * it into a new game state object.
 	 *
 	 * @param scanner the scanner to read external state of the game from.
+	 * @param rules the rules of the saved game variant.
 	 * @return new game object created.
 	 * @throws IOException when reader fails for some reason or reads an invalid
 	 * or corrupted external state.
 	 */
-	public static GameState readGame(Scanner scanner) throws IOException {
+	public static GameState readGame(Scanner scanner, Rules rules) throws IOException {
 		GameState gameState = null;
 
 		String player = scanner.next();
@@ -65,10 +120,8 @@ public class OnePlayerGameState extends BaseGameState {
 		scanner.nextLine();
 		PlayerRole playerRole = PlayerRole.valueOf(role);
 
-		if (playerRole == PlayerRole.ORDER) {
-			gameState = playAsOrder(player);
-		} else if (playerRole == PlayerRole.CHAOS) {
-			gameState = playAsChaos(player);
+		if (playerRole == PlayerRole.ORDER || playerRole == PlayerRole.CHAOS) {
+			gameState = restore(player, playerRole, rules);
 		} else {
 			throw new IOException("Saved game is corrupt or invalid");
 		}
@@ -77,10 +130,46 @@ public class OnePlayerGameState extends BaseGameState {
 		return gameState;
 	}
 
+	/**
+	 * Static factory method that reads the binary saved game after its header
+	 * and converts it into a new game state object.
+	 *
+	 * @param in provides access to the binary saved game.
+	 * @param rules the rules of the saved game variant.
+	 * @param version the version of the binary saved game format.
+	 * @return new game object created.
+	 * @throws IOException when reading fails or the saved game is invalid.
+	 */
+	public static GameState readGame(DataInput in, Rules rules, int version) throws IOException {
+		GameState gameState = null;
+
+		String player = in.readUTF();
+		int role = in.readUnsignedByte();
+		if (role == PlayerRole.ORDER.ordinal()) {
+			gameState = restore(player, PlayerRole.ORDER, rules);
+		} else if (role == PlayerRole.CHAOS.ordinal()) {
+			gameState = restore(player, PlayerRole.CHAOS, rules);
+		} else {
+			throw new IOException("Saved game is corrupt or invalid");
+		}
+		// the kind of the computer player, the greedy one in the games saved before it was saved
+		if (version >= 3) {
+			int type = in.readUnsignedByte();
+			if (type >= AIPlayerType.values().length) {
+				throw new IOException("Saved game is corrupt or invalid");
+			}
+			((OnePlayerGameState) gameState).aiPlayerType = AIPlayerType.values()[type];
+		}
+		gameState.readFrom(in, version);
+
+		return gameState;
+	}
+
 	@Override
     public void readFrom(Scanner scanner) throws IOException {
 		// readState basic state from the super class
     	super.readFrom(scanner);
+    	moves.clear();
     	// readState players' moves
     	while (scanner.hasNext()) {
     		try {
@@ -100,7 +189,7 @@ public class OnePlayerGameState extends BaseGameState {
 	@Override
 	public void writeTo(PrintWriter writer) throws IOException {
 		// game type
-		writer.println(SavedGameType.ONE_PLAYER);
+		writeHeader(writer, SavedGameType.ONE_PLAYER);
 		// player and their role
 		if (aiPlaysOrder) {
 			writer.print(getChaosPlayer());
@@ -135,6 +224,70 @@ public class OnePlayerGameState extends BaseGameState {
 		}
 	}
 	
+	@Override
+	public void readFrom(DataInput in, int version) throws IOException {
+		// basic state from the super class
+		super.readFrom(in, version);
+		moves.clear();
+		// players' moves in chronological order, Order makes the first one
+		int size = rules.getBoardSize();
+		int count = readVarint(in);
+		for (int i = 0; i < count; i++) {
+			int move = readVarint(in);
+			int square = move >> 1;
+			if (square >= rules.getSquares()) {
+				throw new IOException("Saved game is corrupt or invalid");
+			}
+			String player = i % 2 == 0 ? getOrderPlayer() : getChaosPlayer();
+			moves.push(new Move(player, square / size + 1, square % size + 1, (move & 1) == 0 ? Mark.X : Mark.O));
+		}
+		if (isValidating()) {
+			validateMoves();
+		}
+	}
+	
+	/**
+	 * Check that the moves read are the marks on the board read.
+	 * 
+	 * @throws IOException if they are not.
+	 */
+	private void validateMoves() throws IOException {
+		if (moves.size() != rules.getSquares() - spaces) {
+			throw new IOException("The saved moves do not match the board");
+		}
+		for (Move move : moves) {
+			if (getBoardMark(move.getX(), move.getY()) != move.getMark()) {
+				throw new IOException("The saved moves do not match the board");
+			}
+		}
+	}
+
+	@Override
+	public void writeTo(DataOutput out) throws IOException {
+		// game type and rules
+		writeHeader(out, SavedGameType.ONE_PLAYER);
+		// player and their role
+		if (aiPlaysOrder) {
+			out.writeUTF(getChaosPlayer());
+			out.writeByte(PlayerRole.CHAOS.ordinal());
+		} else {
+			out.writeUTF(getOrderPlayer());
+			out.writeByte(PlayerRole.ORDER.ordinal());
+		}
+		// the kind of the computer player
+		out.writeByte(aiPlayerType.ordinal());
+		// basic state from the super class
+		super.writeTo(out);
+		// players' moves, the bottom of the stack is the earliest move
+		int size = rules.getBoardSize();
+		writeVarint(out, moves.size());
+		for (int i = 0; i < moves.size(); i++) {
+			Move move = moves.get(i);
+			int square = (move.getX() - 1) * size + move.getY() - 1;
+			writeVarint(out, (square << 1) | (move.getMark() == Mark.O ? 1 : 0));
+		}
+	}
+	
 	/**
 	 * Hidden constructor that both factory methods call. Since java does not 
 	 * allow any logic in the constructor before the call to its super(),
@@ -142,22 +295,92 @@ public class OnePlayerGameState extends BaseGameState {
 	 * 
 	 * @param orderPlayer the name of an Order player.
 	 * @param chaosPlayer the name of a Chaos player.
+	 * @param rules the rules of the game variant.
+	 * @param aiPlayer the computer player strategy.
+	 */
+	protected OnePlayerGameState(String orderPlayer, String chaosPlayer, Rules rules, AIPlayer aiPlayer) {
+		this(orderPlayer, chaosPlayer, rules, aiPlayer, true);
+	}
+	
+	/**
+	 * @param firstMove false to leave the board empty even if the computer 
+	 * plays Order, when the game is about to be restored.
 	 */
-	protected OnePlayerGameState(String orderPlayer, String chaosPlayer) {
-		super(orderPlayer, chaosPlayer);
+	private OnePlayerGameState(String orderPlayer, String chaosPlayer, Rules rules, AIPlayer aiPlayer, 
+			boolean firstMove) {
+		super(orderPlayer, chaosPlayer, rules);
+		this.aiPlayer = aiPlayer;
+		aiPlayerType = aiPlayer.getType();
 		aiPlaysOrder = AI_PLAYER.equals(orderPlayer);
-		if (aiPlaysOrder) {
+		if (aiPlaysOrder && firstMove) {
 			makeAINextMove();
 		}
 	}
 	
+	/**
+	 * Static factory method of the new game where the computer player does 
+	 * not make its first move itself even if it plays Order, the move is left
+	 * to be made by the caller as the moves that follow the player's moves are.
+	 * 
+	 * @param player the name of the player.
+	 * @param playerRole the role of the player.
+	 * @param rules the rules of the game variant.
+	 * @param aiPlayer the computer player strategy.
+	 * @return new game object created, with an empty board.
+	 * @see #isComputerNextTurn()
+	 */
+	public static OnePlayerGameState newGame(String player, PlayerRole playerRole, Rules rules, AIPlayer aiPlayer) {
+		if (playerRole == PlayerRole.ORDER) {
+			return new OnePlayerGameState(player, AI_PLAYER, rules, aiPlayer, false);
+		} else {
+			return new OnePlayerGameState(AI_PLAYER, player, rules, aiPlayer, false);
+		}
+	}
+	
+	/**
+	 * Static factory method of the game about to be restored from its moves:
+	 * the board is left empty even if the computer plays Order, the moves are
+	 * replayed onto it. The game is played against the greedy computer player
+	 * until the computer player of the saved kind is set.
+	 * 
+	 * @param player the name of the player.
+	 * @param playerRole the role of the player.
+	 * @param rules the rules of the game variant.
+	 * @return new game object of the saved game, with an empty board.
+	 */
+	public static OnePlayerGameState restore(String player, PlayerRole playerRole, Rules rules) {
+		if (playerRole == PlayerRole.ORDER) {
+			return new OnePlayerGameState(player, AI_PLAYER, rules, new GreedyAIPlayer(), false);
+		} else {
+			return new OnePlayerGameState(AI_PLAYER, player, rules, new GreedyAIPlayer(), false);
+		}
+	}
+	
+	/**
+	 * @return the kind of the computer player of this game.
+	 */
+	public AIPlayerType getAIPlayerType() {
+		return aiPlayerType;
+	}
+	
+	/**
+	 * Set the computer player to play the rest of the game, e.g. the one of
+	 * the saved kind when the game has been restored.
+	 * 
+	 * @param aiPlayer the computer player strategy.
+	 */
+	public void setAIPlayer(AIPlayer aiPlayer) {
+		this.aiPlayer = aiPlayer;
+		aiPlayerType = aiPlayer.getType();
+	}
+	
 	private void makeMoveAndRemember(Move move) throws IllegalMoveException {
 		super.makeMove(move);
 		moves.push(move);
 	}
 	
 	private void makeAINextMove() {
-		Move move = aiPlayer.nextMove();
+		Move move = nextComputerMove();
 		try {
 			makeMoveAndRemember(move);
 		} catch (IllegalMoveException e) {
@@ -168,30 +391,95 @@ public class OnePlayerGameState extends BaseGameState {
 	public void makeMove(Move move) throws IllegalMoveException {
 		makeMoveAndRemember(move);
 		
-		if (isOver()) { // no more moves
-			moves.clear();
-		} else { // follow human move by the AI move
+		if (!isOver()) { // follow human move by the AI move
 			makeAINextMove();
 		}
 	}
+	
+	/**
+	 * Make the player's move only, the computer player's move that follows it
+	 * is made separately, see {@link #nextComputerMove()}.
+	 * 
+	 * @param move the player's move.
+	 * @throws IllegalMoveException if the move is illegal or it is the 
+	 * computer player's turn.
+	 */
+	public void makePlayerMove(Move move) throws IllegalMoveException {
+		if (isComputerNextTurn()) {
+			throw new IllegalMoveException("The computer player is thinking");
+		}
+		makeMoveAndRemember(move);
+	}
+	
+	/**
+	 * @return true if the game is not over and the computer player makes the
+	 * next move, Order makes the first one.
+	 */
+	public boolean isComputerNextTurn() {
+		return !isOver() && (moves.size() % 2 == 0) == aiPlaysOrder;
+	}
+	
+	/**
+	 * Decide the next move of the computer player without making it. The game
+	 * is only read, so the move may be decided in another thread as long as
+	 * the game is not changed meanwhile.
+	 * 
+	 * @return the next move of the computer player.
+	 */
+	public Move nextComputerMove() {
+		return aiPlayer.nextMove(this, aiPlaysOrder ? PlayerRole.ORDER : PlayerRole.CHAOS);
+	}
+	
+	/**
+	 * Make the move decided by the computer player.
+	 * 
+	 * @param move the move returned by {@link #nextComputerMove()}.
+	 * @throws IllegalMoveException if the move is illegal or it is the 
+	 * player's turn.
+	 */
+	public void makeComputerMove(Move move) throws IllegalMoveException {
+		if (!isComputerNextTurn()) {
+			throw new IllegalMoveException("It is not the computer player's turn");
+		}
+		makeMoveAndRemember(move);
+	}
+	
+	@Override
+	public boolean localPlayerMovesNext() {
+		return !isComputerNextTurn();
+	}
 
 	@Override
 	public Move getLastMove() {
 		return moves.isEmpty() ? null : moves.peek();
 	}
+	
+	/**
+	 * @return all the moves made by the players, the earliest first.
+	 */
+	public List<Move> getMoves() {
+		return new ArrayList<Move>(moves);
+	}
 
 	@Override
 	public void undoLastMove() throws IllegalMoveException {
 		// The top of the moves stack should always be the last AI player move.
 		// To undo the real player last move, try to pop stack twice to get these moves
 		// and wipe out their marks on the board.
+		if (isOver()) {
+			throw new IllegalMoveException("The game is over");
+		}
+		if (isComputerNextTurn()) {
+			throw new IllegalMoveException("The computer player is thinking");
+		}
 		Move lastMove = null;
 		Move nextToLastMove = null;
 		try {
 			lastMove = moves.pop();
 			nextToLastMove = moves.pop();
-			undoMove(nextToLastMove);
+			// wipe out in reverse order, as the moves were made
 			undoMove(lastMove);
+			undoMove(nextToLastMove);
 		} catch (EmptyStackException e) {
 			// In case there were no moves made yet or the only move was made by AI, 
 			// restore the stack and do nothing.
@@ -202,12 +490,27 @@ public class OnePlayerGameState extends BaseGameState {
 		}
 	}
 	
+	@Override
+	public void replaySquare(int x, int y, Mark mark) throws IllegalMoveException {
+		if (mark == Mark.SPACE) {
+			// only the last move can be undone
+			if (moves.isEmpty() || moves.peek().getX() != x || moves.peek().getY() != y) {
+				throw new IllegalMoveException("The square ["+y+","+x+"] is not the last move");
+			}
+			super.replaySquare(x, y, mark);
+			moves.pop();
+		} else {
+			super.replaySquare(x, y, mark);
+			// Order makes the first move
+			moves.push(new Move(moves.size() % 2 == 0 ? getOrderPlayer() : getChaosPlayer(), x, y, mark));
+		}
+	}
+	
 	private void undoMove(Move move) {
 		// board internal dimensions are 0-based, so offset the move coordinate
 		int _x = move.getX() - 1;
 		int _y = move.getY() - 1;
 		markBoardSquare(_x, _y, Mark.SPACE);
-		compute();
 	}
 
 	@Override
@@ -220,154 +523,4 @@ public class OnePlayerGameState extends BaseGameState {
 		return !aiPlaysOrder;
 	}
 
-	// Private inner interface/classes that have access to this game
-	
-	/**
-	 * AI player strategy. It defines behavior of AI player in 1-player game.
-	 */
-	private interface AIPlayer {
-		Move nextMove();
-	}
-
-	private class AIPlayerImpl implements AIPlayer {
-		private Random r = new Random();
-
-		@Override
-		public Move nextMove() {
-			Chain chain = findLongestOpenChain();
-			Mark mark = null;
-			Coordinates coordinates = null;
-			// if no chain found, use random mark, 
-			// otherwise, if AI plays Order, then extend the chain with its mark, 
-			// otherwise close it with the opposite mark
-			if (chain == null) {
-				mark = getRandomMark();
-				coordinates = getRandomCoordinates();
-			} else {
-				mark = aiPlaysOrder ? chain.getMark() : chain.getClosingMark();
-				
-				boolean headOpen = isHeadOpen(chain); 
-				boolean tailOpen = isTailOpen(chain);
-				
-				if (headOpen && tailOpen) {
-					coordinates = r.nextBoolean() ? chain.extendHead() : chain.extendTail();
-				} else if (headOpen) {
-					coordinates = chain.extendHead();
-				} else {
-					coordinates = chain.extendTail();
-				} 
-			}
-			return new Move(AI_PLAYER, coordinates.getX(), coordinates.getY(), mark);
-		}
-		
-		private Mark getRandomMark() {
-			return r.nextBoolean() ? Mark.X : Mark.O;
-		}
-		
-		private Coordinates getRandomCoordinates() {
-			int x;
-			int y;
-			do {
-				x = r.nextInt(BOARD_SIZE);
-				y = r.nextInt(BOARD_SIZE);
-			} while (board[x][y] != Mark.SPACE);
-			return new Coordinates(x+1, y+1); // external board coordinates are 1-based
-		}
-		
-		private Chain findLongestOpenChain() {
-	    	List<Chain> longestChains = new ArrayList<Chain>();
-	    	int maxLength = 0;
-	        for (int x = 0; x < BOARD_SIZE; x++) {
-	            for (int y = 0; y < BOARD_SIZE; y++) {
-	                if (board[x][y] != Mark.SPACE) {
-	                    maxLength = findLongestOpenChains(x, y, board[x][y], maxLength, longestChains);
-	                }
-	            }
-	        }
-	        int size = longestChains.size(); 
-	        switch (size) {
-	        case 0:	
-	        	return null;
-	        case 1:	
-	        	return longestChains.get(0);
-	        default:
-	        	int randomIndex = r.nextInt(size);
-	        	return longestChains.get(randomIndex);
-	        }
-		}
-		
-	    private int findLongestOpenChains(int _x, int _y, Mark mark, int maxLength, List<Chain> longestChains) {
-	    	for (Chain.Direction direction : Chain.Direction.values()) {
-	    		Coordinates head = new Coordinates(_x+1, _y+1);
-		    	Coordinates tail = searchTail(_x, _y, mark, direction);
-		    	if (tail != null) {
-		    		Chain chain = new Chain(mark, direction, head, tail);
-		    		if (isHeadOpen(chain) || isTailOpen(chain)) {
-		    			int length = chain.getLength();
-		    			if (length == maxLength) {
-		    				longestChains.add(chain);
-		    			} else if (length > maxLength) {
-		    				longestChains.clear();
-		    				longestChains.add(chain);
-		    				maxLength = length;
-		    			}
-		    		}
-		    	}
-	    	}
-	    	return maxLength;
-	    }
-
-	    private Coordinates searchTail(int _x, int _y, Mark mark, Chain.Direction direction) {
-	    	// step in the direction of the chain
-	    	switch (direction) {
-	    	case UP:
-		        _y++; break;
-	    	case DIAG_UP:
-	    		_x++;
-		        _y++; break;
-	    	case RIGHT:
-	    		_x++; break;
-	    	case DIAG_DOWN:
-	    		_x++;
-		        _y--; break;
-	    	}
-	        if (_x <  BOARD_SIZE && 0 <= _y && _y < BOARD_SIZE && board[_x][_y] == mark) {
-	            return searchTail(_x, _y, mark, direction);
-	        }
-	    	// either went outside the board or found an empty square or the square marked with the opposite mark
-	        // step back and build the tail of the chain coordinates
-	    	switch (direction) {
-	    	case UP:
-		        _y--; break;
-	    	case DIAG_UP:
-	    		_x--;
-		        _y--; break;
-	    	case RIGHT:
-	    		_x--; break;
-	    	case DIAG_DOWN:
-	    		_x--;
-		        _y++; break;
-	    	}
-	        return new Coordinates(_x+1, _y+1);
-	    }
-
-	    private boolean isHeadOpen(Chain chain) {
-			Coordinates coordinates = chain.extendHead();
-			if (coordinates.getX() < 1 || coordinates.getY() < 1 || coordinates.getY() > BOARD_SIZE) {
-				return false;
-			}
-			Mark mark = getBoardMark(coordinates.getX(), coordinates.getY());
-			return mark == Mark.SPACE;
-		}
-		
-		private boolean isTailOpen(Chain chain) {
-			Coordinates coordinates = chain.extendTail();
-			if (coordinates.getX() > BOARD_SIZE || coordinates.getY() < 1 || coordinates.getY() > BOARD_SIZE) {
-				return false;
-			}
-			Mark mark = getBoardMark(coordinates.getX(), coordinates.getY());
-			return mark == Mark.SPACE;
-		}
-	}
-	
 }
@@ -0,0 +1,93 @@
+package models;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rules of the game variant: the size of the board and the number of
+ * like marks in a row that Order needs to win.
+ *
+ * @author Anastasia Radchenko
+ */
+public class Rules {
+
+	/**
+	 * The classic game on 6x6 board with the chain of 5
+	 */
+	public static final Rules STANDARD = new Rules(GameState.BOARD_SIZE, 5);
+
+	/**
+	 * The largest supported board size
+	 */
+	public static final int MAX_BOARD_SIZE = 32;
+
+	/**
+	 * Game variants offered to the players
+	 */
+	public static final List<Rules> VARIANTS = Collections.unmodifiableList(Arrays.asList(
+			STANDARD, new Rules(9, 5), new Rules(15, 5), new Rules(15, 6)));
+
+	private final int boardSize;
+	private final int chainLength;
+
+	public Rules(int boardSize, int chainLength) {
+		if (boardSize < 1 || boardSize > MAX_BOARD_SIZE) {
+			throw new IllegalArgumentException("Unsupported board size: "+boardSize);
+		}
+		if (chainLength < 2 || chainLength > boardSize) {
+			throw new IllegalArgumentException("Unsupported chain length: "+chainLength);
+		}
+		this.boardSize = boardSize;
+		this.chainLength = chainLength;
+	}
+
+	public int getBoardSize() {
+		return boardSize;
+	}
+
+	public int getChainLength() {
+		return chainLength;
+	}
+
+	/**
+	 * @return the number of squares on the board.
+	 */
+	public int getSquares() {
+		return boardSize * boardSize;
+	}
+
+	public boolean isStandard() {
+		return equals(STANDARD);
+	}
+
+	/**
+	 * @return new empty board for this game variant, packed into bit masks
+	 * when it is small enough.
+	 */
+	public Board newBoard() {
+		if (boardSize <= Bitboard.MAX_SIZE) {
+			return new Bitboard(boardSize);
+		}
+		return new ArrayBoard(boardSize);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Rules)) {
+			return false;
+		}
+		Rules other = (Rules) obj;
+		return boardSize == other.boardSize && chainLength == other.chainLength;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * boardSize + chainLength;
+	}
+
+	@Override
+	public String toString() {
+		return boardSize+"x"+boardSize+", "+chainLength+" in a row";
+	}
+}
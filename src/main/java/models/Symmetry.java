@@ -0,0 +1,92 @@
+package models;
+
+/**
+ * The symmetries of the game: the board turned or mirrored any of the 8 ways,
+ * and the X's and O's swapped or not, 16 in all. None of them changes the
+ * outcome of a game, so a game and all its images can be kept as one.
+ * <p>
+ * A symmetry is the image number times 2, plus 1 if the marks are swapped. A
+ * move is the square number times 2, plus 1 for O. The tables are the same
+ * for every game of the same board size, so they are shared.
+ *
+ * @author Anastasia Radchenko
+ */
+public class Symmetry {
+
+	/**
+	 * The number of the symmetries, 0 is the identity
+	 */
+	public static final int COUNT = 16;
+
+	// the tables of every board size asked for so far
+	private static final Symmetry[] CACHE = new Symmetry[Rules.MAX_BOARD_SIZE + 1];
+
+	// transforms[t][i] is the square that goes to the square i in the image t,
+	// inverses[t][s] is the square the square s goes to in the image t
+	private final int[][] transforms;
+	private final int[][] inverses;
+
+	/**
+	 * @param size the size of the board.
+	 */
+	public Symmetry(int size) {
+		int squares = size * size;
+		transforms = new int[8][squares];
+		inverses = new int[8][squares];
+		int last = size - 1;
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				int square = x * size + y;
+				transforms[0][square] = x * size + y;
+				transforms[1][square] = (last - x) * size + y;
+				transforms[2][square] = x * size + last - y;
+				transforms[3][square] = (last - x) * size + last - y;
+				transforms[4][square] = y * size + x;
+				transforms[5][square] = (last - y) * size + x;
+				transforms[6][square] = y * size + last - x;
+				transforms[7][square] = (last - y) * size + last - x;
+			}
+		}
+		for (int t = 0; t < transforms.length; t++) {
+			for (int square = 0; square < squares; square++) {
+				inverses[t][transforms[t][square]] = square;
+			}
+		}
+	}
+
+	/**
+	 * @param size the size of the board.
+	 * @return the symmetries of the board, shared by all the games of the same
+	 * board size.
+	 */
+	public static Symmetry forSize(int size) {
+		if (size >= CACHE.length) {
+			return new Symmetry(size);
+		}
+		// the tables are always the same, so a race only creates them twice
+		Symmetry symmetry = CACHE[size];
+		if (symmetry == null) {
+			symmetry = new Symmetry(size);
+			CACHE[size] = symmetry;
+		}
+		return symmetry;
+	}
+
+	/**
+	 * @param move the move on the board.
+	 * @param symmetry the symmetry.
+	 * @return the same move on the image of the board.
+	 */
+	public int toImage(int move, int symmetry) {
+		return (inverses[symmetry >> 1][move >> 1] << 1) | ((move ^ symmetry) & 1);
+	}
+
+	/**
+	 * @param move the move on the image of the board.
+	 * @param symmetry the symmetry.
+	 * @return the same move on the board.
+	 */
+	public int fromImage(int move, int symmetry) {
+		return (transforms[symmetry >> 1][move >> 1] << 1) | ((move ^ symmetry) & 1);
+	}
+}
@@ -1,7 +1,11 @@
 package models;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -12,6 +16,11 @@ import java.util.Scanner;
 public class TwoPlayerGameState extends BaseGameState {
 	// true if Order player moves next
 	private boolean orderMovesNext;
+	
+	// the moves made by the players, the earliest first, for the archive of the 
+	// games; they are not saved, so not known for the game restored with marks
+	private final List<Move> moves = new ArrayList<Move>();
+	private boolean movesKnown = true;
 
 	/**
 	 * Constructor of a 2-player game object.
@@ -19,7 +28,17 @@ public class TwoPlayerGameState extends BaseGameState {
 	 * @param chaosPlayer the name of a player who will play as Chaos.
 	 */
 	public TwoPlayerGameState(String orderPlayer, String chaosPlayer) {
-		super(orderPlayer, chaosPlayer);
+		this(orderPlayer, chaosPlayer, Rules.STANDARD);
+	}
+
+	/**
+	 * Constructor of a 2-player game object of the given variant.
+	 * @param orderPlayer the name of a player who will play as Order.
+	 * @param chaosPlayer the name of a player who will play as Chaos.
+	 * @param rules the rules of the game variant.
+	 */
+	public TwoPlayerGameState(String orderPlayer, String chaosPlayer, Rules rules) {
+		super(orderPlayer, chaosPlayer, rules);
 		orderMovesNext = true;
 	}
 
@@ -28,23 +47,42 @@ public class TwoPlayerGameState extends BaseGameState {
 	 * it into a new game state object.
 	 *
 	 * @param scanner the scanner to read external state of the game from.
+	 * @param rules the rules of the saved game variant.
 	 * @return new game object created.
 	 * @throws IOException when reader fails for some reason or reads an invalid
 	 * or corrupted external state.
 	 */
-	public static GameState readGame(Scanner scanner) throws IOException {
+	public static GameState readGame(Scanner scanner, Rules rules) throws IOException {
 		GameState gameState = null;
 
 		String orderPlayer = scanner.next();
 		String chaosPlayer = scanner.next();
 		scanner.nextLine();
 
-		gameState = new TwoPlayerGameState(orderPlayer, chaosPlayer);
+		gameState = new TwoPlayerGameState(orderPlayer, chaosPlayer, rules);
 		gameState.readFrom(scanner);
 
 		return gameState;
 	}
 
+	/**
+	 * Static factory method that reads the binary saved game after its header
+	 * and converts it into a new game state object.
+	 *
+	 * @param in provides access to the binary saved game.
+	 * @param rules the rules of the saved game variant.
+	 * @param version the version of the binary saved game format.
+	 * @return new game object created.
+	 * @throws IOException when reading fails or the saved game is invalid.
+	 */
+	public static GameState readGame(DataInput in, Rules rules, int version) throws IOException {
+		String orderPlayer = in.readUTF();
+		String chaosPlayer = in.readUTF();
+		GameState gameState = new TwoPlayerGameState(orderPlayer, chaosPlayer, rules);
+		gameState.readFrom(in, version);
+		return gameState;
+	}
+
 	@Override
     public void readFrom(Scanner scanner) throws IOException {
 		// readState basic state from the super class
@@ -52,12 +90,13 @@ public class TwoPlayerGameState extends BaseGameState {
     	// readState who moves next
     	orderMovesNext = scanner.nextBoolean();
 		scanner.nextLine();
+		forgetMoves();
     }
     
 	@Override
 	public void writeTo(PrintWriter writer) throws IOException {
 		// game type
-		writer.println(SavedGameType.TWO_PLAYER);
+		writeHeader(writer, SavedGameType.TWO_PLAYER);
 		// players
 		writer.print(getOrderPlayer());
 		writer.print(",");
@@ -68,14 +107,68 @@ public class TwoPlayerGameState extends BaseGameState {
 		writer.println(orderMovesNext);
 	}
 	
+	@Override
+	public void readFrom(DataInput in, int version) throws IOException {
+		super.readFrom(in, version);
+		orderMovesNext = in.readBoolean();
+		forgetMoves();
+	}
+	
+	/**
+	 * The moves made before the game was saved are not known once it is read.
+	 */
+	private void forgetMoves() {
+		moves.clear();
+		movesKnown = spaces == rules.getSquares();
+	}
+
+	@Override
+	public void writeTo(DataOutput out) throws IOException {
+		writeHeader(out, SavedGameType.TWO_PLAYER);
+		out.writeUTF(getOrderPlayer());
+		out.writeUTF(getChaosPlayer());
+		super.writeTo(out);
+		out.writeBoolean(orderMovesNext);
+	}
+
 	@Override
 	public void makeMove(Move move) throws IllegalMoveException {
 		super.makeMove(move);
+		moves.add(move);
 		if (!isOver()) {
 			orderMovesNext = !orderMovesNext; // flip the next turn
 		}
 	}
 
+	@Override
+	public void replaySquare(int x, int y, Mark mark) throws IllegalMoveException {
+		boolean over = isOver();
+		String player = nextTurn();
+		super.replaySquare(x, y, mark);
+		if (mark != Mark.SPACE) {
+			moves.add(new Move(player, x, y, mark));
+		} else if (!moves.isEmpty() && moves.get(moves.size() - 1).getX() == x 
+				&& moves.get(moves.size() - 1).getY() == y) {
+			moves.remove(moves.size() - 1);
+		} else {
+			// a mark made before the game was saved
+			movesKnown = false;
+		}
+		// the turn passes as it does after a move, and comes back when it is undone
+		if (mark == Mark.SPACE ? !over : !isOver()) {
+			orderMovesNext = !orderMovesNext;
+		}
+	}
+
+	/**
+	 * @return all the moves made by the players, the earliest first, or null
+	 * if they are not known: the moves are not saved with the game, so the
+	 * game restored with marks on its board does not know them.
+	 */
+	public List<Move> getMoves() {
+		return movesKnown ? new ArrayList<Move>(moves) : null;
+	}
+
 	@Override
 	public String nextTurn() {
 		return orderMovesNext ? getOrderPlayer() : getChaosPlayer();
@@ -0,0 +1,66 @@
+package models;
+
+import java.util.Random;
+
+/**
+ * Random keys to hash game positions: the hash of a position is the XOR of
+ * the keys of all marked squares, XOR-ed with the side key when it is Chaos
+ * who moves next. The keys are generated from a fixed seed, so the same
+ * position gets the same hash in every run.
+ *
+ * @author Anastasia Radchenko
+ */
+public class Zobrist {
+	private static final long SEED = 0x6f72646572636861L; // "orderchaos"
+
+	// the keys of every board size asked for so far
+	private static final Zobrist[] CACHE = new Zobrist[Rules.MAX_BOARD_SIZE * Rules.MAX_BOARD_SIZE + 1];
+
+	private final long[] keys;
+	private final long side;
+
+	/**
+	 * @param squares the number of squares on the board.
+	 */
+	public Zobrist(int squares) {
+		Random r = new Random(SEED);
+		keys = new long[squares * 2];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = r.nextLong();
+		}
+		side = r.nextLong();
+	}
+
+	/**
+	 * @param squares the number of squares on the board.
+	 * @return the keys of the board, shared by all the games of the same board size.
+	 */
+	public static Zobrist forSquares(int squares) {
+		if (squares >= CACHE.length) {
+			return new Zobrist(squares);
+		}
+		// the keys are always the same, so a race only creates them twice
+		Zobrist zobrist = CACHE[squares];
+		if (zobrist == null) {
+			zobrist = new Zobrist(squares);
+			CACHE[squares] = zobrist;
+		}
+		return zobrist;
+	}
+
+	/**
+	 * @param square the number of the square on the board.
+	 * @param o true for the O mark, false for the X mark.
+	 * @return the key of the square marked with the mark.
+	 */
+	public long key(int square, boolean o) {
+		return keys[(square << 1) | (o ? 1 : 0)];
+	}
+
+	/**
+	 * @return the key to toggle when the side to move changes.
+	 */
+	public long side() {
+		return side;
+	}
+}
@@ -1,6 +1,7 @@
 package ui;
 
 import application.Application;
+import models.GameState;
 import models.IllegalMoveException;
 import models.Mark;
 import models.Move;
@@ -49,6 +50,7 @@ public abstract class AbstractGame  extends AbstractPane implements ActionListen
     private JLabel lChaosPlayer;
     private JLabel lInfo;
 
+    private final JPanel squaresPanel;
     private JTextField[][] tfSquares;
     private long time;
 
@@ -78,13 +80,54 @@ public abstract class AbstractGame  extends AbstractPane implements ActionListen
         titlePanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 10, 0));
         add(titlePanel, BorderLayout.PAGE_START);
 
-        JPanel squaresPanel = new JPanel(new GridLayout(6, 6));
-        squaresPanel.setBorder(BorderFactory.createEmptyBorder(0, 65, 0, 65));
+        squaresPanel = new JPanel();
+        buildSquares(GameState.BOARD_SIZE);
 
-        Font font = new Font("SansSerif", Font.BOLD, 22);
-        tfSquares = new JTextField[6][6];
-        for (int row = 0; row < 6; row++) {
-            for (int col = 0; col < 6; col++) {
+        add(squaresPanel, BorderLayout.CENTER);
+
+        JPanel bottomPanel = new JPanel(new GridLayout(2, 1));
+
+        EnumSet<Command> commands = getButtonCommands();
+
+        JPanel buttonsPanel = new JPanel(new GridLayout(1, commands.size()));
+
+        for (Command command : commands) {
+            JButton b = new JButton(command.displayText);
+            b.setToolTipText(command.toolTipText);
+            b.setActionCommand(command.name());
+            b.setFocusPainted(false);
+            b.addActionListener(this);
+            buttonsPanel.add(b);
+        }
+
+        bottomPanel.add(buttonsPanel);
+
+        lInfo = new JLabel("");
+        lInfo.setHorizontalAlignment(JLabel.LEADING);
+        bottomPanel.add(lInfo);
+
+        add(bottomPanel, BorderLayout.PAGE_END);
+
+        time = System.currentTimeMillis();
+    }
+
+    protected abstract EnumSet<Command> getButtonCommands();
+
+    /**
+     * (Re)build the board squares for the board of the given size.
+     */
+    private void buildSquares(int size) {
+        // keep the board panel of the same width, squeezing the squares of the larger boards
+        int fontSize = Math.max(10, 22 * GameState.BOARD_SIZE / size);
+        int border = size <= GameState.BOARD_SIZE ? 65 : 0;
+        squaresPanel.removeAll();
+        squaresPanel.setLayout(new GridLayout(size, size));
+        squaresPanel.setBorder(BorderFactory.createEmptyBorder(0, border, 0, border));
+
+        Font font = new Font("SansSerif", Font.BOLD, fontSize);
+        tfSquares = new JTextField[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
                 final JTextField tf = new JTextField(1); //limit to one char only
                 tfSquares[row][col] = tf;
                 tf.setFont(font);
@@ -125,52 +168,18 @@ public abstract class AbstractGame  extends AbstractPane implements ActionListen
                 squaresPanel.add(tf);
             }
         }
-
-        add(squaresPanel, BorderLayout.CENTER);
-
-        JPanel bottomPanel = new JPanel(new GridLayout(2, 1));
-
-        EnumSet<Command> commands = getButtonCommands();
-
-        JPanel buttonsPanel = new JPanel(new GridLayout(1, commands.size()));
-
-        for (Command command : commands) {
-            JButton b = new JButton(command.displayText);
-            b.setToolTipText(command.toolTipText);
-            b.setActionCommand(command.name());
-            b.setFocusPainted(false);
-            b.addActionListener(this);
-            buttonsPanel.add(b);
-        }
-
-        bottomPanel.add(buttonsPanel);
-
-        lInfo = new JLabel("");
-        lInfo.setHorizontalAlignment(JLabel.LEADING);
-        bottomPanel.add(lInfo);
-
-        add(bottomPanel, BorderLayout.PAGE_END);
-
-        time = System.currentTimeMillis();
+        squaresPanel.revalidate();
     }
 
-    protected abstract EnumSet<Command> getButtonCommands();
-
     private boolean localPlayerMovesNext() {
         return app.getGameState().localPlayerMovesNext();
     }
 
     private void makeMove(int row, int col, String value) {
-        Move move = new Move(app.getGameState().nextTurn(), col + 1, 6 - row, Mark.valueOf(value));
+        Move move = new Move(app.getGameState().nextTurn(), col + 1, tfSquares.length - row, Mark.valueOf(value));
         try {
             doMove(move);
-            if (app.getGameState().isOver()) {
-                recordAchievement();
-                info(app.getGameState().getWinner()+" wins!", "Congratulations");
-                cancel();
-            } else {
-                refresh();
-            }
+            moveMade();
         } catch (IllegalMoveException e) {
             error("The move "+move+" is illegal", "Illegal Move");
         } catch (IOException ioe) {
@@ -185,6 +194,19 @@ public abstract class AbstractGame  extends AbstractPane implements ActionListen
         app.getGameState().makeMove(move);
     }
 
+    /**
+     * Show the move made, and the winner if the move has finished the game.
+     */
+    protected void moveMade() {
+        if (app.getGameState().isOver()) {
+            recordAchievement();
+            info(app.getGameState().getWinner()+" wins!", "Congratulations");
+            cancel();
+        } else {
+            refresh();
+        }
+    }
+
     private void highlightNextTurn() {
         if (app.getGameState().isOrderNextTurn()) {
             lOrderPlayer.setFont(FNT_SS_BOLD_12);
@@ -200,9 +222,13 @@ public abstract class AbstractGame  extends AbstractPane implements ActionListen
         highlightNextTurn();
         lOrderPlayer.setText(app.getGameState().getOrderPlayer() + " (Order)");
         lChaosPlayer.setText(app.getGameState().getChaosPlayer() + " (Chaos)");
-        for (int row = 0; row < 6; row++) {
-            for (int col = 0; col < 6; col++) {
-                tfSquares[row][col].setText(app.getGameState().getBoardMark(col + 1, 6 - row).getDisplayValue());
+        int size = app.getGameState().getRules().getBoardSize();
+        if (size != tfSquares.length) {
+            buildSquares(size);
+        }
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                tfSquares[row][col].setText(app.getGameState().getBoardMark(col + 1, size - row).getDisplayValue());
             }
         }
         time = System.currentTimeMillis();
@@ -238,7 +264,7 @@ public abstract class AbstractGame  extends AbstractPane implements ActionListen
             lInfo.setText("The last move is undone");
             refresh();
         } catch (IllegalMoveException e) {
-            info("No moves made yet", "Information");
+            info(e.getMessage(), "Information");
         }
     }
 
@@ -264,13 +290,17 @@ public abstract class AbstractGame  extends AbstractPane implements ActionListen
         lInfo.setText("");
     }
 
+    protected void setInfo(String info) {
+        lInfo.setText(info);
+    }
+
     @Override
     public void reset() {
         resetInfo();
         lOrderPlayer.setText("Order");
         lChaosPlayer.setText("Chaos");
-        for (int row = 0; row < 6; row++) {
-            for (int col = 0; col < 6; col++) {
+        for (int row = 0; row < tfSquares.length; row++) {
+            for (int col = 0; col < tfSquares.length; col++) {
                 tfSquares[row][col].setText("");
             }
         }
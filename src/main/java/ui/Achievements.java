@@ -10,6 +10,7 @@ import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
@@ -20,6 +21,11 @@ import java.util.List;
  * @author Anastasia Radchenko
  */
 public class Achievements extends AbstractPane implements ActionListener {
+    // the rows fetched from the ranking at once
+    private static final int PAGE_SIZE = 100;
+
+    private final AchievementsTableModel model = new AchievementsTableModel();
+    private final JLabel status = new JLabel();
 
     public Achievements(final Application app) {
         super(app);
@@ -31,19 +37,7 @@ public class Achievements extends AbstractPane implements ActionListener {
         add(l);
         add(Box.createRigidArea(new Dimension(0, 10)));
 
-        String[] columnNames = {"Player Name", "Score"};
-
-        List<Achievement> achievements = app.getAchievements();
-        int size = achievements.size();
-        Object[][] data = new Object[size][2];
-
-        for (int i = 0; i < size; i++) {
-            Achievement achievement = achievements.get(i);
-            data[i][0] = achievement.getPlayer();
-            data[i][1] = achievement.getScore();
-        }
-
-        final JTable table = new JTable(data, columnNames);
+        final JTable table = new JTable(model);
         table.setPreferredScrollableViewportSize(new Dimension(80, 40));
         table.setFillsViewportHeight(true);
 
@@ -54,6 +48,10 @@ public class Achievements extends AbstractPane implements ActionListener {
         add(scrollPane);
         add(Box.createRigidArea(new Dimension(0, 10)));
 
+        status.setAlignmentX(Component.CENTER_ALIGNMENT);
+        add(status);
+        add(Box.createRigidArea(new Dimension(0, 10)));
+
         JButton b = new JButton("Ok");
         b.setActionCommand("OK");
         b.addActionListener(this);
@@ -62,6 +60,15 @@ public class Achievements extends AbstractPane implements ActionListener {
         add(b);
     }
 
+    /**
+     * Show the achievements as they are now.
+     */
+    public void refresh() {
+        model.refresh();
+        status.setText(String.format("%d players, read in %.1f ms",
+                app.getPlayerCount(), app.getAchievementsReadTime() / 1000000.0));
+    }
+
     @Override
     public void actionPerformed(ActionEvent e) {
         if ("OK".equals(e.getActionCommand())) {
@@ -69,4 +76,52 @@ public class Achievements extends AbstractPane implements ActionListener {
         }
     }
 
+    /**
+     * The ranking of the players, fetched a page at a time as the rows are shown.
+     */
+    private class AchievementsTableModel extends AbstractTableModel {
+        private final String[] columnNames = {"Rank", "Player Name", "Score"};
+
+        private int rowCount;
+        private int pageStart = -1;
+        private List<Achievement> page;
+
+        void refresh() {
+            rowCount = app.getPlayerCount();
+            pageStart = -1;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            if (column == 0) {
+                return row + 1;
+            }
+            if (pageStart < 0 || row < pageStart || row >= pageStart + PAGE_SIZE) {
+                pageStart = row - row % PAGE_SIZE;
+                page = app.getAchievements(pageStart, PAGE_SIZE);
+            }
+            if (row - pageStart >= page.size()) {
+                return null;
+            }
+            Achievement achievement = page.get(row - pageStart);
+            return column == 1 ? achievement.getPlayer() : achievement.getScore();
+        }
+    }
+
 }
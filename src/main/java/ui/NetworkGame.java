@@ -11,8 +11,6 @@ import java.util.EnumSet;
  * @author Anastasia Radchenko
  */
 public class NetworkGame extends AbstractGame  {
-    private volatile Thread workerThread;
-
     public NetworkGame(final Application app) {
         super(app);
     }
@@ -31,24 +29,19 @@ public class NetworkGame extends AbstractGame  {
             e.printStackTrace();
             lostConnection();
         }
-        app.makeRemoteMove();
     }
 
-    public void setWorkerThread(Thread workerThread) {
-        this.workerThread = workerThread;
+    public void lostConnection() {
+    	error("Connection to remote player has been lost.\nThe game will stop now.", "Communication Error");
+    	cancel();
     }
 
-    @Override
-    protected void cancel() {
-        if (workerThread != null) {
-            workerThread.interrupt();
-            workerThread = null;
-        }
-        super.cancel();
+    public void remoteResigned() {
+        info("Remote player has resigned.\nThe game will stop now.", "Game Over");
+        cancel();
     }
 
-    public void lostConnection() {
-    	error("Connection to remote player has been lost.\nThe game will stop now.", "Communication Error");
-    	cancel();
+    public void chat(String player, String text) {
+        setInfo(player + ": " + text);
     }
 }
@@ -2,11 +2,13 @@ package ui;
 
 import application.Application;
 import models.PlayerRole;
+import models.Rules;
 
 import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
@@ -41,6 +43,7 @@ public class NetworkGameConfiguration extends AbstractPane implements ActionList
     private final JTextField tfPlayerName;
     private final ButtonGroup rbgPlayerRole;
     private final JRadioButton rbPlayAsOrder;
+    private final JComboBox<Rules> cbRules;
 
     public NetworkGameConfiguration(Application app) {
         super(app, new BorderLayout(5, 20));
@@ -104,6 +107,19 @@ public class NetworkGameConfiguration extends AbstractPane implements ActionList
         layout.putConstraint(SpringLayout.WEST, rb, 5, SpringLayout.EAST, lPlayerRole);
         layout.putConstraint(SpringLayout.NORTH, rb, 0, SpringLayout.SOUTH, rbPlayAsOrder);
 
+        JLabel lRules = new JLabel("Board:");
+        lRules.setHorizontalAlignment(JLabel.TRAILING);
+        controlsPanel.add(lRules);
+
+        layout.putConstraint(SpringLayout.EAST, lRules, 100, SpringLayout.WEST, controlsPanel);
+        layout.putConstraint(SpringLayout.NORTH, lRules, 15, SpringLayout.SOUTH, rb);
+
+        cbRules = new JComboBox<Rules>(Rules.VARIANTS.toArray(new Rules[Rules.VARIANTS.size()]));
+        controlsPanel.add(cbRules);
+
+        layout.putConstraint(SpringLayout.WEST, cbRules, 5, SpringLayout.EAST, lRules);
+        layout.putConstraint(SpringLayout.NORTH, cbRules, -3, SpringLayout.NORTH, lRules);
+
         controlsPanel.setBorder(BorderFactory.createEmptyBorder(20, 0, 20, 30));
         add(controlsPanel, BorderLayout.CENTER);
 
@@ -147,7 +163,7 @@ public class NetworkGameConfiguration extends AbstractPane implements ActionList
                 } else {
                     try {
                         PlayerRole playerRole = getPlayerRole();
-                        app.networkGame(playerName, playerRole);
+                        app.networkGame(playerName, playerRole, (Rules) cbRules.getSelectedItem());
                         reset();
                     } catch (IOException e) {
                         error("Failed to connect with remote player", "Error");
@@ -164,6 +180,7 @@ public class NetworkGameConfiguration extends AbstractPane implements ActionList
     public void reset() {
         tfPlayerName.setText("");
         rbPlayAsOrder.setSelected(true);
+        cbRules.setSelectedItem(Rules.STANDARD);
     }
 
     @Override
@@ -1,7 +1,10 @@
 package ui;
 
 import application.Application;
+import models.IllegalMoveException;
+import models.Move;
 
+import java.io.IOException;
 import java.util.EnumSet;
 
 /**
@@ -18,4 +21,14 @@ public class OnePlayerGame extends AbstractGame  {
         return EnumSet.of(Command.UNDO_MOVE, Command.SAVE_GAME, Command.EXIT_GAME, Command.QUIT_GAME);
     }
 
+    @Override
+    protected void doMove(Move move) throws IllegalMoveException, IOException {
+        // the computer player decides its move in the background, the player's move is shown meanwhile
+        app.makePlayerMove(move);
+    }
+
+    public void computerMoved() {
+        moveMade();
+    }
+
 }
@@ -1,12 +1,15 @@
 package ui;
 
 import application.Application;
+import models.AIPlayerType;
 import models.PlayerRole;
+import models.Rules;
 
 import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
@@ -28,9 +31,15 @@ public class OnePlayerGameConfiguration extends AbstractPane implements ActionLi
         CANCEL
     }
 
+    private static final String EASY_COMPUTER = "Easy (greedy)";
+    private static final String HARD_COMPUTER = "Hard (search)";
+    private static final String MONTE_CARLO_COMPUTER = "Hard (Monte Carlo)";
+
     private final JTextField tfPlayerName;
     private final ButtonGroup rbgPlayerRole;
     private final JRadioButton rbPlayAsOrder;
+    private final JComboBox<Rules> cbRules;
+    private final JComboBox<String> cbComputer;
 
     public OnePlayerGameConfiguration(Application app) {
         super(app, new BorderLayout(5, 50));
@@ -82,6 +91,32 @@ public class OnePlayerGameConfiguration extends AbstractPane implements ActionLi
         layout.putConstraint(SpringLayout.WEST, rb, 5, SpringLayout.EAST, lPlayerRole);
         layout.putConstraint(SpringLayout.NORTH, rb, 0, SpringLayout.SOUTH, rbPlayAsOrder);
 
+        JLabel lRules = new JLabel("Board:");
+        lRules.setHorizontalAlignment(JLabel.TRAILING);
+        controlsPanel.add(lRules);
+
+        layout.putConstraint(SpringLayout.EAST, lRules, 100, SpringLayout.WEST, controlsPanel);
+        layout.putConstraint(SpringLayout.NORTH, lRules, 15, SpringLayout.SOUTH, rb);
+
+        cbRules = new JComboBox<Rules>(Rules.VARIANTS.toArray(new Rules[Rules.VARIANTS.size()]));
+        controlsPanel.add(cbRules);
+
+        layout.putConstraint(SpringLayout.WEST, cbRules, 5, SpringLayout.EAST, lRules);
+        layout.putConstraint(SpringLayout.NORTH, cbRules, -3, SpringLayout.NORTH, lRules);
+
+        JLabel lComputer = new JLabel("Computer:");
+        lComputer.setHorizontalAlignment(JLabel.TRAILING);
+        controlsPanel.add(lComputer);
+
+        layout.putConstraint(SpringLayout.EAST, lComputer, 100, SpringLayout.WEST, controlsPanel);
+        layout.putConstraint(SpringLayout.NORTH, lComputer, 15, SpringLayout.SOUTH, lRules);
+
+        cbComputer = new JComboBox<String>(new String[] {EASY_COMPUTER, HARD_COMPUTER, MONTE_CARLO_COMPUTER});
+        controlsPanel.add(cbComputer);
+
+        layout.putConstraint(SpringLayout.WEST, cbComputer, 5, SpringLayout.EAST, lComputer);
+        layout.putConstraint(SpringLayout.NORTH, cbComputer, -3, SpringLayout.NORTH, lComputer);
+
         controlsPanel.setBorder(BorderFactory.createEmptyBorder(20, 0, 20, 50));
         add(controlsPanel, BorderLayout.CENTER);
 
@@ -105,7 +140,7 @@ public class OnePlayerGameConfiguration extends AbstractPane implements ActionLi
 
         add(buttonsPanel, BorderLayout.PAGE_END);
 
-        setBorder(BorderFactory.createEmptyBorder(90, 50, 90, 50));
+        setBorder(BorderFactory.createEmptyBorder(70, 50, 70, 50));
     }
 
     @Override
@@ -119,7 +154,8 @@ public class OnePlayerGameConfiguration extends AbstractPane implements ActionLi
                     tfPlayerName.selectAll();
                     tfPlayerName.requestFocus();
                 } else {
-                    app.onePlayerGame(playerName, PlayerRole.valueOf(rbgPlayerRole.getSelection().getActionCommand()));
+                    app.onePlayerGame(playerName, PlayerRole.valueOf(rbgPlayerRole.getSelection().getActionCommand()),
+                            (Rules) cbRules.getSelectedItem(), getComputer());
                     reset();
                 }
                 break;
@@ -128,10 +164,22 @@ public class OnePlayerGameConfiguration extends AbstractPane implements ActionLi
         }
     }
 
+    private AIPlayerType getComputer() {
+        if (HARD_COMPUTER.equals(cbComputer.getSelectedItem())) {
+            return AIPlayerType.ALPHA_BETA;
+        }
+        if (MONTE_CARLO_COMPUTER.equals(cbComputer.getSelectedItem())) {
+            return AIPlayerType.MONTE_CARLO;
+        }
+        return AIPlayerType.GREEDY;
+    }
+
     @Override
     public void reset() {
         tfPlayerName.setText("");
         rbPlayAsOrder.setSelected(true);
+        cbRules.setSelectedItem(Rules.STANDARD);
+        cbComputer.setSelectedItem(EASY_COMPUTER);
     }
 
     @Override
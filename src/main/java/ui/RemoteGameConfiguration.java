@@ -1,10 +1,12 @@
 package ui;
 
 import application.Application;
+import models.Rules;
 
 import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
@@ -21,11 +23,13 @@ import java.io.IOException;
 public class RemoteGameConfiguration extends AbstractPane implements ActionListener {
     private enum Commands {
         JOIN,
+        PLAY_ON_SERVER,
         CANCEL
     }
 
     private final JTextField tfGameHostname;
     private final JTextField tfPlayerName;
+    private final JComboBox<Rules> cbRules;
 
     public RemoteGameConfiguration(Application app) {
         super(app, new BorderLayout(5, 75));
@@ -64,10 +68,24 @@ public class RemoteGameConfiguration extends AbstractPane implements ActionListe
         layout.putConstraint(SpringLayout.WEST, tfPlayerName, 5, SpringLayout.EAST, lPlayerName);
         layout.putConstraint(SpringLayout.NORTH, tfPlayerName, 5, SpringLayout.SOUTH, tfGameHostname);
 
+        // the host of a game chooses its board, the game server pairs the players who want the same one
+        JLabel lRules = new JLabel("Server board:");
+        lRules.setHorizontalAlignment(JLabel.TRAILING);
+        controlsPanel.add(lRules);
+
+        layout.putConstraint(SpringLayout.EAST, lRules, 105, SpringLayout.WEST, controlsPanel);
+        layout.putConstraint(SpringLayout.NORTH, lRules, 15, SpringLayout.SOUTH, lPlayerName);
+
+        cbRules = new JComboBox<Rules>(Rules.VARIANTS.toArray(new Rules[Rules.VARIANTS.size()]));
+        controlsPanel.add(cbRules);
+
+        layout.putConstraint(SpringLayout.WEST, cbRules, 5, SpringLayout.EAST, lRules);
+        layout.putConstraint(SpringLayout.NORTH, cbRules, -3, SpringLayout.NORTH, lRules);
+
         controlsPanel.setBorder(BorderFactory.createEmptyBorder(20, 0, 20, 50));
         add(controlsPanel, BorderLayout.CENTER);
 
-        JPanel buttonsPanel = new JPanel(new GridLayout(1, 2));
+        JPanel buttonsPanel = new JPanel(new GridLayout(1, 3));
 
         JButton b = new JButton("Join");
         b.setToolTipText("Join remote game");
@@ -78,6 +96,15 @@ public class RemoteGameConfiguration extends AbstractPane implements ActionListe
         b.addActionListener(this);
         buttonsPanel.add(b);
 
+        b = new JButton("Server");
+        b.setToolTipText("Play on the game server against the next player waiting");
+        b.setVerticalTextPosition(AbstractButton.CENTER);
+        b.setHorizontalTextPosition(AbstractButton.CENTER);
+        b.setActionCommand(Commands.PLAY_ON_SERVER.name());
+        b.setFocusPainted(false);
+        b.addActionListener(this);
+        buttonsPanel.add(b);
+
         b = new JButton("Cancel");
         b.setToolTipText("Return to main menu");
         b.setVerticalTextPosition(AbstractButton.CENTER);
@@ -97,6 +124,7 @@ public class RemoteGameConfiguration extends AbstractPane implements ActionListe
         Commands command = Commands.valueOf(evt.getActionCommand());
         switch (command) {
             case JOIN:
+            case PLAY_ON_SERVER:
                 String gameHostname = tfGameHostname.getText();
                 String playerName = tfPlayerName.getText();
                 if (gameHostname == null || gameHostname.trim().isEmpty()) {
@@ -109,7 +137,11 @@ public class RemoteGameConfiguration extends AbstractPane implements ActionListe
                     tfPlayerName.requestFocus();
                 } else {
                     try {
-                        app.remoteGame(gameHostname, playerName);
+                        if (command == Commands.PLAY_ON_SERVER) {
+                            app.serverGame(gameHostname, playerName, (Rules) cbRules.getSelectedItem());
+                        } else {
+                            app.remoteGame(gameHostname, playerName);
+                        }
                         reset();
                     } catch (IOException e) {
                         error("Failed to join remote game: "+e.getMessage(), "Error");
@@ -126,6 +158,7 @@ public class RemoteGameConfiguration extends AbstractPane implements ActionListe
     public void reset() {
         tfGameHostname.setText("");
         tfPlayerName.setText("");
+        cbRules.setSelectedItem(Rules.STANDARD);
     }
 
     @Override
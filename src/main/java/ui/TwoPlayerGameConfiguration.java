@@ -1,10 +1,12 @@
 package ui;
 
 import application.Application;
+import models.Rules;
 
 import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
@@ -28,6 +30,7 @@ public class TwoPlayerGameConfiguration extends AbstractPane implements ActionLi
 
     private final JTextField tfOrderPlayerName;
     private final JTextField tfChaosPlayerName;
+    private final JComboBox<Rules> cbRules;
 
     public TwoPlayerGameConfiguration(Application app) {
         super(app, new BorderLayout(5, 75));
@@ -36,7 +39,7 @@ public class TwoPlayerGameConfiguration extends AbstractPane implements ActionLi
         l.setHorizontalAlignment(JLabel.CENTER);
         add(l, BorderLayout.PAGE_START);
 
-        JPanel controlsPanel = new JPanel(new GridLayout(2, 2));
+        JPanel controlsPanel = new JPanel(new GridLayout(3, 2));
 
         l = new JLabel("Order player name:");
         l.setHorizontalAlignment(JLabel.TRAILING);
@@ -54,6 +57,13 @@ public class TwoPlayerGameConfiguration extends AbstractPane implements ActionLi
         tfChaosPlayerName.setHorizontalAlignment(JTextField.LEADING);
         controlsPanel.add(tfChaosPlayerName);
 
+        l = new JLabel("Board:");
+        l.setHorizontalAlignment(JLabel.TRAILING);
+        controlsPanel.add(l);
+
+        cbRules = new JComboBox<Rules>(Rules.VARIANTS.toArray(new Rules[Rules.VARIANTS.size()]));
+        controlsPanel.add(cbRules);
+
         controlsPanel.setBorder(BorderFactory.createEmptyBorder(20, 0, 20, 50));
 
         add(controlsPanel, BorderLayout.CENTER);
@@ -103,7 +113,7 @@ public class TwoPlayerGameConfiguration extends AbstractPane implements ActionLi
                     tfChaosPlayerName.selectAll();
                     tfChaosPlayerName.requestFocus();
                 } else {
-                    app.twoPlayerGame(orderPlayerName, chaosPlayerName);
+                    app.twoPlayerGame(orderPlayerName, chaosPlayerName, (Rules) cbRules.getSelectedItem());
                     reset();
                 }
                 break;
@@ -121,6 +131,7 @@ public class TwoPlayerGameConfiguration extends AbstractPane implements ActionLi
     public void reset() {
         tfOrderPlayerName.setText("");
         tfChaosPlayerName.setText("");
+        cbRules.setSelectedItem(Rules.STANDARD);
     }
 
     @Override
@@ -0,0 +1,104 @@
+package ai;
+
+import models.Symmetry;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the positions the game can not tell apart share their code, and
+ * that the moves go to the canonical image and back.
+ *
+ * @author Anastasia Radchenko
+ */
+public class PositionCodeTest {
+
+	private static final int POSITIONS = 200;
+
+	@Test
+	public void allImagesShareCanonicalCode() {
+		Random random = new Random(1);
+		for (int size = 3; size * size <= PositionCode.MAX_SQUARES; size++) {
+			PositionCode code = new PositionCode(size);
+			for (int i = 0; i < POSITIONS; i++) {
+				byte[] cells = randomPosition(random, size);
+				long canonical = code.canonical(cells);
+				for (int symmetry = 0; symmetry < Symmetry.COUNT; symmetry++) {
+					assertEquals(canonical, code.canonical(image(cells, size, symmetry)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void movesGoToCanonicalImageAndBack() {
+		Random random = new Random(2);
+		for (int size = 3; size * size <= PositionCode.MAX_SQUARES; size++) {
+			PositionCode code = new PositionCode(size);
+			for (int i = 0; i < POSITIONS; i++) {
+				byte[] cells = randomPosition(random, size);
+				int symmetry = code.symmetry(cells);
+				byte[] canonical = image(cells, size, symmetry);
+				// the image of the symmetry has the smallest code of all
+				assertEquals(code.canonical(cells), plainCode(canonical));
+				for (int move = 0; move < 2 * size * size; move++) {
+					int canonicalMove = code.toCanonical(move, symmetry);
+					assertEquals(Symmetry.forSize(size).toImage(move, symmetry), canonicalMove);
+					assertEquals(move, code.fromCanonical(canonicalMove, symmetry));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void differentPositionsHaveDifferentCodes() {
+		PositionCode code = new PositionCode(6);
+		byte[] corner = new byte[36];
+		corner[0] = SearchBoard.X;
+		byte[] edge = new byte[36];
+		edge[1] = SearchBoard.X;
+		byte[] centre = new byte[36];
+		centre[14] = SearchBoard.O;
+		assertTrue(code.canonical(corner) != code.canonical(edge));
+		assertTrue(code.canonical(corner) != code.canonical(centre));
+		assertTrue(code.canonical(edge) != code.canonical(centre));
+	}
+
+	private static byte[] randomPosition(Random random, int size) {
+		byte[] cells = new byte[size * size];
+		for (int square = 0; square < cells.length; square++) {
+			cells[square] = (byte) random.nextInt(3);
+		}
+		return cells;
+	}
+
+	/**
+	 * @return the image of the position, the board turned or mirrored and the
+	 * marks swapped as the symmetry says.
+	 */
+	private static byte[] image(byte[] cells, int size, int symmetry) {
+		byte[] image = new byte[cells.length];
+		for (int square = 0; square < cells.length; square++) {
+			if (cells[square] != SearchBoard.SPACE) {
+				int move = Symmetry.forSize(size).toImage((square << 1) | (cells[square] == SearchBoard.O ? 1 : 0),
+						symmetry);
+				image[move >> 1] = (move & 1) == 0 ? SearchBoard.X : SearchBoard.O;
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * @return the code of the board as it is, not of any other image.
+	 */
+	private static long plainCode(byte[] cells) {
+		long code = 0;
+		for (byte cell : cells) {
+			code = code * 3 + cell;
+		}
+		return code;
+	}
+}
@@ -0,0 +1,109 @@
+package application;
+
+import io.AchievementsReaderWriter;
+import models.Achievement;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records wins from many threads at once into an achievement manager that
+ * writes nowhere and checks that no win is lost. When every win is won by the
+ * same player the score is known exactly: the first win and a repeat win for
+ * every other. When every thread records the wins of its own player, each
+ * score is between the score of no repeat wins and the score of all repeat
+ * wins but the first.
+ *
+ * @author Anastasia Radchenko
+ */
+public class AchievementManagerTest {
+
+	private static final int BONUS = 50;
+	private static final int SUPER_BONUS = 100;
+	private static final int THREADS = 16;
+	private static final int WINS = 10000;
+
+	@Test
+	public void sameWinnerLosesNoWin() throws Exception {
+		AchievementManager manager = newManager();
+		record(manager, true);
+		assertEquals(BONUS + (long) SUPER_BONUS * (THREADS * WINS - 1), manager.getAchievement("Player").getScore());
+		assertEquals(0, manager.getRank("Player"));
+	}
+
+	@Test
+	public void ownWinnersLoseNoWin() throws Exception {
+		AchievementManager manager = newManager();
+		record(manager, false);
+		List<Achievement> achievements = manager.getAchievements();
+		assertEquals(THREADS, achievements.size());
+		for (int rank = 0; rank < achievements.size(); rank++) {
+			Achievement achievement = achievements.get(rank);
+			int score = achievement.getScore();
+			assertTrue("lost update: "+achievement, score % BONUS == 0 && score >= (long) BONUS * WINS
+					&& score <= (long) SUPER_BONUS * WINS - BONUS);
+			assertEquals(rank, manager.getRank(achievement.getPlayer()));
+		}
+	}
+
+	@Test
+	public void rankOfPlayerWithoutWinsIsUnknown() {
+		assertEquals(-1, newManager().getRank("Player"));
+	}
+
+	private static AchievementManager newManager() {
+		return new AchievementManager(new AchievementsReaderWriter() {
+			@Override
+			public AchievementManager read() {
+				return null;
+			}
+
+			@Override
+			public void write(AchievementManager achievementManager) {
+			}
+
+			@Override
+			public void flush() {
+			}
+		});
+	}
+
+	/**
+	 * Record the wins from all the threads at once.
+	 */
+	private static void record(final AchievementManager manager, final boolean sameWinner) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		try {
+			for (int i = 0; i < THREADS; i++) {
+				final String player = sameWinner ? "Player" : "Player"+i;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						for (int win = 0; win < WINS; win++) {
+							manager.recordAchievement(player);
+						}
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
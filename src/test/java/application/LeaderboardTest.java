@@ -0,0 +1,143 @@
+package application;
+
+import models.Achievement;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the ranks and the pages of the treap against the players sorted the
+ * plain way, while the scores are raised at random, and that the scores are
+ * raised from many threads while the ranking is being read.
+ *
+ * @author Anastasia Radchenko
+ */
+public class LeaderboardTest {
+
+	private static final int PLAYERS = 500;
+	private static final int THREADS = 8;
+	private static final int WINS = 20000;
+
+	@Test
+	public void ranksFollowRaisedScores() {
+		Random random = new Random(1);
+		Leaderboard leaderboard = new Leaderboard();
+		Map<String, Achievement> achievements = new HashMap<String, Achievement>();
+		for (int i = 0; i < PLAYERS; i++) {
+			Achievement achievement = new Achievement("Player"+i, 0);
+			achievements.put(achievement.getPlayer(), achievement);
+			leaderboard.add(achievement.getPlayer(), 0);
+		}
+		for (int i = 0; i < 10 * PLAYERS; i++) {
+			Achievement achievement = achievements.get("Player"+random.nextInt(PLAYERS));
+			leaderboard.raiseScore(achievement, random.nextBoolean() ? 50 : 100);
+		}
+		checkRanks(leaderboard, achievements);
+	}
+
+	@Test
+	public void ranksOfPlayersAddedAllAtOnce() {
+		Random random = new Random(2);
+		String[] players = new String[PLAYERS];
+		int[] scores = new int[PLAYERS];
+		Map<String, Achievement> achievements = new HashMap<String, Achievement>();
+		for (int i = 0; i < PLAYERS; i++) {
+			players[i] = "Player"+i;
+			// few different scores, so that many players are ranked by their names
+			scores[i] = 50 * random.nextInt(20);
+			achievements.put(players[i], new Achievement(players[i], scores[i]));
+		}
+		Leaderboard leaderboard = new Leaderboard();
+		leaderboard.addAll(players, scores, PLAYERS);
+		checkRanks(leaderboard, achievements);
+	}
+
+	@Test
+	public void winsDoNotWaitForTheRanking() throws Exception {
+		final Leaderboard leaderboard = new Leaderboard();
+		final Map<String, Achievement> achievements = new HashMap<String, Achievement>();
+		for (int i = 0; i < PLAYERS; i++) {
+			achievements.put("Player"+i, new Achievement("Player"+i, 0));
+			leaderboard.add("Player"+i, 0);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		// a reader in the middle of a long page holds the ranking all the time the wins are recorded
+		leaderboard.lock.readLock().lock();
+		try {
+			for (int i = 0; i < THREADS; i++) {
+				final Random random = new Random(i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int win = 0; win < WINS; win++) {
+							leaderboard.raiseScore(achievements.get("Player"+random.nextInt(PLAYERS)), 50);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			leaderboard.lock.readLock().unlock();
+			executor.shutdown();
+		}
+		long total = 0;
+		for (Achievement achievement : achievements.values()) {
+			total += achievement.getScore();
+		}
+		assertEquals(50L * THREADS * WINS, total);
+		checkRanks(leaderboard, achievements);
+	}
+
+	@Test
+	public void pageAtTheEndIsShort() {
+		Leaderboard leaderboard = new Leaderboard();
+		leaderboard.add("Anna", 100);
+		leaderboard.add("Bob", 150);
+		leaderboard.add("Carl", 100);
+		List<Achievement> page = leaderboard.page(1, 5);
+		assertEquals(2, page.size());
+		assertEquals("Anna", page.get(0).getPlayer());
+		assertEquals("Carl", page.get(1).getPlayer());
+		assertEquals(0, leaderboard.page(3, 5).size());
+	}
+
+	private static void checkRanks(Leaderboard leaderboard, Map<String, Achievement> achievements) {
+		List<Achievement> sorted = new ArrayList<Achievement>(achievements.values());
+		Collections.sort(sorted, new Comparator<Achievement>() {
+			@Override
+			public int compare(Achievement a, Achievement b) {
+				if (a.getScore() != b.getScore()) {
+					return a.getScore() > b.getScore() ? -1 : 1;
+				}
+				return a.getPlayer().compareTo(b.getPlayer());
+			}
+		});
+		assertEquals(sorted.size(), leaderboard.size());
+		List<Achievement> page = leaderboard.page(0, sorted.size());
+		for (int rank = 0; rank < sorted.size(); rank++) {
+			Achievement achievement = sorted.get(rank);
+			assertEquals(achievement.getPlayer(), page.get(rank).getPlayer());
+			assertEquals(achievement.getScore(), page.get(rank).getScore());
+			Leaderboard.Standing standing = leaderboard.standing(achievement);
+			assertEquals(achievement.getScore(), standing.score);
+			assertEquals(rank, standing.rank);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package io;
+
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.Rules;
+import models.TwoPlayerGameState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Opens the store after the damage a crash leaves at the end of the file and
+ * after the damage in the middle of it.
+ *
+ * @author Anastasia Radchenko
+ */
+public class CompressedGameStoreTest {
+
+	private static final int GAMES = 3;
+
+	private File file;
+	// the length of the file with the first games only, and with all of them
+	private long firstGamesLength;
+	private long length;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("games", ".ocz");
+		file.delete();
+		CompressedGameStore store = CompressedGameStore.open(file);
+		try {
+			for (int i = 0; i < GAMES; i++) {
+				GameState game = new TwoPlayerGameState("Order"+i, "Chaos"+i, Rules.STANDARD);
+				List<Move> moves = new ArrayList<Move>();
+				for (int move = 0; move < 4; move++) {
+					Move next = new Move(game.nextTurn(), move + 1, i + 1, move % 2 == 0 ? Mark.X : Mark.O);
+					game.makeMove(next);
+					moves.add(next);
+				}
+				store.save(game, moves);
+				if (i == GAMES - 2) {
+					firstGamesLength = store.getBytes();
+				}
+			}
+			length = store.getBytes();
+		} finally {
+			store.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void tornLastRecordCutOff() throws IOException {
+		setLength(length - 2);
+		checkOpens(GAMES - 1, firstGamesLength);
+	}
+
+	@Test
+	public void lastRecordWithWrongCheckCutOff() throws IOException {
+		corrupt(length - 1);
+		checkOpens(GAMES - 1, firstGamesLength);
+	}
+
+	@Test
+	public void zerosAfterRecordsCutOff() throws IOException {
+		setLength(length + 16);
+		checkOpens(GAMES, length);
+	}
+
+	@Test
+	public void damageInTheMiddleFailsOpen() throws IOException {
+		corrupt(firstGamesLength - 1);
+		try {
+			CompressedGameStore.open(file).close();
+			fail("The store with a damaged record has been opened");
+		} catch (IOException e) {
+			// expected
+		}
+		// nothing is cut off
+		assertEquals(length, file.length());
+	}
+
+	private void checkOpens(int games, long bytes) throws IOException {
+		CompressedGameStore store = CompressedGameStore.open(file);
+		try {
+			assertEquals(games, store.size());
+			assertEquals(bytes, store.getBytes());
+			for (long id : store.getIds()) {
+				GameState game = store.load(id);
+				assertEquals("Order"+(id - 1), game.getOrderPlayer());
+				assertEquals(Mark.O, game.getBoardMark(4, (int) id));
+			}
+		} finally {
+			store.close();
+		}
+		assertEquals(bytes, file.length());
+	}
+
+	private void setLength(long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void corrupt(long position) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(position);
+			int b = raf.read();
+			raf.seek(position);
+			raf.write(b ^ 0x5a);
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package io;
+
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import models.TwoPlayerGameState;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Encodes every kind of message and decodes it back, from the stream and from
+ * the buffer.
+ *
+ * @author Anastasia Radchenko
+ */
+public class FrameTest {
+
+	private static final Rules RULES = new Rules(Rules.MAX_BOARD_SIZE, Rules.MAX_BOARD_SIZE);
+
+	@Test
+	public void hello() throws IOException {
+		Frame frame = roundTrip(Frame.hello("Player", PlayerRole.CHAOS, RULES, 42), 1);
+		assertEquals(Frame.Type.HELLO, frame.getType());
+		assertEquals("Player", frame.getName());
+		assertEquals(PlayerRole.CHAOS, frame.getRole());
+		assertEquals(RULES, frame.getRules());
+		assertEquals(42, frame.getSession());
+		assertNull(roundTrip(Frame.hello("Player", null, Rules.STANDARD), 1).getRole());
+	}
+
+	@Test
+	public void moveOnEverySquare() throws IOException {
+		int size = RULES.getBoardSize();
+		for (int x = 1; x <= size; x++) {
+			for (int y = 1; y <= size; y++) {
+				Mark mark = (x + y) % 2 == 0 ? Mark.X : Mark.O;
+				// the sequence numbers take 1 to 5 bytes
+				int sequence = 1 << (x * y % 31);
+				Frame frame = roundTrip(Frame.move(new Move("Order", x, y, mark), size), sequence);
+				assertEquals(Frame.Type.MOVE, frame.getType());
+				Move move = frame.getMove("Chaos", size);
+				assertEquals("Chaos", move.getPlayer());
+				assertEquals(x, move.getX());
+				assertEquals(y, move.getY());
+				assertEquals(mark, move.getMark());
+			}
+		}
+	}
+
+	@Test
+	public void chatResignResumeWatch() throws IOException {
+		assertEquals("Hello, there", roundTrip(Frame.chat("Hello, there"), 7).getText());
+		assertEquals(Frame.Type.RESIGN, roundTrip(Frame.resign(), 8).getType());
+		Frame resume = roundTrip(Frame.resume(-5, 300), 9);
+		assertEquals(-5, resume.getSession());
+		assertEquals(300, resume.getReceived());
+		assertEquals("Player", roundTrip(Frame.watch("Player"), 0).getName());
+	}
+
+	@Test
+	public void snapshot() throws Exception {
+		GameState game = new TwoPlayerGameState("Order", "Chaos", Rules.STANDARD);
+		game.makeMove(new Move("Order", 2, 3, Mark.X));
+		game.makeMove(new Move("Chaos", 4, 5, Mark.O));
+		GameState read = roundTrip(Frame.snapshot(game), 3).getGameState();
+		assertEquals(game.getHash(), read.getHash());
+		assertEquals(Mark.X, read.getBoardMark(2, 3));
+		assertEquals(Mark.O, read.getBoardMark(4, 5));
+		assertEquals(game.nextTurn(), read.nextTurn());
+	}
+
+	@Test
+	public void snapshotOfFullBoardWithLongestNames() throws Exception {
+		// two bytes for every letter of the names
+		char[] letters = new char[Frame.MAX_NAME_BYTES / 2];
+		Arrays.fill(letters, '\u0436');
+		String name = new String(letters);
+		TwoPlayerGameState game = new TwoPlayerGameState(name, name, RULES);
+		int size = RULES.getBoardSize();
+		for (int x = 1; x <= size && !game.isOver(); x++) {
+			for (int y = 1; y <= size && !game.isOver(); y++) {
+				game.makeMove(new Move(game.nextTurn(), x, y, (x + y + x / 2) % 2 == 0 ? Mark.X : Mark.O));
+			}
+		}
+		GameState read = roundTrip(Frame.snapshot(game), Integer.MAX_VALUE).getGameState();
+		assertEquals(game.getHash(), read.getHash());
+		assertEquals(name, read.getOrderPlayer());
+	}
+
+	@Test(expected = IOException.class)
+	public void nameTooLongIsNotSaid() throws IOException {
+		char[] letters = new char[Frame.MAX_NAME_BYTES + 1];
+		Arrays.fill(letters, 'a');
+		Frame.hello(new String(letters), null, Rules.STANDARD).encode(1);
+	}
+
+	@Test
+	public void frameCutShortIsNotRead() throws IOException {
+		byte[] bytes = Frame.chat("Hello").encode(1);
+		ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1));
+		assertNull(Frame.read(buffer));
+		assertEquals(0, buffer.position());
+	}
+
+	@Test(expected = IOException.class)
+	public void unknownTypeIsRejected() throws IOException {
+		Frame.read(ByteBuffer.wrap(new byte[] {2, 100, 0}));
+	}
+
+	/**
+	 * @return the frame decoded from the stream, after checking the buffer
+	 * decodes the same frame.
+	 */
+	private static Frame roundTrip(Frame frame, int sequence) throws IOException {
+		byte[] bytes = frame.encode(sequence);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		Frame fromBuffer = Frame.read(buffer);
+		assertEquals(bytes.length, buffer.position());
+		assertEquals(frame.getType(), fromBuffer.getType());
+		assertEquals(sequence, fromBuffer.getSequence());
+		Frame read = Frame.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+		assertEquals(frame.getType(), read.getType());
+		assertEquals(sequence, read.getSequence());
+		return read;
+	}
+}
@@ -0,0 +1,220 @@
+package io;
+
+import models.GameState;
+import models.Mark;
+import models.Move;
+import models.Rules;
+import models.TwoPlayerGameState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the games missing from the index after a crash are found again
+ * when the archive is opened, across several segments, and that the games in
+ * the index that have not reached the disk whole are cut off.
+ *
+ * @author Anastasia Radchenko
+ */
+public class GameArchiveTest {
+
+	// a few games per segment
+	private static final int SEGMENT_SIZE = 256;
+	private static final int GAMES = 20;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("archive", "");
+		directory.delete();
+		GameArchive archive = GameArchive.open(directory, SEGMENT_SIZE);
+		try {
+			for (int i = 0; i < GAMES; i++) {
+				GameState game = new TwoPlayerGameState("Order"+i, "Chaos"+i, Rules.STANDARD);
+				List<Move> moves = new ArrayList<Move>();
+				for (int move = 0; move <= i % 5; move++) {
+					moves.add(new Move(move % 2 == 0 ? "Order"+i : "Chaos"+i, move + 1, 1, Mark.X));
+				}
+				assertEquals(i, archive.append(game, moves));
+			}
+		} finally {
+			archive.close();
+		}
+		assertTrue(new File(directory, "games-00001.segment").exists());
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void gamesReadBack() throws IOException {
+		checkGames();
+	}
+
+	@Test
+	public void positionsMissingFromIndexFoundAgain() throws IOException {
+		setIndexLength(8 * 3);
+		checkGames();
+	}
+
+	@Test
+	public void lostIndexRebuilt() throws IOException {
+		assertTrue(new File(directory, "index").delete());
+		checkGames();
+	}
+
+	@Test
+	public void gameAppendedAfterRecovery() throws IOException {
+		setIndexLength(8 * 7);
+		GameArchive archive = GameArchive.open(directory, SEGMENT_SIZE);
+		try {
+			assertEquals(GAMES, archive.append(new TwoPlayerGameState("Anna", "Bob", Rules.STANDARD),
+					new ArrayList<Move>()));
+		} finally {
+			archive.close();
+		}
+		archive = GameArchive.open(directory, SEGMENT_SIZE);
+		try {
+			assertEquals(GAMES + 1, archive.size());
+			GameArchive.Cursor cursor = archive.cursor();
+			cursor.seek(GAMES);
+			assertEquals("Anna", cursor.getOrderPlayer());
+			assertEquals(0, cursor.getMoveCount());
+		} finally {
+			archive.close();
+		}
+	}
+
+	@Test
+	public void indexedGameNotOnDiskCutOff() throws IOException {
+		// the index has reached the disk, the record of the last game has not
+		writeInt(lastPosition(), 0);
+		checkGamesAfterCrash();
+	}
+
+	@Test
+	public void tornGameFailsChecksum() throws IOException {
+		// the length of the last game has reached the disk, the end of its record has not
+		long position = lastPosition();
+		writeInt(position + 4 + 12, 0x7f7f7f7f);
+		checkGamesAfterCrash();
+	}
+
+	@Test
+	public void openArchiveIsLocked() throws IOException {
+		GameArchive archive = GameArchive.open(directory, SEGMENT_SIZE);
+		try {
+			GameArchive.open(directory, SEGMENT_SIZE);
+			fail("The archive is open twice");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			archive.close();
+		}
+		// and opens again once closed
+		checkGames();
+	}
+
+	private void checkGames() throws IOException {
+		GameArchive archive = GameArchive.open(directory, SEGMENT_SIZE);
+		try {
+			assertEquals(GAMES, archive.size());
+			GameArchive.Cursor cursor = archive.cursor();
+			for (int i = 0; i < GAMES; i++) {
+				assertTrue(cursor.next());
+				assertEquals(i, cursor.getNumber());
+				assertEquals("Order"+i, cursor.getOrderPlayer());
+				assertEquals("Chaos"+i, cursor.getChaosPlayer());
+				assertEquals(i % 5 + 1, cursor.getMoveCount());
+				assertEquals(2 * ((i % 5) * Rules.STANDARD.getBoardSize()), cursor.getMove(i % 5));
+			}
+			assertFalse(cursor.next());
+		} finally {
+			archive.close();
+		}
+	}
+
+	/**
+	 * Open the archive that has lost its last game, check that the game is
+	 * cut off from the index and that the next game takes its place.
+	 */
+	private void checkGamesAfterCrash() throws IOException {
+		GameArchive archive = GameArchive.open(directory, SEGMENT_SIZE);
+		try {
+			assertEquals(GAMES - 1, archive.size());
+			assertEquals(GAMES - 1, archive.append(new TwoPlayerGameState("Anna", "Bob", Rules.STANDARD),
+					new ArrayList<Move>()));
+		} finally {
+			archive.close();
+		}
+		assertEquals(8 * GAMES, new File(directory, "index").length());
+		archive = GameArchive.open(directory, SEGMENT_SIZE);
+		try {
+			assertEquals(GAMES, archive.size());
+			GameArchive.Cursor cursor = archive.cursor();
+			cursor.seek(GAMES - 2);
+			assertEquals("Order"+(GAMES - 2), cursor.getOrderPlayer());
+			cursor.seek(GAMES - 1);
+			assertEquals("Anna", cursor.getOrderPlayer());
+		} finally {
+			archive.close();
+		}
+	}
+
+	/**
+	 * @return the position of the last game in the index, the segment in the
+	 * high half and the offset in the low half.
+	 */
+	private long lastPosition() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(new File(directory, "index"), "r");
+		try {
+			raf.seek(8 * (GAMES - 1));
+			return raf.readLong();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Write the int at the position in the segments.
+	 */
+	private void writeInt(long position, int value) throws IOException {
+		File segment = new File(directory, String.format("games-%05d.segment", (int) (position >>> 32)));
+		RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		try {
+			raf.seek((int) position);
+			raf.writeInt(value);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void setIndexLength(long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(new File(directory, "index"), "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package io;
+
+import models.GameState;
+import models.Mark;
+import models.OnePlayerGameState;
+import models.PlayerRole;
+import models.Rules;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Plays the journal back after it has been torn or corrupted the ways a crash
+ * leaves it.
+ *
+ * @author Anastasia Radchenko
+ */
+public class GameJournalTest {
+
+	private static final int CHECKSUM = 0x12345678;
+	// header and records, as they are laid out in the file
+	private static final int HEADER_BYTES = 8;
+	private static final int RECORD_BYTES = 4;
+
+	private ScheduledExecutorService syncExecutor;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		syncExecutor = Executors.newSingleThreadScheduledExecutor();
+		file = File.createTempFile("journal", ".ocj");
+		GameJournal journal = new GameJournal(file, CHECKSUM, syncExecutor);
+		try {
+			journal.append(1, 1, Mark.X);
+			journal.append(2, 2, Mark.O);
+			journal.append(3, 3, Mark.X);
+		} finally {
+			journal.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		syncExecutor.shutdownNow();
+		file.delete();
+	}
+
+	@Test
+	public void allRecordsPlayedBack() throws IOException {
+		GameState game = newGame();
+		assertEquals(3, GameJournal.replay(file, CHECKSUM, game));
+		assertEquals(Mark.X, game.getBoardMark(1, 1));
+		assertEquals(Mark.O, game.getBoardMark(2, 2));
+		assertEquals(Mark.X, game.getBoardMark(3, 3));
+	}
+
+	@Test
+	public void tornRecordEndsJournal() throws IOException {
+		setLength(HEADER_BYTES + 2 * RECORD_BYTES + 2);
+		GameState game = newGame();
+		assertEquals(2, GameJournal.replay(file, CHECKSUM, game));
+		assertEquals(Mark.O, game.getBoardMark(2, 2));
+		assertEquals(Mark.SPACE, game.getBoardMark(3, 3));
+	}
+
+	@Test
+	public void corruptRecordEndsJournal() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// the square of the second record
+			raf.seek(HEADER_BYTES + RECORD_BYTES);
+			raf.write(4);
+		} finally {
+			raf.close();
+		}
+		GameState game = newGame();
+		assertEquals(1, GameJournal.replay(file, CHECKSUM, game));
+		assertEquals(Mark.SPACE, game.getBoardMark(4, 2));
+		assertEquals(Mark.SPACE, game.getBoardMark(2, 2));
+	}
+
+	@Test
+	public void journalOfAnotherGameIgnored() throws IOException {
+		GameState game = newGame();
+		assertEquals(0, GameJournal.replay(file, CHECKSUM + 1, game));
+		assertEquals(Mark.SPACE, game.getBoardMark(1, 1));
+	}
+
+	@Test
+	public void resetJournalIsEmpty() throws IOException {
+		GameJournal journal = new GameJournal(file, CHECKSUM + 1, syncExecutor);
+		journal.close();
+		assertEquals(0, GameJournal.replay(file, CHECKSUM, newGame()));
+		assertEquals(0, GameJournal.replay(file, CHECKSUM + 1, newGame()));
+	}
+
+	private static GameState newGame() {
+		return OnePlayerGameState.restore("Player", PlayerRole.ORDER, Rules.STANDARD);
+	}
+
+	private void setLength(long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+}
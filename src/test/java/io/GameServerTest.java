@@ -0,0 +1,111 @@
+package io;
+
+import models.IllegalMoveException;
+import models.Mark;
+import models.Move;
+import models.NetworkGameState;
+import models.PlayerRole;
+import models.Rules;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plays the games on the game server over the loopback.
+ *
+ * @author Anastasia Radchenko
+ */
+public class GameServerTest {
+
+	private GameServer server;
+	private final List<GameConnector> connectors = new ArrayList<GameConnector>();
+
+	@Before
+	public void setUp() throws IOException {
+		server = GameServer.start(0, 2);
+	}
+
+	@After
+	public void tearDown() {
+		for (GameConnector connector : connectors) {
+			connector.disconnect();
+		}
+		server.close();
+	}
+
+	private GameConnector connect() throws IOException {
+		GameConnector connector = new ClientGameConnector(server.getPort());
+		connectors.add(connector);
+		connector.connect("127.0.0.1");
+		return connector;
+	}
+
+	private static Callable<Frame> receive(final GameConnector connector) {
+		return new Callable<Frame>() {
+			@Override
+			public Frame call() throws IOException {
+				return connector.receive();
+			}
+		};
+	}
+
+	@Test
+	public void nameIsTakenByOnePlayer() throws Exception {
+		GameConnector first = connect();
+		first.send(Frame.hello("Player", null, Rules.STANDARD));
+		GameConnector second = connect();
+		second.send(Frame.hello("Player", null, Rules.STANDARD));
+		// the hellos may reach the server in either order, the player said hello last is told the name is taken
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CompletionService<Frame> received = new ExecutorCompletionService<Frame>(executor);
+			Future<Frame> firstReceived = received.submit(receive(first));
+			Future<Frame> secondReceived = received.submit(receive(second));
+			Future<Frame> taken = received.poll(30, TimeUnit.SECONDS);
+			assertNotNull(taken);
+			assertEquals(Frame.Type.HELLO, taken.get().getType());
+			assertEquals("", taken.get().getName());
+			GameConnector other = taken == firstReceived ? first : second;
+			Future<Frame> waiting = taken == firstReceived ? secondReceived : firstReceived;
+
+			// the player tries another name and is paired with the one waiting
+			other.send(Frame.hello("Other", null, Rules.STANDARD));
+			Frame hello = other.receive();
+			assertEquals("Player", hello.getName());
+			assertEquals(PlayerRole.ORDER, hello.getRole());
+			assertTrue(hello.getSession() != 0);
+			assertEquals("Other", waiting.get(30, TimeUnit.SECONDS).getName());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void turnsGoByRoleForPlayersOfTheSameName() throws IllegalMoveException {
+		NetworkGameState order = new NetworkGameState("Player", "Player", true);
+		NetworkGameState chaos = new NetworkGameState("Player", "Player", false);
+		assertTrue(order.localPlayerMovesNext());
+		assertFalse(chaos.localPlayerMovesNext());
+		Move move = new Move("Player", 1, 1, Mark.X);
+		order.makeMove(move);
+		chaos.makeMove(move);
+		assertFalse(order.localPlayerMovesNext());
+		assertTrue(chaos.localPlayerMovesNext());
+	}
+}
@@ -0,0 +1,188 @@
+package io;
+
+import models.GameState;
+import models.IllegalMoveException;
+import models.Mark;
+import models.Move;
+import models.Rules;
+import models.TwoPlayerGameState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Saves the games from many threads at once and checks the index of the store
+ * once it is opened again: after the log of the index is compacted, and after
+ * its last record is torn by a crash.
+ *
+ * @author Anastasia Radchenko
+ */
+public class GameStoreTest {
+
+	private static final int THREADS = 8;
+	private static final int GAMES = 40;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("store", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void gamesSavedAtOnceAreIndexed() throws Exception {
+		final GameStore store = GameStore.open(directory);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		try {
+			for (int i = 0; i < THREADS; i++) {
+				final int thread = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int game = 0; game < GAMES; game++) {
+							long id = store.save(game("Order"+thread, game % 3));
+							// saved again with one more move
+							store.save(id, game("Order"+thread, game % 3 + 1));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+			store.close();
+		}
+		GameStore reopened = GameStore.open(directory);
+		try {
+			assertEquals(THREADS * GAMES, reopened.list().size());
+			for (int i = 0; i < THREADS; i++) {
+				List<GameStore.Entry> games = reopened.list("Order"+i, null, null);
+				assertEquals(GAMES, games.size());
+				// the entries follow the games saved last
+				int moves = 0;
+				for (GameStore.Entry entry : games) {
+					moves += entry.getMoves();
+					assertEquals("Order"+i, reopened.load(entry.getId()).getOrderPlayer());
+				}
+				int expected = 0;
+				for (int game = 0; game < GAMES; game++) {
+					expected += game % 3 + 1;
+				}
+				assertEquals(expected, moves);
+			}
+		} finally {
+			reopened.close();
+		}
+	}
+
+	@Test
+	public void logCompactedAndGamesDeleted() throws IOException {
+		GameStore store = GameStore.open(directory);
+		List<Long> ids = new ArrayList<Long>();
+		try {
+			// more records than games, and more than the log keeps before it is compacted
+			for (int i = 0; i < 1100; i++) {
+				if (ids.size() < 10) {
+					ids.add(store.save(game("Order", 1)));
+				} else {
+					store.save(ids.get(i % ids.size()), game("Order", 2));
+				}
+			}
+			assertTrue(store.delete(ids.get(0)));
+		} finally {
+			store.close();
+		}
+		assertTrue(new File(directory, "index").exists());
+		assertTrue(new File(directory, "index.log").length() < 1100 * 20);
+		GameStore reopened = GameStore.open(directory);
+		try {
+			assertEquals(ids.size() - 1, reopened.list().size());
+			assertNull(reopened.load(ids.get(0)));
+			assertEquals(2, reopened.list().get(0).getMoves());
+		} finally {
+			reopened.close();
+		}
+	}
+
+	@Test
+	public void tornLogRecordEndsLog() throws IOException {
+		GameStore store = GameStore.open(directory);
+		long first;
+		long second;
+		try {
+			first = store.save(game("First", 1));
+			second = store.save(game("Second", 2));
+		} finally {
+			store.close();
+		}
+		// the end of the last record has not reached the disk
+		RandomAccessFile log = new RandomAccessFile(new File(directory, "index.log"), "rw");
+		try {
+			log.setLength(log.length() - 3);
+		} finally {
+			log.close();
+		}
+		GameStore reopened = GameStore.open(directory);
+		try {
+			assertEquals(2, reopened.list().size());
+			assertEquals("First", reopened.load(first).getOrderPlayer());
+			// the game saved is found again, though its record is lost
+			assertEquals("Second", reopened.load(second).getOrderPlayer());
+			long third = reopened.save(game("Third", 0));
+			assertTrue(third > second);
+		} finally {
+			reopened.close();
+		}
+		reopened = GameStore.open(directory);
+		try {
+			assertEquals(3, reopened.list().size());
+		} finally {
+			reopened.close();
+		}
+	}
+
+	/**
+	 * @return the game of the player with the moves made on the first row.
+	 */
+	private static GameState game(String orderPlayer, int moves) throws IOException {
+		TwoPlayerGameState game = new TwoPlayerGameState(orderPlayer, "Chaos", Rules.STANDARD);
+		try {
+			for (int i = 0; i < moves; i++) {
+				game.makeMove(new Move(game.nextTurn(), i + 1, 1, i % 2 == 0 ? Mark.X : Mark.O));
+			}
+		} catch (IllegalMoveException e) {
+			throw new IOException(e.getMessage());
+		}
+		return game;
+	}
+}
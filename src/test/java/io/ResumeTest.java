@@ -0,0 +1,288 @@
+package io;
+
+import models.Mark;
+import models.Move;
+import models.PlayerRole;
+import models.Rules;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plays the games over the loopback through a proxy that cuts the connections
+ * in the middle of the game, between the host and the client and on the game
+ * server, and checks every frame is received once and in order after the
+ * connections are resumed.
+ *
+ * @author Anastasia Radchenko
+ */
+public class ResumeTest {
+
+	// the moves never make a chain, so the game goes on to the resignation
+	private static final int ROUNDS = 15;
+
+	private Proxy proxy;
+	private GameServer server;
+	private final List<GameConnector> connectors = new ArrayList<GameConnector>();
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		for (GameConnector connector : connectors) {
+			connector.disconnect();
+		}
+		if (proxy != null) {
+			proxy.close();
+		}
+		if (server != null) {
+			server.close();
+		}
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void clientResumesWithHost() throws Exception {
+		ServerSocket free = new ServerSocket(0);
+		int port = free.getLocalPort();
+		free.close();
+		final ServerGameConnector host = new ServerGameConnector(port);
+		connectors.add(host);
+		proxy = new Proxy(port);
+		Future<Void> hosted = executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				host.connect("");
+				long session = Frame.newSession();
+				host.send(Frame.hello("Order", PlayerRole.ORDER, Rules.STANDARD, session));
+				assertEquals("Chaos", host.receive().getName());
+				host.startSession(session);
+				return null;
+			}
+		});
+		GameConnector client = connect();
+		Frame hello = client.receive();
+		assertEquals("Order", hello.getName());
+		client.send(Frame.hello("Chaos", PlayerRole.CHAOS, Rules.STANDARD));
+		client.startSession(hello.getSession());
+		hosted.get(30, TimeUnit.SECONDS);
+
+		play(host, client);
+	}
+
+	@Test
+	public void playersResumeWithGameServer() throws Exception {
+		server = GameServer.start(0, 2);
+		proxy = new Proxy(server.getPort());
+		GameConnector first = connect();
+		first.send(Frame.hello("First", null, Rules.STANDARD));
+		GameConnector second = connect();
+		second.send(Frame.hello("Second", null, Rules.STANDARD));
+		Frame firstHello = first.receive();
+		first.startSession(firstHello.getSession());
+		Frame secondHello = second.receive();
+		second.startSession(secondHello.getSession());
+		// the hellos may reach the server in either order, the player waiting plays Order
+		assertTrue(firstHello.getRole() != secondHello.getRole());
+		if (firstHello.getRole() == PlayerRole.CHAOS) {
+			play(first, second);
+		} else {
+			play(second, first);
+		}
+		assertTrue(server.getResumedConnections() > 0);
+	}
+
+	private GameConnector connect() throws IOException {
+		GameConnector connector = new ClientGameConnector(proxy.getPort());
+		connectors.add(connector);
+		connector.connect("127.0.0.1");
+		return connector;
+	}
+
+	/**
+	 * Order plays on another thread and Chaos on this one, each saying
+	 * something before every move, and the connections are cut now and then
+	 * by either of them.
+	 */
+	private void play(final GameConnector order, GameConnector chaos) throws Exception {
+		Future<Void> ordered = executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				for (int i = 0; i < ROUNDS; i++) {
+					order.send(Frame.chat("Order "+i));
+					order.send(Frame.move(move("Order", 2 * i), 6));
+					if (i % 4 == 2) {
+						// while the frames are on the way
+						proxy.cut();
+					}
+					checkRound(order.receive(), order.receive(), "Chaos "+i, 2 * i + 1);
+				}
+				order.send(Frame.resign());
+				return null;
+			}
+		});
+		for (int i = 0; i < ROUNDS; i++) {
+			checkRound(chaos.receive(), chaos.receive(), "Order "+i, 2 * i);
+			if (i % 3 == 1) {
+				proxy.cut();
+			}
+			chaos.send(Frame.chat("Chaos "+i));
+			chaos.send(Frame.move(move("Chaos", 2 * i + 1), 6));
+		}
+		assertEquals(Frame.Type.RESIGN, chaos.receive().getType());
+		ordered.get(60, TimeUnit.SECONDS);
+		assertTrue(proxy.getCuts() >= ROUNDS / 3);
+	}
+
+	private static void checkRound(Frame chat, Frame move, String text, int number) throws IOException {
+		assertEquals(Frame.Type.CHAT, chat.getType());
+		assertEquals(text, chat.getText());
+		assertEquals(Frame.Type.MOVE, move.getType());
+		Move expected = move("", number);
+		Move read = move.getMove("", 6);
+		assertEquals(expected.getX(), read.getX());
+		assertEquals(expected.getY(), read.getY());
+		assertEquals(expected.getMark(), read.getMark());
+	}
+
+	/**
+	 * @return the move of the number, on the squares of the board one column
+	 * after another.
+	 */
+	private static Move move(String player, int number) {
+		int x = number / 6 + 1;
+		int y = number % 6 + 1;
+		return new Move(player, x, y, (x + y + x / 2) % 2 == 0 ? Mark.X : Mark.O);
+	}
+
+	/**
+	 * Passes the bytes between the connections of the loopback and the
+	 * target port, and cuts all the connections on demand.
+	 */
+	private static class Proxy implements Runnable {
+		private final ServerSocket serverSocket;
+		private final int target;
+		private final List<Socket> sockets = new ArrayList<Socket>();
+		private int cuts;
+
+		Proxy(int target) throws IOException {
+			this.target = target;
+			serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+			Thread thread = new Thread(this, "proxy");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		synchronized int getCuts() {
+			return cuts;
+		}
+
+		@Override
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try {
+					Socket socket = serverSocket.accept();
+					Socket targetSocket = connectTarget();
+					synchronized (this) {
+						sockets.add(socket);
+						sockets.add(targetSocket);
+					}
+					pipe(socket, targetSocket);
+					pipe(targetSocket, socket);
+				} catch (IOException e) {
+					// closed, or the target does not listen
+				}
+			}
+		}
+
+		// the host may not listen yet
+		private Socket connectTarget() throws IOException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (true) {
+				try {
+					return new Socket(InetAddress.getByName("127.0.0.1"), target);
+				} catch (IOException e) {
+					if (System.currentTimeMillis() > deadline) {
+						throw e;
+					}
+				}
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+
+		private void pipe(final Socket from, final Socket to) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					byte[] bytes = new byte[4096];
+					try {
+						InputStream in = from.getInputStream();
+						OutputStream out = to.getOutputStream();
+						int length;
+						while ((length = in.read(bytes)) > 0) {
+							out.write(bytes, 0, length);
+						}
+					} catch (IOException e) {
+						// cut
+					}
+					close(from);
+					close(to);
+				}
+			}, "proxy-pipe");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		synchronized void cut() {
+			for (Socket socket : sockets) {
+				close(socket);
+			}
+			sockets.clear();
+			cuts++;
+		}
+
+		void close() {
+			try {
+				serverSocket.close();
+			} catch (IOException ignored) {
+			}
+			cut();
+		}
+
+		private static void close(Socket socket) {
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+}